@@ -0,0 +1,161 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.measure.Metric;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.File;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.internal.DefaultTempFolder;
+import org.sonar.batch.bootstrap.GlobalProperties;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.index.CachesManager;
+import org.sonar.batch.issue.IssueCache;
+import org.sonar.batch.issue.tracking.TrackedIssue;
+import org.sonar.batch.scan.measure.MeasureCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the storages of the caches of scanner, Persistit and off-heap, on the measures and issues
+ * of a reactor of 100k files.
+ */
+public class BatchCachesBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkBatchCaches");
+
+  private static final int FILES = 100_000;
+  private static final int ISSUES_PER_FILE = 3;
+  private static final List<org.sonar.api.measures.Metric> METRICS = ImmutableList.<org.sonar.api.measures.Metric>of(CoreMetrics.LINES, CoreMetrics.NCLOC, CoreMetrics.COMMENT_LINES,
+    CoreMetrics.COMPLEXITY, CoreMetrics.FUNCTIONS, CoreMetrics.CLASSES, CoreMetrics.STATEMENTS, CoreMetrics.ACCESSORS,
+    CoreMetrics.PUBLIC_API, CoreMetrics.PUBLIC_UNDOCUMENTED_API);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    // warm-up
+    run(CachesManager.PERSISTIT_STORAGE, FILES / 10);
+    run(CachesManager.OFF_HEAP_STORAGE, FILES / 10);
+
+    long persistitMs = run(CachesManager.PERSISTIT_STORAGE, FILES);
+    long offHeapMs = run(CachesManager.OFF_HEAP_STORAGE, FILES);
+
+    benchmark.expectBetween("Total duration of off-heap storage (ms)", offHeapMs, 0L, persistitMs);
+  }
+
+  private long run(String storage, int files) throws Exception {
+    long start = System.currentTimeMillis();
+    GlobalProperties globalProperties = new GlobalProperties(ImmutableMap.of(CachesManager.STORAGE_PROPERTY, storage));
+    CachesManager cachesManager = new CachesManager(new DefaultTempFolder(temp.newFolder()), globalProperties);
+    Caches caches = new Caches(cachesManager);
+    MeasureCache measureCache = new MeasureCache(caches, new CoreMetricFinder());
+    IssueCache issueCache = new IssueCache(caches);
+    long startupMs = System.currentTimeMillis() - start;
+
+    try {
+      start = System.currentTimeMillis();
+      Date now = new Date();
+      for (int i = 0; i < files; i++) {
+        File file = File.create("src/main/java/File" + i + ".java");
+        file.setEffectiveKey("project:" + file.getKey());
+        for (org.sonar.api.measures.Metric metric : METRICS) {
+          measureCache.put(file, new Measure(metric, (double) i));
+        }
+        for (int j = 0; j < ISSUES_PER_FILE; j++) {
+          issueCache.put(new TrackedIssue()
+            .setKey("issue" + i + "_" + j)
+            .setComponentKey(file.getEffectiveKey())
+            .setRuleKey(RuleKey.of("squid", "S" + j))
+            .setSeverity("MAJOR")
+            .setStatus("OPEN")
+            .setStartLine(j + 1)
+            .setMessage("Message of issue " + j)
+            .setCreationDate(now));
+        }
+      }
+      long writeMs = System.currentTimeMillis() - start;
+
+      start = System.currentTimeMillis();
+      int measures = 0;
+      int issues = 0;
+      for (int i = 0; i < files; i++) {
+        String componentKey = "project:src/main/java/File" + i + ".java";
+        measures += Iterables.size(measureCache.byComponentKey(componentKey));
+        issues += Iterables.size(issueCache.byComponent(componentKey));
+      }
+      long readByComponentMs = System.currentTimeMillis() - start;
+
+      start = System.currentTimeMillis();
+      int allMeasures = Iterables.size(measureCache.all());
+      int allIssues = Iterables.size(issueCache.all());
+      long scanMs = System.currentTimeMillis() - start;
+
+      assertThat(measures).isEqualTo(allMeasures).isEqualTo(files * METRICS.size());
+      assertThat(issues).isEqualTo(allIssues).isEqualTo(files * ISSUES_PER_FILE);
+
+      long totalMs = startupMs + writeMs + readByComponentMs + scanMs;
+      LOGGER.info(String.format("%s storage, %d files: startup in %d ms, write in %d ms, read by component in %d ms, full scan in %d ms, total %d ms",
+        storage, files, startupMs, writeMs, readByComponentMs, scanMs, totalMs));
+      return totalMs;
+    } finally {
+      caches.stop();
+      cachesManager.stop();
+    }
+  }
+
+  private static class CoreMetricFinder implements MetricFinder {
+    @Override
+    public Metric findByKey(String key) {
+      return CoreMetrics.getMetric(key);
+    }
+
+    @Override
+    public Collection<Metric> findAll(List<String> metricKeys) {
+      List<Metric> metrics = new ArrayList<>();
+      for (String metricKey : metricKeys) {
+        metrics.add(findByKey(metricKey));
+      }
+      return metrics;
+    }
+
+    @Override
+    public Collection<Metric> findAll() {
+      return new ArrayList<Metric>(CoreMetrics.getMetrics());
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import com.google.common.base.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.System2;
+import org.sonar.core.util.UuidFactoryImpl;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeActivityDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
+import org.sonar.server.computation.monitoring.CEQueueStatus;
+import org.sonar.server.computation.monitoring.CEQueueStatusImpl;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeQueueImpl;
+import org.sonar.server.computation.queue.CeQueueListener;
+import org.sonar.server.computation.queue.CeQueueSubmitNotifier;
+import org.sonar.server.computation.queue.CeTask;
+import org.sonar.server.computation.queue.CeTaskSubmit;
+import org.sonar.server.computation.taskprocessor.CeProcessingSchedulerExecutorServiceImpl;
+import org.sonar.server.computation.taskprocessor.CeProcessingSchedulerImpl;
+import org.sonar.server.computation.taskprocessor.CeWorkerCallable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the latency between the submission of a task and the start of its processing by a worker, and the number
+ * of peeks of the queue (each one being at least a SELECT and an UPDATE) required per processed task.
+ */
+public class CeQueueLatencyBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkCeQueue");
+
+  private static final int TASKS = 50;
+  private static final int WORKERS = 2;
+  // idle time between two submissions, so that workers go back to the delayed polling of the queue
+  private static final long DELAY_BETWEEN_SUBMITS_MS = 100L;
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+  @Rule
+  public CeConfigurationRule ceConfiguration = new CeConfigurationRule().setWorkerCount(WORKERS);
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    Result polling = run(false);
+    LOGGER.info(String.format("Polling only: average latency is %d ms, %.2f peeks per task", polling.averageLatencyMs(), polling.peeksPerTask()));
+
+    Result notified = run(true);
+    LOGGER.info(String.format("Polling and notification: average latency is %d ms, %.2f peeks per task", notified.averageLatencyMs(), notified.peeksPerTask()));
+
+    benchmark.expectBetween("Average latency between submit and execution", notified.averageLatencyMs(), -1L, 50L);
+  }
+
+  private Result run(boolean notifyWorkers) throws Exception {
+    dbTester.truncateTables();
+    CeQueueSubmitNotifier queueNotifier = new CeQueueSubmitNotifier();
+    // workers are not woken up when they listen to another notifier than the queue
+    CeQueueSubmitNotifier workersNotifier = notifyWorkers ? queueNotifier : new CeQueueSubmitNotifier();
+    CEQueueStatus queueStatus = new CEQueueStatusImpl();
+    queueStatus.initPendingCount(0);
+    CeQueue queue = new CeQueueImpl(System2.INSTANCE, dbTester.getDbClient(), UuidFactoryImpl.INSTANCE, queueStatus,
+      new CeQueueListener[0], queueNotifier, ceConfiguration);
+    Result result = new Result();
+    LatencyRecordingWorker worker = new LatencyRecordingWorker(queue, result);
+
+    CeProcessingSchedulerExecutorServiceImpl executorService = new CeProcessingSchedulerExecutorServiceImpl(ceConfiguration);
+    CeProcessingSchedulerImpl scheduler = new CeProcessingSchedulerImpl(ceConfiguration, executorService, worker, workersNotifier);
+    try {
+      scheduler.startScheduling();
+      for (int i = 0; i < TASKS; i++) {
+        Thread.sleep(DELAY_BETWEEN_SUBMITS_MS);
+        CeTaskSubmit submit = queue.prepareSubmit().setType(CeTaskTypes.REPORT).setComponentUuid("PROJECT_" + i).build();
+        result.submittedAt.put(submit.getUuid(), System.currentTimeMillis());
+        queue.submit(submit);
+      }
+      assertThat(result.processed.await(1, TimeUnit.MINUTES)).isTrue();
+    } finally {
+      scheduler.stop();
+      executorService.stop();
+    }
+    return result;
+  }
+
+  private static class Result {
+    private final Map<String, Long> submittedAt = new ConcurrentHashMap<>();
+    private final CountDownLatch processed = new CountDownLatch(TASKS);
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong peeks = new AtomicLong();
+
+    long averageLatencyMs() {
+      return totalLatency.get() / TASKS;
+    }
+
+    double peeksPerTask() {
+      return (double) peeks.get() / TASKS;
+    }
+  }
+
+  private static class LatencyRecordingWorker implements CeWorkerCallable {
+    private final CeQueue queue;
+    private final Result result;
+
+    private LatencyRecordingWorker(CeQueue queue, Result result) {
+      this.queue = queue;
+      this.result = result;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+      result.peeks.incrementAndGet();
+      Optional<CeTask> task = queue.peek();
+      if (!task.isPresent()) {
+        return false;
+      }
+      Long submittedAt = result.submittedAt.get(task.get().getUuid());
+      if (submittedAt != null) {
+        result.totalLatency.addAndGet(System.currentTimeMillis() - submittedAt);
+      }
+      queue.remove(task.get(), CeActivityDto.Status.SUCCESS, null);
+      result.processed.countDown();
+      return true;
+    }
+  }
+}
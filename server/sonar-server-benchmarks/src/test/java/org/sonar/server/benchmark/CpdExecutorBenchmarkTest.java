@@ -0,0 +1,129 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.cpd.CpdExecutor;
+import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
+import org.sonar.batch.index.BatchComponent;
+import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.protocol.output.BatchReport.Duplication;
+import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
+import org.sonar.batch.report.ReportPublisher;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Detection of duplications by {@link CpdExecutor} on a project of 5'000 files, on a single thread then on
+ * several threads. Each group of {@link #COPIES} files share the same blocks.
+ */
+public class CpdExecutorBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkCpd");
+
+  private static final int FILES = 5_000;
+  private static final int BLOCKS_PER_FILE = 200;
+  private static final int COPIES = 5;
+  private static final int THREADS = 4;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    // warm-up
+    run(1, FILES / 10);
+
+    long singleThreadMs = run(1, FILES);
+    long multiThreadsMs = run(THREADS, FILES);
+
+    benchmark.expectBetween("Duration of detection on " + THREADS + " threads (ms)", multiThreadsMs, 0L, singleThreadMs);
+  }
+
+  private long run(int threads, int files) throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(CpdExecutor.THREADS_PROPERTY, threads);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    ReportPublisher publisher = mock(ReportPublisher.class);
+    when(publisher.getWriter()).thenReturn(new BatchReportWriter(container));
+    BatchComponentCache componentCache = new BatchComponentCache();
+    componentCache.add(new Project("foo"), null).setInputComponent(new DefaultInputModule("foo"));
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex(publisher, componentCache, settings);
+
+    List<BatchComponent> components = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      String path = "src/File" + i + ".xoo";
+      BatchComponent component = componentCache.add(File.create(path).setEffectiveKey("foo:" + path), null)
+        .setInputComponent(new DefaultInputFile("foo", path).setLanguage("java").setLines(BLOCKS_PER_FILE * 10));
+      components.add(component);
+      index.insert((InputFile) component.inputComponent(), newBlocks(component.key(), i / COPIES));
+    }
+
+    long start = System.currentTimeMillis();
+    new CpdExecutor(settings, index, publisher, componentCache).execute();
+    long duration = System.currentTimeMillis() - start;
+    LOGGER.info("Duplications of {} files detected on {} thread(s) in {} ms", files, threads, duration);
+
+    // each file is duplicated in the other files of its group, whatever the number of threads
+    BatchReportReader reader = new BatchReportReader(container);
+    for (BatchComponent component : components) {
+      try (CloseableIterator<Duplication> duplications = reader.readComponentDuplications(component.batchId())) {
+        assertThat(duplications.next().getDuplicateCount()).isEqualTo(COPIES - 1);
+        assertThat(duplications.hasNext()).isFalse();
+      }
+    }
+    return duration;
+  }
+
+  private static List<Block> newBlocks(String resourceId, int group) {
+    List<Block> blocks = new ArrayList<>(BLOCKS_PER_FILE);
+    for (int i = 0; i < BLOCKS_PER_FILE; i++) {
+      blocks.add(Block.builder()
+        .setResourceId(resourceId)
+        .setBlockHash(new ByteArray((long) group * BLOCKS_PER_FILE + i))
+        .setIndexInFile(i)
+        .setLines(i * 10 + 1, i * 10 + 10)
+        .setUnit(i * 50, i * 50 + 100)
+        .build());
+    }
+    return blocks;
+  }
+}
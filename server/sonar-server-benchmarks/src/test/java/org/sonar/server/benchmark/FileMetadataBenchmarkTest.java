@@ -0,0 +1,306 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+
+/**
+ * Compares {@link FileMetadata}, which decodes files in bulk and computes metadata in a single pass, with the
+ * former implementation reading files char by char and dispatching each char to a chain of
+ * {@link FileMetadata.CharHandler}s.
+ */
+public class FileMetadataBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkFileMetadata");
+
+  private static final int FILES = 2_000;
+  private static final int LINES_PER_FILE = 500;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    List<DefaultInputFile> files = generateFiles();
+    long bytes = 0L;
+    for (DefaultInputFile file : files) {
+      bytes += file.file().length();
+    }
+    LOGGER.info(String.format("%d files of %d lines, %d MB", FILES, LINES_PER_FILE, bytes / 1024 / 1024));
+
+    // warm-up
+    readWithCharHandlers(files);
+    readWithFileMetadata(files);
+
+    long start = System.currentTimeMillis();
+    readWithCharHandlers(files);
+    long charHandlersMs = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("Char handlers: metadata and line hashes in %d ms", charHandlersMs));
+
+    start = System.currentTimeMillis();
+    readWithFileMetadata(files);
+    long fileMetadataMs = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("FileMetadata: metadata and line hashes in %d ms", fileMetadataMs));
+
+    benchmark.expectBetween("Duration of FileMetadata (ms)", fileMetadataMs, 0L, charHandlersMs);
+  }
+
+  private List<DefaultInputFile> generateFiles() throws IOException {
+    File baseDir = temp.newFolder();
+    Random random = new Random(42);
+    List<DefaultInputFile> files = new ArrayList<>();
+    for (int i = 0; i < FILES; i++) {
+      StringBuilder content = new StringBuilder();
+      for (int line = 0; line < LINES_PER_FILE; line++) {
+        int indent = random.nextInt(4);
+        for (int j = 0; j < indent; j++) {
+          content.append("  ");
+        }
+        if (random.nextInt(10) > 0) {
+          content.append("String value").append(line).append(" = compute(\"\u00e9l\u00e8ve\", ").append(random.nextInt()).append(");");
+        }
+        content.append(line % 2 == 0 ? "\n" : "\r\n");
+      }
+      File file = new File(baseDir, "File" + i + ".java");
+      FileUtils.write(file, content, StandardCharsets.UTF_8);
+      files.add(new DefaultInputFile("foo", file.getName()).setModuleBaseDir(baseDir.toPath()).setCharset(StandardCharsets.UTF_8));
+    }
+    return files;
+  }
+
+  private static void readWithFileMetadata(List<DefaultInputFile> files) {
+    FileMetadata fileMetadata = new FileMetadata();
+    LineHashCounter lineHashCounter = new LineHashCounter();
+    for (DefaultInputFile file : files) {
+      fileMetadata.readMetadata(file.file(), file.charset());
+      FileMetadata.computeLineHashesForIssueTracking(file, lineHashCounter);
+    }
+  }
+
+  private static void readWithCharHandlers(List<DefaultInputFile> files) throws IOException {
+    LineHashCounter lineHashCounter = new LineHashCounter();
+    for (DefaultInputFile file : files) {
+      read(file.file(), new LineCounter(), new HashComputer(false), new LineOffsetCounter());
+      read(file.file(), new HashComputer(true));
+    }
+  }
+
+  private static class LineHashCounter implements FileMetadata.LineHashConsumer {
+    private int hashes = 0;
+
+    @Override
+    public void consume(int lineIdx, byte[] hash) {
+      hashes++;
+    }
+  }
+
+  /**
+   * Same as {@link FileMetadata.CharHandler}, which methods are not accessible from this package
+   */
+  private abstract static class CharHandler {
+    void handleAll(char c) {
+    }
+
+    void handleIgnoreEoL(char c) {
+    }
+
+    void newLine() {
+    }
+
+    void eof() {
+    }
+  }
+
+  /**
+   * The former implementation of {@link FileMetadata#readFile(File, java.nio.charset.Charset, FileMetadata.CharHandler...)}
+   */
+  private static void read(File file, CharHandler... handlers) throws IOException {
+    try (BOMInputStream bomIn = new BOMInputStream(new FileInputStream(file),
+      ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
+      Reader reader = new BufferedReader(new InputStreamReader(bomIn, StandardCharsets.UTF_8))) {
+      int i = reader.read();
+      boolean afterCR = false;
+      while (i != -1) {
+        char c = (char) i;
+        if (afterCR) {
+          for (CharHandler handler : handlers) {
+            if (c == '\r') {
+              handler.newLine();
+              handler.handleAll(c);
+            } else if (c == '\n') {
+              handler.handleAll(c);
+              handler.newLine();
+            } else {
+              handler.newLine();
+              handler.handleIgnoreEoL(c);
+              handler.handleAll(c);
+            }
+          }
+          afterCR = c == '\r';
+        } else if (c == '\n') {
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+            handler.newLine();
+          }
+        } else if (c == '\r') {
+          afterCR = true;
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+          }
+        } else {
+          for (CharHandler handler : handlers) {
+            handler.handleIgnoreEoL(c);
+            handler.handleAll(c);
+          }
+        }
+        i = reader.read();
+      }
+      for (CharHandler handler : handlers) {
+        if (afterCR) {
+          handler.newLine();
+        }
+        handler.eof();
+      }
+    }
+  }
+
+  private static class LineCounter extends CharHandler {
+    private int lines = 1;
+    private int nonBlankLines = 0;
+    private boolean blankLine = true;
+
+    @Override
+    void handleAll(char c) {
+      if (c == '\ufffd') {
+        blankLine = false;
+      }
+    }
+
+    @Override
+    void handleIgnoreEoL(char c) {
+      if (!Character.isWhitespace(c)) {
+        blankLine = false;
+      }
+    }
+
+    @Override
+    void newLine() {
+      lines++;
+      if (!blankLine) {
+        nonBlankLines++;
+      }
+      blankLine = true;
+    }
+  }
+
+  private static class LineOffsetCounter extends CharHandler {
+    private int offset = 0;
+    private final List<Integer> offsets = new ArrayList<>();
+
+    @Override
+    void handleAll(char c) {
+      offset++;
+    }
+
+    @Override
+    void newLine() {
+      offsets.add(offset);
+    }
+  }
+
+  /**
+   * Hash of file, or hashes of lines without whitespaces. Each line is encoded in UTF-8.
+   */
+  private static class HashComputer extends CharHandler {
+    private final MessageDigest md5 = DigestUtils.getMd5Digest();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder sb = new StringBuilder();
+    private final boolean byLine;
+
+    HashComputer(boolean byLine) {
+      this.byLine = byLine;
+    }
+
+    @Override
+    void handleIgnoreEoL(char c) {
+      if (!byLine || !Character.isWhitespace(c)) {
+        sb.append(c);
+      }
+    }
+
+    @Override
+    void newLine() {
+      if (!byLine) {
+        sb.append('\n');
+      }
+      processBuffer();
+    }
+
+    @Override
+    void eof() {
+      processBuffer();
+      md5.digest();
+    }
+
+    private void processBuffer() {
+      try {
+        if (sb.length() > 0) {
+          ByteBuffer encoded = encoder.encode(CharBuffer.wrap(sb));
+          md5.update(encoded.array(), 0, encoded.limit());
+          if (byLine) {
+            md5.digest();
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      sb.setLength(0);
+    }
+  }
+}
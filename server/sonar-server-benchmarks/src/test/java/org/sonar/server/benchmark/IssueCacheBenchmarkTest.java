@@ -0,0 +1,149 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.io.File;
+import java.util.Date;
+import org.apache.commons.lang.RandomStringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.protobuf.DbCommons;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.util.cache.DiskCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the throughput and the disk usage of the cache of issues of Compute Engine when issues are
+ * encoded with Java serialization, with {@link org.sonar.server.computation.issue.DefaultIssueCodec}, and with
+ * the codec and LZ4 compression.
+ */
+public class IssueCacheBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkIssueCache");
+
+  private static final int ISSUES = 200_000;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    File serializedFile = temp.newFile();
+    Result serialized = run("Java serialization", new DiskCache<DefaultIssue>(serializedFile, System2.INSTANCE), serializedFile);
+
+    File encodedFile = temp.newFile();
+    Result encoded = run("Codec", new IssueCache(encodedFile, System2.INSTANCE, false), encodedFile);
+
+    File compressedFile = temp.newFile();
+    Result compressed = run("Codec and LZ4", new IssueCache(compressedFile, System2.INSTANCE, true), compressedFile);
+
+    benchmark.expectBetween("Codec write throughput (issues/second)", encoded.writeThroughput(), serialized.writeThroughput(), Long.MAX_VALUE);
+    benchmark.expectBetween("Codec read throughput (issues/second)", encoded.readThroughput(), serialized.readThroughput(), Long.MAX_VALUE);
+    benchmark.expectBetween("Size of compressed file (bytes)", compressed.fileSize, 0L, encoded.fileSize);
+  }
+
+  private Result run(String label, DiskCache<DefaultIssue> cache, File file) {
+    Result result = new Result();
+    long start = System.currentTimeMillis();
+    try (DiskCache<DefaultIssue>.DiskAppender appender = cache.newAppender()) {
+      for (int i = 0; i < ISSUES; i++) {
+        appender.append(newIssue(i));
+      }
+    }
+    result.writeMs = Math.max(1L, System.currentTimeMillis() - start);
+    result.fileSize = file.length();
+
+    start = System.currentTimeMillis();
+    int count = 0;
+    try (CloseableIterator<DefaultIssue> issues = cache.traverse()) {
+      while (issues.hasNext()) {
+        issues.next();
+        count++;
+      }
+    }
+    result.readMs = Math.max(1L, System.currentTimeMillis() - start);
+    assertThat(count).isEqualTo(ISSUES);
+
+    LOGGER.info(String.format("%s: %d issues written in %d ms (%d issues/second), read in %d ms (%d issues/second), file size is %d bytes",
+      label, ISSUES, result.writeMs, result.writeThroughput(), result.readMs, result.readThroughput(), result.fileSize));
+    return result;
+  }
+
+  private static DefaultIssue newIssue(int index) {
+    Date now = new Date();
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ISSUE_" + index)
+      .setType(RuleType.CODE_SMELL)
+      .setComponentUuid("FILE_UUID_" + (index / 100))
+      .setComponentKey("PROJECT_KEY:src/main/java/org/sonar/File" + (index / 100) + ".java")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT_KEY")
+      .setRuleKey(RuleKey.of("squid", "S" + (index % 500)))
+      .setLanguage("java")
+      .setSeverity(Severity.MAJOR)
+      .setMessage("Remove this unused private field " + RandomStringUtils.randomAlphanumeric(10))
+      .setLine(1 + index % 1_000)
+      .setDebt(Duration.create(10L))
+      .setStatus(Issue.STATUS_OPEN)
+      .setChecksum(RandomStringUtils.randomAlphanumeric(32))
+      .setAuthorLogin("author")
+      .setCreationDate(now)
+      .setUpdateDate(now)
+      .setLocations(DbIssues.Locations.newBuilder()
+        .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(1 + index % 1_000).setEndLine(1 + index % 1_000).setStartOffset(2).setEndOffset(20))
+        .build());
+    if (index % 10 == 0) {
+      issue.setCurrentChange(new FieldDiffs().setCreationDate(now).setDiff("severity", Severity.MINOR, Severity.MAJOR));
+    }
+    return issue;
+  }
+
+  private static class Result {
+    private long writeMs;
+    private long readMs;
+    private long fileSize;
+
+    private long writeThroughput() {
+      return ISSUES * 1000L / writeMs;
+    }
+
+    private long readThroughput() {
+      return ISSUES * 1000L / readMs;
+    }
+  }
+}
@@ -21,10 +21,12 @@ package org.sonar.server.benchmark;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -34,11 +36,12 @@ import org.sonar.api.utils.System2;
 import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.core.util.Uuids;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
 import org.sonar.server.computation.analysis.AnalysisMetadataHolderRule;
-import org.sonar.server.computation.batch.BatchReportDirectoryHolderImpl;
+import org.sonar.server.computation.batch.BatchReportFileHolderImpl;
 import org.sonar.server.computation.batch.BatchReportReaderImpl;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
@@ -78,19 +81,19 @@ public class PersistFileSourcesStepTest {
 
   @Test
   public void benchmark() throws Exception {
-    File reportDir = prepareReport();
-    persistFileSources(reportDir);
+    File report = prepareReport();
+    persistFileSources(report);
   }
 
-  private void persistFileSources(File reportDir) {
+  private void persistFileSources(File report) {
     LOGGER.info("Persist file sources");
     DbClient dbClient = dbTester.getDbClient();
 
     long start = System.currentTimeMillis();
 
-    BatchReportDirectoryHolderImpl batchReportDirectoryHolder = new BatchReportDirectoryHolderImpl();
-    batchReportDirectoryHolder.setDirectory(reportDir);
-    org.sonar.server.computation.batch.BatchReportReader batchReportReader = new BatchReportReaderImpl(batchReportDirectoryHolder);
+    BatchReportFileHolderImpl batchReportFileHolder = new BatchReportFileHolderImpl();
+    batchReportFileHolder.setFile(report);
+    BatchReportReaderImpl batchReportReader = new BatchReportReaderImpl(batchReportFileHolder);
     analysisMetadataHolder.setBaseProjectSnapshot(null);
     SourceLinesRepositoryImpl sourceLinesRepository = new SourceLinesRepositoryImpl(batchReportReader);
     SourceHashRepositoryImpl sourceHashRepository = new SourceHashRepositoryImpl(sourceLinesRepository);
@@ -98,6 +101,7 @@ public class PersistFileSourcesStepTest {
     PersistFileSourcesStep step = new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, batchReportReader, sourceLinesRepository, scmInfoRepository,
       duplicationRepository);
     step.execute();
+    batchReportReader.close();
 
     long end = System.currentTimeMillis();
     long duration = end - start;
@@ -110,9 +114,10 @@ public class PersistFileSourcesStepTest {
 
   private File prepareReport() throws IOException {
     LOGGER.info("Create report");
-    File reportDir = temp.newFolder();
+    File report = temp.newFile();
 
-    BatchReportWriter writer = new BatchReportWriter(reportDir);
+    ReportContainer container = ReportContainer.create(report);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1)
       .build());
@@ -136,8 +141,10 @@ public class PersistFileSourcesStepTest {
     }
 
     writer.writeComponent(project.build());
+    container.finish();
+    container.close();
 
-    return reportDir;
+    return report;
   }
 
   private Component generateFileReport(BatchReportWriter writer, int fileRef) throws IOException {
@@ -158,7 +165,9 @@ public class PersistFileSourcesStepTest {
       .setLines(NUMBER_OF_LINES)
       .build());
 
-    FileUtils.writeLines(writer.getSourceFile(fileRef), lineData.lines);
+    try (OutputStream output = writer.writeSource(fileRef)) {
+      IOUtils.writeLines(lineData.lines, "\n", output, StandardCharsets.UTF_8);
+    }
     writer.writeComponentCoverage(fileRef, lineData.coverages);
     writer.writeComponentChangesets(lineData.changesetsBuilder.setComponentRef(fileRef).build());
     writer.writeComponentSyntaxHighlighting(fileRef, lineData.highlightings);
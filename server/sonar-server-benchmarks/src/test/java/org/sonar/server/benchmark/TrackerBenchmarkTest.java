@@ -0,0 +1,162 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.core.issue.tracking.BlockHashSequence;
+import org.sonar.core.issue.tracking.Input;
+import org.sonar.core.issue.tracking.LineHashSequence;
+import org.sonar.core.issue.tracking.Trackable;
+import org.sonar.core.issue.tracking.Tracker;
+import org.sonar.core.issue.tracking.Tracking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tracks the issues of large generated files, in which many lines have the same hash, when some lines
+ * are inserted at the beginning of the file and when some messages change.
+ */
+public class TrackerBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkTracker");
+
+  private static final int DISTINCT_LINE_HASHES = 50;
+  private static final int RULES = 10;
+  private static final int INSERTED_LINES = 7;
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  Tracker<FakeIssue, FakeIssue> tracker = new Tracker<>();
+
+  @Test
+  public void benchmark() {
+    // warm-up
+    track(10_000);
+
+    track(10_000);
+    track(50_000);
+    long durationMs = track(100_000);
+
+    benchmark.expectBetween("Time to track 100k issues (ms)", durationMs, 0L, 5_000L);
+  }
+
+  private long track(int issues) {
+    FakeInput baseInput = new FakeInput(issues, 0);
+    FakeInput rawInput = new FakeInput(issues, INSERTED_LINES);
+
+    long start = System.currentTimeMillis();
+    Tracking<FakeIssue, FakeIssue> tracking = tracker.track(rawInput, baseInput);
+    long durationMs = System.currentTimeMillis() - start;
+
+    int unmatched = 0;
+    for (FakeIssue ignored : tracking.getUnmatchedBases()) {
+      unmatched++;
+    }
+    assertThat(tracking.getMatchedRaws()).hasSize(issues);
+    LOGGER.info(String.format("%d issues tracked in %d ms, %d unmatched base issues", issues, durationMs, unmatched));
+    return durationMs;
+  }
+
+  private static class FakeIssue implements Trackable {
+    private final Integer line;
+    private final String lineHash;
+    private final RuleKey ruleKey;
+    private final String message;
+
+    FakeIssue(Integer line, String lineHash, RuleKey ruleKey, String message) {
+      this.line = line;
+      this.lineHash = lineHash;
+      this.ruleKey = ruleKey;
+      this.message = message;
+    }
+
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+  }
+
+  /**
+   * One issue per line. Lines are shifted by {@code insertedLines}, and the messages of one issue out of ten
+   * change when lines are inserted.
+   */
+  private static class FakeInput implements Input<FakeIssue> {
+    private final List<String> lineHashes = new ArrayList<>();
+    private final List<FakeIssue> issues = new ArrayList<>();
+    private LineHashSequence lineHashSequence;
+    private BlockHashSequence blockHashSequence;
+
+    FakeInput(int issueCount, int insertedLines) {
+      for (int i = 0; i < insertedLines; i++) {
+        lineHashes.add("inserted" + i);
+      }
+      for (int i = 0; i < issueCount; i++) {
+        String hash = "hash" + (i % DISTINCT_LINE_HASHES);
+        lineHashes.add(hash);
+        String message = (insertedLines > 0 && i % 10 == 0) ? ("changed message " + i) : ("message " + i);
+        issues.add(new FakeIssue(insertedLines + i + 1, hash, RuleKey.of("java", "S" + (i % RULES)), message));
+      }
+    }
+
+    @Override
+    public LineHashSequence getLineHashSequence() {
+      if (lineHashSequence == null) {
+        lineHashSequence = new LineHashSequence(lineHashes);
+      }
+      return lineHashSequence;
+    }
+
+    @Override
+    public BlockHashSequence getBlockHashSequence() {
+      if (blockHashSequence == null) {
+        blockHashSequence = BlockHashSequence.create(getLineHashSequence());
+      }
+      return blockHashSequence;
+    }
+
+    @Override
+    public Collection<FakeIssue> getIssues() {
+      return issues;
+    }
+  }
+}
@@ -25,6 +25,7 @@ import org.sonar.server.computation.configuration.CeConfigurationImpl;
 import org.sonar.server.computation.dbcleaner.IndexPurgeListener;
 import org.sonar.server.computation.dbcleaner.ProjectCleaner;
 import org.sonar.server.computation.log.CeLogging;
+import org.sonar.server.computation.taskprocessor.purge.PurgeTaskProcessor;
 import org.sonar.server.properties.ProjectSettingsFactory;
 
 /**
@@ -39,6 +40,7 @@ public class CeModule extends Module {
 
       DefaultPeriodCleaner.class,
       ProjectCleaner.class,
+      PurgeTaskProcessor.class,
       ProjectSettingsFactory.class,
       IndexPurgeListener.class);
   }
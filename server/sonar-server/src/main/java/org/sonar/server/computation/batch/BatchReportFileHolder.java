@@ -22,12 +22,12 @@ package org.sonar.server.computation.batch;
 import java.io.File;
 import org.sonar.server.computation.queue.CeTask;
 
-public interface BatchReportDirectoryHolder {
+public interface BatchReportFileHolder {
   /**
-   * The File of the directory where the Batch report files for the current {@link CeTask} are stored.
+   * The File of the Batch report container of the current {@link CeTask}.
    *
-   * @throws IllegalStateException if the holder is empty (ie. there is no directory yet)
+   * @throws IllegalStateException if the holder is empty (ie. there is no file yet)
    */
-  File getDirectory();
+  File getFile();
 
 }
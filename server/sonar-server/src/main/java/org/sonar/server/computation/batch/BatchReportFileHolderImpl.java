@@ -22,20 +22,20 @@ package org.sonar.server.computation.batch;
 import java.io.File;
 import java.util.Objects;
 
-public class BatchReportDirectoryHolderImpl implements MutableBatchReportDirectoryHolder {
+public class BatchReportFileHolderImpl implements MutableBatchReportFileHolder {
 
-  private File directory;
+  private File file;
 
   @Override
-  public void setDirectory(File newDirectory) {
-    this.directory = Objects.requireNonNull(newDirectory);
+  public void setFile(File newFile) {
+    this.file = Objects.requireNonNull(newFile);
   }
 
   @Override
-  public File getDirectory() {
-    if (this.directory == null) {
-      throw new IllegalStateException("Directory has not been set yet");
+  public File getFile() {
+    if (this.file == null) {
+      throw new IllegalStateException("File has not been set yet");
     }
-    return this.directory;
+    return this.file;
   }
 }
@@ -21,14 +21,14 @@ package org.sonar.server.computation.batch;
 
 import java.io.File;
 
-public interface MutableBatchReportDirectoryHolder extends BatchReportDirectoryHolder {
+public interface MutableBatchReportFileHolder extends BatchReportFileHolder {
   /**
-   * Sets the File of the directory in the BatchReportDirectoryHolder. Settings a File more than once is allowed but it
+   * Sets the File of the report in the BatchReportFileHolder. Settings a File more than once is allowed but it
    * can never be set to {@code null}.
    *
-   * @param newDirectory a {@link File}, can not be {@code null}
+   * @param newFile a {@link File}, can not be {@code null}
    *
-   * @throws NullPointerException if {@code newDirectory} is {@code null}
+   * @throws NullPointerException if {@code newFile} is {@code null}
    */
-  void setDirectory(File newDirectory);
+  void setFile(File newFile);
 }
@@ -31,4 +31,16 @@ public interface CeConfiguration {
    * when previous one had nothing to do.
    */
   long getQueuePollingDelay();
+
+  /**
+   * The number of threads used to execute the {@link org.sonar.server.computation.step.ComputationStep} of a single
+   * task. Steps are executed sequentially when {@code 1}.
+   */
+  int getStepsThreadCount();
+
+  /**
+   * Whether the measure computing steps implementing {@link org.sonar.server.computation.step.MeasureVisitorsStep}
+   * are executed by a single crawl of the component tree rather than by one crawl each.
+   */
+  boolean isMeasureStepsFused();
 }
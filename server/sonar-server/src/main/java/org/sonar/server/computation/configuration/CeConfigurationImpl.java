@@ -30,48 +30,67 @@ import static java.lang.String.format;
 
 /**
  * Immutable implementation of {@link CeConfiguration} which takes value returned by
- * {@link CeConfiguration#getWorkerCount()} from property {@link CeConfigurationImpl#CE_WORKERS_COUNT_PROPERTY} and
+ * {@link CeConfiguration#getWorkerCount()} from property {@link CeConfigurationImpl#CE_WORKERS_COUNT_PROPERTY},
+ * {@link CeConfiguration#getStepsThreadCount()} from property {@link CeConfigurationImpl#CE_STEPS_THREAD_COUNT_PROPERTY},
+ * {@link CeConfiguration#isMeasureStepsFused()} from property {@link CeConfigurationImpl#CE_FUSED_MEASURE_STEPS_PROPERTY} and
  * always returns {@link #DEFAULT_QUEUE_POLLING_DELAY} when {@link CeConfiguration#getQueuePollingDelay()} is called.
  */
 public class CeConfigurationImpl implements CeConfiguration, Startable {
   public static final String CE_WORKERS_COUNT_PROPERTY = "sonar.ce.workerCount";
+  public static final String CE_STEPS_THREAD_COUNT_PROPERTY = "sonar.ce.stepsThreadCount";
+  public static final String CE_FUSED_MEASURE_STEPS_PROPERTY = "sonar.ce.fusedMeasureSteps";
 
   private static final Logger LOG = Loggers.get(CeConfigurationImpl.class);
 
   @VisibleForTesting
   protected static final int DEFAULT_WORKER_COUNT = 1;
+  @VisibleForTesting
+  protected static final int DEFAULT_STEPS_THREAD_COUNT = 1;
+  @VisibleForTesting
+  protected static final boolean DEFAULT_FUSED_MEASURE_STEPS = true;
   // 2 seconds
   @VisibleForTesting
   protected static final long DEFAULT_QUEUE_POLLING_DELAY = 2 * 1000L;
 
   private final int workerCount;
+  private final int stepsThreadCount;
+  private final boolean measureStepsFused;
 
   public CeConfigurationImpl(Settings settings) {
-    String workerCountAsStr = settings.getString(CE_WORKERS_COUNT_PROPERTY);
-    if (workerCountAsStr == null || workerCountAsStr.isEmpty()) {
-      this.workerCount = DEFAULT_WORKER_COUNT;
-    } else {
-      this.workerCount = parseStringValue(workerCountAsStr);
+    this.workerCount = parseStrictlyPositiveInt(settings, CE_WORKERS_COUNT_PROPERTY, DEFAULT_WORKER_COUNT);
+    this.stepsThreadCount = parseStrictlyPositiveInt(settings, CE_STEPS_THREAD_COUNT_PROPERTY, DEFAULT_STEPS_THREAD_COUNT);
+    this.measureStepsFused = parseBoolean(settings, CE_FUSED_MEASURE_STEPS_PROPERTY, DEFAULT_FUSED_MEASURE_STEPS);
+  }
+
+  private static boolean parseBoolean(Settings settings, String propertyKey, boolean defaultValue) {
+    String valueAsStr = settings.getString(propertyKey);
+    if (valueAsStr == null || valueAsStr.trim().isEmpty()) {
+      return defaultValue;
     }
+    return Boolean.parseBoolean(valueAsStr.trim());
   }
 
-  private static int parseStringValue(String workerCountAsStr) {
+  private static int parseStrictlyPositiveInt(Settings settings, String propertyKey, int defaultValue) {
+    String valueAsStr = settings.getString(propertyKey);
+    if (valueAsStr == null || valueAsStr.isEmpty()) {
+      return defaultValue;
+    }
     try {
-      int value = Integer.parseInt(workerCountAsStr);
+      int value = Integer.parseInt(valueAsStr);
       if (value < 1) {
-        throw parsingError(workerCountAsStr);
+        throw parsingError(valueAsStr, propertyKey);
       }
       return value;
     } catch (NumberFormatException e) {
-      throw parsingError(workerCountAsStr);
+      throw parsingError(valueAsStr, propertyKey);
     }
   }
 
-  private static MessageException parsingError(String workerCountAsStr) {
+  private static MessageException parsingError(String valueAsStr, String propertyKey) {
     return MessageException.of(format(
       "value '%s' of property %s is invalid. It must an integer strictly greater than 0",
-      workerCountAsStr,
-      CE_WORKERS_COUNT_PROPERTY)
+      valueAsStr,
+      propertyKey)
       );
   }
 
@@ -80,6 +99,12 @@ public class CeConfigurationImpl implements CeConfiguration, Startable {
     if (this.workerCount > 1) {
       LOG.info("Compute Engine will use {} concurrent workers to process tasks", this.workerCount);
     }
+    if (this.stepsThreadCount > 1) {
+      LOG.info("Compute Engine will use {} threads to execute the steps of a task", this.stepsThreadCount);
+    }
+    if (!this.measureStepsFused) {
+      LOG.info("Compute Engine will crawl the component tree once per measure computing step");
+    }
   }
 
   @Override
@@ -96,4 +121,14 @@ public class CeConfigurationImpl implements CeConfiguration, Startable {
   public long getQueuePollingDelay() {
     return DEFAULT_QUEUE_POLLING_DELAY;
   }
+
+  @Override
+  public int getStepsThreadCount() {
+    return stepsThreadCount;
+  }
+
+  @Override
+  public boolean isMeasureStepsFused() {
+    return measureStepsFused;
+  }
 }
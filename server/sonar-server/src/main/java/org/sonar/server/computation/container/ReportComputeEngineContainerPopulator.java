@@ -25,7 +25,7 @@ import javax.annotation.Nullable;
 import org.sonar.core.issue.tracking.Tracker;
 import org.sonar.core.platform.ContainerPopulator;
 import org.sonar.server.computation.analysis.AnalysisMetadataHolderImpl;
-import org.sonar.server.computation.batch.BatchReportDirectoryHolderImpl;
+import org.sonar.server.computation.batch.BatchReportFileHolderImpl;
 import org.sonar.server.computation.batch.BatchReportReaderImpl;
 import org.sonar.server.computation.component.DbIdsRepositoryImpl;
 import org.sonar.server.computation.component.SettingsRepositoryImpl;
@@ -51,6 +51,7 @@ import org.sonar.server.computation.issue.IssueVisitors;
 import org.sonar.server.computation.issue.LoadComponentUuidsHavingOpenIssuesVisitor;
 import org.sonar.server.computation.issue.NewEffortAggregator;
 import org.sonar.server.computation.issue.NewEffortCalculator;
+import org.sonar.server.computation.issue.PersistedIssues;
 import org.sonar.server.computation.issue.RuleRepositoryImpl;
 import org.sonar.server.computation.issue.RuleTagsCopier;
 import org.sonar.server.computation.issue.RuleTypeCopier;
@@ -68,6 +69,7 @@ import org.sonar.server.computation.issue.commonrule.LineCoverageRule;
 import org.sonar.server.computation.issue.commonrule.SkippedTestRule;
 import org.sonar.server.computation.issue.commonrule.TestErrorRule;
 import org.sonar.server.computation.language.LanguageRepositoryImpl;
+import org.sonar.server.computation.measure.BaseMeasureCache;
 import org.sonar.server.computation.measure.MeasureComputersHolderImpl;
 import org.sonar.server.computation.measure.MeasureComputersVisitor;
 import org.sonar.server.computation.measure.MeasureRepositoryImpl;
@@ -128,7 +130,7 @@ public final class ReportComputeEngineContainerPopulator implements ContainerPop
       // holders
       AnalysisMetadataHolderImpl.class,
       CrossProjectDuplicationStatusHolderImpl.class,
-      BatchReportDirectoryHolderImpl.class,
+      BatchReportFileHolderImpl.class,
       TreeRootHolderImpl.class,
       PeriodsHolderImpl.class,
       QualityGateHolderImpl.class,
@@ -141,6 +143,7 @@ public final class ReportComputeEngineContainerPopulator implements ContainerPop
 
       // repositories
       LanguageRepositoryImpl.class,
+      BaseMeasureCache.class,
       MeasureRepositoryImpl.class,
       EventRepositoryImpl.class,
       SettingsRepositoryImpl.class,
@@ -157,6 +160,7 @@ public final class ReportComputeEngineContainerPopulator implements ContainerPop
       ScmAccountToUserLoader.class,
       ScmAccountToUser.class,
       IssueCache.class,
+      PersistedIssues.class,
       DefaultAssignee.class,
       IssueVisitors.class,
       IssueLifecycle.class,
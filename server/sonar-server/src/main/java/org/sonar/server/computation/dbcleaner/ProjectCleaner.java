@@ -33,6 +33,8 @@ import org.sonar.db.purge.PurgeConfiguration;
 import org.sonar.db.purge.PurgeDao;
 import org.sonar.db.purge.PurgeListener;
 import org.sonar.db.purge.PurgeProfiler;
+import org.sonar.db.purge.PurgeYieldCondition;
+import org.sonar.db.purge.PurgeYieldedException;
 import org.sonar.db.purge.period.DefaultPeriodCleaner;
 import org.sonar.server.issue.index.IssueIndex;
 
@@ -58,13 +60,21 @@ public class ProjectCleaner {
   }
 
   public ProjectCleaner purge(DbSession session, IdUuidPair idUuidPair, Settings projectSettings) {
+    return purge(session, idUuidPair, projectSettings, PurgeYieldCondition.NEVER);
+  }
+
+  /**
+   * @throws PurgeYieldedException if the throttled purge has been stopped by {@code yieldCondition}. Deletions
+   *         done so far are committed.
+   */
+  public ProjectCleaner purge(DbSession session, IdUuidPair idUuidPair, Settings projectSettings, PurgeYieldCondition yieldCondition) {
     long start = System.currentTimeMillis();
     profiler.reset();
 
     PurgeConfiguration configuration = newDefaultPurgeConfiguration(projectSettings, idUuidPair);
 
     cleanHistoricalData(session, configuration.rootProjectIdUuid().getId(), projectSettings);
-    doPurge(session, configuration);
+    doPurge(session, configuration, yieldCondition);
 
     deleteIndexedIssuesBefore(idUuidPair.getUuid(), configuration.maxLiveDateOfClosedIssues());
 
@@ -97,9 +107,11 @@ public class ProjectCleaner {
     }
   }
 
-  private void doPurge(DbSession session, PurgeConfiguration configuration) {
+  private void doPurge(DbSession session, PurgeConfiguration configuration, PurgeYieldCondition yieldCondition) {
     try {
-      purgeDao.purge(session, configuration, purgeListener, profiler);
+      purgeDao.purge(session, configuration, purgeListener, profiler, yieldCondition);
+    } catch (PurgeYieldedException e) {
+      throw e;
     } catch (Exception e) {
       // purge errors must no fail the report analysis
       LOG.error("Fail to purge data [id=" + configuration.rootProjectIdUuid().getId() + "]", e);
@@ -0,0 +1,468 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.util.cache.DiskCacheCodec;
+
+/**
+ * Hand-written binary encoding of {@link DefaultIssue}, much faster and more compact than Java serialization.
+ * <p>
+ * All the fields of {@link DefaultIssue} are encoded, including the ones which are available only during analysis.
+ * The {@link FieldDiffs} referenced several times by an issue (eg. the current change, which is also in the list
+ * of changes) are encoded once, so that these references are still shared once decoded.
+ * </p>
+ */
+public class DefaultIssueCodec implements DiskCacheCodec<DefaultIssue> {
+
+  private static final int NULL_LENGTH = -1;
+
+  // types of values of FieldDiffs.Diff and of DefaultIssue#getLocations()
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+  private static final byte INTEGER_VALUE = 3;
+  private static final byte DOUBLE_VALUE = 4;
+  private static final byte BOOLEAN_VALUE = 5;
+  private static final byte DATE_VALUE = 6;
+  private static final byte DB_LOCATIONS_VALUE = 7;
+  private static final byte SERIALIZED_VALUE = 8;
+
+  @Override
+  public void encode(DefaultIssue issue, DataOutputStream output) throws IOException {
+    writeString(output, issue.key());
+    writeString(output, issue.type() == null ? null : issue.type().name());
+    writeString(output, issue.componentUuid());
+    writeString(output, issue.componentKey());
+    writeString(output, issue.moduleUuid());
+    writeString(output, issue.moduleUuidPath());
+    writeString(output, issue.projectUuid());
+    writeString(output, issue.projectKey());
+    RuleKey ruleKey = issue.ruleKey();
+    writeString(output, ruleKey == null ? null : ruleKey.repository());
+    writeString(output, ruleKey == null ? null : ruleKey.rule());
+    writeString(output, issue.language());
+    writeString(output, issue.severity());
+    writeString(output, issue.message());
+    writeString(output, issue.status());
+    writeString(output, issue.resolution());
+    writeString(output, issue.reporter());
+    writeString(output, issue.assignee());
+    writeString(output, issue.checksum());
+    writeString(output, issue.authorLogin());
+    writeString(output, issue.actionPlanKey());
+    writeInteger(output, issue.line());
+    writeDouble(output, issue.effortToFix());
+    writeLong(output, issue.debtInMinutes());
+    writeDate(output, issue.creationDate());
+    writeDate(output, issue.updateDate());
+    writeDate(output, issue.closeDate());
+    writeLong(output, issue.selectedAt());
+    output.writeBoolean(issue.manualSeverity());
+    output.writeBoolean(issue.isNew());
+    output.writeBoolean(issue.isBeingClosed());
+    output.writeBoolean(issue.isOnDisabledRule());
+    output.writeBoolean(issue.isChanged());
+    output.writeBoolean(issue.mustSendNotifications());
+    writeAttributes(output, issue);
+    writeTags(output, issue);
+    writeComments(output, issue);
+    writeChanges(output, issue);
+    writeValue(output, issue.getLocations());
+  }
+
+  @Override
+  public DefaultIssue decode(DataInputStream input) throws IOException {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey(readString(input));
+    String type = readString(input);
+    issue.setType(type == null ? null : RuleType.valueOf(type));
+    issue.setComponentUuid(readString(input));
+    issue.setComponentKey(readString(input));
+    issue.setModuleUuid(readString(input));
+    issue.setModuleUuidPath(readString(input));
+    issue.setProjectUuid(readString(input));
+    issue.setProjectKey(readString(input));
+    String ruleRepository = readString(input);
+    String rule = readString(input);
+    issue.setRuleKey(ruleRepository == null ? null : RuleKey.of(ruleRepository, rule));
+    issue.setLanguage(readString(input));
+    issue.setSeverity(readString(input));
+    issue.setMessage(readString(input));
+    String status = readString(input);
+    if (status != null) {
+      issue.setStatus(status);
+    }
+    issue.setResolution(readString(input));
+    issue.setReporter(readString(input));
+    issue.setAssignee(readString(input));
+    issue.setChecksum(readString(input));
+    issue.setAuthorLogin(readString(input));
+    issue.setActionPlanKey(readString(input));
+    issue.setLine(readInteger(input));
+    issue.setEffortToFix(readDouble(input));
+    Long debt = readLong(input);
+    issue.setDebt(debt == null ? null : Duration.create(debt));
+    issue.setCreationDate(readDate(input));
+    issue.setUpdateDate(readDate(input));
+    issue.setCloseDate(readDate(input));
+    issue.setSelectedAt(readLong(input));
+    issue.setManualSeverity(input.readBoolean());
+    issue.setNew(input.readBoolean());
+    issue.setBeingClosed(input.readBoolean());
+    issue.setOnDisabledRule(input.readBoolean());
+    issue.setChanged(input.readBoolean());
+    issue.setSendNotifications(input.readBoolean());
+    readAttributes(input, issue);
+    readTags(input, issue);
+    readComments(input, issue);
+    readChanges(input, issue);
+    issue.setLocations(readValue(input));
+    return issue;
+  }
+
+  private static void writeAttributes(DataOutputStream output, DefaultIssue issue) throws IOException {
+    // attributes() never returns null, emptiness is enough to restore the issue
+    Map<String, String> attributes = issue.attributes();
+    output.writeInt(attributes.size());
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      writeString(output, entry.getKey());
+      writeString(output, entry.getValue());
+    }
+  }
+
+  private static void readAttributes(DataInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    if (size == 0) {
+      return;
+    }
+    Map<String, String> attributes = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      attributes.put(readString(input), readString(input));
+    }
+    issue.setAttributes(attributes);
+  }
+
+  private static void writeTags(DataOutputStream output, DefaultIssue issue) throws IOException {
+    List<String> tags = new ArrayList<>(issue.tags());
+    output.writeInt(tags.size());
+    for (String tag : tags) {
+      writeString(output, tag);
+    }
+  }
+
+  private static void readTags(DataInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    if (size == 0) {
+      return;
+    }
+    List<String> tags = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      tags.add(readString(input));
+    }
+    issue.setTags(tags);
+  }
+
+  private static void writeComments(DataOutputStream output, DefaultIssue issue) throws IOException {
+    output.writeInt(issue.comments().size());
+    for (Object o : issue.comments()) {
+      DefaultIssueComment comment = (DefaultIssueComment) o;
+      writeString(output, comment.key());
+      writeString(output, comment.issueKey());
+      writeString(output, comment.userLogin());
+      writeString(output, comment.markdownText());
+      writeDate(output, comment.createdAt());
+      writeDate(output, comment.updatedAt());
+      output.writeBoolean(comment.isNew());
+    }
+  }
+
+  private static void readComments(DataInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      issue.addComment(new DefaultIssueComment()
+        .setKey(readString(input))
+        .setIssueKey(readString(input))
+        .setUserLogin(readString(input))
+        .setMarkdownText(readString(input))
+        .setCreatedAt(readDate(input))
+        .setUpdatedAt(readDate(input))
+        .setNew(input.readBoolean()));
+    }
+  }
+
+  /**
+   * Distinct instances of {@link FieldDiffs} are written first, then the list of changes and the current change
+   * as indexes in these instances.
+   */
+  private static void writeChanges(DataOutputStream output, DefaultIssue issue) throws IOException {
+    List<FieldDiffs> changes = issue.changes();
+    Map<FieldDiffs, Integer> indexes = new IdentityHashMap<>();
+    List<FieldDiffs> distinctChanges = new ArrayList<>();
+    FieldDiffs currentChange = issue.currentChange();
+    for (FieldDiffs change : currentChange == null ? changes : concat(changes, currentChange)) {
+      if (!indexes.containsKey(change)) {
+        indexes.put(change, distinctChanges.size());
+        distinctChanges.add(change);
+      }
+    }
+
+    output.writeInt(distinctChanges.size());
+    for (FieldDiffs change : distinctChanges) {
+      writeFieldDiffs(output, change);
+    }
+    output.writeInt(changes.size());
+    for (FieldDiffs change : changes) {
+      output.writeInt(indexes.get(change));
+    }
+    output.writeInt(currentChange == null ? NULL_LENGTH : indexes.get(currentChange));
+  }
+
+  private static void readChanges(DataInputStream input, DefaultIssue issue) throws IOException {
+    int distinctSize = input.readInt();
+    List<FieldDiffs> distinctChanges = new ArrayList<>(distinctSize);
+    for (int i = 0; i < distinctSize; i++) {
+      distinctChanges.add(readFieldDiffs(input));
+    }
+    int size = input.readInt();
+    List<FieldDiffs> changes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      changes.add(distinctChanges.get(input.readInt()));
+    }
+    int currentChangeIndex = input.readInt();
+    if (currentChangeIndex != NULL_LENGTH) {
+      // setCurrentChange(FieldDiffs) also adds the change to the list of changes, which is overridden just after
+      issue.setCurrentChange(distinctChanges.get(currentChangeIndex));
+    }
+    if (!changes.isEmpty() || currentChangeIndex != NULL_LENGTH) {
+      issue.setChanges(changes);
+    }
+  }
+
+  private static List<FieldDiffs> concat(List<FieldDiffs> changes, FieldDiffs currentChange) {
+    List<FieldDiffs> res = new ArrayList<>(changes.size() + 1);
+    res.addAll(changes);
+    res.add(currentChange);
+    return res;
+  }
+
+  private static void writeFieldDiffs(DataOutputStream output, FieldDiffs fieldDiffs) throws IOException {
+    writeString(output, fieldDiffs.issueKey());
+    writeString(output, fieldDiffs.userLogin());
+    writeDate(output, fieldDiffs.creationDate());
+    Map<String, FieldDiffs.Diff> diffs = fieldDiffs.diffs();
+    output.writeInt(diffs.size());
+    for (Map.Entry<String, FieldDiffs.Diff> entry : diffs.entrySet()) {
+      writeString(output, entry.getKey());
+      writeValue(output, entry.getValue().oldValue());
+      writeValue(output, entry.getValue().newValue());
+    }
+  }
+
+  private static FieldDiffs readFieldDiffs(DataInputStream input) throws IOException {
+    FieldDiffs fieldDiffs = new FieldDiffs()
+      .setIssueKey(readString(input))
+      .setUserLogin(readString(input))
+      .setCreationDate(readDate(input));
+    int size = input.readInt();
+    Map<String, Serializable[]> diffs = new LinkedHashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      diffs.put(readString(input), new Serializable[] {(Serializable) readValue(input), (Serializable) readValue(input)});
+    }
+    for (Map.Entry<String, Serializable[]> entry : diffs.entrySet()) {
+      fieldDiffs.setDiff(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+    }
+    return fieldDiffs;
+  }
+
+  private static void writeValue(DataOutputStream output, @Nullable Object value) throws IOException {
+    if (value == null) {
+      output.writeByte(NULL_VALUE);
+    } else if (value instanceof String) {
+      output.writeByte(STRING_VALUE);
+      writeString(output, (String) value);
+    } else if (value instanceof Long) {
+      output.writeByte(LONG_VALUE);
+      output.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(INTEGER_VALUE);
+      output.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      output.writeByte(DOUBLE_VALUE);
+      output.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      output.writeByte(BOOLEAN_VALUE);
+      output.writeBoolean((Boolean) value);
+    } else if (value.getClass().equals(Date.class)) {
+      output.writeByte(DATE_VALUE);
+      output.writeLong(((Date) value).getTime());
+    } else if (value instanceof DbIssues.Locations) {
+      output.writeByte(DB_LOCATIONS_VALUE);
+      writeBytes(output, ((DbIssues.Locations) value).toByteArray());
+    } else {
+      output.writeByte(SERIALIZED_VALUE);
+      writeBytes(output, serialize(value));
+    }
+  }
+
+  @CheckForNull
+  private static Object readValue(DataInputStream input) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return readString(input);
+      case LONG_VALUE:
+        return input.readLong();
+      case INTEGER_VALUE:
+        return input.readInt();
+      case DOUBLE_VALUE:
+        return input.readDouble();
+      case BOOLEAN_VALUE:
+        return input.readBoolean();
+      case DATE_VALUE:
+        return new Date(input.readLong());
+      case DB_LOCATIONS_VALUE:
+        return DbIssues.Locations.parseFrom(readBytes(input));
+      case SERIALIZED_VALUE:
+        return deserialize(readBytes(input));
+      default:
+        throw new IllegalStateException("Unsupported type of value: " + type);
+    }
+  }
+
+  private static byte[] serialize(Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytes)) {
+      objectOutput.writeObject(value);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes) throws IOException {
+    try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return objectInput.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Fail to deserialize value", e);
+    }
+  }
+
+  private static void writeString(DataOutputStream output, @Nullable String s) throws IOException {
+    // DataOutput#writeUTF(String) does not support strings longer than 64KB
+    writeBytes(output, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @CheckForNull
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] bytes = readBytes(input);
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeBytes(DataOutputStream output, @Nullable byte[] bytes) throws IOException {
+    if (bytes == null) {
+      output.writeInt(NULL_LENGTH);
+    } else {
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == NULL_LENGTH) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeDate(DataOutputStream output, @Nullable Date date) throws IOException {
+    writeLong(output, date == null ? null : date.getTime());
+  }
+
+  @CheckForNull
+  private static Date readDate(DataInputStream input) throws IOException {
+    Long time = readLong(input);
+    return time == null ? null : new Date(time);
+  }
+
+  private static void writeLong(DataOutputStream output, @Nullable Long l) throws IOException {
+    output.writeBoolean(l != null);
+    if (l != null) {
+      output.writeLong(l);
+    }
+  }
+
+  @CheckForNull
+  private static Long readLong(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readLong() : null;
+  }
+
+  private static void writeInteger(DataOutputStream output, @Nullable Integer i) throws IOException {
+    output.writeBoolean(i != null);
+    if (i != null) {
+      output.writeInt(i);
+    }
+  }
+
+  @CheckForNull
+  private static Integer readInteger(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readInt() : null;
+  }
+
+  private static void writeDouble(DataOutputStream output, @Nullable Double d) throws IOException {
+    output.writeBoolean(d != null);
+    if (d != null) {
+      output.writeDouble(d);
+    }
+  }
+
+  @CheckForNull
+  private static Double readDouble(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readDouble() : null;
+  }
+}
@@ -21,6 +21,7 @@ package org.sonar.server.computation.issue;
 
 import java.io.File;
 import java.io.IOException;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TempFolder;
 import org.sonar.core.issue.DefaultIssue;
@@ -32,12 +33,22 @@ import org.sonar.server.util.cache.DiskCache;
  */
 public class IssueCache extends DiskCache<DefaultIssue> {
 
+  /**
+   * Whether the issues are compressed with LZ4 on disk. Compression reduces the size of the temporary file
+   * of large projects at the cost of some CPU.
+   */
+  public static final String COMPRESS_PROPERTY = "sonar.ce.issueCache.compress";
+
   // this constructor is used by picocontainer
-  public IssueCache(TempFolder tempFolder, System2 system2) throws IOException {
-    super(tempFolder.newFile("issues", ".dat"), system2);
+  public IssueCache(TempFolder tempFolder, System2 system2, Settings settings) throws IOException {
+    this(tempFolder.newFile("issues", ".dat"), system2, settings.getBoolean(COMPRESS_PROPERTY));
   }
 
   public IssueCache(File file, System2 system2) {
-    super(file, system2);
+    this(file, system2, false);
+  }
+
+  public IssueCache(File file, System2 system2, boolean compressed) {
+    super(file, system2, new DefaultIssueCodec(), compressed);
   }
 }
@@ -0,0 +1,59 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Result of {@link org.sonar.server.computation.step.PersistIssuesStep}, used to index
+ * the issues of {@link IssueCache} without reading them again from database.
+ */
+public class PersistedIssues {
+
+  private Long updatedAt;
+  private final Set<String> conflictKeys = new HashSet<>();
+
+  /**
+   * Technical date (column ISSUES.UPDATED_AT) of the issues inserted or updated
+   */
+  public void setUpdatedAt(long updatedAt) {
+    checkState(this.updatedAt == null, "Update date has already been set");
+    this.updatedAt = updatedAt;
+  }
+
+  public long getUpdatedAt() {
+    checkState(this.updatedAt != null, "Update date has not been set yet");
+    return updatedAt;
+  }
+
+  /**
+   * Issue updated concurrently by end-user. The version in database differs from the version in {@link IssueCache}.
+   */
+  public void addConflict(String issueKey) {
+    conflictKeys.add(issueKey);
+  }
+
+  public Set<String> getConflictKeys() {
+    return conflictKeys;
+  }
+}
@@ -38,6 +38,9 @@ public interface Rule {
 
   RuleType getType();
 
+  @CheckForNull
+  String getLanguage();
+
   /**
    * Get all tags, whatever system or user tags.
    */
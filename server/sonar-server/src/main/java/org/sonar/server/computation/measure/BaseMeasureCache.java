@@ -0,0 +1,155 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.measure.MeasureDto;
+
+import static java.util.Collections.singleton;
+
+/**
+ * Cache of the measures of the last analysis (aka. base measures) of the components of the project being processed.
+ * <p>
+ * Only the measures which are requested are loaded, either one by one through {@link #get(String, String)} or for
+ * several components and metrics at once through {@link #load(Collection, Collection)}. The absence of a measure is
+ * cached as well, so that each pair of component and metric is read from the DB at most once.
+ * </p>
+ */
+public class BaseMeasureCache implements Startable {
+
+  private static final Logger LOG = Loggers.get(BaseMeasureCache.class);
+
+  private final DbClient dbClient;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  // measures by metric key by component key, absent measures are stored as Optional.absent()
+  private final ConcurrentMap<String, ConcurrentMap<String, Optional<MeasureDto>>> measuresByComponentKey = new ConcurrentHashMap<>();
+
+  public BaseMeasureCache(DbClient dbClient) {
+    this.dbClient = dbClient;
+  }
+
+  /**
+   * The measure of the last analysis of the specified component for the specified metric, if any.
+   */
+  @CheckForNull
+  public MeasureDto get(String componentKey, String metricKey) {
+    Optional<MeasureDto> measureDto = getCached(componentKey, metricKey);
+    if (measureDto != null) {
+      hitCount.incrementAndGet();
+      return measureDto.orNull();
+    }
+    missCount.incrementAndGet();
+    load(singleton(componentKey), singleton(metricKey));
+    return getCached(componentKey, metricKey).orNull();
+  }
+
+  /**
+   * Loads with a single partitioned query the measures of the last analysis of the specified components for the
+   * specified metrics which are not cached yet.
+   */
+  public void load(Collection<String> componentKeys, Collection<String> metricKeys) {
+    Set<String> componentKeysToLoad = new HashSet<>();
+    Set<String> metricKeysToLoad = new HashSet<>();
+    for (String componentKey : componentKeys) {
+      for (String metricKey : metricKeys) {
+        if (getCached(componentKey, metricKey) == null) {
+          componentKeysToLoad.add(componentKey);
+          metricKeysToLoad.add(metricKey);
+        }
+      }
+    }
+    if (componentKeysToLoad.isEmpty()) {
+      return;
+    }
+
+    List<MeasureDto> measureDtos;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      measureDtos = dbClient.measureDao().selectByComponentKeysAndMetricKeys(dbSession, new ArrayList<>(componentKeysToLoad), new ArrayList<>(metricKeysToLoad));
+    }
+    for (MeasureDto measureDto : measureDtos) {
+      measuresOf(measureDto.getComponentKey()).put(measureDto.getMetricKey(), Optional.of(measureDto));
+    }
+    for (String componentKey : componentKeysToLoad) {
+      ConcurrentMap<String, Optional<MeasureDto>> measuresByMetricKey = measuresOf(componentKey);
+      for (String metricKey : metricKeysToLoad) {
+        measuresByMetricKey.putIfAbsent(metricKey, Optional.<MeasureDto>absent());
+      }
+    }
+  }
+
+  @CheckForNull
+  private Optional<MeasureDto> getCached(String componentKey, String metricKey) {
+    Map<String, Optional<MeasureDto>> measuresByMetricKey = measuresByComponentKey.get(componentKey);
+    return measuresByMetricKey == null ? null : measuresByMetricKey.get(metricKey);
+  }
+
+  private ConcurrentMap<String, Optional<MeasureDto>> measuresOf(String componentKey) {
+    ConcurrentMap<String, Optional<MeasureDto>> measuresByMetricKey = measuresByComponentKey.get(componentKey);
+    if (measuresByMetricKey == null) {
+      ConcurrentMap<String, Optional<MeasureDto>> newMap = new ConcurrentHashMap<>();
+      measuresByMetricKey = measuresByComponentKey.putIfAbsent(componentKey, newMap);
+      if (measuresByMetricKey == null) {
+        measuresByMetricKey = newMap;
+      }
+    }
+    return measuresByMetricKey;
+  }
+
+  @Override
+  public void start() {
+    // nothing to do, measures are loaded when requested
+  }
+
+  @Override
+  public void stop() {
+    LOG.debug("Base measures cache: {} hits, {} misses", hitCount.get(), missCount.get());
+  }
+
+  /**
+   * Number of calls to {@link #get(String, String)} answered from the cache.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Number of calls to {@link #get(String, String)} which required a query to the DB.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
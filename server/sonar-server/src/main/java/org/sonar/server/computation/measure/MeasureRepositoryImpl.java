@@ -25,8 +25,6 @@ import java.util.HashSet;
 import java.util.Set;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.core.util.CloseableIterator;
-import org.sonar.db.DbClient;
-import org.sonar.db.DbSession;
 import org.sonar.db.measure.MeasureDto;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
@@ -41,7 +39,7 @@ import static org.sonar.server.computation.component.ComponentFunctions.toReport
 
 public class MeasureRepositoryImpl implements MeasureRepository {
   private final MapBasedRawMeasureRepository<Integer> delegate = new MapBasedRawMeasureRepository<>(toReportRef());
-  private final DbClient dbClient;
+  private final BaseMeasureCache baseMeasureCache;
   private final BatchReportReader reportReader;
   private final BatchMeasureToMeasure batchMeasureToMeasure;
   private final MetricRepository metricRepository;
@@ -50,8 +48,9 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   private MeasureDtoToMeasure underTest = new MeasureDtoToMeasure();
   private final Set<Integer> loadedComponents = new HashSet<>();
 
-  public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository, ReportMetricValidator reportMetricValidator) {
-    this.dbClient = dbClient;
+  public MeasureRepositoryImpl(BaseMeasureCache baseMeasureCache, BatchReportReader reportReader, MetricRepository metricRepository,
+    ReportMetricValidator reportMetricValidator) {
+    this.baseMeasureCache = baseMeasureCache;
     this.reportReader = reportReader;
     this.reportMetricValidator = reportMetricValidator;
     this.batchMeasureToMeasure = new BatchMeasureToMeasure();
@@ -64,14 +63,12 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(component);
     requireNonNull(metric);
 
-    try (DbSession dbSession = dbClient.openSession(false)) {
-      MeasureDto measureDto = dbClient.measureDao().selectByComponentKeyAndMetricKey(dbSession, component.getKey(), metric.getKey());
-      Optional<Measure> measureOptional = underTest.toMeasure(measureDto, metric);
-      if (measureOptional.isPresent()) {
-        checkArgument(measureOptional.get().getRuleId() == null, "Measures with ruleId are not supported");
-      }
-      return measureOptional;
+    MeasureDto measureDto = baseMeasureCache.get(component.getKey(), metric.getKey());
+    Optional<Measure> measureOptional = underTest.toMeasure(measureDto, metric);
+    if (measureOptional.isPresent()) {
+      checkArgument(measureOptional.get().getRuleId() == null, "Measures with ruleId are not supported");
     }
+    return measureOptional;
   }
 
   @Override
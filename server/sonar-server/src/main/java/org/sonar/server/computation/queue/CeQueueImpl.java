@@ -26,10 +26,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.UuidFactory;
@@ -38,6 +42,7 @@ import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeActivityDto;
 import org.sonar.db.ce.CeQueueDto;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.server.computation.configuration.CeConfiguration;
 import org.sonar.server.computation.monitoring.CEQueueStatus;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -47,25 +52,61 @@ import static java.lang.String.format;
 import static org.sonar.db.component.ComponentDtoFunctions.toUuid;
 
 @ServerSide
-public class CeQueueImpl implements CeQueue {
+public class CeQueueImpl implements CeQueue, Startable {
 
   private final System2 system2;
   private final DbClient dbClient;
   private final UuidFactory uuidFactory;
   private final CEQueueStatus queueStatus;
   private final CeQueueListener[] listeners;
+  private final CeQueueSubmitNotifier submitNotifier;
+  private final CeConfiguration ceConfiguration;
 
   // state
+  // tasks already IN_PROGRESS in DB, which have not been returned by peek() yet
+  private final Queue<CeTask> claimedTasks = new ConcurrentLinkedQueue<>();
+  // tasks returned by peek() which have not been removed yet, ie. number of busy workers
+  private final AtomicInteger peekedTaskCount = new AtomicInteger(0);
   private AtomicBoolean submitPaused = new AtomicBoolean(false);
   private AtomicBoolean peekPaused = new AtomicBoolean(false);
 
   public CeQueueImpl(System2 system2, DbClient dbClient, UuidFactory uuidFactory,
-    CEQueueStatus queueStatus, CeQueueListener[] listeners) {
+    CEQueueStatus queueStatus, CeQueueListener[] listeners, CeQueueSubmitNotifier submitNotifier, CeConfiguration ceConfiguration) {
     this.system2 = system2;
     this.dbClient = dbClient;
     this.uuidFactory = uuidFactory;
     this.queueStatus = queueStatus;
     this.listeners = listeners;
+    this.submitNotifier = submitNotifier;
+    this.ceConfiguration = ceConfiguration;
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  /**
+   * The tasks claimed in DB but not returned by {@link #peek()} yet are made available again to the
+   * other Compute Engines.
+   */
+  @Override
+  public void stop() {
+    resetClaimedTasksToPending();
+  }
+
+  private void resetClaimedTasksToPending() {
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      CeTask claimedTask = claimedTasks.poll();
+      while (claimedTask != null) {
+        dbClient.ceQueueDao().resetToPendingStatus(dbSession, claimedTask.getUuid());
+        claimedTask = claimedTasks.poll();
+      }
+      dbSession.commit();
+    } finally {
+      dbClient.closeSession(dbSession);
+    }
   }
 
   @Override
@@ -83,6 +124,7 @@ public class CeQueueImpl implements CeQueue {
       CeTask task = loadTask(dbSession, dto);
       dbSession.commit();
       queueStatus.addReceived();
+      submitNotifier.notifySubmitted(1);
       return task;
 
     } finally {
@@ -105,6 +147,7 @@ public class CeQueueImpl implements CeQueue {
       List<CeTask> tasks = loadTasks(dbSession, ceQueueDtos);
       dbSession.commit();
       queueStatus.addReceived(tasks.size());
+      submitNotifier.notifySubmitted(tasks.size());
       return tasks;
 
     } finally {
@@ -112,20 +155,43 @@ public class CeQueueImpl implements CeQueue {
     }
   }
 
+  /**
+   * As many tasks as there are idle workers (ie. {@link CeConfiguration#getWorkerCount()} minus the number of tasks
+   * returned by this method and not removed yet) are claimed in DB at once. The first one is returned and the others
+   * are kept in memory to be returned by the next calls, from any worker. Waiting workers are notified so that they
+   * peek these tasks right away: tasks are not claimed for workers which are busy, so that they do not stay
+   * IN_PROGRESS in DB while no worker processes them.
+   */
   @Override
   public Optional<CeTask> peek() {
     if (peekPaused.get()) {
       return Optional.absent();
     }
+    CeTask claimedTask = claimedTasks.poll();
+    if (claimedTask != null) {
+      queueStatus.addInProgress();
+      peekedTaskCount.incrementAndGet();
+      return Optional.of(claimedTask);
+    }
+
     DbSession dbSession = dbClient.openSession(false);
     try {
-      Optional<CeQueueDto> dto = dbClient.ceQueueDao().peek(dbSession);
-      CeTask task = null;
-      if (dto.isPresent()) {
-        task = loadTask(dbSession, dto.get());
-        queueStatus.addInProgress();
+      // the calling worker is idle, hence at least one task is claimed
+      int busyWorkerCount = Math.max(0, peekedTaskCount.get());
+      int idleWorkerCount = Math.max(1, ceConfiguration.getWorkerCount() - busyWorkerCount);
+      List<CeQueueDto> dtos = dbClient.ceQueueDao().peek(dbSession, idleWorkerCount);
+      if (dtos.isEmpty()) {
+        return Optional.absent();
+      }
+      List<CeTask> tasks = loadTasks(dbSession, dtos);
+      queueStatus.addInProgress();
+      peekedTaskCount.incrementAndGet();
+      int claimedCount = tasks.size() - 1;
+      if (claimedCount > 0) {
+        claimedTasks.addAll(tasks.subList(1, tasks.size()));
+        submitNotifier.notifySubmitted(claimedCount);
       }
-      return Optional.fromNullable(task);
+      return Optional.of(tasks.get(0));
 
     } finally {
       dbClient.closeSession(dbSession);
@@ -182,6 +248,7 @@ public class CeQueueImpl implements CeQueue {
 
   @Override
   public int clear() {
+    claimedTasks.clear();
     return cancelAll(true);
   }
 
@@ -208,6 +275,7 @@ public class CeQueueImpl implements CeQueue {
 
   @Override
   public void remove(CeTask task, CeActivityDto.Status status, CeTaskResult taskResult) {
+    peekedTaskCount.decrementAndGet();
     DbSession dbSession = dbClient.openSession(false);
     try {
       Optional<CeQueueDto> queueDto = dbClient.ceQueueDao().selectByUuid(dbSession, task.getUuid());
@@ -273,9 +341,14 @@ public class CeQueueImpl implements CeQueue {
     return submitPaused.get();
   }
 
+  /**
+   * The tasks claimed in DB but not returned by {@link #peek()} yet are made available again, as they would not be
+   * returned until peek is resumed.
+   */
   @Override
   public void pausePeek() {
     this.peekPaused.set(true);
+    resetClaimedTasksToPending();
   }
 
   @Override
@@ -24,6 +24,7 @@ import org.sonar.server.computation.monitoring.CEQueueStatusImpl;
 import org.sonar.server.computation.monitoring.ComputeEngineQueueMonitor;
 import org.sonar.server.computation.queue.report.CleanReportQueueListener;
 import org.sonar.server.computation.queue.report.ReportFiles;
+import org.sonar.server.computation.queue.report.ReportUploads;
 
 public class CeQueueModule extends Module {
   @Override
@@ -31,6 +32,7 @@ public class CeQueueModule extends Module {
     add(
       // queue state
       CeQueueImpl.class,
+      CeQueueSubmitNotifier.class,
 
       // queue monitoring
       CEQueueStatusImpl.class,
@@ -40,6 +42,7 @@ public class CeQueueModule extends Module {
       CeQueueCleaner.class,
       CleanReportQueueListener.class,
       ReportFiles.class,
+      ReportUploads.class,
 
       // init queue state and queue processing
       CeQueueInitializer.class);
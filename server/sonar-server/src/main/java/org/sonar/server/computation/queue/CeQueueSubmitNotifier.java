@@ -0,0 +1,64 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.queue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static java.lang.String.format;
+
+/**
+ * In-process notification channel between the producers of the {@link CeQueue} and its consumers.
+ * <p>
+ * {@link CeQueueImpl} can not directly depend on the workers (they depend on the queue), so listeners register
+ * themselves here when they start consuming the queue and unregister when they stop.
+ * </p>
+ */
+@ServerSide
+public class CeQueueSubmitNotifier {
+  private static final Logger LOG = Loggers.get(CeQueueSubmitNotifier.class);
+
+  private final List<CeQueueSubmitListener> listeners = new CopyOnWriteArrayList<>();
+
+  public void addListener(CeQueueSubmitListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(CeQueueSubmitListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Failure of a listener is logged and does not prevent the other listeners from being notified: the tasks
+   * are already persisted and will anyway be peeked by the regular polling of the queue.
+   */
+  public void notifySubmitted(int taskCount) {
+    for (CeQueueSubmitListener listener : listeners) {
+      try {
+        listener.onSubmitted(taskCount);
+      } catch (RuntimeException e) {
+        LOG.warn(format("Failed to notify submission of %d task(s) to %s", taskCount, listener), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.queue.report;
+
+import com.google.common.util.concurrent.Striped;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonar.process.ProcessProperties;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonar.server.ws.WsUtils.checkRequest;
+
+/**
+ * Reports uploaded by chunks, before being submitted to the queue. Chunks are appended to a file
+ * per upload, so that an upload interrupted by a network failure can be resumed from the last
+ * received byte. The key of the project is stored along with the upload, so that an upload
+ * can not be continued or submitted for another project.
+ */
+@ServerSide
+public class ReportUploads {
+
+  private static final String EXTENSION = "part";
+  private static final String PROJECT_EXTENSION = "project";
+  private static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("[\\w\\-]{1,64}");
+  private static final long EXPIRATION_MS = TimeUnit.DAYS.toMillis(1);
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Settings settings;
+  private final System2 system2;
+  private final Striped<Lock> locks = Striped.lock(32);
+
+  public ReportUploads(Settings settings, System2 system2) {
+    this.settings = settings;
+    this.system2 = system2;
+  }
+
+  /**
+   * Number of bytes received for the upload, zero if unknown
+   */
+  public long received(String projectKey, String uploadId) {
+    File file = fileFor(uploadId);
+    Lock lock = locks.get(uploadId);
+    lock.lock();
+    try {
+      checkProject(projectKey, uploadId);
+      return file.length();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends the chunk to the upload. The chunk is ignored if its offset is not the number of bytes
+   * already received, for example when it is sent again because its response has been lost. The returned
+   * number of bytes then tells the client from where to resume the upload.
+   *
+   * @return the number of bytes received for the upload
+   */
+  public long append(String projectKey, String uploadId, long offset, InputStream chunk) {
+    checkRequest(offset >= 0L, "Offset of upload %s must not be negative: %s", uploadId, offset);
+    File file = fileFor(uploadId);
+    if (offset == 0L) {
+      deleteExpired();
+    }
+    Lock lock = locks.get(uploadId);
+    lock.lock();
+    try {
+      if (!checkProject(projectKey, uploadId)) {
+        FileUtils.forceMkdir(file.getParentFile());
+        FileUtils.write(projectFileFor(uploadId), projectKey, UTF_8);
+      }
+      long received = file.length();
+      if (offset != received) {
+        return received;
+      }
+      try (OutputStream output = FileUtils.openOutputStream(file, true)) {
+        IOUtils.copyLarge(chunk, output, new byte[BUFFER_SIZE]);
+      }
+      return file.length();
+    } catch (IOException e) {
+      throw new IllegalStateException(format("Fail to write upload %s into %s", uploadId, file.getAbsolutePath()), e);
+    } finally {
+      IOUtils.closeQuietly(chunk);
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The decoded content of the upload
+   */
+  public InputStream open(String projectKey, String uploadId, ReportCodec codec) {
+    File file = fileFor(uploadId);
+    checkRequest(checkProject(projectKey, uploadId) && file.isFile(), "Upload %s does not exist", uploadId);
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(FileUtils.openInputStream(file), BUFFER_SIZE);
+      return codec.decode(input);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(input);
+      throw new IllegalStateException(format("Fail to read upload %s with codec %s", uploadId, codec.key()), e);
+    }
+  }
+
+  public void delete(String uploadId) {
+    org.sonar.core.util.FileUtils.deleteQuietly(fileFor(uploadId));
+    org.sonar.core.util.FileUtils.deleteQuietly(projectFileFor(uploadId));
+  }
+
+  /**
+   * Deletes the uploads which have not been completed for a day
+   */
+  public void deleteExpired() {
+    File dir = uploadDir();
+    if (dir.exists()) {
+      long expiredBefore = system2.now() - EXPIRATION_MS;
+      Collection<File> files = FileUtils.listFiles(dir, new String[] {EXTENSION, PROJECT_EXTENSION}, false);
+      for (File file : files) {
+        // the project of an upload expires with its last received chunk
+        String uploadId = FilenameUtils.getBaseName(file.getName());
+        File part = new File(dir, format("%s.%s", uploadId, EXTENSION));
+        if (file.exists() && (part.exists() ? part : file).lastModified() < expiredBefore) {
+          org.sonar.core.util.FileUtils.deleteQuietly(part);
+          org.sonar.core.util.FileUtils.deleteQuietly(new File(dir, format("%s.%s", uploadId, PROJECT_EXTENSION)));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return false if the upload is not bound to a project yet
+   * @throws org.sonar.server.exceptions.BadRequestException if the upload belongs to another project
+   */
+  private boolean checkProject(String projectKey, String uploadId) {
+    File projectFile = projectFileFor(uploadId);
+    if (!projectFile.isFile()) {
+      return false;
+    }
+    try {
+      String uploadProjectKey = FileUtils.readFileToString(projectFile, UTF_8);
+      checkRequest(projectKey.equals(uploadProjectKey), "Upload %s does not belong to project %s", uploadId, projectKey);
+      return true;
+    } catch (IOException e) {
+      throw new IllegalStateException(format("Fail to read project of upload %s", uploadId), e);
+    }
+  }
+
+  private File uploadDir() {
+    return new File(settings.getString(ProcessProperties.PATH_DATA), "ce/uploads");
+  }
+
+  private File fileFor(String uploadId) {
+    checkRequest(UPLOAD_ID_PATTERN.matcher(uploadId).matches(), "Upload id is not valid: %s", uploadId);
+    return new File(uploadDir(), format("%s.%s", uploadId, EXTENSION));
+  }
+
+  private File projectFileFor(String uploadId) {
+    return new File(uploadDir(), format("%s.%s", uploadId, PROJECT_EXTENSION));
+  }
+}
@@ -37,7 +37,14 @@ public abstract class AbstractComputationSteps implements ComputationSteps {
 
   @Override
   public Iterable<ComputationStep> instances() {
-    return Iterables.transform(orderedStepClasses(), new Function<Class<? extends ComputationStep>, ComputationStep>() {
+    return instances(orderedStepClasses());
+  }
+
+  /**
+   * Instances of the specified steps classes, retrieved from the container.
+   */
+  protected Iterable<ComputationStep> instances(Iterable<Class<? extends ComputationStep>> stepClasses) {
+    return Iterables.transform(stepClasses, new Function<Class<? extends ComputationStep>, ComputationStep>() {
       @Override
       public ComputationStep apply(@Nonnull Class<? extends ComputationStep> input) {
         ComputationStep computationStepType = container.getComponentByType(input);
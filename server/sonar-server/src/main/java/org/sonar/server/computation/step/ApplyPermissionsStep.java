@@ -30,6 +30,7 @@ import org.sonar.server.computation.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
+import org.sonar.server.user.PermissionCache;
 
 import static org.sonar.server.computation.component.Component.Type.PROJECT;
 import static org.sonar.server.computation.component.Component.Type.VIEW;
@@ -45,14 +46,16 @@ public class ApplyPermissionsStep implements ComputationStep {
   private final IssueAuthorizationIndexer indexer;
   private final PermissionRepository permissionRepository;
   private final TreeRootHolder treeRootHolder;
+  private final PermissionCache permissionCache;
 
   public ApplyPermissionsStep(DbClient dbClient, DbIdsRepository dbIdsRepository, IssueAuthorizationIndexer indexer, PermissionRepository permissionRepository,
-                              TreeRootHolder treeRootHolder) {
+                              TreeRootHolder treeRootHolder, PermissionCache permissionCache) {
     this.dbClient = dbClient;
     this.dbIdsRepository = dbIdsRepository;
     this.indexer = indexer;
     this.permissionRepository = permissionRepository;
     this.treeRootHolder = treeRootHolder;
+    this.permissionCache = permissionCache;
   }
 
   @Override
@@ -78,6 +81,7 @@ public class ApplyPermissionsStep implements ComputationStep {
       if (dbClient.roleDao().countComponentPermissions(session, projectId) == 0) {
         permissionRepository.applyDefaultPermissionTemplate(session, projectId);
         session.commit();
+        permissionCache.invalidate();
         indexer.index();
       }
     } finally {
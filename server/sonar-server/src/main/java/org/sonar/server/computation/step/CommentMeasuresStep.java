@@ -21,6 +21,8 @@ package org.sonar.server.computation.step;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
@@ -48,7 +50,7 @@ import static org.sonar.server.computation.formula.SumFormula.createIntSumFormul
 /**
  * Computes comments measures on files and then aggregates them on higher components.
  */
-public class CommentMeasuresStep implements ComputationStep {
+public class CommentMeasuresStep implements MeasureVisitorsStep {
 
   private final TreeRootHolder treeRootHolder;
   private final MetricRepository metricRepository;
@@ -67,9 +69,17 @@ public class CommentMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(
-      FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(formulas))
-        .visit(treeRootHolder.getRoot());
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
+      .visit(treeRootHolder.getRoot());
+  }
+
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(formulas);
   }
 
   private class CommentDensityFormula implements Formula<IntSumCounter> {
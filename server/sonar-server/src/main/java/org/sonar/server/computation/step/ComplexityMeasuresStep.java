@@ -20,6 +20,8 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.formula.AverageFormula;
@@ -46,7 +48,7 @@ import static org.sonar.server.computation.formula.SumFormula.createIntSumFormul
 /**
  * Computes complexity measures on files and then aggregates them on higher components.
  */
-public class ComplexityMeasuresStep implements ComputationStep {
+public class ComplexityMeasuresStep implements MeasureVisitorsStep {
 
   private static final ImmutableList<Formula> FORMULAS = ImmutableList.<Formula>of(
     createIntSumFormula(COMPLEXITY_KEY),
@@ -80,11 +82,19 @@ public class ComplexityMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(
-      FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS))
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
       .visit(treeRootHolder.getRoot());
   }
 
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS);
+  }
+
   @Override
   public String getDescription() {
     return "Compute complexity measures";
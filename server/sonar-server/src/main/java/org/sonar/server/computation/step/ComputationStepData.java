@@ -0,0 +1,88 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+/**
+ * Data shared between {@link ComputationStep}s, either held in memory by the Compute Engine container or
+ * stored in DB or in Elasticsearch.
+ *
+ * @see DataAwareComputationStep
+ */
+public enum ComputationStepData {
+  /**
+   * {@link org.sonar.server.computation.component.TreeRootHolder}
+   */
+  COMPONENT_TREE,
+  /**
+   * {@link org.sonar.server.computation.analysis.AnalysisMetadataHolder}
+   */
+  ANALYSIS_METADATA,
+  /**
+   * {@link org.sonar.server.computation.batch.BatchReportReader}
+   */
+  REPORT,
+  /**
+   * {@link org.sonar.server.computation.component.DbIdsRepository}
+   */
+  DB_IDS,
+  /**
+   * {@link org.sonar.server.computation.duplication.DuplicationRepository}
+   */
+  DUPLICATIONS,
+  /**
+   * {@link org.sonar.server.computation.duplication.CrossProjectDuplicationStatusHolder}
+   */
+  CROSS_PROJECT_DUPLICATION_STATUS,
+  /**
+   * {@link org.sonar.server.computation.event.EventRepository}
+   */
+  EVENTS,
+  /**
+   * {@link org.sonar.server.computation.source.SourceLinesRepository} and
+   * {@link org.sonar.server.computation.scm.ScmInfoRepository}
+   */
+  SOURCES,
+
+  /**
+   * Table PROJECT_LINKS
+   */
+  DB_PROJECT_LINKS,
+  /**
+   * Table EVENTS
+   */
+  DB_EVENTS,
+  /**
+   * Rows of table FILE_SOURCES with data type SOURCE
+   */
+  DB_FILE_SOURCES,
+  /**
+   * Rows of table FILE_SOURCES with data type TEST
+   */
+  DB_TEST_FILE_SOURCES,
+  /**
+   * Table DUPLICATIONS_INDEX
+   */
+  DB_DUPLICATIONS_INDEX,
+
+  /**
+   * Elasticsearch index of tests
+   */
+  ES_TESTS
+}
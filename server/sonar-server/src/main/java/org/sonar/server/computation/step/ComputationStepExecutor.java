@@ -19,20 +19,64 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.slf4j.MDC;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.logs.Profiler;
+import org.sonar.server.computation.configuration.CeConfiguration;
 
+/**
+ * Executes the {@link ComputationStep}s of a task.
+ * <p>
+ * When {@link CeConfiguration#getStepsThreadCount()} is greater than 1, steps are executed on a bounded pool of
+ * threads according to a dependency graph: a step starts as soon as all the steps declared before it which it
+ * shares data with are done (see {@link DataAwareComputationStep}). The result is the same as a sequential execution.
+ * </p>
+ * <p>
+ * As in a sequential execution, steps are retrieved from {@link ComputationSteps#instances()} one at a time, so that
+ * they are created only once the steps declared before them which are executed alone are done.
+ * </p>
+ */
 public final class ComputationStepExecutor {
   private static final Logger LOGGER = Loggers.get(ComputationStepExecutor.class);
+  private static final String THREAD_NAME_PREFIX = "ce-step-";
 
   private final ComputationSteps steps;
+  private final int threadCount;
 
   public ComputationStepExecutor(ComputationSteps steps) {
     this.steps = steps;
+    this.threadCount = 1;
+  }
+
+  public ComputationStepExecutor(ComputationSteps steps, CeConfiguration ceConfiguration) {
+    this.steps = steps;
+    this.threadCount = ceConfiguration.getStepsThreadCount();
   }
 
   public void execute() {
+    if (threadCount <= 1) {
+      executeSequentially();
+    } else {
+      new ConcurrentExecution(steps.instances(), threadCount).execute();
+    }
+  }
+
+  private void executeSequentially() {
     Profiler stepProfiler = Profiler.create(LOGGER);
     for (ComputationStep step : steps.instances()) {
       stepProfiler.start();
@@ -40,4 +84,181 @@ public final class ComputationStepExecutor {
       stepProfiler.stopInfo(step.getDescription());
     }
   }
+
+  /**
+   * @return true if {@code step} must wait for the end of {@code previousStep}, which is declared before it
+   */
+  static boolean dependsOn(ComputationStep step, ComputationStep previousStep) {
+    if (!(step instanceof DataAwareComputationStep) || !(previousStep instanceof DataAwareComputationStep)) {
+      return true;
+    }
+    DataAwareComputationStep dataAwareStep = (DataAwareComputationStep) step;
+    DataAwareComputationStep dataAwarePreviousStep = (DataAwareComputationStep) previousStep;
+    return !Sets.intersection(dataAwarePreviousStep.writtenData(), dataAwareStep.readData()).isEmpty()
+      || !Sets.intersection(dataAwarePreviousStep.writtenData(), dataAwareStep.writtenData()).isEmpty()
+      || !Sets.intersection(dataAwarePreviousStep.readData(), dataAwareStep.writtenData()).isEmpty();
+  }
+
+  private static final class ConcurrentExecution {
+    private final Iterator<ComputationStep> unresolvedSteps;
+    private final int threadCount;
+    // steps retrieved from the container so far, in order of declaration
+    private final List<ComputationStep> steps = new ArrayList<>();
+    private final List<Boolean> doneSteps = new ArrayList<>();
+    // number of steps each step is still waiting for
+    private final List<Integer> pendingDependencies = new ArrayList<>();
+    // indexes of the steps waiting for each step
+    private final List<List<Integer>> dependents = new ArrayList<>();
+    // number of retrieved steps, not done yet, which do not implement DataAwareComputationStep
+    private int pendingExclusiveSteps = 0;
+
+    private ConcurrentExecution(Iterable<ComputationStep> steps, int threadCount) {
+      this.unresolvedSteps = steps.iterator();
+      this.threadCount = threadCount;
+    }
+
+    /**
+     * Steps are retrieved from the container, which creates and starts the components they depend on, only once the
+     * steps declared before them which are executed alone are done. Indeed these components may rely on data loaded
+     * by such steps, for example from the report.
+     *
+     * @return indexes of the retrieved steps which can be executed right away
+     */
+    private List<Integer> resolveSteps() {
+      List<Integer> executableSteps = new ArrayList<>();
+      while (pendingExclusiveSteps == 0 && unresolvedSteps.hasNext()) {
+        ComputationStep step = unresolvedSteps.next();
+        int index = steps.size();
+        int dependencies = 0;
+        for (int j = 0; j < index; j++) {
+          if (!doneSteps.get(j) && dependsOn(step, steps.get(j))) {
+            dependencies++;
+            dependents.get(j).add(index);
+          }
+        }
+        steps.add(step);
+        doneSteps.add(false);
+        pendingDependencies.add(dependencies);
+        dependents.add(new ArrayList<Integer>());
+        if (!(step instanceof DataAwareComputationStep)) {
+          pendingExclusiveSteps++;
+        }
+        if (dependencies == 0) {
+          executableSteps.add(index);
+        }
+      }
+      return executableSteps;
+    }
+
+    /**
+     * @return indexes of the steps which can be executed once {@code stepIndex} is done
+     */
+    private List<Integer> markDone(int stepIndex) {
+      doneSteps.set(stepIndex, true);
+      if (!(steps.get(stepIndex) instanceof DataAwareComputationStep)) {
+        pendingExclusiveSteps--;
+      }
+      List<Integer> executableSteps = new ArrayList<>();
+      for (Integer dependent : dependents.get(stepIndex)) {
+        int dependencies = pendingDependencies.get(dependent) - 1;
+        pendingDependencies.set(dependent, dependencies);
+        if (dependencies == 0) {
+          executableSteps.add(dependent);
+        }
+      }
+      executableSteps.addAll(resolveSteps());
+      return executableSteps;
+    }
+
+    private void execute() {
+      ExecutorService executorService = Executors.newFixedThreadPool(threadCount,
+        new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_PREFIX + "%d").setDaemon(true).build());
+      try {
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+        Map<String, String> loggingContext = MDC.getCopyOfContextMap();
+        Throwable failure = null;
+        int running = 0;
+        try {
+          running += submit(completionService, resolveSteps(), loggingContext);
+        } catch (RuntimeException e) {
+          failure = e;
+        }
+
+        while (running > 0) {
+          int done;
+          try {
+            done = completionService.take().get();
+          } catch (ExecutionException e) {
+            // do not start any other step, but let the running ones finish
+            failure = failure == null ? e.getCause() : failure;
+            running--;
+            continue;
+          }
+          running--;
+          if (failure != null) {
+            continue;
+          }
+          try {
+            running += submit(completionService, markDone(done), loggingContext);
+          } catch (RuntimeException e) {
+            failure = e;
+          }
+        }
+        if (failure != null) {
+          throw rethrow(failure);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Execution of computation steps has been interrupted", e);
+      } finally {
+        executorService.shutdownNow();
+      }
+    }
+
+    private int submit(CompletionService<Integer> completionService, List<Integer> stepIndexes, @Nullable Map<String, String> loggingContext) {
+      for (Integer stepIndex : stepIndexes) {
+        completionService.submit(new StepCallable(stepIndex, steps.get(stepIndex), loggingContext));
+      }
+      return stepIndexes.size();
+    }
+
+    private static RuntimeException rethrow(Throwable failure) {
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        return (RuntimeException) failure;
+      }
+      return new IllegalStateException(failure);
+    }
+
+    private static final class StepCallable implements Callable<Integer> {
+      private final int stepIndex;
+      private final ComputationStep step;
+      @CheckForNull
+      private final Map<String, String> loggingContext;
+
+      private StepCallable(int stepIndex, ComputationStep step, @Nullable Map<String, String> loggingContext) {
+        this.stepIndex = stepIndex;
+        this.step = step;
+        this.loggingContext = loggingContext;
+      }
+
+      @Override
+      public Integer call() {
+        // logs of steps must go to the log file of the task, which is configured through the MDC
+        if (loggingContext != null) {
+          MDC.setContextMap(loggingContext);
+        }
+        try {
+          Profiler stepProfiler = Profiler.create(LOGGER).start();
+          step.execute();
+          stepProfiler.stopInfo(step.getDescription());
+          return stepIndex;
+        } finally {
+          MDC.clear();
+        }
+      }
+    }
+  }
 }
@@ -21,14 +21,19 @@ package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.measure.PastMeasureDto;
@@ -60,6 +65,9 @@ import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_
  */
 public class ComputeMeasureVariationsStep implements ComputationStep {
 
+  // measures on files are currently purged, so past measures are not available on files
+  private static final CrawlerDepthLimit VISITED_DEPTH = CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW);
+
   private final DbClient dbClient;
   private final TreeRootHolder treeRootHolder;
   private final PeriodsHolder periodsHolder;
@@ -89,25 +97,41 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     DbSession dbSession = dbClient.openSession(false);
     try {
       List<Metric> metrics = from(metricRepository.getAll()).filter(NumericMetric.INSTANCE).toList();
-      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(dbSession, metrics))
+      Set<Integer> metricIds = from(metrics).transform(MetricDtoToMetricId.INSTANCE).toSet();
+      Map<Integer, PastMeasuresByComponentUuid> pastMeasuresByPeriodIndex = loadPastMeasures(dbSession, metricIds);
+      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(metrics, pastMeasuresByPeriodIndex))
         .visit(treeRootHolder.getRoot());
     } finally {
       dbClient.closeSession(dbSession);
     }
   }
 
+  /**
+   * Loads past measures of all the components of the project snapshot of each period, with one query per period,
+   * rather than one query per component and per period.
+   */
+  private Map<Integer, PastMeasuresByComponentUuid> loadPastMeasures(DbSession dbSession, Set<Integer> metricIds) {
+    Set<String> componentUuids = new HashSet<>();
+    new DepthTraversalTypeAwareCrawler(new ComponentUuidsCollector(componentUuids)).visit(treeRootHolder.getRoot());
+
+    Map<Integer, PastMeasuresByComponentUuid> res = new HashMap<>();
+    for (Period period : periodsHolder.getPeriods()) {
+      PastMeasuresByComponentUuid pastMeasures = new PastMeasuresByComponentUuid(componentUuids);
+      dbClient.measureDao().selectByProjectSnapshotIdAndMetricIds(dbSession, period.getSnapshotId(), metricIds, pastMeasures);
+      res.put(period.getIndex(), pastMeasures);
+    }
+    return res;
+  }
+
   private class VariationMeasuresVisitor extends TypeAwareVisitorAdapter {
 
-    private final DbSession session;
-    private final Set<Integer> metricIds;
     private final Map<String, Metric> metricByKeys;
+    private final Map<Integer, PastMeasuresByComponentUuid> pastMeasuresByPeriodIndex;
 
-    public VariationMeasuresVisitor(DbSession session, Iterable<Metric> metrics) {
-      // measures on files are currently purged, so past measures are not available on files
-      super(CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW), PRE_ORDER);
-      this.session = session;
-      this.metricIds = from(metrics).transform(MetricDtoToMetricId.INSTANCE).toSet();
+    public VariationMeasuresVisitor(Iterable<Metric> metrics, Map<Integer, PastMeasuresByComponentUuid> pastMeasuresByPeriodIndex) {
+      super(VISITED_DEPTH, PRE_ORDER);
       this.metricByKeys = from(metrics).uniqueIndex(MetricToKey.INSTANCE);
+      this.pastMeasuresByPeriodIndex = pastMeasuresByPeriodIndex;
     }
 
     @Override
@@ -119,8 +143,7 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     private MeasuresWithVariationRepository computeMeasuresWithVariations(Component component) {
       MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
       for (Period period : periodsHolder.getPeriods()) {
-        List<PastMeasureDto> pastMeasures = dbClient.measureDao()
-          .selectByComponentUuidAndProjectSnapshotIdAndMetricIds(session, component.getUuid(), period.getSnapshotId(), metricIds);
+        List<PastMeasureDto> pastMeasures = pastMeasuresByPeriodIndex.get(period.getIndex()).remove(component.getUuid());
         setVariationMeasures(component, pastMeasures, period.getIndex(), measuresWithVariationRepository);
       }
       return measuresWithVariationRepository;
@@ -170,6 +193,56 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     }
   }
 
+  private static final class ComponentUuidsCollector extends TypeAwareVisitorAdapter {
+    private final Set<String> componentUuids;
+
+    private ComponentUuidsCollector(Set<String> componentUuids) {
+      super(VISITED_DEPTH, PRE_ORDER);
+      this.componentUuids = componentUuids;
+    }
+
+    @Override
+    public void visitAny(Component component) {
+      componentUuids.add(component.getUuid());
+    }
+  }
+
+  /**
+   * Indexes by component uuid the past measures streamed from the DB, ignoring the components which are not visited
+   * and the measures without value.
+   */
+  private static final class PastMeasuresByComponentUuid implements ResultHandler {
+    private final Set<String> componentUuids;
+    private final Map<String, List<PastMeasureDto>> pastMeasures = new HashMap<>();
+
+    private PastMeasuresByComponentUuid(Set<String> componentUuids) {
+      this.componentUuids = componentUuids;
+    }
+
+    @Override
+    public void handleResult(ResultContext resultContext) {
+      PastMeasureDto pastMeasure = (PastMeasureDto) resultContext.getResultObject();
+      String componentUuid = pastMeasure.getComponentUuid();
+      if (!pastMeasure.hasValue() || !componentUuids.contains(componentUuid)) {
+        return;
+      }
+      List<PastMeasureDto> componentPastMeasures = pastMeasures.get(componentUuid);
+      if (componentPastMeasures == null) {
+        componentPastMeasures = new ArrayList<>();
+        pastMeasures.put(componentUuid, componentPastMeasures);
+      }
+      componentPastMeasures.add(pastMeasure);
+    }
+
+    /**
+     * Past measures of the specified component are removed once retrieved, as each component is visited only once.
+     */
+    public List<PastMeasureDto> remove(String componentUuid) {
+      List<PastMeasureDto> res = pastMeasures.remove(componentUuid);
+      return res == null ? Collections.<PastMeasureDto>emptyList() : res;
+    }
+  }
+
   private static final class MeasuresWithVariationRepository {
 
     private final Map<MeasureKey, MeasureWithVariations> measuresWithVariations = new HashMap<>();
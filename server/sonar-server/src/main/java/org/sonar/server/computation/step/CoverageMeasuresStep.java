@@ -20,6 +20,8 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.formula.Formula;
@@ -57,7 +59,7 @@ import static org.sonar.server.computation.formula.SumFormula.createIntSumFormul
 /**
  * Computes coverage measures on files and then aggregates them on higher components.
  */
-public class CoverageMeasuresStep implements ComputationStep {
+public class CoverageMeasuresStep implements MeasureVisitorsStep {
   private static final ImmutableList<Formula> COVERAGE_FORMULAS = ImmutableList.<Formula>of(
     // unit test
     createIntSumFormula(LINES_TO_COVER_KEY),
@@ -96,9 +98,17 @@ public class CoverageMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(
-      FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(COVERAGE_FORMULAS))
-        .visit(treeRootHolder.getRoot());
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
+      .visit(treeRootHolder.getRoot());
+  }
+
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(COVERAGE_FORMULAS);
   }
 
   private static class CodeCoverageFormula extends LinesAndConditionsWithUncoveredFormula {
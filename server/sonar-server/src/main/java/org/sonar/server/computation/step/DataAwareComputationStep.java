@@ -0,0 +1,43 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.Set;
+
+/**
+ * A {@link ComputationStep} which declares the data it reads and writes, so that it can be executed concurrently
+ * with the other steps it shares no data with (see {@link ComputationStepExecutor}).
+ * <p>
+ * A step which does not implement this interface is executed alone: after all the steps declared before it in
+ * {@link ComputationSteps#orderedStepClasses()} and before all the steps declared after it.
+ * </p>
+ * <p>
+ * Implementations must not rely on any other data than the declared ones and must use their own
+ * {@link org.sonar.db.DbSession}. They may be created while the steps declared before them which implement this
+ * interface are executed, so the data written by such steps must not be read when components are created or started.
+ * </p>
+ */
+public interface DataAwareComputationStep extends ComputationStep {
+
+  Set<ComputationStepData> readData();
+
+  Set<ComputationStepData> writtenData();
+
+}
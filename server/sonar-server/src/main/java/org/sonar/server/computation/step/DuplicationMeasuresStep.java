@@ -22,11 +22,13 @@ package org.sonar.server.computation.step;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.duplication.Duplication;
@@ -59,7 +61,7 @@ import static org.sonar.api.measures.CoreMetrics.NCLOC_KEY;
  * 
  * This step must be executed after {@link CommentMeasuresStep} as it depends on {@link CoreMetrics#COMMENT_LINES}
  */
-public class DuplicationMeasuresStep implements ComputationStep {
+public class DuplicationMeasuresStep implements MeasureVisitorsStep {
 
   private final ImmutableList<Formula> formulas;
 
@@ -89,11 +91,19 @@ public class DuplicationMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(
-      FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(formulas))
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
       .visit(treeRootHolder.getRoot());
   }
 
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(formulas);
+  }
+
   private static class DuplicationCounter implements Counter<DuplicationCounter> {
     @CheckForNull
     private final DuplicationRepository duplicationRepository;
@@ -0,0 +1,85 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.server.computation.component.ComponentVisitor;
+import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.component.VisitorsCrawler;
+
+/**
+ * Executes the visitors of all the {@link MeasureVisitorsStep} which compute measures from the report in a single crawl
+ * of the component tree instead of one crawl per step.
+ * <p>
+ * Visitors are registered in the order the steps are declared in {@link ReportComputationSteps}, so that on each
+ * component the measures a visitor depends on have already been computed (eg. {@link DuplicationMeasuresStep} depends on
+ * {@link CommentMeasuresStep}).
+ * </p>
+ */
+public class FusedMeasuresStep implements ComputationStep {
+
+  private static final Logger LOGGER = Loggers.get(FusedMeasuresStep.class);
+
+  private final TreeRootHolder treeRootHolder;
+  private final List<MeasureVisitorsStep> steps;
+
+  public FusedMeasuresStep(TreeRootHolder treeRootHolder, SizeMeasuresStep sizeMeasuresStep, CoverageMeasuresStep coverageMeasuresStep,
+    CommentMeasuresStep commentMeasuresStep, DuplicationMeasuresStep duplicationMeasuresStep,
+    LanguageDistributionMeasuresStep languageDistributionMeasuresStep, UnitTestMeasuresStep unitTestMeasuresStep,
+    ComplexityMeasuresStep complexityMeasuresStep) {
+    this.treeRootHolder = treeRootHolder;
+    this.steps = ImmutableList.of(sizeMeasuresStep, coverageMeasuresStep, commentMeasuresStep, duplicationMeasuresStep,
+      languageDistributionMeasuresStep, unitTestMeasuresStep, complexityMeasuresStep);
+  }
+
+  @Override
+  public String getDescription() {
+    return "Compute measures in a single crawl of the component tree";
+  }
+
+  @Override
+  public void execute() {
+    List<ComponentVisitor> visitors = new ArrayList<>();
+    List<String> visitorNames = new ArrayList<>();
+    for (MeasureVisitorsStep step : steps) {
+      for (ComponentVisitor visitor : step.createVisitors()) {
+        visitors.add(visitor);
+        visitorNames.add(step.getClass().getSimpleName() + "/" + visitor.getClass().getSimpleName());
+      }
+    }
+
+    VisitorsCrawler visitorsCrawler = new VisitorsCrawler(visitors);
+    visitorsCrawler.visit(treeRootHolder.getRoot());
+    logVisitorExecutionDurations(visitors, visitorNames, visitorsCrawler);
+  }
+
+  private static void logVisitorExecutionDurations(List<ComponentVisitor> visitors, List<String> visitorNames, VisitorsCrawler visitorsCrawler) {
+    LOGGER.info("  Execution time for each measure visitor:");
+    Map<ComponentVisitor, Long> cumulativeDurations = visitorsCrawler.getCumulativeDurations();
+    for (int i = 0; i < visitors.size(); i++) {
+      LOGGER.info("  - {} | time={}ms", visitorNames.get(i), cumulativeDurations.get(visitors.get(i)));
+    }
+  }
+}
@@ -19,26 +19,187 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.computation.issue.PersistedIssues;
+import org.sonar.server.computation.issue.RuleRepository;
+import org.sonar.server.issue.index.IssueDoc;
 import org.sonar.server.issue.index.IssueIndexer;
 
+/**
+ * Indexes the issues inserted or updated by {@link PersistIssuesStep}. Documents are built from
+ * {@link IssueCache}, except for the issues in conflict with end-user changes and the issues of
+ * components that are not in the tree anymore, which are loaded from database.
+ */
 public class IndexIssuesStep implements ComputationStep {
 
+  private static final String MODULE_UUID_PATH_SEP = ".";
+
   private final IssueIndexer indexer;
   private final TreeRootHolder treeRootHolder;
+  private final IssueCache issueCache;
+  private final RuleRepository ruleRepository;
+  private final PersistedIssues persistedIssues;
 
-  public IndexIssuesStep(IssueIndexer indexer, TreeRootHolder treeRootHolder) {
+  public IndexIssuesStep(IssueIndexer indexer, TreeRootHolder treeRootHolder, IssueCache issueCache, RuleRepository ruleRepository,
+    PersistedIssues persistedIssues) {
     this.indexer = indexer;
     this.treeRootHolder = treeRootHolder;
+    this.issueCache = issueCache;
+    this.ruleRepository = ruleRepository;
+    this.persistedIssues = persistedIssues;
   }
 
   @Override
   public void execute() {
-    indexer.index(treeRootHolder.getRoot().getUuid());
+    Map<String, ComponentInfo> componentsByUuid = new HashMap<>();
+    Component root = treeRootHolder.getRoot();
+    collect(root, MODULE_UUID_PATH_SEP, componentsByUuid);
+
+    Set<String> keysToLoad = new HashSet<>(persistedIssues.getConflictKeys());
+    CloseableIterator<DefaultIssue> issues = issueCache.traverse();
+    try {
+      indexer.index(root.getUuid(), new DocIterator(issues, root.getUuid(), componentsByUuid, keysToLoad), keysToLoad);
+    } finally {
+      issues.close();
+    }
+  }
+
+  private static void collect(Component component, String parentModuleUuidPath, Map<String, ComponentInfo> componentsByUuid) {
+    String moduleUuidPath = parentModuleUuidPath;
+    if (component.getType() == Component.Type.PROJECT || component.getType() == Component.Type.MODULE) {
+      moduleUuidPath = parentModuleUuidPath + component.getUuid() + MODULE_UUID_PATH_SEP;
+    }
+    componentsByUuid.put(component.getUuid(), new ComponentInfo(component, moduleUuidPath));
+    for (Component child : component.getChildren()) {
+      collect(child, moduleUuidPath, componentsByUuid);
+    }
   }
 
   @Override
   public String getDescription() {
     return "Index issues";
   }
+
+  private class DocIterator extends AbstractIterator<IssueDoc> {
+    private final CloseableIterator<DefaultIssue> issues;
+    private final String projectUuid;
+    private final Map<String, ComponentInfo> componentsByUuid;
+    private final Set<String> keysToLoad;
+    private final Date updatedAt;
+
+    DocIterator(CloseableIterator<DefaultIssue> issues, String projectUuid, Map<String, ComponentInfo> componentsByUuid, Set<String> keysToLoad) {
+      this.issues = issues;
+      this.projectUuid = projectUuid;
+      this.componentsByUuid = componentsByUuid;
+      this.keysToLoad = keysToLoad;
+      this.updatedAt = new Date(persistedIssues.getUpdatedAt());
+    }
+
+    @Override
+    protected IssueDoc computeNext() {
+      while (issues.hasNext()) {
+        DefaultIssue issue = issues.next();
+        if ((issue.isNew() || issue.isChanged()) && !keysToLoad.contains(issue.key())) {
+          ComponentInfo component = componentsByUuid.get(issue.componentUuid());
+          if (component == null) {
+            keysToLoad.add(issue.key());
+          } else {
+            return toDoc(issue, component);
+          }
+        }
+      }
+      return endOfData();
+    }
+
+    private IssueDoc toDoc(DefaultIssue issue, ComponentInfo component) {
+      IssueDoc doc = new IssueDoc();
+      // all the fields must be present, even if value is null
+      doc.setKey(issue.key());
+      doc.setProjectUuid(projectUuid);
+      doc.setTechnicalUpdateDate(updatedAt);
+      doc.setActionPlanKey(issue.actionPlanKey());
+      doc.setAssignee(issue.assignee());
+      doc.setEffortToFix(issue.effortToFix());
+      doc.setAttributes(KeyValueFormat.format(issue.attributes()));
+      doc.setLine(issue.line());
+      doc.setMessage(issue.message());
+      doc.setResolution(issue.resolution());
+      doc.setSeverity(issue.severity());
+      doc.setManualSeverity(issue.manualSeverity());
+      doc.setChecksum(issue.checksum());
+      doc.setStatus(issue.status());
+      doc.setDebt(issue.debtInMinutes());
+      doc.setReporter(issue.reporter());
+      doc.setAuthorLogin(issue.authorLogin());
+      doc.setFuncCloseDate(issue.closeDate());
+      doc.setFuncCreationDate(issue.creationDate());
+      doc.setFuncUpdateDate(issue.updateDate());
+      doc.setRuleKey(issue.ruleKey().toString());
+      doc.setLanguage(ruleRepository.getByKey(issue.ruleKey()).getLanguage());
+      doc.setComponentUuid(issue.componentUuid());
+      doc.setModuleUuid(component.moduleUuid);
+      doc.setModuleUuidPath(component.moduleUuidPath);
+      doc.setFilePath(component.filePath);
+      doc.setDirectoryPath(component.directoryPath);
+      doc.setTags(issue.tags() == null ? ImmutableList.<String>of() : ImmutableList.copyOf(issue.tags()));
+      doc.setType(issue.type());
+      return doc;
+    }
+  }
+
+  /**
+   * The fields of table PROJECTS which are copied into issue documents. See
+   * {@link org.sonar.server.computation.step.PersistComponentsStep}
+   */
+  private static class ComponentInfo {
+    private final String moduleUuid;
+    private final String moduleUuidPath;
+    @CheckForNull
+    private final String filePath;
+    @CheckForNull
+    private final String directoryPath;
+
+    ComponentInfo(Component component, String moduleUuidPath) {
+      this.moduleUuidPath = moduleUuidPath;
+      String withoutTrailingSep = moduleUuidPath.substring(0, moduleUuidPath.length() - 1);
+      this.moduleUuid = withoutTrailingSep.substring(withoutTrailingSep.lastIndexOf(MODULE_UUID_PATH_SEP) + 1);
+      switch (component.getType()) {
+        case DIRECTORY:
+          this.filePath = component.getReportAttributes().getPath();
+          this.directoryPath = filePath;
+          break;
+        case FILE:
+          this.filePath = component.getReportAttributes().getPath();
+          this.directoryPath = directoryOf(filePath);
+          break;
+        default:
+          this.filePath = null;
+          this.directoryPath = null;
+      }
+    }
+
+    @CheckForNull
+    private static String directoryOf(@Nullable String filePath) {
+      if (filePath == null) {
+        return null;
+      }
+      int lastSlashIndex = CharMatcher.anyOf("/").lastIndexIn(filePath);
+      return lastSlashIndex > 0 ? filePath.substring(0, lastSlashIndex) : "/";
+    }
+  }
 }
@@ -19,10 +19,27 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import java.util.EnumSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.test.index.TestIndexer;
 
-public class IndexTestsStep implements ComputationStep {
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.DB_TEST_FILE_SOURCES;
+import static org.sonar.server.computation.step.ComputationStepData.ES_TESTS;
+
+/**
+ * Tests of the project are indexed asynchronously: no step reads them from the index, so the task does not wait for
+ * the indexing pass, which is merged with the other pending requests on the same project.
+ */
+public class IndexTestsStep implements DataAwareComputationStep {
+
+  private static final Logger LOG = Loggers.get(IndexTestsStep.class);
 
   private final TestIndexer indexer;
   private final TreeRootHolder treeRootHolder;
@@ -34,7 +51,28 @@ public class IndexTestsStep implements ComputationStep {
 
   @Override
   public void execute() {
-    indexer.index(treeRootHolder.getRoot().getUuid());
+    final String projectUuid = treeRootHolder.getRoot().getUuid();
+    Futures.addCallback(indexer.indexAsync(projectUuid), new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(@Nullable Void result) {
+        // nothing to do
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error(String.format("Fail to index tests of project %s", projectUuid), t);
+      }
+    });
+  }
+
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, DB_TEST_FILE_SOURCES);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(ES_TESTS);
   }
 
   @Override
@@ -24,12 +24,14 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.TreeMultiset;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.formula.Counter;
@@ -48,7 +50,7 @@ import static org.sonar.api.utils.KeyValueFormat.newIntegerConverter;
 import static org.sonar.api.utils.KeyValueFormat.newStringConverter;
 import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
 
-public class LanguageDistributionMeasuresStep implements ComputationStep {
+public class LanguageDistributionMeasuresStep implements MeasureVisitorsStep {
 
   private static final String UNKNOWN_LANGUAGE_KEY = "<null>";
 
@@ -68,10 +70,19 @@ public class LanguageDistributionMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS))
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
       .visit(treeRootHolder.getRoot());
   }
 
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS);
+  }
+
   private static class LanguageDistributionFormula implements Formula<LanguageDistributionCounter> {
 
     @Override
@@ -20,17 +20,28 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.batch.protocol.output.BatchReport.CpdTextBlock;
+import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
 import org.sonar.server.computation.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
@@ -45,15 +56,22 @@ import org.sonar.server.computation.snapshot.Snapshot;
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.ComputationStepData.ANALYSIS_METADATA;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.CROSS_PROJECT_DUPLICATION_STATUS;
+import static org.sonar.server.computation.step.ComputationStepData.DB_DUPLICATIONS_INDEX;
+import static org.sonar.server.computation.step.ComputationStepData.DUPLICATIONS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
 
 /**
  * Feed the duplications repository from the cross project duplication blocks computed with duplications blocks of the analysis report.
+ * Candidate blocks of other projects are loaded once for the hashes of all the files, then each file is probed in memory.
  *
  * Blocks can be empty if :
  * - The file is excluded from the analysis using {@link org.sonar.api.CoreProperties#CPD_EXCLUSIONS}
  * - On Java, if the number of statements of the file is too small, nothing will be sent.
  */
-public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationStep {
+public class LoadCrossProjectDuplicationsRepositoryStep implements DataAwareComputationStep {
 
   private static final Logger LOGGER = Loggers.get(LoadCrossProjectDuplicationsRepositoryStep.class);
 
@@ -78,51 +96,146 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
   @Override
   public void execute() {
     if (crossProjectDuplicationStatusHolder.isEnabled()) {
-      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor()).visit(treeRootHolder.getRoot());
+      Component project = treeRootHolder.getRoot();
+      HashesCollector hashesCollector = new HashesCollector();
+      new DepthTraversalTypeAwareCrawler(hashesCollector).visit(project);
+      Map<String, CloneIndex> candidatesByLanguage = loadCandidates(hashesCollector.hashesByLanguage);
+      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor(candidatesByLanguage)).visit(project);
     }
   }
 
+  /**
+   * Candidates of all the files of the project are loaded at once, with a few partitioned queries per language,
+   * in a packed in-memory index. Files are then probed against this index, without any other SQL request.
+   */
+  private Map<String, CloneIndex> loadCandidates(Map<String, Set<String>> hashesByLanguage) {
+    Map<String, CloneIndex> candidatesByLanguage = new HashMap<>();
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      Snapshot projectSnapshot = analysisMetadataHolder.getBaseProjectSnapshot();
+      Long projectSnapshotId = projectSnapshot == null ? null : projectSnapshot.getId();
+      for (Map.Entry<String, Set<String>> entry : hashesByLanguage.entrySet()) {
+        CandidatesHandler handler = new CandidatesHandler();
+        dbClient.duplicationDao().selectCandidates(dbSession, projectSnapshotId, entry.getKey(), entry.getValue(), handler);
+        LOGGER.debug("Loaded {} cross project duplication candidates for language {}", handler.count, entry.getKey());
+        candidatesByLanguage.put(entry.getKey(), handler.index);
+      }
+      return candidatesByLanguage;
+    } finally {
+      dbClient.closeSession(dbSession);
+    }
+  }
+
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, REPORT, ANALYSIS_METADATA, CROSS_PROJECT_DUPLICATION_STATUS, DB_DUPLICATIONS_INDEX);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DUPLICATIONS);
+  }
+
   @Override
   public String getDescription() {
     return "Compute cross project duplications";
   }
 
+  private class HashesCollector extends TypeAwareVisitorAdapter {
+    private final Map<String, Set<String>> hashesByLanguage = new HashMap<>();
+
+    private HashesCollector() {
+      super(CrawlerDepthLimit.FILE, PRE_ORDER);
+    }
+
+    @Override
+    public void visitFile(Component file) {
+      String language = file.getFileAttributes().getLanguageKey();
+      if (language == null) {
+        return;
+      }
+      CloseableIterator<CpdTextBlock> blocks = reportReader.readCpdTextBlocks(file.getReportAttributes().getRef());
+      try {
+        if (blocks.hasNext()) {
+          Set<String> hashes = hashesOf(language);
+          while (blocks.hasNext()) {
+            hashes.add(blocks.next().getHash());
+          }
+        }
+      } finally {
+        blocks.close();
+      }
+    }
+
+    private Set<String> hashesOf(String language) {
+      Set<String> hashes = hashesByLanguage.get(language);
+      if (hashes == null) {
+        hashes = new HashSet<>();
+        hashesByLanguage.put(language, hashes);
+      }
+      return hashes;
+    }
+  }
+
   private class CrossProjectDuplicationVisitor extends TypeAwareVisitorAdapter {
+    private final Map<String, CloneIndex> candidatesByLanguage;
 
-    private CrossProjectDuplicationVisitor() {
+    private CrossProjectDuplicationVisitor(Map<String, CloneIndex> candidatesByLanguage) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
+      this.candidatesByLanguage = candidatesByLanguage;
     }
 
     @Override
     public void visitFile(Component file) {
+      CloneIndex candidates = candidatesByLanguage.get(file.getFileAttributes().getLanguageKey());
+      if (candidates == null) {
+        return;
+      }
       List<CpdTextBlock> cpdTextBlocks = newArrayList(reportReader.readCpdTextBlocks(file.getReportAttributes().getRef()));
       LOGGER.trace("Found {} cpd blocks on file {}", cpdTextBlocks.size(), file.getKey());
       if (cpdTextBlocks.isEmpty()) {
         return;
       }
 
-      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toList();
-      List<DuplicationUnitDto> dtos = selectDuplicates(file, hashes);
-      if (dtos.isEmpty()) {
+      List<Block> duplicatedBlocks = new ArrayList<>();
+      for (String hash : from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toSet()) {
+        duplicatedBlocks.addAll(candidates.getBySequenceHash(new ByteArray(hash)));
+      }
+      if (duplicatedBlocks.isEmpty()) {
         return;
       }
 
-      Collection<Block> duplicatedBlocks = from(dtos).transform(DtoToBlock.INSTANCE).toList();
       Collection<Block> originBlocks = from(cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
       LOGGER.trace("Found {} duplicated cpd blocks on file {}", duplicatedBlocks.size(), file.getKey());
 
       integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
     }
+  }
 
-    private List<DuplicationUnitDto> selectDuplicates(Component file, Collection<String> hashes) {
-      DbSession dbSession = dbClient.openSession(false);
-      try {
-        Snapshot projectSnapshot = analysisMetadataHolder.getBaseProjectSnapshot();
-        Long projectSnapshotId = projectSnapshot == null ? null : projectSnapshot.getId();
-        return dbClient.duplicationDao().selectCandidates(dbSession, projectSnapshotId, file.getFileAttributes().getLanguageKey(), hashes);
-      } finally {
-        dbClient.closeSession(dbSession);
+  /**
+   * Packs the candidates streamed from database. Keys of files are shared between the blocks of a same file.
+   */
+  private static class CandidatesHandler implements ResultHandler {
+    private final CloneIndex index = new PackedMemoryCloneIndex();
+    private final Map<String, String> componentKeys = new HashMap<>();
+    private int count = 0;
+
+    @Override
+    public void handleResult(ResultContext context) {
+      DuplicationUnitDto dto = (DuplicationUnitDto) context.getResultObject();
+      String componentKey = componentKeys.get(dto.getComponentKey());
+      if (componentKey == null) {
+        componentKey = dto.getComponentKey();
+        componentKeys.put(componentKey, componentKey);
       }
+      // Note that the dto doesn't contains start/end token indexes
+      index.insert(Block.builder()
+        .setResourceId(componentKey)
+        .setBlockHash(new ByteArray(dto.getHash()))
+        .setIndexInFile(dto.getIndexInFile())
+        .setLines(dto.getStartLine(), dto.getEndLine())
+        .build());
+      count++;
     }
   }
 
@@ -135,21 +248,6 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
     }
   }
 
-  private enum DtoToBlock implements Function<DuplicationUnitDto, Block> {
-    INSTANCE;
-
-    @Override
-    public Block apply(@Nonnull DuplicationUnitDto dto) {
-      // Note that the dto doesn't contains start/end token indexes
-      return Block.builder()
-        .setResourceId(dto.getComponentKey())
-        .setBlockHash(new ByteArray(dto.getHash()))
-        .setIndexInFile(dto.getIndexInFile())
-        .setLines(dto.getStartLine(), dto.getEndLine())
-        .build();
-    }
-  }
-
   private static class CpdTextBlockToBlock implements Function<CpdTextBlock, Block> {
     private final String fileKey;
     private int indexInFile = 0;
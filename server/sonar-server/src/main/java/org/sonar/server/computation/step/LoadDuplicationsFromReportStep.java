@@ -20,6 +20,8 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
+import java.util.EnumSet;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.core.util.CloseableIterator;
@@ -40,11 +42,14 @@ import org.sonar.server.computation.duplication.TextBlock;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.FluentIterable.from;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.POST_ORDER;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.DUPLICATIONS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
 
 /**
  * Loads duplication information from the report and loads them into the {@link DuplicationRepository}.
  */
-public class LoadDuplicationsFromReportStep implements ComputationStep {
+public class LoadDuplicationsFromReportStep implements DataAwareComputationStep {
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader batchReportReader;
   private final DuplicationRepository duplicationRepository;
@@ -55,6 +60,16 @@ public class LoadDuplicationsFromReportStep implements ComputationStep {
     this.duplicationRepository = duplicationRepository;
   }
 
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, REPORT);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DUPLICATIONS);
+  }
+
   @Override
   public String getDescription() {
     return "Load inner file and in project duplications";
@@ -0,0 +1,42 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.List;
+import org.sonar.server.computation.component.ComponentVisitor;
+
+/**
+ * A {@link ComputationStep} which computes measures by crawling the component tree with one or more visitors.
+ * <p>
+ * Such steps can be executed either on their own or have their visitors crawl the tree together with the visitors of
+ * other steps of the same kind (see {@link FusedMeasuresStep}).
+ * </p>
+ */
+public interface MeasureVisitorsStep extends ComputationStep {
+
+  /**
+   * Creates new instances of the visitors of the step, in the order they must visit each component.
+   * <p>
+   * Visitors must only rely on measures of the visited component and of its descendants, so that they can be
+   * executed by a single crawl with visitors of other steps.
+   * </p>
+   */
+  List<ComponentVisitor> createVisitors();
+}
@@ -0,0 +1,93 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.batch.protocol.output.ReportContainer;
+import org.sonar.server.computation.batch.MutableBatchReportFileHolder;
+import org.sonar.server.computation.queue.CeTask;
+import org.sonar.server.computation.queue.report.ReportFiles;
+
+/**
+ * Adds the report container of the {@link CeTask} to the {@link MutableBatchReportFileHolder}. The container is read
+ * in place, only the zip reports sent by older scanners are copied into a temp container.
+ */
+public class OpenReportStep implements ComputationStep {
+  private static final Logger LOG = Loggers.get(OpenReportStep.class);
+
+  private final ReportFiles reportFiles;
+  private final CeTask task;
+  private final TempFolder tempFolder;
+  private final MutableBatchReportFileHolder reportFileHolder;
+
+  public OpenReportStep(ReportFiles reportFiles, CeTask task, TempFolder tempFolder,
+    MutableBatchReportFileHolder reportFileHolder) {
+    this.reportFiles = reportFiles;
+    this.task = task;
+    this.tempFolder = tempFolder;
+    this.reportFileHolder = reportFileHolder;
+  }
+
+  @Override
+  public void execute() {
+    File report = reportFiles.fileForUuid(task.getUuid());
+    if (!report.isFile()) {
+      throw new IllegalStateException("Analysis report does not exist: " + report);
+    }
+    if (ReportContainer.isContainer(report)) {
+      reportFileHolder.setFile(report);
+    } else {
+      reportFileHolder.setFile(convertZip(report));
+    }
+    LOG.info("Analysis report opened | size={}", FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(report)));
+  }
+
+  private File convertZip(File zip) {
+    File file = tempFolder.newFile();
+    try (ReportContainer container = ReportContainer.create(file);
+      ZipInputStream input = new ZipInputStream(new BufferedInputStream(FileUtils.openInputStream(zip)))) {
+      ZipEntry entry;
+      while ((entry = input.getNextEntry()) != null) {
+        if (!entry.isDirectory()) {
+          container.write(entry.getName(), IOUtils.toByteArray(input));
+        }
+      }
+      container.finish();
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to convert %s into %s", zip, file), e);
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return "Open report";
+  }
+
+}
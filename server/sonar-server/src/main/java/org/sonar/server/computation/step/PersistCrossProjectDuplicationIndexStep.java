@@ -19,11 +19,14 @@
  */
 package org.sonar.server.computation.step;
 
+import java.util.EnumSet;
+import java.util.Set;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.db.duplication.DuplicationUnitWriter;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
@@ -34,11 +37,16 @@ import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.duplication.CrossProjectDuplicationStatusHolder;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.CROSS_PROJECT_DUPLICATION_STATUS;
+import static org.sonar.server.computation.step.ComputationStepData.DB_DUPLICATIONS_INDEX;
+import static org.sonar.server.computation.step.ComputationStepData.DB_IDS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
 
 /**
- * Persist cross project duplications text blocks into DUPLICATIONS_INDEX table
+ * Persist cross project duplications text blocks into DUPLICATIONS_INDEX table, through JDBC batches
  */
-public class PersistCrossProjectDuplicationIndexStep implements ComputationStep {
+public class PersistCrossProjectDuplicationIndexStep implements DataAwareComputationStep {
 
   private final DbClient dbClient;
   private final TreeRootHolder treeRootHolder;
@@ -57,14 +65,21 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
 
   @Override
   public void execute() {
-    DbSession session = dbClient.openSession(true);
+    if (!crossProjectDuplicationStatusHolder.isEnabled()) {
+      return;
+    }
+    DbSession session = dbClient.openSession(false);
     try {
-      if (crossProjectDuplicationStatusHolder.isEnabled()) {
-        Component project = treeRootHolder.getRoot();
-        long projectSnapshotId = dbIdsRepository.getSnapshotId(project);
-        new DepthTraversalTypeAwareCrawler(new DuplicationVisitor(session, projectSnapshotId)).visit(project);
+      Component project = treeRootHolder.getRoot();
+      long projectSnapshotId = dbIdsRepository.getSnapshotId(project);
+      DuplicationUnitWriter writer = dbClient.duplicationDao().newWriter(session);
+      try {
+        new DepthTraversalTypeAwareCrawler(new DuplicationVisitor(writer, projectSnapshotId)).visit(project);
+      } finally {
+        writer.close();
       }
-      session.commit();
+      // rows are inserted through JDBC batches, which MyBatis is not aware of
+      session.commit(true);
     } finally {
       dbClient.closeSession(session);
     }
@@ -72,12 +87,12 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
 
   private class DuplicationVisitor extends TypeAwareVisitorAdapter {
 
-    private final DbSession session;
+    private final DuplicationUnitWriter writer;
     private final long projectSnapshotId;
 
-    private DuplicationVisitor(DbSession session, long projectSnapshotId) {
+    private DuplicationVisitor(DuplicationUnitWriter writer, long projectSnapshotId) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
-      this.session = session;
+      this.writer = writer;
       this.projectSnapshotId = projectSnapshotId;
     }
 
@@ -88,20 +103,18 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
 
     private void visitComponent(Component component) {
       int indexInFile = 0;
+      long snapshotId = dbIdsRepository.getSnapshotId(component);
       CloseableIterator<BatchReport.CpdTextBlock> blocks = reportReader.readCpdTextBlocks(component.getReportAttributes().getRef());
       try {
         while (blocks.hasNext()) {
           BatchReport.CpdTextBlock block = blocks.next();
-          dbClient.duplicationDao().insert(
-            session,
-            new DuplicationUnitDto()
-              .setHash(block.getHash())
-              .setStartLine(block.getStartLine())
-              .setEndLine(block.getEndLine())
-              .setIndexInFile(indexInFile)
-              .setSnapshotId(dbIdsRepository.getSnapshotId(component))
-              .setProjectSnapshotId(projectSnapshotId)
-            );
+          writer.append(new DuplicationUnitDto()
+            .setHash(block.getHash())
+            .setStartLine(block.getStartLine())
+            .setEndLine(block.getEndLine())
+            .setIndexInFile(indexInFile)
+            .setSnapshotId(snapshotId)
+            .setProjectSnapshotId(projectSnapshotId));
           indexInFile++;
         }
       } finally {
@@ -110,6 +123,16 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
     }
   }
 
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, REPORT, DB_IDS, CROSS_PROJECT_DUPLICATION_STATUS);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DB_DUPLICATIONS_INDEX);
+  }
+
   @Override
   public String getDescription() {
     return "Persist cross project duplications index";
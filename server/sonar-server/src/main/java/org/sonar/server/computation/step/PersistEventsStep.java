@@ -20,6 +20,8 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
+import java.util.EnumSet;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
@@ -38,8 +40,13 @@ import org.sonar.server.computation.event.Event;
 import org.sonar.server.computation.event.EventRepository;
 
 import static com.google.common.collect.Iterables.transform;
+import static org.sonar.server.computation.step.ComputationStepData.ANALYSIS_METADATA;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.DB_EVENTS;
+import static org.sonar.server.computation.step.ComputationStepData.DB_IDS;
+import static org.sonar.server.computation.step.ComputationStepData.EVENTS;
 
-public class PersistEventsStep implements ComputationStep {
+public class PersistEventsStep implements DataAwareComputationStep {
 
   private final DbClient dbClient;
   private final System2 system2;
@@ -130,6 +137,16 @@ public class PersistEventsStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, ANALYSIS_METADATA, EVENTS, DB_IDS);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DB_EVENTS);
+  }
+
   @Override
   public String getDescription() {
     return "Persist events";
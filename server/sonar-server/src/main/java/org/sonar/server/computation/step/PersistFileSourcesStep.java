@@ -22,9 +22,11 @@ package org.sonar.server.computation.step;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -61,8 +63,13 @@ import org.sonar.server.computation.source.SourceLinesRepository;
 import org.sonar.server.computation.source.SymbolsLineReader;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.DB_FILE_SOURCES;
+import static org.sonar.server.computation.step.ComputationStepData.DUPLICATIONS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
+import static org.sonar.server.computation.step.ComputationStepData.SOURCES;
 
-public class PersistFileSourcesStep implements ComputationStep {
+public class PersistFileSourcesStep implements DataAwareComputationStep {
 
   private final DbClient dbClient;
   private final System2 system2;
@@ -249,6 +256,16 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, REPORT, SOURCES, DUPLICATIONS);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DB_FILE_SOURCES);
+  }
+
   @Override
   public String getDescription() {
     return "Persist sources";
@@ -32,6 +32,7 @@ import org.sonar.server.computation.issue.UpdateConflictResolver;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.computation.issue.PersistedIssues;
 import org.sonar.server.computation.issue.RuleRepository;
 import org.sonar.db.DbClient;
 import org.sonar.core.util.CloseableIterator;
@@ -43,14 +44,16 @@ public class PersistIssuesStep implements ComputationStep {
   private final UpdateConflictResolver conflictResolver;
   private final RuleRepository ruleRepository;
   private final IssueCache issueCache;
+  private final PersistedIssues persistedIssues;
 
   public PersistIssuesStep(DbClient dbClient, System2 system2, UpdateConflictResolver conflictResolver,
-    RuleRepository ruleRepository, IssueCache issueCache) {
+    RuleRepository ruleRepository, IssueCache issueCache, PersistedIssues persistedIssues) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.conflictResolver = conflictResolver;
     this.ruleRepository = ruleRepository;
     this.issueCache = issueCache;
+    this.persistedIssues = persistedIssues;
   }
 
   @Override
@@ -58,6 +61,9 @@ public class PersistIssuesStep implements ComputationStep {
     DbSession session = dbClient.openSession(true);
     IssueMapper mapper = session.getMapper(IssueMapper.class);
     IssueChangeMapper changeMapper = session.getMapper(IssueChangeMapper.class);
+    // same date for all the issues, so that they can be indexed without reading database
+    long now = system2.now();
+    persistedIssues.setUpdatedAt(now);
 
     CloseableIterator<DefaultIssue> issues = issueCache.traverse();
     try {
@@ -66,16 +72,17 @@ public class PersistIssuesStep implements ComputationStep {
         boolean saved = false;
         if (issue.isNew()) {
           Integer ruleId = ruleRepository.getByKey(issue.ruleKey()).getId();
-          IssueDto dto = IssueDto.toDtoForComputationInsert(issue, ruleId, system2.now());
+          IssueDto dto = IssueDto.toDtoForComputationInsert(issue, ruleId, now);
           mapper.insert(dto);
           saved = true;
         } else if (issue.isChanged()) {
-          IssueDto dto = IssueDto.toDtoForUpdate(issue, system2.now());
+          IssueDto dto = IssueDto.toDtoForUpdate(issue, now);
           int updateCount = mapper.updateIfBeforeSelectedDate(dto);
           if (updateCount == 0) {
             // End-user and scan changed the issue at the same time.
             // See https://jira.sonarsource.com/browse/SONAR-4309
             conflictResolver.resolve(issue, mapper);
+            persistedIssues.addConflict(issue.key());
           }
           saved = true;
         }
@@ -22,6 +22,7 @@ package org.sonar.server.computation.step;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -43,11 +44,14 @@ import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.ComputationStepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.ComputationStepData.DB_PROJECT_LINKS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
 
 /**
  * Persist project and module links
  */
-public class PersistProjectLinksStep implements ComputationStep {
+public class PersistProjectLinksStep implements DataAwareComputationStep {
 
   private final DbClient dbClient;
   private final I18n i18n;
@@ -155,6 +159,16 @@ public class PersistProjectLinksStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<ComputationStepData> readData() {
+    return EnumSet.of(COMPONENT_TREE, REPORT);
+  }
+
+  @Override
+  public Set<ComputationStepData> writtenData() {
+    return EnumSet.of(DB_PROJECT_LINKS);
+  }
+
   @Override
   public String getDescription() {
     return "Persist project links";
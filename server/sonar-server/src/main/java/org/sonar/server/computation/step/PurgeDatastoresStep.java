@@ -19,37 +19,41 @@
  */
 package org.sonar.server.computation.step;
 
-import org.sonar.server.computation.dbcleaner.ProjectCleaner;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
-import org.sonar.db.purge.IdUuidPair;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.computation.component.Component;
-import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareCrawler;
-import org.sonar.server.computation.component.SettingsRepository;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeTaskSubmit;
 
 import static org.sonar.server.computation.component.Component.Type.PROJECT;
 import static org.sonar.server.computation.component.Component.Type.VIEW;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 import static org.sonar.server.computation.component.CrawlerDepthLimit.reportMaxDepth;
 
+/**
+ * The purge of the history of the project is not executed by the analysis, but by a task of type
+ * {@link CeTaskTypes#PURGE}, which is processed by {@link org.sonar.server.computation.taskprocessor.purge.PurgeTaskProcessor}
+ * after the pending analyses.
+ */
 public class PurgeDatastoresStep implements ComputationStep {
 
-  private final ProjectCleaner projectCleaner;
+  private static final Logger LOG = Loggers.get(PurgeDatastoresStep.class);
+
   private final DbClient dbClient;
-  private final DbIdsRepository dbIdsRepository;
+  private final CeQueue queue;
   private final TreeRootHolder treeRootHolder;
-  private final SettingsRepository settingsRepository;
 
-  public PurgeDatastoresStep(DbClient dbClient, ProjectCleaner projectCleaner, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder,
-    SettingsRepository settingsRepository) {
-    this.projectCleaner = projectCleaner;
+  public PurgeDatastoresStep(DbClient dbClient, CeQueue queue, TreeRootHolder treeRootHolder) {
     this.dbClient = dbClient;
-    this.dbIdsRepository = dbIdsRepository;
+    this.queue = queue;
     this.treeRootHolder = treeRootHolder;
-    this.settingsRepository = settingsRepository;
   }
 
   @Override
@@ -69,10 +73,28 @@ public class PurgeDatastoresStep implements ComputationStep {
   }
 
   private void execute(Component root) {
-    DbSession session = dbClient.openSession(true);
+    if (queue.isSubmitPaused()) {
+      LOG.info("Submit of tasks is paused. Purge of {} is postponed to its next analysis.", root.getKey());
+      return;
+    }
+    if (isPurgePending(root.getUuid())) {
+      return;
+    }
+    CeTaskSubmit.Builder submit = queue.prepareSubmit();
+    submit.setType(CeTaskTypes.PURGE);
+    submit.setComponentUuid(root.getUuid());
+    queue.submit(submit.build());
+  }
+
+  private boolean isPurgePending(String componentUuid) {
+    DbSession session = dbClient.openSession(false);
     try {
-      projectCleaner.purge(session, new IdUuidPair(dbIdsRepository.getComponentId(root), root.getUuid()), settingsRepository.getSettings(root));
-      session.commit();
+      for (CeQueueDto dto : dbClient.ceQueueDao().selectByComponentUuid(session, componentUuid)) {
+        if (CeTaskTypes.PURGE.equals(dto.getTaskType()) && dto.getStatus() == CeQueueDto.Status.PENDING) {
+          return true;
+        }
+      }
+      return false;
     } finally {
       dbClient.closeSession(session);
     }
@@ -80,6 +102,6 @@ public class PurgeDatastoresStep implements ComputationStep {
 
   @Override
   public String getDescription() {
-    return "Purge db";
+    return "Submit purge of db";
   }
 }
@@ -23,6 +23,7 @@ import com.google.common.base.Predicate;
 import java.util.Arrays;
 import java.util.List;
 import javax.annotation.Nonnull;
+import org.sonar.server.computation.configuration.CeConfiguration;
 import org.sonar.server.computation.container.ComputeEngineContainer;
 import org.sonar.server.devcockpit.DevCockpitBridge;
 
@@ -34,7 +35,7 @@ import static com.google.common.collect.FluentIterable.from;
 public class ReportComputationSteps extends AbstractComputationSteps {
 
   private static final List<Class<? extends ComputationStep>> STEPS = Arrays.asList(
-    ExtractReportStep.class,
+    OpenReportStep.class,
     LogScannerContextStep.class,
 
     // Builds Component tree
@@ -53,13 +54,15 @@ public class ReportComputationSteps extends AbstractComputationSteps {
     LoadCrossProjectDuplicationsRepositoryStep.class,
 
     // data computation
-    SizeMeasuresStep.class,
     NewCoverageMeasuresStep.class,
+    CustomMeasuresCopyStep.class,
+    DuplicationDataMeasuresStep.class,
+    // Must not be separated by other steps, so that FusedMeasuresStep does not change the execution order of the steps it replaces
+    FusedMeasuresStep.class,
+    SizeMeasuresStep.class,
     CoverageMeasuresStep.class,
     CommentMeasuresStep.class,
-    CustomMeasuresCopyStep.class,
     DuplicationMeasuresStep.class,
-    DuplicationDataMeasuresStep.class,
     LanguageDistributionMeasuresStep.class,
     UnitTestMeasuresStep.class,
     ComplexityMeasuresStep.class,
@@ -125,6 +128,33 @@ public class ReportComputationSteps extends AbstractComputationSteps {
       .toList();
   }
 
+  /**
+   * When {@link CeConfiguration#isMeasureStepsFused()} is {@code true}, the steps implementing {@link MeasureVisitorsStep}
+   * are not executed on their own but through {@link FusedMeasuresStep}.
+   */
+  @Override
+  public Iterable<ComputationStep> instances() {
+    CeConfiguration ceConfiguration = computeEngineContainer.getComponentByType(CeConfiguration.class);
+    boolean measureStepsFused = ceConfiguration != null && ceConfiguration.isMeasureStepsFused();
+    return instances(from(orderedStepClasses()).filter(new IsExecutedStep(measureStepsFused)));
+  }
+
+  private static class IsExecutedStep implements Predicate<Class<? extends ComputationStep>> {
+    private final boolean measureStepsFused;
+
+    private IsExecutedStep(boolean measureStepsFused) {
+      this.measureStepsFused = measureStepsFused;
+    }
+
+    @Override
+    public boolean apply(@Nonnull Class<? extends ComputationStep> input) {
+      if (measureStepsFused) {
+        return !MeasureVisitorsStep.class.isAssignableFrom(input);
+      }
+      return !input.equals(FusedMeasuresStep.class);
+    }
+  }
+
   private class AllowPersistDevelopersStepIfDevCockpitPluginInstalled implements Predicate<Class<? extends ComputationStep>> {
 
     private final boolean devCockpitIsInstalled = computeEngineContainer.getComponentByType(DevCockpitBridge.class) != null;
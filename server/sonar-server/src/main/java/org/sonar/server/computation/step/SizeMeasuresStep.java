@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import java.util.List;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.PathAwareVisitorAdapter;
@@ -50,7 +51,7 @@ import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
 /**
  * Compute size measures
  */
-public class SizeMeasuresStep implements ComputationStep {
+public class SizeMeasuresStep implements MeasureVisitorsStep {
   private static final CounterStackElementFactory COUNTER_STACK_ELEMENT_FACTORY = new CounterStackElementFactory();
   private static final List<Formula> AGGREGATED_SIZE_MEASURE_FORMULAS = ImmutableList.<Formula>of(
     createIntSumFormula(LINES_KEY),
@@ -74,14 +75,26 @@ public class SizeMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
+    new PathAwareCrawler<>(createFileAndDirectoryMeasureVisitor())
+      .visit(treeRootHolder.getRoot());
+    new PathAwareCrawler<>(createAggregatedSizeMeasuresVisitor())
+      .visit(treeRootHolder.getRoot());
+  }
+
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFileAndDirectoryMeasureVisitor(), createAggregatedSizeMeasuresVisitor());
+  }
+
+  private FileAndDirectoryMeasureVisitor createFileAndDirectoryMeasureVisitor() {
     Metric fileMetric = metricRepository.getByKey(CoreMetrics.FILES_KEY);
     Metric directoryMetric = metricRepository.getByKey(CoreMetrics.DIRECTORIES_KEY);
+    return new FileAndDirectoryMeasureVisitor(directoryMetric, fileMetric);
+  }
 
-    new PathAwareCrawler<>(new FileAndDirectoryMeasureVisitor(directoryMetric, fileMetric))
-      .visit(treeRootHolder.getRoot());
-    new PathAwareCrawler<>(FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository)
-      .buildFor(AGGREGATED_SIZE_MEASURE_FORMULAS))
-        .visit(treeRootHolder.getRoot());
+  private FormulaExecutorComponentVisitor createAggregatedSizeMeasuresVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository)
+      .buildFor(AGGREGATED_SIZE_MEASURE_FORMULAS);
   }
 
   @Override
@@ -21,7 +21,9 @@ package org.sonar.server.computation.step;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import java.util.List;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
 import org.sonar.server.computation.component.PathAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
@@ -47,7 +49,7 @@ import static org.sonar.server.computation.formula.SumFormula.createLongSumFormu
 /**
  * Computes unit test measures on files and then aggregates them on higher components.
  */
-public class UnitTestMeasuresStep implements ComputationStep {
+public class UnitTestMeasuresStep implements MeasureVisitorsStep {
 
   private static final String[] METRICS = new String[] {TESTS_KEY, TEST_ERRORS_KEY, TEST_FAILURES_KEY, TEST_SUCCESS_DENSITY_KEY};
 
@@ -68,9 +70,17 @@ public class UnitTestMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    new PathAwareCrawler<>(
-      FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS))
-        .visit(treeRootHolder.getRoot());
+    new PathAwareCrawler<>(createFormulaExecutorVisitor())
+      .visit(treeRootHolder.getRoot());
+  }
+
+  @Override
+  public List<ComponentVisitor> createVisitors() {
+    return ImmutableList.<ComponentVisitor>of(createFormulaExecutorVisitor());
+  }
+
+  private FormulaExecutorComponentVisitor createFormulaExecutorVisitor() {
+    return FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository).buildFor(FORMULAS);
   }
 
   private static class UnitTestsFormula implements Formula<UnitTestsCounter> {
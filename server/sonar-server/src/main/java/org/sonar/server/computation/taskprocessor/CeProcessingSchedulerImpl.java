@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableScheduledFuture;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.CheckForNull;
@@ -31,24 +32,36 @@ import org.picocontainer.Startable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.computation.configuration.CeConfiguration;
+import org.sonar.server.computation.queue.CeQueueSubmitListener;
+import org.sonar.server.computation.queue.CeQueueSubmitNotifier;
 
-import static com.google.common.util.concurrent.Futures.addCallback;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
-public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startable {
+/**
+ * Chains the executions of {@link CeWorkerCallable}, one chain per worker.
+ * <p>
+ * When the queue is empty, a worker waits for the queue polling delay before peeking again. This delay is cut short
+ * when tasks are submitted to the queue in the same JVM (see {@link CeQueueSubmitNotifier}): waiting workers are
+ * immediately woken up. Polling is kept as a fallback for tasks which are not notified (eg. inserted in DB by another
+ * process or made available again by {@link org.sonar.server.computation.queue.CeQueueCleaner}).
+ * </p>
+ */
+public class CeProcessingSchedulerImpl implements CeProcessingScheduler, CeQueueSubmitListener, Startable {
   private static final Logger LOG = Loggers.get(CeProcessingSchedulerImpl.class);
 
   private final CeProcessingSchedulerExecutorService executorService;
   private final CeWorkerCallable workerRunnable;
+  private final CeQueueSubmitNotifier submitNotifier;
 
   private final long delayBetweenTasks;
   private final TimeUnit timeUnit;
   private final ChainingCallback[] chainingCallbacks;
 
   public CeProcessingSchedulerImpl(CeConfiguration ceConfiguration,
-    CeProcessingSchedulerExecutorService processingExecutorService, CeWorkerCallable workerRunnable) {
+    CeProcessingSchedulerExecutorService processingExecutorService, CeWorkerCallable workerRunnable, CeQueueSubmitNotifier submitNotifier) {
     this.executorService = processingExecutorService;
     this.workerRunnable = workerRunnable;
+    this.submitNotifier = submitNotifier;
 
     this.delayBetweenTasks = ceConfiguration.getQueuePollingDelay();
     this.timeUnit = MILLISECONDS;
@@ -69,21 +82,42 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
   public void startScheduling() {
     for (ChainingCallback chainingCallback : chainingCallbacks) {
       ListenableScheduledFuture<Boolean> future = executorService.schedule(workerRunnable, delayBetweenTasks, timeUnit);
-      addCallback(future, chainingCallback, executorService);
+      chainingCallback.waitFor(future);
     }
+    submitNotifier.addListener(this);
   }
 
   @Override
   public void stop() {
+    submitNotifier.removeListener(this);
     for (ChainingCallback chainingCallback : chainingCallbacks) {
       chainingCallback.stop();
     }
   }
 
+  /**
+   * Wakes up as many waiting workers as tasks have been submitted. Busy workers are not impacted: they will peek
+   * the queue again as soon as they are done with their current task.
+   */
+  @Override
+  public void onSubmitted(int taskCount) {
+    int remaining = taskCount;
+    for (ChainingCallback chainingCallback : chainingCallbacks) {
+      if (remaining <= 0) {
+        return;
+      }
+      if (chainingCallback.wakeUp()) {
+        remaining--;
+      }
+    }
+  }
+
   private class ChainingCallback implements FutureCallback<Boolean> {
     private final AtomicBoolean keepRunning = new AtomicBoolean(true);
     @CheckForNull
     private ListenableFuture<Boolean> workerFuture;
+    // true when workerFuture is a delayed execution which has not started yet
+    private boolean waiting = false;
 
     @Override
     public void onSuccess(@Nullable Boolean result) {
@@ -96,6 +130,10 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
 
     @Override
     public void onFailure(Throwable t) {
+      if (t instanceof CancellationException) {
+        // future has been cancelled either by stop() (nothing to chain) or by wakeUp() (already chained)
+        return;
+      }
       if (t instanceof Error) {
         LOG.error("Compute Engine execution failed. Scheduled processing interrupted.", t);
       } else {
@@ -103,20 +141,41 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
       }
     }
 
-    private void chainWithoutDelay() {
+    private synchronized void waitFor(ListenableScheduledFuture<Boolean> future) {
+      workerFuture = future;
+      waiting = true;
+      addCallback();
+    }
+
+    private synchronized void chainWithoutDelay() {
+      waiting = false;
       if (keepRunning()) {
         workerFuture = executorService.submit(workerRunnable);
       }
       addCallback();
     }
 
-    private void chainWithDelay() {
+    private synchronized void chainWithDelay() {
       if (keepRunning()) {
         workerFuture = executorService.schedule(workerRunnable, delayBetweenTasks, timeUnit);
+        waiting = true;
       }
       addCallback();
     }
 
+    /**
+     * Replaces the pending delayed execution by an immediate one.
+     *
+     * @return {@code false} if the worker is not waiting (eg. it is processing a task or has been stopped)
+     */
+    private synchronized boolean wakeUp() {
+      if (!waiting || !keepRunning() || workerFuture == null || !workerFuture.cancel(false)) {
+        return false;
+      }
+      chainWithoutDelay();
+      return true;
+    }
+
     private void addCallback() {
       if (workerFuture != null && keepRunning()) {
         Futures.addCallback(workerFuture, this, executorService);
@@ -127,7 +186,7 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
       return keepRunning.get();
     }
 
-    public void stop() {
+    public synchronized void stop() {
       this.keepRunning.set(false);
       if (workerFuture != null) {
         workerFuture.cancel(false);
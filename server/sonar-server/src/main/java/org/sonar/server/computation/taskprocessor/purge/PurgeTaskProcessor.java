@@ -0,0 +1,139 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.taskprocessor.purge;
+
+import com.google.common.base.Optional;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.purge.IdUuidPair;
+import org.sonar.db.purge.PurgeYieldCondition;
+import org.sonar.db.purge.PurgeYieldedException;
+import org.sonar.server.computation.dbcleaner.ProjectCleaner;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeTask;
+import org.sonar.server.computation.queue.CeTaskResult;
+import org.sonar.server.computation.queue.CeTaskSubmit;
+import org.sonar.server.computation.taskprocessor.CeTaskProcessor;
+import org.sonar.server.properties.ProjectSettingsFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Purges the history of a project or of a view, out of the processing of its analysis.
+ * <p>
+ * The purge is resumable: deletions are committed progressively and the snapshots already
+ * purged are flagged, so a task interrupted by a stop of the server continues where it was
+ * when it is processed again.
+ * </p>
+ * <p>
+ * When throttled, the purge stops as soon as another task of the same component, typically the processing
+ * of a new analysis report, is pending. The remaining of the purge is submitted again to the queue, so that
+ * it is processed after this task.
+ * </p>
+ */
+public class PurgeTaskProcessor implements CeTaskProcessor {
+
+  private static final Logger LOG = Loggers.get(PurgeTaskProcessor.class);
+  private static final Set<String> HANDLED_TYPES = Collections.singleton(CeTaskTypes.PURGE);
+
+  private final DbClient dbClient;
+  private final ProjectCleaner projectCleaner;
+  private final ProjectSettingsFactory projectSettingsFactory;
+  private final CeQueue queue;
+
+  public PurgeTaskProcessor(DbClient dbClient, ProjectCleaner projectCleaner, ProjectSettingsFactory projectSettingsFactory, CeQueue queue) {
+    this.dbClient = dbClient;
+    this.queue = queue;
+    this.projectCleaner = projectCleaner;
+    this.projectSettingsFactory = projectSettingsFactory;
+  }
+
+  @Override
+  public Set<String> getHandledCeTaskTypes() {
+    return HANDLED_TYPES;
+  }
+
+  @Override
+  @CheckForNull
+  public CeTaskResult process(CeTask task) {
+    String componentUuid = task.getComponentUuid();
+    checkArgument(componentUuid != null, "Purge task %s has no component", task.getUuid());
+    // not a batch session, so that the number of deleted rows is known and the throttling can apply
+    DbSession session = dbClient.openSession(false);
+    try {
+      Optional<ComponentDto> root = dbClient.componentDao().selectByUuid(session, componentUuid);
+      if (root.isPresent()) {
+        ComponentDto component = root.get();
+        purge(session, component);
+      } else {
+        LOG.debug("Component {} does not exist anymore, nothing to purge", componentUuid);
+      }
+      return null;
+    } finally {
+      dbClient.closeSession(session);
+    }
+  }
+
+  private void purge(DbSession session, ComponentDto component) {
+    try {
+      projectCleaner.purge(session, new IdUuidPair(component.getId(), component.uuid()), projectSettingsFactory.newProjectSettings(component.key()),
+        new OtherTaskPending(component.uuid()));
+      session.commit();
+    } catch (PurgeYieldedException e) {
+      session.commit();
+      LOG.info("Purge of {} stopped to let pending tasks be processed, it is submitted again", component.key());
+      CeTaskSubmit.Builder submit = queue.prepareSubmit();
+      submit.setType(CeTaskTypes.PURGE);
+      submit.setComponentUuid(component.uuid());
+      queue.submit(submit.build());
+    }
+  }
+
+  private class OtherTaskPending implements PurgeYieldCondition {
+    private final String componentUuid;
+
+    private OtherTaskPending(String componentUuid) {
+      this.componentUuid = componentUuid;
+    }
+
+    @Override
+    public boolean shouldYield() {
+      DbSession session = dbClient.openSession(false);
+      try {
+        for (CeQueueDto dto : dbClient.ceQueueDao().selectByComponentUuid(session, componentUuid)) {
+          if (!CeTaskTypes.PURGE.equals(dto.getTaskType()) && dto.getStatus() == CeQueueDto.Status.PENDING) {
+            return true;
+          }
+        }
+        return false;
+      } finally {
+        dbClient.closeSession(session);
+      }
+    }
+  }
+}
@@ -33,6 +33,8 @@ public class CeWsModule extends Module {
       LogsAction.class,
       ComponentAction.class,
       SubmitAction.class,
+      UploadAction.class,
+      UploadStatusAction.class,
       TaskFormatter.class,
       TaskAction.class,
       TaskTypesAction.class);
@@ -19,7 +19,9 @@
  */
 package org.sonar.server.computation.ws;
 
+import com.google.common.base.Predicate;
 import java.util.List;
+import javax.annotation.Nonnull;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
@@ -30,9 +32,11 @@ import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeActivityDto;
 import org.sonar.db.ce.CeTaskQuery;
 import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.user.UserSession;
 import org.sonar.server.ws.WsUtils;
 
+import static com.google.common.collect.FluentIterable.from;
 import static org.sonarqube.ws.WsCe.ProjectResponse;
 
 public class ComponentAction implements CeWsAction {
@@ -70,9 +74,13 @@ public class ComponentAction implements CeWsAction {
 
     DbSession dbSession = dbClient.openSession(false);
     try {
-      List<CeQueueDto> queueDtos = dbClient.ceQueueDao().selectByComponentUuid(dbSession, componentUuid);
+      // background tasks like purges are not reported as the current analysis of the component
+      List<CeQueueDto> queueDtos = from(dbClient.ceQueueDao().selectByComponentUuid(dbSession, componentUuid))
+        .filter(IsReportTask.INSTANCE)
+        .toList();
       CeTaskQuery activityQuery = new CeTaskQuery()
         .setComponentUuid(componentUuid)
+        .setType(CeTaskTypes.REPORT)
         .setOnlyCurrents(true);
       List<CeActivityDto> activityDtos = dbClient.ceActivityDao().selectByQuery(dbSession, activityQuery, 0, 1);
 
@@ -87,4 +95,13 @@ public class ComponentAction implements CeWsAction {
       dbClient.closeSession(dbSession);
     }
   }
+
+  private enum IsReportTask implements Predicate<CeQueueDto> {
+    INSTANCE;
+
+    @Override
+    public boolean apply(@Nonnull CeQueueDto input) {
+      return CeTaskTypes.REPORT.equals(input.getTaskType());
+    }
+  }
 }
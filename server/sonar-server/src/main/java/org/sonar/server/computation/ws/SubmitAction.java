@@ -24,11 +24,18 @@ import org.apache.commons.lang.StringUtils;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonar.core.util.Uuids;
 import org.sonar.server.computation.queue.CeTask;
 import org.sonar.server.computation.queue.report.ReportSubmitter;
+import org.sonar.server.computation.queue.report.ReportUploads;
 import org.sonar.server.ws.WsUtils;
 import org.sonarqube.ws.WsCe;
 
+import static org.sonar.server.ws.WsUtils.checkRequest;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CODEC;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
+
 public class SubmitAction implements CeWsAction {
 
   public static final String PARAM_PROJECT_KEY = "projectKey";
@@ -37,9 +44,11 @@ public class SubmitAction implements CeWsAction {
   public static final String PARAM_REPORT_DATA = "report";
 
   private final ReportSubmitter reportSubmitter;
+  private final ReportUploads reportUploads;
 
-  public SubmitAction(ReportSubmitter reportSubmitter) {
+  public SubmitAction(ReportSubmitter reportSubmitter, ReportUploads reportUploads) {
     this.reportSubmitter = reportSubmitter;
+    this.reportUploads = reportUploads;
   }
 
   @Override
@@ -72,8 +81,21 @@ public class SubmitAction implements CeWsAction {
 
     action
       .createParam(PARAM_REPORT_DATA)
-      .setRequired(true)
-      .setDescription("Report file. Format is not an API, it changes among SonarQube versions.");
+      .setDescription("Report file. Format is not an API, it changes among SonarQube versions. " +
+        "Either this parameter or the parameter '" + PARAM_UPLOAD_ID + "' must be set.");
+
+    action
+      .createParam(PARAM_UPLOAD_ID)
+      .setDescription("Id of a report sent by chunks to api/ce/upload. The upload is deleted once submitted.")
+      .setSince("5.5")
+      .setExampleValue(Uuids.UUID_EXAMPLE_01);
+
+    action
+      .createParam(PARAM_CODEC)
+      .setDescription("Compression of the report sent by chunks")
+      .setSince("5.5")
+      .setPossibleValues(ReportCodec.keys())
+      .setDefaultValue(ReportCodec.NONE.key());
   }
 
   @Override
@@ -81,9 +103,18 @@ public class SubmitAction implements CeWsAction {
     String projectKey = wsRequest.mandatoryParam(PARAM_PROJECT_KEY);
     String projectBranch = wsRequest.param(PARAM_PROJECT_BRANCH);
     String projectName = StringUtils.defaultIfBlank(wsRequest.param(PARAM_PROJECT_NAME), projectKey);
-    InputStream reportInput = wsRequest.paramAsInputStream(PARAM_REPORT_DATA);
+    String uploadId = wsRequest.param(PARAM_UPLOAD_ID);
 
-    CeTask task = reportSubmitter.submit(projectKey, projectBranch, projectName, reportInput);
+    CeTask task;
+    if (uploadId == null) {
+      InputStream reportInput = wsRequest.paramAsInputStream(PARAM_REPORT_DATA);
+      checkRequest(reportInput != null, "Either parameter '%s' or '%s' must be set", PARAM_REPORT_DATA, PARAM_UPLOAD_ID);
+      task = reportSubmitter.submit(projectKey, projectBranch, projectName, reportInput);
+    } else {
+      ReportCodec codec = ReportCodec.fromKey(wsRequest.mandatoryParam(PARAM_CODEC));
+      task = reportSubmitter.submit(projectKey, projectBranch, projectName, reportUploads.open(projectKey, uploadId, codec));
+      reportUploads.delete(uploadId);
+    }
 
     WsCe.SubmitResponse submitResponse = WsCe.SubmitResponse.newBuilder()
       .setTaskId(task.getUuid())
@@ -0,0 +1,100 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import java.io.InputStream;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.core.util.Uuids;
+import org.sonar.server.computation.queue.report.ReportUploads;
+import org.sonar.server.user.UserSession;
+import org.sonar.server.ws.WsUtils;
+import org.sonarqube.ws.WsCe;
+
+import static org.sonar.core.permission.GlobalPermissions.SCAN_EXECUTION;
+import static org.sonar.server.ws.WsUtils.checkRequest;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CHUNK;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_OFFSET;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_PROJECT_KEY;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
+
+public class UploadAction implements CeWsAction {
+
+  private final UserSession userSession;
+  private final ReportUploads reportUploads;
+
+  public UploadAction(UserSession userSession, ReportUploads reportUploads) {
+    this.userSession = userSession;
+    this.reportUploads = reportUploads;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("upload")
+      .setDescription("Sends a chunk of a report. Chunks are assembled by the server and the report is submitted to the queue by " +
+        "api/ce/submit. If a chunk fails, then the upload is resumed from the number of bytes returned by api/ce/upload_status. " +
+        "Requires analysis permission.")
+      .setPost(true)
+      .setInternal(true)
+      .setSince("5.5")
+      .setHandler(this)
+      .setResponseExample(getClass().getResource("upload-example.json"));
+
+    action
+      .createParam(PARAM_PROJECT_KEY)
+      .setRequired(true)
+      .setDescription("Key of project")
+      .setExampleValue("my_project");
+
+    action
+      .createParam(PARAM_UPLOAD_ID)
+      .setRequired(true)
+      .setDescription("Id of the upload, chosen by the client")
+      .setExampleValue(Uuids.UUID_EXAMPLE_01);
+
+    action
+      .createParam(PARAM_OFFSET)
+      .setRequired(true)
+      .setDescription("Position of the chunk in the report. The chunk is ignored if it is not the number of bytes already received, " +
+        "which is returned so that the upload can be resumed.")
+      .setExampleValue("8388608");
+
+    action
+      .createParam(PARAM_CHUNK)
+      .setRequired(true)
+      .setDescription("Chunk of the report, encoded with the codec passed later to api/ce/submit");
+  }
+
+  @Override
+  public void handle(Request wsRequest, Response wsResponse) throws Exception {
+    String projectKey = wsRequest.mandatoryParam(PARAM_PROJECT_KEY);
+    userSession.checkComponentPermission(SCAN_EXECUTION, projectKey);
+    String uploadId = wsRequest.mandatoryParam(PARAM_UPLOAD_ID);
+    long offset = wsRequest.mandatoryParamAsLong(PARAM_OFFSET);
+    InputStream chunk = wsRequest.paramAsInputStream(PARAM_CHUNK);
+    checkRequest(chunk != null, "Parameter '%s' is missing", PARAM_CHUNK);
+
+    WsCe.UploadResponse response = WsCe.UploadResponse.newBuilder()
+      .setReceived(reportUploads.append(projectKey, uploadId, offset, chunk))
+      .build();
+    WsUtils.writeProtobuf(response, wsRequest, wsResponse);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonar.core.util.Uuids;
+import org.sonar.server.computation.queue.report.ReportUploads;
+import org.sonar.server.user.UserSession;
+import org.sonar.server.ws.WsUtils;
+import org.sonarqube.ws.WsCe;
+
+import static org.sonar.core.permission.GlobalPermissions.SCAN_EXECUTION;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_PROJECT_KEY;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
+
+public class UploadStatusAction implements CeWsAction {
+
+  private final UserSession userSession;
+  private final ReportUploads reportUploads;
+
+  public UploadStatusAction(UserSession userSession, ReportUploads reportUploads) {
+    this.userSession = userSession;
+    this.reportUploads = reportUploads;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("upload_status")
+      .setDescription("Number of bytes received for a report sent by chunks, and compression codecs supported by the server. " +
+        "Requires analysis permission.")
+      .setInternal(true)
+      .setSince("5.5")
+      .setHandler(this)
+      .setResponseExample(getClass().getResource("upload_status-example.json"));
+
+    action
+      .createParam(PARAM_PROJECT_KEY)
+      .setRequired(true)
+      .setDescription("Key of project")
+      .setExampleValue("my_project");
+
+    action
+      .createParam(PARAM_UPLOAD_ID)
+      .setRequired(true)
+      .setDescription("Id of the upload, chosen by the client")
+      .setExampleValue(Uuids.UUID_EXAMPLE_01);
+  }
+
+  @Override
+  public void handle(Request wsRequest, Response wsResponse) throws Exception {
+    String projectKey = wsRequest.mandatoryParam(PARAM_PROJECT_KEY);
+    userSession.checkComponentPermission(SCAN_EXECUTION, projectKey);
+    String uploadId = wsRequest.mandatoryParam(PARAM_UPLOAD_ID);
+
+    WsCe.UploadResponse response = WsCe.UploadResponse.newBuilder()
+      .setReceived(reportUploads.received(projectKey, uploadId))
+      .addAllCodecs(ReportCodec.keys())
+      .build();
+    WsUtils.writeProtobuf(response, wsRequest, wsResponse);
+  }
+}
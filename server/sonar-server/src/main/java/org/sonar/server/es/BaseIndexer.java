@@ -20,25 +20,45 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
 import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
-
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DatabaseUtils;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
 
 @ServerSide
 public abstract class BaseIndexer implements Startable {
 
-  private final ThreadPoolExecutor executor;
+  /**
+   * Maximum number of passes executed concurrently on the same index. Only passes of different
+   * projects can be executed concurrently.
+   */
+  private static final int MAX_CONCURRENT_PASSES = 3;
+
+  private final IndexingQueue queue;
   private final String indexName;
   private final String typeName;
   private final String dateFieldName;
   protected final EsClient esClient;
-  private volatile long lastUpdatedAt = -1L;
+  // documents of all the projects updated before this date are indexed. Only advanced by passes of the whole index.
+  private long lastUpdatedAt = -1L;
+  // documents of a project updated before this date are indexed, when more recent than lastUpdatedAt. As passes of
+  // different projects are executed concurrently, a project must not start from the date reached by another one.
+  private final Map<String, Long> lastUpdatedAtByProject = new HashMap<>();
 
   /**
    * Indexers are disabled during server startup, to avoid too many consecutive refreshes of the same index
@@ -49,7 +69,7 @@ public abstract class BaseIndexer implements Startable {
    * Indices are populated and refreshed when all startup components have been executed. See
    * {@link org.sonar.server.search.IndexSynchronizer}
    */
-  private boolean enabled = false;
+  private volatile boolean enabled = false;
 
   protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName,
     String dateFieldName) {
@@ -57,32 +77,46 @@ public abstract class BaseIndexer implements Startable {
     this.typeName = typeName;
     this.dateFieldName = dateFieldName;
     this.esClient = client;
-    this.executor = new ThreadPoolExecutor(0, 1,
-      threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
-  }
-
-  public void index(final IndexerTask task) {
-    if (enabled) {
-      final long requestedAt = System.currentTimeMillis();
-      Future submit = executor.submit(new Runnable() {
-        @Override
-        public void run() {
-          if (lastUpdatedAt == -1L) {
-            lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
-          }
-          if (requestedAt > lastUpdatedAt) {
-            long l = task.index(lastUpdatedAt);
-            // l can be 0 if no documents were indexed
-            lastUpdatedAt = Math.max(l, lastUpdatedAt);
-          }
+    this.queue = new IndexingQueue(indexName + "-" + typeName, MAX_CONCURRENT_PASSES, threadKeepAliveSeconds, System2.INSTANCE);
+  }
+
+  /**
+   * Indexes the whole index and waits for completion.
+   */
+  public void index(IndexerTask task) {
+    index(null, task);
+  }
+
+  /**
+   * Indexes a project and waits for completion. Concurrent requests on the same project are
+   * executed in a single pass.
+   */
+  protected void index(@Nullable String projectUuid, IndexerTask task) {
+    try {
+      Uninterruptibles.getUninterruptibly(indexAsync(projectUuid, task));
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Same as {@link #index(String, IndexerTask)} but does not wait for completion.
+   * @param projectUuid the project to be indexed, {@code null} for the whole index
+   */
+  protected ListenableFuture<Void> indexAsync(@Nullable final String projectUuid, final IndexerTask task) {
+    if (!enabled) {
+      return Futures.immediateFuture(null);
+    }
+    return queue.submit(projectUuid, new IndexingQueue.PassTask() {
+      @Override
+      public void execute(long requestedAt) {
+        long from = initLastUpdatedAt(projectUuid);
+        if (requestedAt > from) {
+          // l can be 0 if no documents were indexed
+          updateLastUpdatedAt(projectUuid, task.index(from));
         }
-      });
-      try {
-        Uninterruptibles.getUninterruptibly(submit);
-      } catch (ExecutionException e) {
-        Throwables.propagate(e);
       }
-    }
+    });
   }
 
   public void index() {
@@ -94,8 +128,53 @@ public abstract class BaseIndexer implements Startable {
     });
   }
 
+  /**
+   * Same as {@link #index()} but does not wait for completion.
+   */
+  public ListenableFuture<Void> indexAsync() {
+    return indexAsync(null, new IndexerTask() {
+      @Override
+      public long index(long lastUpdatedAt) {
+        return doIndex(lastUpdatedAt);
+      }
+    });
+  }
+
+  private synchronized long initLastUpdatedAt(@Nullable String projectUuid) {
+    if (lastUpdatedAt == -1L) {
+      lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+    }
+    Long projectLastUpdatedAt = projectUuid == null ? null : lastUpdatedAtByProject.get(projectUuid);
+    return projectLastUpdatedAt == null ? lastUpdatedAt : Math.max(projectLastUpdatedAt, lastUpdatedAt);
+  }
+
+  /**
+   * To be called when documents of a project have been indexed without a pass of this queue, for example
+   * when they are provided by caller, so that the next passes of this project do not index them again.
+   * @param projectUuid the project whose documents have been indexed, {@code null} for the whole index
+   */
+  protected synchronized void updateLastUpdatedAt(@Nullable String projectUuid, long l) {
+    if (projectUuid == null) {
+      lastUpdatedAt = Math.max(l, lastUpdatedAt);
+      // watermarks of projects which are not ahead of the whole index anymore are useless
+      Iterator<Long> it = lastUpdatedAtByProject.values().iterator();
+      while (it.hasNext()) {
+        if (it.next() <= lastUpdatedAt) {
+          it.remove();
+        }
+      }
+    } else {
+      Long projectLastUpdatedAt = lastUpdatedAtByProject.get(projectUuid);
+      lastUpdatedAtByProject.put(projectUuid, projectLastUpdatedAt == null ? l : Math.max(l, projectLastUpdatedAt));
+    }
+  }
+
   protected abstract long doIndex(long lastUpdatedAt);
 
+  protected boolean isEnabled() {
+    return enabled;
+  }
+
   public BaseIndexer setEnabled(boolean b) {
     this.enabled = b;
     return this;
@@ -108,9 +187,60 @@ public abstract class BaseIndexer implements Startable {
 
   @Override
   public void stop() {
-    executor.shutdown();
+    queue.stop();
+  }
+
+  public String getIndexName() {
+    return indexName;
+  }
+
+  public String getTypeName() {
+    return typeName;
   }
 
+  /**
+   * Number of indexing passes waiting to be executed
+   */
+  public int getQueueDepth() {
+    return queue.depth();
+  }
+
+  /**
+   * Age in milliseconds of the oldest indexing request not executed yet
+   */
+  public long getQueueLagMs() {
+    return queue.lagMs();
+  }
+
+  /**
+   * Helper for {@link PartitionedIndexer#selectPartitions()}
+   * @param sql request selecting a single column of type string
+   */
+  protected static List<String> selectPartitions(DbClient dbClient, String sql) {
+    DbSession dbSession = dbClient.openSession(false);
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = dbClient.getMyBatis().newScrollingSelectStatement(dbSession, sql);
+      rs = stmt.executeQuery();
+      List<String> partitions = new ArrayList<>();
+      while (rs.next()) {
+        partitions.add(rs.getString(1));
+      }
+      return partitions;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to select partitions: " + sql, e);
+    } finally {
+      DatabaseUtils.closeQuietly(rs);
+      DatabaseUtils.closeQuietly(stmt);
+      dbSession.close();
+    }
+  }
+
+  /**
+   * Indexes the documents updated since {@code lastUpdatedAt}. Concurrent requests on the same project
+   * are merged, and only one of their tasks is executed, so the tasks of a project must not differ.
+   */
   public interface IndexerTask {
     long index(long lastUpdatedAt);
   }
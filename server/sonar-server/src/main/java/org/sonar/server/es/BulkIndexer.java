@@ -21,6 +21,14 @@ package org.sonar.server.es;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
@@ -32,26 +40,26 @@ import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
-import org.elasticsearch.common.unit.ByteSizeUnit;
-import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.picocontainer.Startable;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.ProgressLogger;
 
-import java.util.Map;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-
 import static java.lang.String.format;
 
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
- *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
+ *   <li>bulk request is sent on the wire when its size is higher than a threshold, or when its oldest action
+ *   has been waiting for more than one second</li>
+ *   <li>size and number of concurrent requests are adapted to the latency and rejections of Elasticsearch,
+ *   see {@link BulkThrottle}. Rejected actions are retried.</li>
+ *   <li>deletions by query are executed asynchronously</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  *   <li>index refresh is optional (enabled by default)</li>
  * </ul>
@@ -59,20 +67,29 @@ import static java.lang.String.format;
 public class BulkIndexer implements Startable {
 
   private static final Logger LOGGER = Loggers.get(BulkIndexer.class);
-  private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
+  private static final long MAX_LINGER_MS = 1_000L;
+  private static final int MAX_RETRIES = 5;
+  private static final long RETRY_DELAY_MS = 100L;
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
+  private static final String DISABLED_REFRESH_INTERVAL = "-1";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
 
   private final EsClient client;
   private final String indexName;
+  private final System2 system2 = System2.INSTANCE;
   private boolean large = false;
-  private long flushByteSize = FLUSH_BYTE_SIZE;
+  private Long fixedFlushByteSize = null;
   private boolean disableRefresh = false;
   private BulkRequestBuilder bulkRequest = null;
+  private long bulkRequestStartedAt = 0L;
   private Map<String, Object> largeInitialSettings = null;
   private final AtomicLong counter = new AtomicLong(0L);
+  private final AtomicLong retries = new AtomicLong(0L);
+  private final AtomicLong queueTimeMs = new AtomicLong(0L);
+  private final Queue<Retry> pendingRetries = new ConcurrentLinkedQueue<>();
   private final int concurrentRequests;
-  private final Semaphore semaphore;
+  private BulkThrottle throttle;
+  private long startedAt;
   private final ProgressLogger progress;
 
   public BulkIndexer(EsClient client, String indexName) {
@@ -82,7 +99,6 @@ public class BulkIndexer implements Startable {
       .setPluralLabel("requests");
 
     this.concurrentRequests = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
-    this.semaphore = new Semaphore(concurrentRequests);
   }
 
   /**
@@ -95,8 +111,12 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * Sets a fixed size of bulk requests. By default size is adapted to the latency of Elasticsearch.
+   */
   public BulkIndexer setFlushByteSize(long flushByteSize) {
-    this.flushByteSize = flushByteSize;
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    this.fixedFlushByteSize = flushByteSize;
     return this;
   }
 
@@ -126,23 +146,44 @@ public class BulkIndexer implements Startable {
 
       // deactivate periodical refresh
       String refreshInterval = settingsResp.getSetting(indexName, REFRESH_INTERVAL_SETTING);
+      if (refreshInterval == null || DISABLED_REFRESH_INTERVAL.equals(refreshInterval)) {
+        // refresh may have been left disabled by an interrupted large indexing
+        refreshInterval = DefaultIndexSettings.REFRESH_INTERVAL;
+      }
       largeInitialSettings.put(REFRESH_INTERVAL_SETTING, refreshInterval);
-      bulkSettings.put(REFRESH_INTERVAL_SETTING, "-1");
+      bulkSettings.put(REFRESH_INTERVAL_SETTING, DISABLED_REFRESH_INTERVAL);
 
       updateSettings(bulkSettings);
     }
     bulkRequest = client.prepareBulk().setRefresh(false);
+    throttle = new BulkThrottle(concurrentRequests, fixedFlushByteSize, system2);
     counter.set(0L);
+    retries.set(0L);
+    queueTimeMs.set(0L);
+    startedAt = system2.now();
     progress.start();
   }
 
-  public void add(ActionRequest request) {
+  /**
+   * Can be called concurrently by several threads.
+   */
+  public synchronized void add(ActionRequest request) {
+    executeRetries();
+    if (bulkRequest.numberOfActions() == 0) {
+      bulkRequestStartedAt = system2.now();
+    }
     bulkRequest.request().add(request);
-    if (bulkRequest.request().estimatedSizeInBytes() >= flushByteSize) {
+    if (bulkRequest.request().estimatedSizeInBytes() >= throttle.flushByteSize()
+      || system2.now() - bulkRequestStartedAt >= MAX_LINGER_MS) {
       executeBulk();
     }
   }
 
+  /**
+   * Deletes the documents matching the given search request. The search is executed asynchronously,
+   * so this method does not wait for documents to be deleted. Deletions are completed when {@link #stop()}
+   * returns.
+   */
   public void addDeletion(SearchRequestBuilder searchRequest) {
     searchRequest
       .setScroll(TimeValue.timeValueMinutes(5))
@@ -151,24 +192,8 @@ public class BulkIndexer implements Startable {
       // load only doc ids, not _source fields
       .setFetchSource(false);
 
-    // this search is synchronous. An optimization would be to be non-blocking,
-    // but it requires to tracking pending requests in close().
-    // Same semaphore can't be reused because of potential deadlock (requires to acquire
-    // two locks)
-    SearchResponse searchResponse = searchRequest.get();
-
-    while (true) {
-      searchResponse = client.prepareSearchScroll(searchResponse.getScrollId())
-        .setScroll(TimeValue.timeValueMinutes(5))
-        .get();
-      SearchHit[] hits = searchResponse.getHits().getHits();
-      for (SearchHit hit : hits) {
-        add(client.prepareDelete(hit.index(), hit.type(), hit.getId()).request());
-      }
-      if (hits.length == 0) {
-        break;
-      }
-    }
+    throttle.beginTask();
+    searchRequest.execute(new DeletionScrollListener());
   }
 
   /**
@@ -182,19 +207,33 @@ public class BulkIndexer implements Startable {
     bulk.stop();
   }
 
-  @Override
-  public void stop() {
+  /**
+   * Sends the pending actions and waits for all requests to be completed. Concurrent calls
+   * to {@link #add(ActionRequest)} are blocked in the meantime.
+   */
+  public synchronized void flush() {
     if (bulkRequest.numberOfActions() > 0) {
       executeBulk();
     }
     try {
-      if (semaphore.tryAcquire(concurrentRequests, 10, TimeUnit.MINUTES)) {
-        semaphore.release(concurrentRequests);
-      }
+      // retries are executed by the calling thread, once pending requests are completed
+      do {
+        executeRetries();
+        if (!throttle.awaitIdle(10, TimeUnit.MINUTES)) {
+          throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes");
+        }
+      } while (!pendingRetries.isEmpty());
     } catch (InterruptedException e) {
-      throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes", e);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for Elasticsearch bulk requests", e);
     }
+  }
+
+  @Override
+  public void stop() {
+    flush();
     progress.stop();
+    logStats();
 
     if (!disableRefresh) {
       client.prepareRefresh(indexName).get();
@@ -210,6 +249,31 @@ public class BulkIndexer implements Startable {
     bulkRequest = null;
   }
 
+  /**
+   * Number of actions sent again because Elasticsearch rejected them
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * Total time spent waiting for the throttling of bulk requests, in milliseconds
+   */
+  public long getQueueTimeMs() {
+    return queueTimeMs.get();
+  }
+
+  private void logStats() {
+    long durationMs = Math.max(1L, system2.now() - startedAt);
+    String message = format("Bulk indexing of [%s] completed | actions=%d | actions/s=%d | retries=%d | queue time=%d ms | request size=%d | concurrency=%d",
+      indexName, counter.get(), counter.get() * 1000L / durationMs, retries.get(), queueTimeMs.get(), throttle.flushByteSize(), throttle.concurrency());
+    if (large) {
+      LOGGER.info(message);
+    } else {
+      LOGGER.debug(message);
+    }
+  }
+
   private void updateSettings(Map<String, Object> settings) {
     UpdateSettingsRequestBuilder req = client.nativeClient().admin().indices().prepareUpdateSettings(indexName);
     req.setSettings(settings);
@@ -217,35 +281,154 @@ public class BulkIndexer implements Startable {
   }
 
   private void executeBulk() {
-    final BulkRequestBuilder req = this.bulkRequest;
+    BulkRequestBuilder req = this.bulkRequest;
     this.bulkRequest = client.prepareBulk().setRefresh(false);
-    semaphore.acquireUninterruptibly();
-    req.execute(new BulkResponseActionListener(req));
+    execute(req, 0);
+  }
+
+  private void execute(BulkRequestBuilder req, int attempt) {
+    queueTimeMs.addAndGet(throttle.acquire());
+    req.execute(new BulkResponseActionListener(req, attempt, system2.now(), true));
+  }
+
+  private void executeRetries() {
+    Retry retry = pendingRetries.poll();
+    while (retry != null) {
+      // give some time to Elasticsearch to recover
+      sleep(RETRY_DELAY_MS * retry.attempt);
+      BulkRequestBuilder req = client.prepareBulk().setRefresh(false);
+      for (ActionRequest request : retry.requests) {
+        req.request().add(request);
+      }
+      execute(req, retry.attempt);
+      retry = pendingRetries.poll();
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void scheduleRetry(List<ActionRequest> requests, int previousAttempt) {
+    int attempt = previousAttempt + 1;
+    if (attempt > MAX_RETRIES) {
+      LOGGER.error("Fail to execute {} actions on index [{}], Elasticsearch rejected them {} times", requests.size(), indexName, MAX_RETRIES);
+    } else {
+      retries.addAndGet(requests.size());
+      pendingRetries.add(new Retry(requests, attempt));
+    }
+  }
+
+  private static boolean isRejection(Throwable e) {
+    return ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
+  }
+
+  private static class Retry {
+    private final List<ActionRequest> requests;
+    private final int attempt;
+
+    Retry(List<ActionRequest> requests, int attempt) {
+      this.requests = requests;
+      this.attempt = attempt;
+    }
   }
 
   private class BulkResponseActionListener implements ActionListener<BulkResponse> {
     private final BulkRequestBuilder req;
+    private final int attempt;
+    private final long sentAt;
+    private final boolean throttled;
 
-    public BulkResponseActionListener(BulkRequestBuilder req) {
+    BulkResponseActionListener(BulkRequestBuilder req, int attempt, long sentAt, boolean throttled) {
       this.req = req;
+      this.attempt = attempt;
+      this.sentAt = sentAt;
+      this.throttled = throttled;
     }
 
     @Override
     public void onResponse(BulkResponse response) {
-      semaphore.release();
-      counter.addAndGet(response.getItems().length);
-
+      List<ActionRequest> rejected = new ArrayList<>();
       for (BulkItemResponse item : response.getItems()) {
-        if (item.isFailed()) {
+        if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+          rejected.add(req.request().requests().get(item.getItemId()));
+        } else if (item.isFailed()) {
           LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
         }
       }
+      counter.addAndGet(response.getItems().length - rejected.size());
+      if (!rejected.isEmpty()) {
+        scheduleRetry(rejected, attempt);
+      }
+      onCompleted(!rejected.isEmpty());
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      boolean rejected = isRejection(e);
+      if (rejected) {
+        scheduleRetry(new ArrayList<>(req.request().requests()), attempt);
+      } else {
+        LOGGER.error("Fail to execute bulk index request: " + req, e);
+      }
+      onCompleted(rejected);
+    }
+
+    protected void onCompleted(boolean rejected) {
+      if (throttled) {
+        throttle.release(system2.now() - sentAt, rejected);
+      }
+    }
+  }
+
+  /**
+   * Scrolls over the documents to be deleted. Each page is deleted by a bulk request, and next page
+   * is requested when deletion is completed, so that scrolling does not run faster than deletions.
+   */
+  private class DeletionScrollListener implements ActionListener<SearchResponse> {
+    private boolean firstPage = true;
+
+    @Override
+    public void onResponse(SearchResponse response) {
+      SearchHit[] hits = response.getHits().getHits();
+      if (firstPage) {
+        // search type SCAN does not return documents in the first response
+        firstPage = false;
+        nextPage(response.getScrollId());
+      } else if (hits.length == 0) {
+        throttle.endTask();
+      } else {
+        deletePage(hits, response.getScrollId());
+      }
+    }
+
+    private void deletePage(SearchHit[] hits, final String scrollId) {
+      BulkRequestBuilder req = client.prepareBulk().setRefresh(false);
+      for (SearchHit hit : hits) {
+        req.request().add(client.prepareDelete(hit.index(), hit.type(), hit.getId()).request());
+      }
+      req.execute(new BulkResponseActionListener(req, 0, system2.now(), false) {
+        @Override
+        protected void onCompleted(boolean rejected) {
+          nextPage(scrollId);
+        }
+      });
+    }
+
+    private void nextPage(String scrollId) {
+      client.prepareSearchScroll(scrollId)
+        .setScroll(TimeValue.timeValueMinutes(5))
+        .execute(this);
     }
 
     @Override
     public void onFailure(Throwable e) {
-      semaphore.release();
-      LOGGER.error("Fail to execute bulk index request: " + req, e);
+      LOGGER.error("Fail to scroll over documents to be deleted from index " + indexName, e);
+      throttle.endTask();
     }
   }
 }
@@ -0,0 +1,174 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.sonar.api.utils.System2;
+
+/**
+ * Flow control of the bulk requests sent by {@link BulkIndexer}. The number of concurrent requests and
+ * the size of requests are adapted to the behavior of Elasticsearch:
+ * <ul>
+ *   <li>rejected requests halve both concurrency and size</li>
+ *   <li>requests slower than {@link #TARGET_LATENCY_MS} decrease size</li>
+ *   <li>requests faster than half of {@link #TARGET_LATENCY_MS} increase size and concurrency</li>
+ * </ul>
+ */
+class BulkThrottle {
+
+  static final long MIN_BYTE_SIZE = new ByteSizeValue(256, ByteSizeUnit.KB).bytes();
+  static final long INITIAL_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
+  static final long MAX_BYTE_SIZE = new ByteSizeValue(8, ByteSizeUnit.MB).bytes();
+  static final long TARGET_LATENCY_MS = 1_000L;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final System2 system2;
+  private final int maxConcurrency;
+  private final boolean adaptiveSize;
+
+  private int concurrency;
+  private long flushByteSize;
+  // throttled bulk requests being executed
+  private int inFlight = 0;
+  // other asynchronous operations being executed, for example scrolls of deletions
+  private int pendingTasks = 0;
+
+  /**
+   * @param fixedByteSize size of requests, or {@code null} if it must be adapted
+   */
+  BulkThrottle(int maxConcurrency, @Nullable Long fixedByteSize, System2 system2) {
+    this.system2 = system2;
+    this.maxConcurrency = maxConcurrency;
+    this.concurrency = maxConcurrency;
+    this.adaptiveSize = fixedByteSize == null;
+    this.flushByteSize = fixedByteSize == null ? INITIAL_BYTE_SIZE : fixedByteSize;
+  }
+
+  /**
+   * Blocks until a new bulk request is allowed.
+   * @return time spent waiting, in milliseconds
+   */
+  long acquire() {
+    long start = system2.now();
+    lock.lock();
+    try {
+      while (inFlight >= concurrency) {
+        released.awaitUninterruptibly();
+      }
+      inFlight++;
+    } finally {
+      lock.unlock();
+    }
+    return system2.now() - start;
+  }
+
+  /**
+   * Ends a request allowed by {@link #acquire()}
+   * @param latencyMs duration of the request
+   * @param rejected true if Elasticsearch rejected some of the actions because of overload
+   */
+  void release(long latencyMs, boolean rejected) {
+    lock.lock();
+    try {
+      inFlight--;
+      if (rejected) {
+        concurrency = Math.max(1, concurrency / 2);
+        resize(flushByteSize / 2);
+      } else if (latencyMs > TARGET_LATENCY_MS) {
+        resize(flushByteSize * 3 / 4);
+      } else if (latencyMs < TARGET_LATENCY_MS / 2) {
+        concurrency = Math.min(maxConcurrency, concurrency + 1);
+        resize(flushByteSize * 5 / 4);
+      }
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void resize(long size) {
+    if (adaptiveSize) {
+      flushByteSize = Math.max(MIN_BYTE_SIZE, Math.min(MAX_BYTE_SIZE, size));
+    }
+  }
+
+  void beginTask() {
+    lock.lock();
+    try {
+      pendingTasks++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void endTask() {
+    lock.lock();
+    try {
+      pendingTasks--;
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits for the end of all requests and tasks.
+   * @return false if timeout is reached
+   */
+  boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+    long remainingNanos = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (inFlight > 0 || pendingTasks > 0) {
+        if (remainingNanos <= 0L) {
+          return false;
+        }
+        remainingNanos = released.awaitNanos(remainingNanos);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long flushByteSize() {
+    lock.lock();
+    try {
+      return flushByteSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int concurrency() {
+    lock.lock();
+    try {
+      return concurrency;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -24,6 +24,8 @@ import org.elasticsearch.common.settings.ImmutableSettings;
 
 class DefaultIndexSettings {
 
+  static final String REFRESH_INTERVAL = "30s";
+
   private DefaultIndexSettings() {
     // only static stuff
   }
@@ -32,7 +34,7 @@ class DefaultIndexSettings {
     return ImmutableSettings.builder()
       .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
       .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
-      .put("index.refresh_interval", "30s")
+      .put("index.refresh_interval", REFRESH_INTERVAL)
       .put("index.mapper.dynamic", false)
 
       // Sortable text analyzer
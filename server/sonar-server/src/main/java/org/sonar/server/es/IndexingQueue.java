@@ -0,0 +1,206 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.sonar.api.utils.System2;
+
+/**
+ * Queue of the indexing passes of an index. Requests which are not started yet are merged:
+ * <ul>
+ *   <li>a request for a project joins the pending pass of the same project, or the pending pass of the whole index</li>
+ *   <li>a request for the whole index absorbs the pending passes of projects</li>
+ * </ul>
+ * Passes of different projects are executed concurrently. A pass of the whole index is executed alone, and
+ * two passes of the same project are never executed concurrently.
+ * <p/>
+ * Only the task of the first request of a pass is executed. The tasks of the merged requests are dropped,
+ * so they must be covered by this task, see {@link PassTask}.
+ */
+class IndexingQueue {
+
+  private static final String ALL = "";
+
+  private final ThreadPoolExecutor executor;
+  private final System2 system2;
+  private final Map<String, Pass> pending = new LinkedHashMap<>();
+  private final Set<String> running = new HashSet<>();
+
+  IndexingQueue(String name, int threads, long threadKeepAliveSeconds, System2 system2) {
+    this.system2 = system2;
+    this.executor = new ThreadPoolExecutor(threads, threads,
+      Math.max(1L, threadKeepAliveSeconds), TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat(name + "-indexer-%d").setDaemon(true).build());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @param projectUuid the project to be indexed, {@code null} for the whole index
+   * @param task executed once for all the requests merged in the same pass. It gets the date of the most recent request.
+   * @return future completed when the pass including this request is completed. It fails if the queue is stopped.
+   */
+  ListenableFuture<Void> submit(@Nullable String projectUuid, PassTask task) {
+    String key = projectUuid == null ? ALL : projectUuid;
+    long now = system2.now();
+    synchronized (this) {
+      Pass pass = pending.get(ALL);
+      if (pass == null) {
+        pass = pending.get(key);
+      }
+      if (pass == null) {
+        pass = new Pass(key, task, now);
+        if (key.equals(ALL)) {
+          absorbPendingProjects(pass);
+        }
+        pending.put(key, pass);
+      }
+      pass.requestedAt = now;
+      schedule();
+      return pass.future;
+    }
+  }
+
+  private void absorbPendingProjects(Pass allPass) {
+    for (Pass projectPass : pending.values()) {
+      allPass.createdAt = Math.min(allPass.createdAt, projectPass.createdAt);
+      allPass.merged.add(projectPass.future);
+    }
+    pending.clear();
+  }
+
+  /**
+   * Number of passes waiting to be started
+   */
+  synchronized int depth() {
+    return pending.size();
+  }
+
+  /**
+   * Age in milliseconds of the oldest request not started yet, zero if the queue is empty
+   */
+  synchronized long lagMs() {
+    long oldest = Long.MAX_VALUE;
+    for (Pass pass : pending.values()) {
+      oldest = Math.min(oldest, pass.createdAt);
+    }
+    return oldest == Long.MAX_VALUE ? 0L : Math.max(0L, system2.now() - oldest);
+  }
+
+  void stop() {
+    executor.shutdown();
+  }
+
+  private void schedule() {
+    Iterator<Pass> it = pending.values().iterator();
+    while (it.hasNext()) {
+      final Pass pass = it.next();
+      if (canStart(pass.key)) {
+        it.remove();
+        running.add(pass.key);
+        try {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              execute(pass);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // queue is stopped
+          running.remove(pass.key);
+          pass.complete(e);
+        }
+      }
+    }
+  }
+
+  private boolean canStart(String key) {
+    if (running.contains(ALL)) {
+      return false;
+    }
+    return key.equals(ALL) ? running.isEmpty() : !running.contains(key);
+  }
+
+  private void execute(Pass pass) {
+    Throwable failure = null;
+    try {
+      pass.task.execute(pass.requestedAt);
+    } catch (Throwable t) {
+      failure = t;
+    } finally {
+      synchronized (this) {
+        running.remove(pass.key);
+        schedule();
+      }
+    }
+    pass.complete(failure);
+  }
+
+  /**
+   * Tasks of the same key must be interchangeable, and the task of the whole index must cover the
+   * tasks of all the projects, as a single task is executed for all the merged requests. For example
+   * indexers update all the documents of the key which changed since the last pass.
+   */
+  interface PassTask {
+    void execute(long requestedAt);
+  }
+
+  private static class Pass {
+    private final String key;
+    private final PassTask task;
+    private final SettableFuture<Void> future = SettableFuture.create();
+    // futures of the passes absorbed by this one
+    private final List<SettableFuture<Void>> merged = new ArrayList<>();
+    private long createdAt;
+    private volatile long requestedAt;
+
+    Pass(String key, PassTask task, long createdAt) {
+      this.key = key;
+      this.task = task;
+      this.createdAt = createdAt;
+      this.requestedAt = createdAt;
+    }
+
+    void complete(@Nullable Throwable failure) {
+      List<SettableFuture<Void>> futures = new ArrayList<>(merged);
+      futures.add(future);
+      for (SettableFuture<Void> f : futures) {
+        if (failure == null) {
+          f.set(null);
+        } else {
+          f.setException(failure);
+        }
+      }
+    }
+  }
+}
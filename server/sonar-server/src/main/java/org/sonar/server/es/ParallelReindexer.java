@@ -0,0 +1,207 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.ProgressLogger;
+import org.sonar.process.ProcessProperties;
+
+import static java.lang.String.format;
+
+/**
+ * Full indexing of {@link PartitionedIndexer}, executed at startup when the index is empty, for example after
+ * an upgrade. Partitions are read by several threads and sent to a single {@link BulkIndexer}.
+ * <p/>
+ * Partitions are recorded in a checkpoint file once their documents are acknowledged by Elasticsearch. If server is
+ * stopped during indexing, then only the remaining partitions are indexed at next startup.
+ */
+@ServerSide
+public class ParallelReindexer {
+
+  static final String THREADS_PROPERTY = "sonar.search.reindex.threads";
+  private static final long CHECKPOINT_INTERVAL_MS = 30_000L;
+  private static final Logger LOGGER = Loggers.get(ParallelReindexer.class);
+
+  private final EsClient esClient;
+  private final Settings settings;
+  private final System2 system2;
+
+  public ParallelReindexer(EsClient esClient, Settings settings, System2 system2) {
+    this.esClient = esClient;
+    this.settings = settings;
+    this.system2 = system2;
+  }
+
+  /**
+   * Indexes all the partitions if index is empty, or the remaining partitions if a previous
+   * indexing has been interrupted. Otherwise does nothing.
+   */
+  public void reindexIfNeeded(PartitionedIndexer indexer) {
+    String indexName = indexer.getIndexName();
+    File file = new File(settings.getString(ProcessProperties.PATH_DATA), "es-reindex/" + indexName + "-" + indexer.getTypeName());
+    String creationDate = indexCreationDate(indexName);
+    ReindexCheckpoint checkpoint = ReindexCheckpoint.load(file, creationDate);
+    if (checkpoint == null) {
+      if (!isEmpty(indexer)) {
+        return;
+      }
+      checkpoint = ReindexCheckpoint.create(file, creationDate);
+    } else {
+      LOGGER.info("Resume indexing of {} ({} partitions already indexed)", indexName, checkpoint.getCompletedPartitions().size());
+    }
+    reindex(indexer, checkpoint);
+    checkpoint.delete();
+  }
+
+  private void reindex(final PartitionedIndexer indexer, ReindexCheckpoint checkpoint) {
+    List<String> partitions = new ArrayList<>(indexer.selectPartitions());
+    partitions.removeAll(checkpoint.getCompletedPartitions());
+    int threads = threads();
+    LOGGER.info("Index {}: {} partitions with {} threads", indexer.getIndexName(), partitions.size(), threads);
+
+    final BulkIndexer bulk = new BulkIndexer(esClient, indexer.getIndexName()).setLarge(true);
+    bulk.start();
+    final Checkpointer checkpointer = new Checkpointer(checkpoint, bulk);
+    AtomicLong completed = new AtomicLong(0L);
+    ProgressLogger progress = new ProgressLogger(format("Progress[ParallelReindexer[%s]]", indexer.getIndexName()), completed, LOGGER)
+      .setPluralLabel("partitions");
+    progress.start();
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat(indexer.getIndexName() + "-reindexer-%d").build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (String partition : partitions) {
+        futures.add(executor.submit(new PartitionTask(indexer, partition, bulk, checkpointer, completed, partitions.size())));
+      }
+      for (Future<?> future : futures) {
+        Uninterruptibles.getUninterruptibly(future);
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+      awaitTermination(executor);
+      progress.stop();
+      // replicas and refresh of index are restored even if indexing fails
+      bulk.stop();
+    }
+    checkpointer.flush();
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.warn("Partitions are still being read after indexing has been stopped");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private int threads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  private boolean isEmpty(PartitionedIndexer indexer) {
+    return esClient.prepareCount(indexer.getIndexName()).setTypes(indexer.getTypeName()).get().getCount() == 0L;
+  }
+
+  private String indexCreationDate(String indexName) {
+    return esClient.nativeClient().admin().indices().prepareGetSettings(indexName).get()
+      .getSetting(indexName, "index.creation_date");
+  }
+
+  private class PartitionTask implements Runnable {
+    private final PartitionedIndexer indexer;
+    private final String partition;
+    private final BulkIndexer bulk;
+    private final Checkpointer checkpointer;
+    private final AtomicLong completed;
+    private final int total;
+
+    PartitionTask(PartitionedIndexer indexer, String partition, BulkIndexer bulk, Checkpointer checkpointer, AtomicLong completed, int total) {
+      this.indexer = indexer;
+      this.partition = partition;
+      this.bulk = bulk;
+      this.checkpointer = checkpointer;
+      this.completed = completed;
+      this.total = total;
+    }
+
+    @Override
+    public void run() {
+      long start = system2.now();
+      indexer.indexPartition(partition, bulk);
+      long count = completed.incrementAndGet();
+      LOGGER.debug("Partition {} of index {} read in {} ms ({}/{})", partition, indexer.getIndexName(), system2.now() - start, count, total);
+      checkpointer.completed(partition);
+    }
+  }
+
+  /**
+   * Documents of a partition can still be buffered or being sent when the partition has been read. Completed
+   * partitions are periodically recorded in the checkpoint, after {@link BulkIndexer#flush()}.
+   */
+  private class Checkpointer {
+    private final ReindexCheckpoint checkpoint;
+    private final BulkIndexer bulk;
+    private final List<String> unflushed = new ArrayList<>();
+    private long lastCheckpointAt = system2.now();
+
+    Checkpointer(ReindexCheckpoint checkpoint, BulkIndexer bulk) {
+      this.checkpoint = checkpoint;
+      this.bulk = bulk;
+    }
+
+    synchronized void completed(String partition) {
+      unflushed.add(partition);
+      if (system2.now() - lastCheckpointAt >= CHECKPOINT_INTERVAL_MS) {
+        bulk.flush();
+        flush();
+      }
+    }
+
+    /**
+     * Bulk must have been flushed or stopped
+     */
+    synchronized void flush() {
+      checkpoint.markCompleted(unflushed);
+      unflushed.clear();
+      lastCheckpointAt = system2.now();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Partitions already indexed by an indexing in progress, stored in a text file. The first line is
+ * the creation date of the index, so that checkpoint is ignored if index has been re-created meanwhile.
+ * Next lines are the keys of indexed partitions.
+ */
+class ReindexCheckpoint {
+
+  private final File file;
+  private final Set<String> completedPartitions;
+
+  private ReindexCheckpoint(File file, Set<String> completedPartitions) {
+    this.file = file;
+    this.completedPartitions = completedPartitions;
+  }
+
+  /**
+   * @return the checkpoint of the indexing in progress, or {@code null} if there is no indexing to be resumed
+   */
+  @CheckForNull
+  static ReindexCheckpoint load(File file, String indexCreationDate) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !indexCreationDate.equals(lines.get(0))) {
+        FileUtils.deleteQuietly(file);
+        return null;
+      }
+      Set<String> partitions = new HashSet<>();
+      for (String line : lines.subList(1, lines.size())) {
+        if (StringUtils.isNotBlank(line)) {
+          partitions.add(line);
+        }
+      }
+      return new ReindexCheckpoint(file, partitions);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read checkpoint of indexing: " + file, e);
+    }
+  }
+
+  static ReindexCheckpoint create(File file, String indexCreationDate) {
+    try {
+      FileUtils.writeStringToFile(file, indexCreationDate + "\n", StandardCharsets.UTF_8);
+      return new ReindexCheckpoint(file, new HashSet<String>());
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create checkpoint of indexing: " + file, e);
+    }
+  }
+
+  Set<String> getCompletedPartitions() {
+    return completedPartitions;
+  }
+
+  void markCompleted(Collection<String> partitions) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    try {
+      FileUtils.writeStringToFile(file, StringUtils.join(partitions, "\n") + "\n", StandardCharsets.UTF_8, true);
+      completedPartitions.addAll(partitions);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write checkpoint of indexing: " + file, e);
+    }
+  }
+
+  /**
+   * To be called when indexing is completed
+   */
+  void delete() {
+    FileUtils.deleteQuietly(file);
+  }
+}
@@ -19,7 +19,10 @@
  */
 package org.sonar.server.issue.index;
 
+import com.google.common.collect.Iterables;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -30,8 +33,11 @@ import org.sonar.db.DbSession;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.PartitionedIndexer;
 
-public class IssueIndexer extends BaseIndexer {
+import static org.sonar.db.DatabaseUtils.PARTITION_SIZE_FOR_ORACLE;
+
+public class IssueIndexer extends BaseIndexer implements PartitionedIndexer {
 
   private final DbClient dbClient;
 
@@ -45,12 +51,32 @@ public class IssueIndexer extends BaseIndexer {
     return doIndex(createBulkIndexer(false), lastUpdatedAt, null);
   }
 
+  /**
+   * Partitions are the uuids of projects having issues
+   */
+  @Override
+  public List<String> selectPartitions() {
+    return selectPartitions(dbClient, "select distinct project_uuid from issues");
+  }
+
+  @Override
+  public void indexPartition(String projectUuid, BulkIndexer bulk) {
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      IssueResultSetIterator rowIt = IssueResultSetIterator.create(dbClient, dbSession, 0L, projectUuid);
+      add(bulk, rowIt);
+      rowIt.close();
+    } finally {
+      dbSession.close();
+    }
+  }
+
   public void indexAll() {
     doIndex(createBulkIndexer(true), 0L, null);
   }
 
   public void index(final String projectUuid) {
-    super.index(new IndexerTask() {
+    super.index(projectUuid, new IndexerTask() {
       @Override
       public long index(long lastUpdatedAt) {
         return doIndex(createBulkIndexer(false), lastUpdatedAt, projectUuid);
@@ -58,6 +84,32 @@ public class IssueIndexer extends BaseIndexer {
     });
   }
 
+  /**
+   * Indexes documents of a project built by caller, for example by Compute Engine from its cache of issues, so
+   * that they are not read again from database. The issues with keys {@code keysToLoad} are loaded from database
+   * once {@code issues} is consumed.
+   */
+  public void index(String projectUuid, Iterator<IssueDoc> issues, Collection<String> keysToLoad) {
+    if (!isEnabled()) {
+      return;
+    }
+    BulkIndexer bulk = createBulkIndexer(false);
+    bulk.start();
+    long maxDate = add(bulk, issues);
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      for (List<String> partition : Iterables.partition(keysToLoad, PARTITION_SIZE_FOR_ORACLE)) {
+        IssueResultSetIterator rowIt = IssueResultSetIterator.createForKeys(dbClient, dbSession, partition);
+        maxDate = Math.max(maxDate, add(bulk, rowIt));
+        rowIt.close();
+      }
+    } finally {
+      dbSession.close();
+    }
+    bulk.stop();
+    updateLastUpdatedAt(projectUuid, maxDate);
+  }
+
   /**
    * For benchmarks
    */
@@ -80,6 +132,12 @@ public class IssueIndexer extends BaseIndexer {
 
   private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     bulk.start();
+    long maxDate = add(bulk, issues);
+    bulk.stop();
+    return maxDate;
+  }
+
+  private long add(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     long maxDate = 0L;
     while (issues.hasNext()) {
       IssueDoc issue = issues.next();
@@ -88,7 +146,6 @@ public class IssueIndexer extends BaseIndexer {
       // it's more efficient to sort programmatically than in SQL on some databases (MySQL for instance)
       maxDate = Math.max(maxDate, issue.getTechnicalUpdateDate().getTime());
     }
-    bulk.stop();
     return maxDate;
   }
 
@@ -101,17 +101,15 @@ public class ComponentTreeDataLoader {
           .build();
       }
 
-      ComponentTreeQuery dbQuery = toComponentTreeQuery(wsRequest, baseSnapshot);
-      ComponentDtosAndTotal componentDtosAndTotal = searchComponents(dbSession, dbQuery, wsRequest);
-      List<ComponentDtoWithSnapshotId> components = componentDtosAndTotal.componentDtos;
-      int componentCount = componentDtosAndTotal.total;
       List<MetricDto> metrics = searchMetrics(dbSession, wsRequest);
       List<WsMeasures.Period> periods = snapshotToWsPeriods(baseSnapshot);
+      ComponentTreeQuery dbQuery = toComponentTreeQuery(wsRequest, baseSnapshot, metrics);
+      ComponentDtosAndTotal componentDtosAndTotal = searchComponents(dbSession, dbQuery, wsRequest, metrics, periods);
+      List<ComponentDtoWithSnapshotId> components = componentDtosAndTotal.componentDtos;
+      int componentCount = componentDtosAndTotal.total;
       Table<String, MetricDto, MeasureDto> measuresByComponentUuidAndMetric = searchMeasuresByComponentUuidAndMetric(dbSession, baseComponent, baseSnapshot, components, metrics,
         periods);
 
-      components = sortComponents(components, wsRequest, metrics, measuresByComponentUuidAndMetric);
-      components = paginateComponents(components, componentCount, wsRequest);
       Map<Long, ComponentDto> referenceComponentsById = searchReferenceComponentsById(dbSession, components);
 
       return ComponentTreeData.builder()
@@ -146,7 +144,11 @@ public class ComponentTreeDataLoader {
     return referenceComponentUuidsById;
   }
 
-  private ComponentDtosAndTotal searchComponents(DbSession dbSession, ComponentTreeQuery dbQuery, ComponentTreeWsRequest wsRequest) {
+  private ComponentDtosAndTotal searchComponents(DbSession dbSession, ComponentTreeQuery dbQuery, ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
+    List<WsMeasures.Period> periods) {
+    if (wsRequest.getSort().contains(METRIC_SORT)) {
+      return searchComponentsSortedByMetric(dbSession, dbQuery, wsRequest, metrics, periods);
+    }
     switch (wsRequest.getStrategy()) {
       case CHILDREN_STRATEGY:
         return new ComponentDtosAndTotal(
@@ -162,6 +164,60 @@ public class ComponentTreeDataLoader {
     }
   }
 
+  /**
+   * Components are streamed from database with the measure of the sort metric. Only the components
+   * up to the requested page are kept in memory.
+   */
+  private ComponentDtosAndTotal searchComponentsSortedByMetric(DbSession dbSession, ComponentTreeQuery dbQuery, ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
+    List<WsMeasures.Period> periods) {
+    int componentCount;
+    TopComponentsCollector collector = new TopComponentsCollector(wsRequest, metrics, maxComponentsToLoad(wsRequest), sortMetric(wsRequest, metrics),
+      sortMetricBestValue(wsRequest, metrics, periods), isSortedInDbByMetricValue(wsRequest, metrics));
+    switch (wsRequest.getStrategy()) {
+      case CHILDREN_STRATEGY:
+        dbClient.componentDao().selectDirectChildren(dbSession, dbQuery, collector);
+        componentCount = dbClient.componentDao().countDirectChildren(dbSession, dbQuery);
+        break;
+      case LEAVES_STRATEGY:
+      case ALL_STRATEGY:
+        dbClient.componentDao().selectAllChildren(dbSession, dbQuery, collector);
+        componentCount = dbClient.componentDao().countAllChildren(dbSession, dbQuery);
+        break;
+      default:
+        throw new IllegalStateException("Unknown component tree strategy");
+    }
+
+    return new ComponentDtosAndTotal(paginateComponents(collector.getSortedComponents(), componentCount, wsRequest), componentCount);
+  }
+
+  private static int maxComponentsToLoad(ComponentTreeWsRequest wsRequest) {
+    return (int) Math.min((long) wsRequest.getPage() * wsRequest.getPageSize(), Integer.MAX_VALUE);
+  }
+
+  private static MetricDto sortMetric(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics) {
+    return Maps.uniqueIndex(metrics, MetricDtoFunctions.toKey()).get(wsRequest.getMetricSort());
+  }
+
+  @CheckForNull
+  private static MetricDtoWithBestValue sortMetricBestValue(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics, List<WsMeasures.Period> periods) {
+    MetricDto metric = sortMetric(wsRequest, metrics);
+    if (!MetricDtoFunctions.isOptimizedForBestValue().apply(metric)) {
+      return null;
+    }
+    return new MetricDtoToMetricDtoWithBestValue(periods).apply(metric);
+  }
+
+  /**
+   * Ordering by measure value is done by database when it's the first sort and it doesn't depend on best values,
+   * which are not stored.
+   */
+  private static boolean isSortedInDbByMetricValue(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics) {
+    MetricDto metric = sortMetric(wsRequest, metrics);
+    return METRIC_SORT.equals(wsRequest.getSort().get(0))
+      && ComponentTreeSort.isNumericalMetric(metric)
+      && !MetricDtoFunctions.isOptimizedForBestValue().apply(metric);
+  }
+
   private List<MetricDto> searchMetrics(DbSession dbSession, ComponentTreeWsRequest request) {
     List<MetricDto> metrics = dbClient.metricDao().selectByKeys(dbSession, request.getMetricKeys());
     if (metrics.size() < request.getMetricKeys().size()) {
@@ -230,20 +286,7 @@ public class ComponentTreeDataLoader {
     }
   }
 
-  private static List<ComponentDtoWithSnapshotId> sortComponents(List<ComponentDtoWithSnapshotId> components, ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
-    Table<String, MetricDto, MeasureDto> measuresByComponentUuidAndMetric) {
-    if (!wsRequest.getSort().contains(METRIC_SORT)) {
-      return components;
-    }
-
-    return ComponentTreeSort.sortComponents(components, wsRequest, metrics, measuresByComponentUuidAndMetric);
-  }
-
   private static List<ComponentDtoWithSnapshotId> paginateComponents(List<ComponentDtoWithSnapshotId> components, int componentCount, ComponentTreeWsRequest wsRequest) {
-    if (!wsRequest.getSort().contains(METRIC_SORT)) {
-      return components;
-    }
-
     Paging paging = Paging.forPageIndex(wsRequest.getPage())
       .withPageSize(wsRequest.getPageSize())
       .andTotal(componentCount);
@@ -275,7 +318,7 @@ public class ComponentTreeDataLoader {
     return new ArrayList<>(qualifiersIntersection);
   }
 
-  private ComponentTreeQuery toComponentTreeQuery(ComponentTreeWsRequest wsRequest, SnapshotDto baseSnapshot) {
+  private ComponentTreeQuery toComponentTreeQuery(ComponentTreeWsRequest wsRequest, SnapshotDto baseSnapshot, List<MetricDto> metrics) {
     List<String> childrenQualifiers = childrenQualifiers(wsRequest, baseSnapshot.getQualifier());
 
     List<String> sortsWithoutMetricSort = newArrayList(Iterables.filter(wsRequest.getSort(), IsNotMetricSort.INSTANCE));
@@ -294,10 +337,9 @@ public class ComponentTreeDataLoader {
     if (childrenQualifiers != null) {
       dbQuery.setQualifiers(childrenQualifiers);
     }
-    // load all components if we must sort by metric value
     if (wsRequest.getSort().contains(METRIC_SORT)) {
-      dbQuery.setPage(1);
-      dbQuery.setPageSize(Integer.MAX_VALUE);
+      dbQuery.setSortMetricId(sortMetric(wsRequest, metrics).getId());
+      dbQuery.setSortByMetricValue(isSortedInDbByMetricValue(wsRequest, metrics));
     }
 
     return dbQuery.build();
@@ -322,7 +364,7 @@ public class ComponentTreeDataLoader {
     }
   }
 
-  private enum IsFileComponent implements Predicate<ComponentDtoWithSnapshotId> {
+  enum IsFileComponent implements Predicate<ComponentDtoWithSnapshotId> {
     INSTANCE;
 
     @Override
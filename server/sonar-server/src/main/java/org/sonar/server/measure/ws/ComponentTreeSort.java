@@ -24,8 +24,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Table;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.sonar.api.measures.Metric.ValueType;
@@ -36,6 +38,13 @@ import org.sonar.db.metric.MetricDtoFunctions;
 import org.sonarqube.ws.client.measure.ComponentTreeWsRequest;
 
 import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static org.sonar.api.measures.Metric.ValueType.BOOL;
+import static org.sonar.api.measures.Metric.ValueType.FLOAT;
+import static org.sonar.api.measures.Metric.ValueType.INT;
+import static org.sonar.api.measures.Metric.ValueType.MILLISEC;
+import static org.sonar.api.measures.Metric.ValueType.PERCENT;
+import static org.sonar.api.measures.Metric.ValueType.RATING;
+import static org.sonar.api.measures.Metric.ValueType.WORK_DUR;
 import static org.sonar.server.measure.ws.ComponentTreeAction.METRIC_SORT;
 import static org.sonar.server.measure.ws.ComponentTreeAction.NAME_SORT;
 import static org.sonar.server.measure.ws.ComponentTreeAction.PATH_SORT;
@@ -43,6 +52,8 @@ import static org.sonar.server.measure.ws.ComponentTreeAction.QUALIFIER_SORT;
 
 class ComponentTreeSort {
 
+  private static final Set<ValueType> NUMERICAL_VALUE_TYPES = EnumSet.of(BOOL, INT, MILLISEC, WORK_DUR, FLOAT, PERCENT, RATING);
+
   private ComponentTreeSort() {
     // static method only
   }
@@ -53,6 +64,17 @@ class ComponentTreeSort {
     if (sortParameters == null || sortParameters.isEmpty()) {
       return components;
     }
+
+    return componentOrdering(wsRequest, metrics, measuresByComponentUuidAndMetric).immutableSortedCopy(components);
+  }
+
+  /**
+   * Ordering of the components according to all the sort parameters of the request, which must not be empty.
+   * Measures are read from {@code measuresByComponentUuidAndMetric} each time two components are compared.
+   */
+  static Ordering<ComponentDtoWithSnapshotId> componentOrdering(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
+    Table<String, MetricDto, MeasureDto> measuresByComponentUuidAndMetric) {
+    List<String> sortParameters = wsRequest.getSort();
     boolean isAscending = wsRequest.getAsc();
     Map<String, Ordering<ComponentDtoWithSnapshotId>> orderingsBySortField = ImmutableMap.<String, Ordering<ComponentDtoWithSnapshotId>>builder()
       .put(NAME_SORT, componentNameOrdering(isAscending))
@@ -71,7 +93,11 @@ class ComponentTreeSort {
       }
     }
 
-    return primaryOrdering.immutableSortedCopy(components);
+    return primaryOrdering;
+  }
+
+  static boolean isNumericalMetric(MetricDto metric) {
+    return NUMERICAL_VALUE_TYPES.contains(ValueType.valueOf(metric.getValueType()));
   }
 
   private static Ordering<ComponentDtoWithSnapshotId> componentNameOrdering(boolean isAscending) {
@@ -98,7 +124,7 @@ class ComponentTreeSort {
   /**
    * Order by measure value, taking the metric direction into account
    */
-  private static Ordering<ComponentDtoWithSnapshotId> metricOrdering(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
+  static Ordering<ComponentDtoWithSnapshotId> metricOrdering(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics,
     Table<String, MetricDto, MeasureDto> measuresByComponentUuidAndMetric) {
     if (wsRequest.getMetricSort() == null) {
       return componentNameOrdering(wsRequest.getAsc());
@@ -0,0 +1,174 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.ws;
+
+import com.google.common.base.Function;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Table;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.sonar.db.component.ComponentDtoWithSnapshotId;
+import org.sonar.db.component.ComponentDtoWithSnapshotIdAndMeasure;
+import org.sonar.db.measure.MeasureDto;
+import org.sonar.db.metric.MetricDto;
+import org.sonarqube.ws.client.measure.ComponentTreeWsRequest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps the first components of the stream of components returned by
+ * {@link org.sonar.db.component.ComponentDao#selectAllChildren(org.sonar.db.DbSession, org.sonar.db.component.ComponentTreeQuery, ResultHandler)},
+ * according to the sort of the request. Memory is bounded by the number of kept components, whatever the size of the tree.
+ * <p/>
+ * When components are already sorted by the value of the sort metric, reading stops as soon as the remaining
+ * components can't be part of the kept ones.
+ */
+class TopComponentsCollector implements ResultHandler {
+
+  private final int limit;
+  private final MetricDto sortMetric;
+  @CheckForNull
+  private final MetricDtoWithBestValue sortMetricBestValue;
+  private final boolean sortedByMetricValue;
+  // measures of the sort metric, only for the kept components
+  private final Table<String, MetricDto, MeasureDto> measuresByComponentUuidAndMetric = HashBasedTable.create();
+  private final Ordering<Candidate> ordering;
+  private final Ordering<ComponentDtoWithSnapshotId> metricOrdering;
+  private final MinMaxPriorityQueue<Candidate> candidates;
+  private int sequence = 0;
+
+  /**
+   * @param limit max number of kept components
+   * @param sortMetric metric of {@link ComponentTreeWsRequest#getMetricSort()}, which must be in {@code metrics}
+   * @param sortMetricBestValue best value of the sort metric for the components which have no measure, or {@code null}
+   *                            if the metric is not optimized for best value
+   * @param sortedByMetricValue whether the components are streamed in the order of the values of the sort metric
+   */
+  TopComponentsCollector(ComponentTreeWsRequest wsRequest, List<MetricDto> metrics, int limit, MetricDto sortMetric,
+    @Nullable MetricDtoWithBestValue sortMetricBestValue, boolean sortedByMetricValue) {
+    checkArgument(limit >= 0, "Number of components to keep must be positive or zero");
+    this.limit = limit;
+    this.sortMetric = sortMetric;
+    this.sortMetricBestValue = sortMetricBestValue;
+    this.sortedByMetricValue = sortedByMetricValue;
+    this.metricOrdering = ComponentTreeSort.metricOrdering(wsRequest, metrics, measuresByComponentUuidAndMetric);
+    // components which are equal according to the request are kept in the order of the stream
+    this.ordering = ComponentTreeSort.componentOrdering(wsRequest, metrics, measuresByComponentUuidAndMetric)
+      .onResultOf(CandidateToComponent.INSTANCE)
+      .compound(Ordering.<Integer>natural().onResultOf(CandidateToSequence.INSTANCE));
+    this.candidates = MinMaxPriorityQueue.orderedBy(ordering).create();
+  }
+
+  @Override
+  public void handleResult(ResultContext context) {
+    if (limit == 0) {
+      context.stop();
+      return;
+    }
+    ComponentDtoWithSnapshotIdAndMeasure component = (ComponentDtoWithSnapshotIdAndMeasure) context.getResultObject();
+    MeasureDto measure = toMeasure(component);
+    if (measure != null) {
+      measuresByComponentUuidAndMetric.put(component.uuid(), sortMetric, measure);
+    }
+    Candidate candidate = new Candidate(component, sequence);
+    sequence++;
+    if (candidates.size() < limit) {
+      candidates.add(candidate);
+      return;
+    }
+
+    Candidate last = candidates.peekLast();
+    if (ordering.compare(candidate, last) < 0) {
+      candidates.removeLast();
+      measuresByComponentUuidAndMetric.remove(last.component.uuid(), sortMetric);
+      candidates.add(candidate);
+    } else {
+      boolean isAfterLast = metricOrdering.compare(component, last.component) > 0;
+      measuresByComponentUuidAndMetric.remove(component.uuid(), sortMetric);
+      if (sortedByMetricValue && isAfterLast) {
+        // next components have greater or equal values
+        context.stop();
+      }
+    }
+  }
+
+  @CheckForNull
+  private MeasureDto toMeasure(ComponentDtoWithSnapshotIdAndMeasure component) {
+    if (component.hasMeasure()) {
+      return new MeasureDto()
+        .setSnapshotId(component.getSnapshotId())
+        .setMetricId(sortMetric.getId())
+        .setMetricKey(sortMetric.getKey())
+        .setValue(component.getMeasureValue())
+        .setData(component.getMeasureData());
+    }
+    if (sortMetricBestValue != null && ComponentTreeDataLoader.IsFileComponent.INSTANCE.apply(component)) {
+      return sortMetricBestValue.getBestValue();
+    }
+    return null;
+  }
+
+  /**
+   * Kept components, sorted
+   */
+  List<ComponentDtoWithSnapshotId> getSortedComponents() {
+    List<ComponentDtoWithSnapshotId> result = new ArrayList<>(candidates.size());
+    MinMaxPriorityQueue<Candidate> copy = MinMaxPriorityQueue.orderedBy(ordering).create(candidates);
+    while (!copy.isEmpty()) {
+      result.add(copy.pollFirst().component);
+    }
+    return result;
+  }
+
+  private static class Candidate {
+    private final ComponentDtoWithSnapshotId component;
+    private final int sequence;
+
+    private Candidate(ComponentDtoWithSnapshotId component, int sequence) {
+      this.component = component;
+      this.sequence = sequence;
+    }
+  }
+
+  private enum CandidateToComponent implements Function<Candidate, ComponentDtoWithSnapshotId> {
+    INSTANCE;
+
+    @Override
+    public ComponentDtoWithSnapshotId apply(@Nonnull Candidate input) {
+      return input.component;
+    }
+  }
+
+  private enum CandidateToSequence implements Function<Candidate, Integer> {
+    INSTANCE;
+
+    @Override
+    public Integer apply(@Nonnull Candidate input) {
+      return input.sequence;
+    }
+  }
+}
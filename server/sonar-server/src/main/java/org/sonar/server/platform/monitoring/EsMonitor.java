@@ -28,6 +28,7 @@ import org.elasticsearch.action.admin.cluster.stats.ClusterStatsResponse;
 import org.elasticsearch.action.admin.indices.stats.IndexStats;
 import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.EsClient;
 
 import static org.apache.commons.io.FileUtils.byteCountToDisplaySize;
@@ -35,9 +36,15 @@ import static org.apache.commons.io.FileUtils.byteCountToDisplaySize;
 public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
 
   private final EsClient esClient;
+  private final BaseIndexer[] indexers;
 
-  public EsMonitor(EsClient esClient) {
+  public EsMonitor(EsClient esClient, BaseIndexer[] indexers) {
     this.esClient = esClient;
+    this.indexers = indexers;
+  }
+
+  public EsMonitor(EsClient esClient) {
+    this(esClient, new BaseIndexer[0]);
   }
 
   @Override
@@ -63,6 +70,24 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     return clusterStats().getNodesStats().getCounts().getTotal();
   }
 
+  @Override
+  public int getIndexingQueueDepth() {
+    int depth = 0;
+    for (BaseIndexer indexer : indexers) {
+      depth += indexer.getQueueDepth();
+    }
+    return depth;
+  }
+
+  @Override
+  public long getIndexingLagMs() {
+    long lag = 0L;
+    for (BaseIndexer indexer : indexers) {
+      lag = Math.max(lag, indexer.getQueueLagMs());
+    }
+    return lag;
+  }
+
   @Override
   public LinkedHashMap<String, Object> attributes() {
     LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
@@ -70,9 +95,24 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     attributes.put("Indices", indexAttributes());
     attributes.put("Number of Nodes", getNumberOfNodes());
     attributes.put("Nodes", nodeAttributes());
+    attributes.put("Indexing Queues", indexingQueueAttributes());
     return attributes;
   }
 
+  /**
+   * map of {index/type -> queue attributes}
+   */
+  private LinkedHashMap<String, LinkedHashMap<String, Object>> indexingQueueAttributes() {
+    LinkedHashMap<String, LinkedHashMap<String, Object>> queues = new LinkedHashMap<>();
+    for (BaseIndexer indexer : indexers) {
+      LinkedHashMap<String, Object> queueAttributes = new LinkedHashMap<>();
+      queues.put(indexer.getIndexName() + "/" + indexer.getTypeName(), queueAttributes);
+      queueAttributes.put("Pending Passes", indexer.getQueueDepth());
+      queueAttributes.put("Lag (ms)", indexer.getQueueLagMs());
+    }
+    return queues;
+  }
+
   private LinkedHashMap<String, LinkedHashMap<String, Object>> indexAttributes() {
     LinkedHashMap<String, LinkedHashMap<String, Object>> indices = new LinkedHashMap<>();
     IndicesStatsResponse indicesStats = esClient.prepareStats().all().get();
@@ -26,4 +26,14 @@ package org.sonar.server.platform.monitoring;
 public interface EsMonitorMBean {
   String getState();
   int getNumberOfNodes();
+
+  /**
+   * Total number of indexing passes waiting to be executed
+   */
+  int getIndexingQueueDepth();
+
+  /**
+   * Age in milliseconds of the oldest indexing request not executed yet
+   */
+  long getIndexingLagMs();
 }
@@ -265,6 +265,7 @@ import org.sonar.server.rule.ws.RuleMapper;
 import org.sonar.server.rule.ws.RulesWs;
 import org.sonar.server.rule.ws.TagsAction;
 import org.sonar.server.source.HtmlSourceDecorator;
+import org.sonar.server.source.SourceBlockCache;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.ws.HashAction;
 import org.sonar.server.source.ws.IndexAction;
@@ -291,6 +292,7 @@ import org.sonar.server.user.DefaultUserService;
 import org.sonar.server.user.GroupMembershipFinder;
 import org.sonar.server.user.GroupMembershipService;
 import org.sonar.server.user.NewUserNotifier;
+import org.sonar.server.user.PermissionCache;
 import org.sonar.server.user.SecurityRealmFactory;
 import org.sonar.server.user.UserUpdater;
 import org.sonar.server.user.index.UserIndex;
@@ -553,6 +555,7 @@ public class PlatformLevel4 extends PlatformLevel {
       PermissionService.class,
       PermissionUpdater.class,
       PermissionFinder.class,
+      PermissionCache.class,
       PermissionsWsModule.class,
 
       // components
@@ -630,6 +633,7 @@ public class PlatformLevel4 extends PlatformLevel {
       // source
       HtmlSourceDecorator.class,
       SourceService.class,
+      SourceBlockCache.class,
       SourcesWs.class,
       org.sonar.server.source.ws.ShowAction.class,
       LinesAction.class,
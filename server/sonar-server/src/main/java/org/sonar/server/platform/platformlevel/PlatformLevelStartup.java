@@ -20,6 +20,7 @@
 package org.sonar.server.platform.platformlevel;
 
 import org.sonar.server.computation.queue.PurgeCeActivities;
+import org.sonar.server.es.ParallelReindexer;
 import org.sonar.server.issue.filter.RegisterIssueFilters;
 import org.sonar.server.platform.ServerLifecycleNotifier;
 import org.sonar.server.qualitygate.RegisterQualityGates;
@@ -48,6 +49,7 @@ public class PlatformLevelStartup extends PlatformLevel {
   @Override
   protected void configureLevel() {
     add(
+      ParallelReindexer.class,
       IndexSynchronizer.class,
       RegisterMetrics.class,
       RegisterQualityGates.class,
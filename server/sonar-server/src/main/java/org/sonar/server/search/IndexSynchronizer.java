@@ -23,6 +23,7 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.activity.index.ActivityIndexer;
+import org.sonar.server.es.ParallelReindexer;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.test.index.TestIndexer;
@@ -39,6 +40,7 @@ public class IndexSynchronizer {
   private final UserIndexer userIndexer;
   private final ViewIndexer viewIndexer;
   private final ActivityIndexer activityIndexer;
+  private final ParallelReindexer parallelReindexer;
   private final Settings settings;
 
   /**
@@ -48,13 +50,14 @@ public class IndexSynchronizer {
    */
   public IndexSynchronizer(TestIndexer testIndexer, IssueAuthorizationIndexer issueAuthorizationIndexer, IssueIndexer issueIndexer,
     UserIndexer userIndexer, ViewIndexer viewIndexer, ActivityIndexer activityIndexer,
-    Settings settings) {
+    ParallelReindexer parallelReindexer, Settings settings) {
     this.testIndexer = testIndexer;
     this.issueAuthorizationIndexer = issueAuthorizationIndexer;
     this.issueIndexer = issueIndexer;
     this.userIndexer = userIndexer;
     this.viewIndexer = viewIndexer;
     this.activityIndexer = activityIndexer;
+    this.parallelReindexer = parallelReindexer;
     this.settings = settings;
   }
 
@@ -65,9 +68,11 @@ public class IndexSynchronizer {
 
       LOG.info("Index issues");
       issueAuthorizationIndexer.setEnabled(true).index();
+      parallelReindexer.reindexIfNeeded(issueIndexer);
       issueIndexer.setEnabled(true).index();
 
       LOG.info("Index tests");
+      parallelReindexer.reindexIfNeeded(testIndexer);
       testIndexer.setEnabled(true).index();
 
       LOG.info("Index users");
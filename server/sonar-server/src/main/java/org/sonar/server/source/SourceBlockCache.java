@@ -0,0 +1,127 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.db.source.SourceLineBlocks;
+
+/**
+ * Cache of the blocks of lines decoded by {@link SourceService}, shared by all the HTTP requests, so that
+ * browsing a large file page after page does not decompress and deserialize the same lines again.
+ * <p/>
+ * Entries are identified by the date of last update of the file source, so a new analysis
+ * does not return stale lines. Size of cache is bounded by the total number of lines. Sources stored
+ * before lines were split into blocks are not cached, as their single block can be huge.
+ */
+@ServerSide
+public class SourceBlockCache {
+
+  /**
+   * Equivalent to 1'000 full blocks
+   */
+  static final long MAX_LINES = 1_000L * SourceLineBlocks.LINES_PER_BLOCK;
+  static final long TTL_MINUTES = 10L;
+
+  private final Cache<BlockKey, List<DbFileSources.Line>> cache = CacheBuilder.newBuilder()
+    .expireAfterAccess(TTL_MINUTES, TimeUnit.MINUTES)
+    .maximumWeight(MAX_LINES)
+    .weigher(LineCountWeigher.INSTANCE)
+    .build();
+
+  public List<DbFileSources.Line> getLines(FileSourceDto dto, final SourceLineBlocks blocks, final int blockIndex) {
+    if (blocks.isLegacyFormat()) {
+      return blocks.decode(blockIndex).getLinesList();
+    }
+    BlockKey key = new BlockKey(dto.getFileUuid(), dto.getUpdatedAt(), blockIndex);
+    try {
+      return cache.get(key, new Callable<List<DbFileSources.Line>>() {
+        @Override
+        public List<DbFileSources.Line> call() {
+          return blocks.decode(blockIndex).getLinesList();
+        }
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  private static RuntimeException propagate(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  private enum LineCountWeigher implements Weigher<BlockKey, List<DbFileSources.Line>> {
+    INSTANCE;
+
+    @Override
+    public int weigh(BlockKey key, List<DbFileSources.Line> lines) {
+      return Math.max(1, lines.size());
+    }
+  }
+
+  private static final class BlockKey {
+    private final String fileUuid;
+    private final long updatedAt;
+    private final int blockIndex;
+
+    private BlockKey(String fileUuid, long updatedAt, int blockIndex) {
+      this.fileUuid = fileUuid;
+      this.updatedAt = updatedAt;
+      this.blockIndex = blockIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BlockKey that = (BlockKey) o;
+      return updatedAt == that.updatedAt && blockIndex == that.blockIndex && fileUuid.equals(that.fileUuid);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(fileUuid, updatedAt, blockIndex);
+    }
+  }
+}
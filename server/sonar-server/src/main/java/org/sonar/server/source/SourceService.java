@@ -25,20 +25,25 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nonnull;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto;
+import org.sonar.db.source.SourceLineBlocks;
 
 public class SourceService {
 
   private final DbClient dbClient;
   private final HtmlSourceDecorator htmlDecorator;
+  private final SourceBlockCache blockCache;
 
-  public SourceService(DbClient dbClient, HtmlSourceDecorator htmlDecorator) {
+  public SourceService(DbClient dbClient, HtmlSourceDecorator htmlDecorator, SourceBlockCache blockCache) {
     this.dbClient = dbClient;
     this.htmlDecorator = htmlDecorator;
+    this.blockCache = blockCache;
   }
 
   /**
@@ -73,8 +78,12 @@ public class SourceService {
     if (dto == null) {
       return Optional.absent();
     }
-    DbFileSources.Data data = dto.getSourceData();
-    return FluentIterable.from(data.getLinesList())
+    SourceLineBlocks blocks = SourceLineBlocks.parse(dto.getBinaryData());
+    int blockIndex = blocks.blockIndexOf(line);
+    if (blockIndex >= blocks.size()) {
+      return Optional.absent();
+    }
+    return FluentIterable.from(blockCache.getLines(dto, blocks, blockIndex))
       .filter(new IsGreaterOrEqualThanLine(line))
       .first();
   }
@@ -86,13 +95,27 @@ public class SourceService {
     if (dto == null) {
       return Optional.absent();
     }
-    DbFileSources.Data data = dto.getSourceData();
-    return Optional.of((Iterable<E>) FluentIterable.from(data.getLinesList())
+    return Optional.of((Iterable<E>) FluentIterable.from(loadLines(dto, from, toInclusive))
       .filter(new IsGreaterOrEqualThanLine(from))
       .limit(toInclusive - from + 1)
       .transform(function));
   }
 
+  /**
+   * Only the blocks containing the lines [from, toInclusive] are decompressed.
+   */
+  private List<DbFileSources.Line> loadLines(FileSourceDto dto, int from, int toInclusive) {
+    SourceLineBlocks blocks = SourceLineBlocks.parse(dto.getBinaryData());
+    List<DbFileSources.Line> lines = new ArrayList<>();
+    for (int i = blocks.blockIndexOf(from); i < blocks.size(); i++) {
+      lines.addAll(blockCache.getLines(dto, blocks, i));
+      if (blocks.lastLine(i) >= toInclusive) {
+        break;
+      }
+    }
+    return lines;
+  }
+
   private static void verifyLine(int line) {
     Preconditions.checkArgument(line >= 1, String.format("Line number must start at 1, got %d", line));
   }
@@ -19,7 +19,9 @@
  */
 package org.sonar.server.test.index;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -27,9 +29,11 @@ import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.source.FileSourceDto;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.PartitionedIndexer;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 
 import static org.sonar.server.test.index.TestIndexDefinition.FIELD_FILE_UUID;
@@ -41,7 +45,7 @@ import static org.sonar.server.test.index.TestIndexDefinition.TYPE;
  * Add to Elasticsearch index {@link TestIndexDefinition} the rows of
  * db table FILE_SOURCES of type TEST that are not indexed yet
  */
-public class TestIndexer extends BaseIndexer {
+public class TestIndexer extends BaseIndexer implements PartitionedIndexer {
 
   private final DbClient dbClient;
 
@@ -50,14 +54,26 @@ public class TestIndexer extends BaseIndexer {
     this.dbClient = dbClient;
   }
 
-  public void index(final String projectUuid) {
+  public void index(String projectUuid) {
     deleteByProject(projectUuid);
-    super.index(new IndexerTask() {
+    super.index(projectUuid, newProjectTask(projectUuid));
+  }
+
+  /**
+   * Same as {@link #index(String)} but does not wait for the documents of the project to be indexed again.
+   */
+  public ListenableFuture<Void> indexAsync(String projectUuid) {
+    deleteByProject(projectUuid);
+    return super.indexAsync(projectUuid, newProjectTask(projectUuid));
+  }
+
+  private IndexerTask newProjectTask(final String projectUuid) {
+    return new IndexerTask() {
       @Override
       public long index(long lastUpdatedAt) {
         return doIndex(lastUpdatedAt, projectUuid);
       }
-    });
+    };
   }
 
   public long index(Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
@@ -86,9 +102,35 @@ public class TestIndexer extends BaseIndexer {
     }
   }
 
+  /**
+   * Partitions are the uuids of projects having tests
+   */
+  @Override
+  public List<String> selectPartitions() {
+    return selectPartitions(dbClient, "select distinct project_uuid from file_sources where data_type='" + FileSourceDto.Type.TEST + "'");
+  }
+
+  @Override
+  public void indexPartition(String projectUuid, BulkIndexer bulk) {
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      TestResultSetIterator rowIt = TestResultSetIterator.create(dbClient, dbSession, 0L, projectUuid);
+      add(bulk, rowIt);
+      rowIt.close();
+    } finally {
+      dbSession.close();
+    }
+  }
+
   private static long doIndex(BulkIndexer bulk, Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
-    long maxUpdatedAt = 0L;
     bulk.start();
+    long maxUpdatedAt = add(bulk, dbRows);
+    bulk.stop();
+    return maxUpdatedAt;
+  }
+
+  private static long add(BulkIndexer bulk, Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
+    long maxUpdatedAt = 0L;
     while (dbRows.hasNext()) {
       FileSourcesUpdaterHelper.Row row = dbRows.next();
       for (UpdateRequest updateRequest : row.getUpdateRequests()) {
@@ -96,7 +138,6 @@ public class TestIndexer extends BaseIndexer {
       }
       maxUpdatedAt = Math.max(maxUpdatedAt, row.getUpdatedAt());
     }
-    bulk.stop();
     return maxUpdatedAt;
   }
 
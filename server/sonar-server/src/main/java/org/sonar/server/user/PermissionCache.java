@@ -0,0 +1,199 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.user;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.component.ResourceDao;
+import org.sonar.db.component.ResourceDto;
+import org.sonar.db.user.AuthorizationDao;
+
+/**
+ * Short-lived cache of the data loaded by {@link ServerUserSession} to check authorizations. Contrary to the maps
+ * held by each session, it is shared by all the HTTP requests, so that the root project of a component and the
+ * permissions of a user are not loaded again from database on each page or web service call.
+ * <p/>
+ * Entries expire after a few seconds, which bounds the delay for the changes that are not notified. Changes of permissions
+ * done by {@link org.sonar.server.permission.PermissionUpdater} or when a project is created
+ * by the Compute Engine must call {@link #invalidate()}.
+ */
+@ServerSide
+public class PermissionCache {
+
+  static final long TTL_MS = 10_000L;
+  static final int MAX_SIZE = 10_000;
+
+  private final AuthorizationDao authorizationDao;
+  private final ResourceDao resourceDao;
+
+  private final Cache<String, List<String>> globalPermissionsByLogin;
+  private final Cache<UserPermission, Collection<String>> projectKeysByUserPermission;
+  private final Cache<UserPermission, Collection<String>> projectUuidsByUserPermission;
+  private final Cache<String, String> rootProjectKeyByComponentKey;
+  private final Cache<String, String> projectUuidByComponentUuid;
+
+  public PermissionCache(AuthorizationDao authorizationDao, ResourceDao resourceDao) {
+    this(authorizationDao, resourceDao, TTL_MS);
+  }
+
+  PermissionCache(AuthorizationDao authorizationDao, ResourceDao resourceDao, long ttlMs) {
+    this.authorizationDao = authorizationDao;
+    this.resourceDao = resourceDao;
+    this.globalPermissionsByLogin = newCache(ttlMs);
+    this.projectKeysByUserPermission = newCache(ttlMs);
+    this.projectUuidsByUserPermission = newCache(ttlMs);
+    this.rootProjectKeyByComponentKey = newCache(ttlMs);
+    this.projectUuidByComponentUuid = newCache(ttlMs);
+  }
+
+  private static <K, V> Cache<K, V> newCache(long ttlMs) {
+    return CacheBuilder.newBuilder()
+      .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+      .maximumSize(MAX_SIZE)
+      .build();
+  }
+
+  public List<String> selectGlobalPermissions(@Nullable final String login) {
+    // keys can't be null. Empty login is used for anonymous.
+    return get(globalPermissionsByLogin, login == null ? "" : login, new Callable<List<String>>() {
+      @Override
+      public List<String> call() {
+        return authorizationDao.selectGlobalPermissions(login);
+      }
+    });
+  }
+
+  public Collection<String> selectAuthorizedRootProjectsKeys(@Nullable final Integer userId, final String permission) {
+    return get(projectKeysByUserPermission, new UserPermission(userId, permission), new Callable<Collection<String>>() {
+      @Override
+      public Collection<String> call() {
+        return authorizationDao.selectAuthorizedRootProjectsKeys(userId, permission);
+      }
+    });
+  }
+
+  public Collection<String> selectAuthorizedRootProjectsUuids(@Nullable final Integer userId, final String permission) {
+    return get(projectUuidsByUserPermission, new UserPermission(userId, permission), new Callable<Collection<String>>() {
+      @Override
+      public Collection<String> call() {
+        return authorizationDao.selectAuthorizedRootProjectsUuids(userId, permission);
+      }
+    });
+  }
+
+  /**
+   * Key of the root project of the given component, or {@code null} if the component does not exist.
+   * Unknown components are not cached, as they may be created in the meantime.
+   */
+  @CheckForNull
+  public String selectRootProjectKey(String componentKey) {
+    String projectKey = rootProjectKeyByComponentKey.getIfPresent(componentKey);
+    if (projectKey == null) {
+      ResourceDto project = resourceDao.getRootProjectByComponentKey(componentKey);
+      if (project != null) {
+        projectKey = project.getKey();
+        rootProjectKeyByComponentKey.put(componentKey, projectKey);
+      }
+    }
+    return projectKey;
+  }
+
+  /**
+   * UUID of the project of the given component, or {@code null} if the component does not exist.
+   * Unknown components are not cached, as they may be created in the meantime.
+   */
+  @CheckForNull
+  public String selectProjectUuid(String componentUuid) {
+    String projectUuid = projectUuidByComponentUuid.getIfPresent(componentUuid);
+    if (projectUuid == null) {
+      ResourceDto component = resourceDao.selectResource(componentUuid);
+      if (component != null) {
+        projectUuid = component.getProjectUuid();
+        projectUuidByComponentUuid.put(componentUuid, projectUuid);
+      }
+    }
+    return projectUuid;
+  }
+
+  /**
+   * Drops all the cached permissions. Must be called when permissions are changed.
+   */
+  public void invalidate() {
+    globalPermissionsByLogin.invalidateAll();
+    projectKeysByUserPermission.invalidateAll();
+    projectUuidsByUserPermission.invalidateAll();
+  }
+
+  private static <K, V> V get(Cache<K, V> cache, K key, Callable<V> loader) {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  private static RuntimeException propagate(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  private static final class UserPermission {
+    @Nullable
+    private final Integer userId;
+    private final String permission;
+
+    private UserPermission(@Nullable Integer userId, String permission) {
+      this.userId = userId;
+      this.permission = permission;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      UserPermission that = (UserPermission) o;
+      return Objects.equal(userId, that.userId) && permission.equals(that.permission);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(userId, permission);
+    }
+  }
+}
@@ -24,9 +24,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import org.sonar.api.security.DefaultGroups;
-import org.sonar.db.component.ResourceDao;
-import org.sonar.db.component.ResourceDto;
-import org.sonar.db.user.AuthorizationDao;
 
 import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Sets.newHashSet;
@@ -39,14 +36,12 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
 
   private Map<String, String> projectKeyByComponentKey = newHashMap();
 
-  private final AuthorizationDao authorizationDao;
-  private final ResourceDao resourceDao;
+  private final PermissionCache permissionCache;
 
-  ServerUserSession(AuthorizationDao authorizationDao, ResourceDao resourceDao) {
+  ServerUserSession(PermissionCache permissionCache) {
     super(ServerUserSession.class);
     this.globalPermissions = null;
-    this.authorizationDao = authorizationDao;
-    this.resourceDao = resourceDao;
+    this.permissionCache = permissionCache;
     // Do not forget that when forceAuthentication is set to true, the Anyone group should not be set (but this will be check when
     // authentication will be done in Java)
     this.userGroups = newHashSet(DefaultGroups.ANYONE);
@@ -55,7 +50,7 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
   @Override
   public List<String> globalPermissions() {
     if (globalPermissions == null) {
-      List<String> permissionKeys = authorizationDao.selectGlobalPermissions(login);
+      List<String> permissionKeys = permissionCache.selectGlobalPermissions(login);
       globalPermissions = new ArrayList<>();
       for (String permissionKey : permissionKeys) {
         globalPermissions.add(permissionKey);
@@ -66,7 +61,7 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
 
   private boolean hasProjectPermission(String permission, String projectKey) {
     if (!projectPermissionsCheckedByKey.contains(permission)) {
-      Collection<String> projectKeys = authorizationDao.selectAuthorizedRootProjectsKeys(userId, permission);
+      Collection<String> projectKeys = permissionCache.selectAuthorizedRootProjectsKeys(userId, permission);
       for (String key : projectKeys) {
         projectKeyByPermission.put(permission, key);
       }
@@ -78,7 +73,7 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
   // To keep private
   private boolean hasProjectPermissionByUuid(String permission, String projectUuid) {
     if (!projectPermissionsCheckedByUuid.contains(permission)) {
-      Collection<String> projectUuids = authorizationDao.selectAuthorizedRootProjectsUuids(userId, permission);
+      Collection<String> projectUuids = permissionCache.selectAuthorizedRootProjectsUuids(userId, permission);
       addProjectPermission(permission, projectUuids);
     }
     return projectUuidByPermission.get(permission).contains(projectUuid);
@@ -99,11 +94,10 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
 
     String projectKey = projectKeyByComponentKey.get(componentKey);
     if (projectKey == null) {
-      ResourceDto project = resourceDao.getRootProjectByComponentKey(componentKey);
-      if (project == null) {
+      projectKey = permissionCache.selectRootProjectKey(componentKey);
+      if (projectKey == null) {
         return false;
       }
-      projectKey = project.getKey();
     }
     boolean hasComponentPermission = hasProjectPermission(permission, projectKey);
     if (hasComponentPermission) {
@@ -121,11 +115,10 @@ public class ServerUserSession extends AbstractUserSession<ServerUserSession>
 
     String projectUuid = projectUuidByComponentUuid.get(componentUuid);
     if (projectUuid == null) {
-      ResourceDto project = resourceDao.selectResource(componentUuid);
-      if (project == null) {
+      projectUuid = permissionCache.selectProjectUuid(componentUuid);
+      if (projectUuid == null) {
         return false;
       }
-      projectUuid = project.getProjectUuid();
     }
     boolean hasComponentPermission = hasProjectPermissionByUuid(permission, projectUuid);
     if (hasComponentPermission) {
@@ -19,35 +19,57 @@
  */
 package org.sonar.server.util.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
-import org.apache.commons.io.FileUtils;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
-import org.sonar.server.util.ObjectInputStreamIterator;
 
 /**
  * Serialize and deserialize objects on disk. No search capabilities, only traversal (full scan).
+ * <p>
+ * Objects are encoded by a {@link DiskCacheCodec}, Java serialization being used by default. Each
+ * {@link DiskAppender} can optionally compress what it writes as a LZ4 frame.
+ * </p>
  */
 public class DiskCache<O extends Serializable> {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // written before each object, so that end of stream is detected without relying on EOFException
+  private static final int OBJECT_MARKER = 1;
+
   private final File file;
   private final System2 system2;
+  private final DiskCacheCodec<O> codec;
+  private final boolean compressed;
 
   public DiskCache(File file, System2 system2) {
+    this(file, system2, new SerializableCodec<O>(), false);
+  }
+
+  public DiskCache(File file, System2 system2, DiskCacheCodec<O> codec, boolean compressed) {
     this.system2 = system2;
     this.file = file;
+    this.codec = codec;
+    this.compressed = compressed;
     OutputStream output = null;
     try {
-      // writes the serialization stream header required when calling "traverse()"
-      // on empty stream. Moreover it allows to call multiple times "newAppender()"
-      output = new ObjectOutputStream(new FileOutputStream(file));
-      output.flush();
+      // creates or truncates the file, so that "traverse()" can be called before any call to "newAppender()"
+      output = new FileOutputStream(file);
 
       // raise an exception if can't close
       system2.close(output);
@@ -64,23 +86,21 @@ public class DiskCache<O extends Serializable> {
 
   public CloseableIterator<O> traverse() {
     try {
-      return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+      return new DiskIterator();
     } catch (IOException e) {
       throw new IllegalStateException("Fail to traverse file: " + file, e);
     }
   }
 
   public class DiskAppender implements AutoCloseable {
-    private final ObjectOutputStream output;
+    private final DataOutputStream output;
 
     private DiskAppender() {
       try {
-        this.output = new ObjectOutputStream(new FileOutputStream(file, true)) {
-          @Override
-          protected void writeStreamHeader() throws IOException {
-            // do not write stream headers as it's already done in constructor of DiskCache
-          }
-        };
+        OutputStream fileOutput = new BufferedOutputStream(
+          Channels.newOutputStream(FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)),
+          BUFFER_SIZE);
+        this.output = new DataOutputStream(compressed ? new LZ4BlockOutputStream(fileOutput) : fileOutput);
       } catch (IOException e) {
         throw new IllegalStateException("Fail to open file " + file, e);
       }
@@ -88,8 +108,8 @@ public class DiskCache<O extends Serializable> {
 
     public DiskAppender append(O object) {
       try {
-        output.writeObject(object);
-        output.reset();
+        output.writeByte(OBJECT_MARKER);
+        codec.encode(object, output);
         return this;
       } catch (IOException e) {
         throw new IllegalStateException("Fail to write into file " + file, e);
@@ -101,4 +121,58 @@ public class DiskCache<O extends Serializable> {
       system2.close(output);
     }
   }
+
+  private class DiskIterator extends CloseableIterator<O> {
+    private final InputStream fileInput;
+    @CheckForNull
+    private DataInputStream input = null;
+
+    private DiskIterator() throws IOException {
+      this.fileInput = new BufferedInputStream(Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ)), BUFFER_SIZE);
+    }
+
+    @Override
+    protected O doNext() {
+      try {
+        while (true) {
+          if (input == null) {
+            if (!hasMoreBytes()) {
+              return null;
+            }
+            input = newSegmentInput();
+          }
+          int marker = input.read();
+          if (marker == OBJECT_MARKER) {
+            return codec.decode(input);
+          }
+          if (marker != -1) {
+            throw new IllegalStateException("File is corrupted: " + file);
+          }
+          // end of the data written by a DiskAppender
+          input = null;
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read file " + file, e);
+      }
+    }
+
+    /**
+     * When compression is enabled, the data written by each {@link DiskAppender} is a distinct LZ4 frame
+     */
+    private DataInputStream newSegmentInput() {
+      return new DataInputStream(compressed ? new LZ4BlockInputStream(fileInput) : fileInput);
+    }
+
+    private boolean hasMoreBytes() throws IOException {
+      fileInput.mark(1);
+      int b = fileInput.read();
+      fileInput.reset();
+      return b != -1;
+    }
+
+    @Override
+    protected void doClose() {
+      IOUtils.closeQuietly(fileInput);
+    }
+  }
 }
@@ -24,19 +24,19 @@ import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-public class BatchReportDirectoryHolderImplTest {
+public class BatchReportFileHolderImplTest {
 
   @Test(expected = IllegalStateException.class)
-  public void getDirectory_throws_ISE_if_holder_is_empty() {
-    new BatchReportDirectoryHolderImpl().getDirectory();
+  public void getFile_throws_ISE_if_holder_is_empty() {
+    new BatchReportFileHolderImpl().getFile();
   }
 
   @Test
-  public void getDirectory_returns_File_set_with_setDirectory() {
+  public void getFile_returns_File_set_with_setFile() {
     File file = new File("");
-    BatchReportDirectoryHolderImpl holder = new BatchReportDirectoryHolderImpl();
-    holder.setDirectory(file);
+    BatchReportFileHolderImpl holder = new BatchReportFileHolderImpl();
+    holder.setFile(file);
 
-    assertThat(holder.getDirectory()).isSameAs(file);
+    assertThat(holder.getFile()).isSameAs(file);
   }
 }
@@ -22,15 +22,15 @@ package org.sonar.server.computation.batch;
 import java.io.File;
 import java.util.Objects;
 
-public class ImmutableBatchReportDirectoryHolder implements BatchReportDirectoryHolder {
-  private final File directory;
+public class ImmutableBatchReportFileHolder implements BatchReportFileHolder {
+  private final File file;
 
-  public ImmutableBatchReportDirectoryHolder(File directory) {
-    this.directory = Objects.requireNonNull(directory);
+  public ImmutableBatchReportFileHolder(File file) {
+    this.file = Objects.requireNonNull(file);
   }
 
   @Override
-  public File getDirectory() {
-    return directory;
+  public File getFile() {
+    return file;
   }
 }
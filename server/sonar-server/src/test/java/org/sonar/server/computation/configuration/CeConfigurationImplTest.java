@@ -28,6 +28,8 @@ import org.sonar.api.utils.MessageException;
 
 import static java.lang.Math.abs;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.server.computation.configuration.CeConfigurationImpl.CE_FUSED_MEASURE_STEPS_PROPERTY;
+import static org.sonar.server.computation.configuration.CeConfigurationImpl.CE_STEPS_THREAD_COUNT_PROPERTY;
 import static org.sonar.server.computation.configuration.CeConfigurationImpl.CE_WORKERS_COUNT_PROPERTY;
 
 public class CeConfigurationImplTest {
@@ -102,6 +104,41 @@ public class CeConfigurationImplTest {
     new CeConfigurationImpl(settings);
   }
 
+  @Test
+  public void getStepsThreadCount_returns_1_when_property_is_not_defined() {
+    assertThat(new CeConfigurationImpl(settings).getStepsThreadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getStepsThreadCount_returns_value_of_property() {
+    settings.setProperty(CE_STEPS_THREAD_COUNT_PROPERTY, 4);
+
+    assertThat(new CeConfigurationImpl(settings).getStepsThreadCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void constructor_throws_MessageException_when_steps_thread_count_property_is_0() {
+    settings.setProperty(CE_STEPS_THREAD_COUNT_PROPERTY, "0");
+
+    expectedException.expect(MessageException.class);
+    expectedException.expectMessage("value '0' of property " + CE_STEPS_THREAD_COUNT_PROPERTY + " is invalid. " +
+      "It must an integer strictly greater than 0");
+
+    new CeConfigurationImpl(settings);
+  }
+
+  @Test
+  public void isMeasureStepsFused_returns_true_when_property_is_not_defined() {
+    assertThat(new CeConfigurationImpl(settings).isMeasureStepsFused()).isTrue();
+  }
+
+  @Test
+  public void isMeasureStepsFused_returns_false_when_property_is_false() {
+    settings.setProperty(CE_FUSED_MEASURE_STEPS_PROPERTY, "false");
+
+    assertThat(new CeConfigurationImpl(settings).isMeasureStepsFused()).isFalse();
+  }
+
   private void expectMessageException(int value) {
     expectedException.expect(MessageException.class);
     expectedException.expectMessage("value '" + value + "' of property " + CE_WORKERS_COUNT_PROPERTY + " is invalid. " +
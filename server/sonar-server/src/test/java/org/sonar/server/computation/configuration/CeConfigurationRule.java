@@ -29,6 +29,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 public class CeConfigurationRule extends ExternalResource implements CeConfiguration {
   private int workerCount = CeConfigurationImpl.DEFAULT_WORKER_COUNT;
   private long queuePollingDelay = CeConfigurationImpl.DEFAULT_QUEUE_POLLING_DELAY;
+  private int stepsThreadCount = CeConfigurationImpl.DEFAULT_STEPS_THREAD_COUNT;
+  private boolean measureStepsFused = CeConfigurationImpl.DEFAULT_FUSED_MEASURE_STEPS;
 
   @Override
   public int getWorkerCount() {
@@ -50,4 +52,25 @@ public class CeConfigurationRule extends ExternalResource implements CeConfigura
     checkArgument(queuePollingDelay > 0, "Queue polling delay must be >= 0");
     this.queuePollingDelay = queuePollingDelay;
   }
+
+  @Override
+  public int getStepsThreadCount() {
+    return stepsThreadCount;
+  }
+
+  public CeConfigurationRule setStepsThreadCount(int stepsThreadCount) {
+    checkArgument(stepsThreadCount >= 1, "steps thread count must be >= 1");
+    this.stepsThreadCount = stepsThreadCount;
+    return this;
+  }
+
+  @Override
+  public boolean isMeasureStepsFused() {
+    return measureStepsFused;
+  }
+
+  public CeConfigurationRule setMeasureStepsFused(boolean measureStepsFused) {
+    this.measureStepsFused = measureStepsFused;
+    return this;
+  }
 }
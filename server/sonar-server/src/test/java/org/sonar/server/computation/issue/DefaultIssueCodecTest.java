@@ -0,0 +1,229 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.db.protobuf.DbCommons;
+import org.sonar.db.protobuf.DbIssues;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DefaultIssueCodecTest {
+
+  static final Date DATE_1 = new Date(1_450_000_000_000L);
+  static final Date DATE_2 = new Date(1_460_000_000_000L);
+
+  DefaultIssueCodec underTest = new DefaultIssueCodec();
+
+  @Test
+  public void encode_and_decode_issue_with_all_fields() throws Exception {
+    DbIssues.Locations locations = DbIssues.Locations.newBuilder()
+      .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(3).setEndLine(5))
+      .build();
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ISSUE_KEY")
+      .setType(RuleType.BUG)
+      .setComponentUuid("FILE_UUID")
+      .setComponentKey("FILE_KEY")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT_KEY")
+      .setRuleKey(RuleKey.of("squid", "S001"))
+      .setLanguage("java")
+      .setSeverity(Severity.BLOCKER)
+      .setManualSeverity(true)
+      .setMessage("the message")
+      .setLine(10)
+      .setEffortToFix(2.5)
+      .setDebt(Duration.create(15L))
+      .setStatus(Issue.STATUS_RESOLVED)
+      .setResolution(Issue.RESOLUTION_FIXED)
+      .setReporter("reporter")
+      .setAssignee("assignee")
+      .setChecksum("checksum")
+      .setAuthorLogin("author")
+      .setActionPlanKey("ACTION_PLAN")
+      .setAttribute("JIRA", "FOO-123")
+      .setTags(newHashSet("tag1", "tag2"))
+      .setCreationDate(DATE_1)
+      .setUpdateDate(DATE_2)
+      .setCloseDate(DATE_2)
+      .setSelectedAt(1_000L)
+      .setNew(false)
+      .setBeingClosed(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setLocations(locations);
+    issue.addComment(new DefaultIssueComment().setKey("COMMENT_KEY").setIssueKey("ISSUE_KEY").setUserLogin("john")
+      .setMarkdownText("*comment*").setCreatedAt(DATE_1).setUpdatedAt(DATE_2).setNew(true));
+    issue.addChange(new FieldDiffs().setIssueKey("ISSUE_KEY").setUserLogin("john").setCreationDate(DATE_1)
+      .setDiff("severity", Severity.MAJOR, Severity.BLOCKER));
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "jane"), "effort", 1L, 2L);
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "jane"), "line", 4, 10);
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    assertThat(decoded.key()).isEqualTo("ISSUE_KEY");
+    assertThat(decoded.type()).isEqualTo(RuleType.BUG);
+    assertThat(decoded.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(decoded.componentKey()).isEqualTo("FILE_KEY");
+    assertThat(decoded.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(decoded.moduleUuidPath()).isEqualTo(".MODULE_UUID.");
+    assertThat(decoded.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(decoded.projectKey()).isEqualTo("PROJECT_KEY");
+    assertThat(decoded.ruleKey()).isEqualTo(RuleKey.of("squid", "S001"));
+    assertThat(decoded.language()).isEqualTo("java");
+    assertThat(decoded.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(decoded.manualSeverity()).isTrue();
+    assertThat(decoded.message()).isEqualTo("the message");
+    assertThat(decoded.line()).isEqualTo(10);
+    assertThat(decoded.effortToFix()).isEqualTo(2.5);
+    assertThat(decoded.debt()).isEqualTo(Duration.create(15L));
+    assertThat(decoded.status()).isEqualTo(Issue.STATUS_RESOLVED);
+    assertThat(decoded.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
+    assertThat(decoded.reporter()).isEqualTo("reporter");
+    assertThat(decoded.assignee()).isEqualTo("assignee");
+    assertThat(decoded.checksum()).isEqualTo("checksum");
+    assertThat(decoded.authorLogin()).isEqualTo("author");
+    assertThat(decoded.actionPlanKey()).isEqualTo("ACTION_PLAN");
+    assertThat(decoded.attributes()).containsOnly(entry("JIRA", "FOO-123"));
+    assertThat(decoded.tags()).containsOnly("tag1", "tag2");
+    assertThat(decoded.creationDate()).isEqualTo(DATE_1);
+    assertThat(decoded.updateDate()).isEqualTo(DATE_2);
+    assertThat(decoded.closeDate()).isEqualTo(DATE_2);
+    assertThat(decoded.selectedAt()).isEqualTo(1_000L);
+    assertThat(decoded.isNew()).isFalse();
+    assertThat(decoded.isBeingClosed()).isTrue();
+    assertThat(decoded.isOnDisabledRule()).isTrue();
+    assertThat(decoded.isChanged()).isTrue();
+    assertThat(decoded.mustSendNotifications()).isTrue();
+    assertThat((DbIssues.Locations) decoded.getLocations()).isEqualTo(locations);
+
+    assertThat(decoded.comments()).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) decoded.comments().get(0);
+    assertThat(comment.key()).isEqualTo("COMMENT_KEY");
+    assertThat(comment.issueKey()).isEqualTo("ISSUE_KEY");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.markdownText()).isEqualTo("*comment*");
+    assertThat(comment.createdAt()).isEqualTo(DATE_1);
+    assertThat(comment.updatedAt()).isEqualTo(DATE_2);
+    assertThat(comment.isNew()).isTrue();
+
+    assertThat(decoded.changes()).hasSize(issue.changes().size());
+    assertThat(decoded.changes().get(0).toString()).isEqualTo(issue.changes().get(0).toString());
+    assertThat(decoded.changes().get(0).userLogin()).isEqualTo("john");
+    assertThat(decoded.changes().get(0).creationDate()).isEqualTo(DATE_1);
+    FieldDiffs currentChange = decoded.currentChange();
+    assertThat(currentChange.userLogin()).isEqualTo("jane");
+    assertThat(currentChange.get("effort").oldValue()).isEqualTo(1L);
+    assertThat(currentChange.get("effort").newValue()).isEqualTo(2L);
+    assertThat(currentChange.get("line").oldValue()).isEqualTo(4);
+    assertThat(currentChange.get("line").newValue()).isEqualTo(10);
+    // the current change is shared with the list of changes
+    for (FieldDiffs change : decoded.changes().subList(1, decoded.changes().size())) {
+      assertThat(change).isSameAs(currentChange);
+    }
+  }
+
+  @Test
+  public void encode_and_decode_issue_with_no_optional_fields() throws Exception {
+    DefaultIssue decoded = encodeAndDecode(new DefaultIssue());
+
+    assertThat(decoded.key()).isNull();
+    assertThat(decoded.type()).isNull();
+    assertThat(decoded.ruleKey()).isNull();
+    assertThat(decoded.status()).isNull();
+    assertThat(decoded.line()).isNull();
+    assertThat(decoded.debt()).isNull();
+    assertThat(decoded.creationDate()).isNull();
+    assertThat(decoded.selectedAt()).isNull();
+    assertThat(decoded.isNew()).isTrue();
+    assertThat(decoded.attributes()).isEmpty();
+    assertThat(decoded.tags()).isEmpty();
+    assertThat(decoded.comments()).isEmpty();
+    assertThat(decoded.changes()).isEmpty();
+    assertThat(decoded.currentChange()).isNull();
+    assertThat((Object) decoded.getLocations()).isNull();
+  }
+
+  @Test
+  public void encode_and_decode_long_message() throws Exception {
+    // longer than the 64KB supported by DataOutput#writeUTF(String)
+    String description = StringUtils.repeat("a", 100_000);
+    DefaultIssue issue = new DefaultIssue().setChecksum(description);
+
+    assertThat(encodeAndDecode(issue).checksum()).isEqualTo(description);
+  }
+
+  @Test
+  public void encode_and_decode_values_of_any_type() throws Exception {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setFieldChange(IssueChangeContext.createScan(DATE_1), "date", DATE_1, DATE_2);
+    issue.setFieldChange(IssueChangeContext.createScan(DATE_1), "bool", true, null);
+    issue.setFieldChange(IssueChangeContext.createScan(DATE_1), "double", 1.5, 2.5);
+    issue.setFieldChange(IssueChangeContext.createScan(DATE_1), "serializable", RuleType.BUG, RuleType.VULNERABILITY);
+    issue.setLocations("serializable locations");
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    FieldDiffs change = decoded.currentChange();
+    assertThat(change.get("date").oldValue()).isEqualTo(DATE_1);
+    assertThat(change.get("date").newValue()).isEqualTo(DATE_2);
+    assertThat(change.get("bool").oldValue()).isEqualTo(true);
+    assertThat(change.get("bool").newValue()).isNull();
+    assertThat(change.get("double").oldValue()).isEqualTo(1.5);
+    assertThat(change.get("double").newValue()).isEqualTo(2.5);
+    assertThat(change.get("serializable").oldValue()).isEqualTo(RuleType.BUG);
+    assertThat(change.get("serializable").newValue()).isEqualTo(RuleType.VULNERABILITY);
+    assertThat((String) decoded.getLocations()).isEqualTo("serializable locations");
+  }
+
+  private DefaultIssue encodeAndDecode(DefaultIssue issue) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      underTest.encode(issue, output);
+    }
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      DefaultIssue decoded = underTest.decode(input);
+      assertThat(input.read()).isEqualTo(-1);
+      return decoded;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.measure.MeasureDto;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BaseMeasureCacheTest {
+
+  private static final long PROJECT_ID = 1;
+  private static final long FILE_ID = 2;
+  private static final long PROJECT_LAST_SNAPSHOT_ID = 10;
+  private static final long PROJECT_OTHER_SNAPSHOT_ID = 11;
+  private static final long FILE_LAST_SNAPSHOT_ID = 20;
+  private static final int METRIC_ID_1 = 1;
+  private static final int METRIC_ID_2 = 2;
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  private DbClient dbClient = dbTester.getDbClient();
+  private DbSession dbSession = dbTester.getSession();
+
+  @Before
+  public void setUp() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    dbClient.measureDao().insert(dbSession, createMeasureDto(PROJECT_ID, PROJECT_LAST_SNAPSHOT_ID, METRIC_ID_1, 10d));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(PROJECT_ID, PROJECT_OTHER_SNAPSHOT_ID, METRIC_ID_2, 20d));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(FILE_ID, FILE_LAST_SNAPSHOT_ID, METRIC_ID_1, 30d));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(FILE_ID, FILE_LAST_SNAPSHOT_ID, METRIC_ID_2, 40d).setRuleId(10));
+    dbSession.commit();
+  }
+
+  @Test
+  public void get_returns_measures_of_last_snapshot() {
+    BaseMeasureCache underTest = new BaseMeasureCache(dbClient);
+
+    assertThat(underTest.get("project", "metric 1").getValue()).isEqualTo(10d);
+    assertThat(underTest.get("file", "metric 1").getValue()).isEqualTo(30d);
+    // measure is not on the last snapshot
+    assertThat(underTest.get("project", "metric 2")).isNull();
+    // measure on rule
+    assertThat(underTest.get("file", "metric 2")).isNull();
+    assertThat(underTest.get("unknown", "metric 1")).isNull();
+
+    assertThat(underTest.getHitCount()).isEqualTo(0);
+    assertThat(underTest.getMissCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void measures_and_absence_of_measures_are_loaded_only_once() {
+    BaseMeasureCache underTest = new BaseMeasureCache(dbClient);
+    assertThat(underTest.get("project", "metric 1")).isNotNull();
+    assertThat(underTest.get("project", "metric 2")).isNull();
+
+    dbTester.executeUpdateSql("delete from project_measures");
+    dbClient.measureDao().insert(dbSession, createMeasureDto(PROJECT_ID, PROJECT_LAST_SNAPSHOT_ID, METRIC_ID_2, 50d));
+    dbSession.commit();
+
+    assertThat(underTest.get("project", "metric 1")).isNotNull();
+    assertThat(underTest.get("project", "metric 2")).isNull();
+    assertThat(underTest.getHitCount()).isEqualTo(2);
+    assertThat(underTest.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void load_reads_all_requested_measures_with_a_single_session() {
+    DbClient spiedDbClient = spy(dbClient);
+    BaseMeasureCache underTest = new BaseMeasureCache(spiedDbClient);
+
+    underTest.load(asList("project", "file", "unknown"), asList("metric 1", "metric 2"));
+
+    assertThat(underTest.get("project", "metric 1").getValue()).isEqualTo(10d);
+    assertThat(underTest.get("file", "metric 1").getValue()).isEqualTo(30d);
+    assertThat(underTest.get("project", "metric 2")).isNull();
+    assertThat(underTest.get("unknown", "metric 1")).isNull();
+    verify(spiedDbClient, times(1)).openSession(false);
+    assertThat(underTest.getHitCount()).isEqualTo(4);
+    assertThat(underTest.getMissCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_does_not_query_db_when_measures_are_already_cached() {
+    DbClient spiedDbClient = spy(dbClient);
+    BaseMeasureCache underTest = new BaseMeasureCache(spiedDbClient);
+    underTest.get("project", "metric 1");
+
+    underTest.load(asList("project"), asList("metric 1"));
+
+    verify(spiedDbClient, times(1)).openSession(false);
+  }
+
+  private static MeasureDto createMeasureDto(long componentId, long snapshotId, int metricId, double value) {
+    return new MeasureDto()
+      .setComponentId(componentId)
+      .setSnapshotId(snapshotId)
+      .setMetricId(metricId)
+      .setValue(value);
+  }
+}
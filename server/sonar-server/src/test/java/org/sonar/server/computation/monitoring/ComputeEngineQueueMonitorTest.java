@@ -151,5 +151,15 @@ public class ComputeEngineQueueMonitorTest {
     public long getQueuePollingDelay() {
       throw new UnsupportedOperationException("getQueuePollingDelay is not implemented");
     }
+
+    @Override
+    public int getStepsThreadCount() {
+      throw new UnsupportedOperationException("getStepsThreadCount is not implemented");
+    }
+
+    @Override
+    public boolean isMeasureStepsFused() {
+      throw new UnsupportedOperationException("isMeasureStepsFused is not implemented");
+    }
   }
 }
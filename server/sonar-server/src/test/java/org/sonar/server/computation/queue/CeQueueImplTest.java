@@ -36,6 +36,7 @@ import org.sonar.db.ce.CeActivityDto;
 import org.sonar.db.ce.CeQueueDto;
 import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
 import org.sonar.server.computation.monitoring.CEQueueStatus;
 import org.sonar.server.computation.monitoring.CEQueueStatusImpl;
 
@@ -46,6 +47,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -64,11 +66,18 @@ public class CeQueueImplTest {
   UuidFactory uuidFactory = UuidFactoryImpl.INSTANCE;
   CEQueueStatus queueStatus = new CEQueueStatusImpl();
   CeQueueListener listener = mock(CeQueueListener.class);
-  CeQueue underTest = new CeQueueImpl(system2, dbTester.getDbClient(), uuidFactory, queueStatus, new CeQueueListener[] {listener});
+  CeQueueSubmitNotifier submitNotifier = new CeQueueSubmitNotifier();
+  CeQueueSubmitListener submitListener = mock(CeQueueSubmitListener.class);
+  @Rule
+  public CeConfigurationRule ceConfiguration = new CeConfigurationRule();
+
+  CeQueue underTest = new CeQueueImpl(system2, dbTester.getDbClient(), uuidFactory, queueStatus, new CeQueueListener[] {listener}, submitNotifier,
+    ceConfiguration);
 
   @Before
   public void setUp() throws Exception {
     queueStatus.initPendingCount(0);
+    submitNotifier.addListener(submitListener);
   }
 
   @Test
@@ -110,6 +119,13 @@ public class CeQueueImplTest {
     verifyCeTask(taskSubmit, task, null);
   }
 
+  @Test
+  public void submit_notifies_submit_listeners() {
+    underTest.submit(createTaskSubmit(CeTaskTypes.REPORT, "PROJECT_1", "rob"));
+
+    verify(submitListener).onSubmitted(1);
+  }
+
   @Test
   public void submit_fails_with_ISE_if_paused() {
     underTest.pauseSubmit();
@@ -134,6 +150,13 @@ public class CeQueueImplTest {
     verifyCeQueueDtoForTaskSubmit(taskSubmit2);
   }
 
+  @Test
+  public void massSubmit_notifies_submit_listeners_once_with_number_of_tasks() {
+    underTest.massSubmit(asList(createTaskSubmit(CeTaskTypes.REPORT, "PROJECT_1", "rob"), createTaskSubmit("some type")));
+
+    verify(submitListener).onSubmitted(2);
+  }
+
   @Test
   public void massSubmit_populates_component_name_and_key_of_CeTask_if_component_exists() {
     ComponentDto componentDto1 = insertComponent(newComponentDto("PROJECT_1"));
@@ -231,6 +254,76 @@ public class CeQueueImplTest {
     verify(listener, never()).onRemoved(eq(task), any(CeActivityDto.Status.class));
   }
 
+  @Test
+  public void peek_claims_as_many_tasks_as_idle_workers_and_returns_them_oldest_first() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    CeTask task1 = submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    CeTask task3 = submit(CeTaskTypes.REPORT, "PROJECT_3");
+    reset(submitListener);
+
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task1.getUuid());
+    // second task is claimed at the same time as the first one and waiting workers are notified
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task2.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task3.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.PENDING);
+    verify(submitListener).onSubmitted(1);
+    assertThat(queueStatus.getInProgressCount()).isEqualTo(1);
+
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task2.getUuid());
+    assertThat(queueStatus.getInProgressCount()).isEqualTo(2);
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task3.getUuid());
+    assertThat(underTest.peek().isPresent()).isFalse();
+  }
+
+  @Test
+  public void peek_does_not_claim_tasks_for_busy_workers() throws Exception {
+    ceConfiguration.setWorkerCount(3);
+    CeTask task1 = submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    submit(CeTaskTypes.REPORT, "PROJECT_3");
+    CeTask task4 = submit(CeTaskTypes.REPORT, "PROJECT_4");
+    CeTask task5 = submit(CeTaskTypes.REPORT, "PROJECT_5");
+    CeTask task6 = submit(CeTaskTypes.REPORT, "PROJECT_6");
+    underTest.peek();
+    underTest.peek();
+    underTest.peek();
+    underTest.remove(task1, CeActivityDto.Status.SUCCESS, null);
+    underTest.remove(task2, CeActivityDto.Status.SUCCESS, null);
+
+    // task 3 is still being processed, hence only two workers are idle
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task4.getUuid());
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task5.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task6.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.PENDING);
+  }
+
+  @Test
+  public void pausePeek_resets_claimed_tasks_not_peeked_yet_to_pending() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    CeTask task1 = submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    underTest.peek();
+
+    underTest.pausePeek();
+
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task1.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task2.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.PENDING);
+    underTest.resumePeek();
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task2.getUuid());
+  }
+
+  @Test
+  public void stop_resets_claimed_tasks_not_peeked_yet_to_pending() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    CeTask task1 = submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    underTest.peek();
+
+    ((CeQueueImpl) underTest).stop();
+
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task1.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+    assertThat(dbTester.getDbClient().ceQueueDao().selectByUuid(session, task2.getUuid()).get().getStatus()).isEqualTo(CeQueueDto.Status.PENDING);
+  }
+
   @Test
   public void peek_nothing_if_paused() throws Exception {
     submit(CeTaskTypes.REPORT, "PROJECT_1");
@@ -0,0 +1,183 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.queue.report;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonar.process.ProcessProperties;
+import org.sonar.server.exceptions.BadRequestException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReportUploadsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  File uploadDir;
+  Settings settings = new Settings();
+  System2 system2 = mock(System2.class);
+  ReportUploads underTest = new ReportUploads(settings, system2);
+
+  @Before
+  public void setUp() throws Exception {
+    File dataDir = temp.newFolder();
+    uploadDir = new File(dataDir, "ce/uploads");
+    settings.setProperty(ProcessProperties.PATH_DATA, dataDir.getCanonicalPath());
+    when(system2.now()).thenReturn(System.currentTimeMillis());
+  }
+
+  @Test
+  public void append_chunks() throws Exception {
+    assertThat(underTest.received("P1", "U1")).isEqualTo(0L);
+
+    assertThat(underTest.append("P1", "U1", 0L, stream("abc"))).isEqualTo(3L);
+    assertThat(underTest.append("P1", "U1", 3L, stream("def"))).isEqualTo(6L);
+
+    assertThat(underTest.received("P1", "U1")).isEqualTo(6L);
+    assertThat(read(underTest.open("P1", "U1", ReportCodec.NONE))).isEqualTo("abcdef");
+  }
+
+  @Test
+  public void chunk_sent_again_is_ignored() throws Exception {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+    underTest.append("P1", "U1", 3L, stream("de"));
+
+    assertThat(underTest.append("P1", "U1", 3L, stream("DEF"))).isEqualTo(5L);
+    assertThat(underTest.append("P1", "U1", 5L, stream("f"))).isEqualTo(6L);
+    assertThat(read(underTest.open("P1", "U1", ReportCodec.NONE))).isEqualTo("abcdef");
+  }
+
+  @Test
+  public void chunk_after_received_bytes_is_ignored() throws Exception {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+
+    assertThat(underTest.append("P1", "U1", 4L, stream("e"))).isEqualTo(3L);
+    assertThat(read(underTest.open("P1", "U1", ReportCodec.NONE))).isEqualTo("abc");
+  }
+
+  @Test
+  public void fail_if_offset_is_negative() {
+    expectedException.expect(BadRequestException.class);
+    underTest.append("P1", "U1", -1L, stream("e"));
+  }
+
+  @Test
+  public void fail_to_append_to_upload_of_another_project() {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+
+    expectedException.expect(BadRequestException.class);
+    expectedException.expectMessage("Upload U1 does not belong to project P2");
+    underTest.append("P2", "U1", 3L, stream("def"));
+  }
+
+  @Test
+  public void fail_to_get_status_of_upload_of_another_project() {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+
+    expectedException.expect(BadRequestException.class);
+    underTest.received("P2", "U1");
+  }
+
+  @Test
+  public void fail_to_open_upload_of_another_project() {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+
+    expectedException.expect(BadRequestException.class);
+    underTest.open("P2", "U1", ReportCodec.NONE);
+  }
+
+  @Test
+  public void fail_if_upload_id_is_not_valid() {
+    expectedException.expect(BadRequestException.class);
+    underTest.received("P1", "../../reports/foo");
+  }
+
+  @Test
+  public void fail_to_open_unknown_upload() {
+    expectedException.expect(BadRequestException.class);
+    underTest.open("P1", "U1", ReportCodec.NONE);
+  }
+
+  @Test
+  public void decode_upload() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream output = ReportCodec.LZ4.encode(bytes)) {
+      output.write("the report".getBytes(UTF_8));
+    }
+    byte[] encoded = bytes.toByteArray();
+    underTest.append("P1", "U1", 0L, new ByteArrayInputStream(encoded, 0, 5));
+    underTest.append("P1", "U1", 5L, new ByteArrayInputStream(encoded, 5, encoded.length - 5));
+
+    assertThat(read(underTest.open("P1", "U1", ReportCodec.LZ4))).isEqualTo("the report");
+  }
+
+  @Test
+  public void delete_upload() {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+
+    underTest.delete("U1");
+
+    assertThat(underTest.received("P2", "U1")).isEqualTo(0L);
+    assertThat(FileUtils.listFiles(uploadDir, null, false)).isEmpty();
+  }
+
+  @Test
+  public void delete_expired_uploads() throws Exception {
+    underTest.append("P1", "U1", 0L, stream("abc"));
+    underTest.append("P1", "U2", 0L, stream("abc"));
+    new File(uploadDir, "U1.part").setLastModified(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L);
+
+    underTest.deleteExpired();
+
+    assertThat(underTest.received("P1", "U1")).isEqualTo(0L);
+    assertThat(underTest.received("P1", "U2")).isEqualTo(3L);
+    assertThat(FileUtils.listFiles(uploadDir, null, false)).extracting("name").containsOnly("U2.part", "U2.project");
+  }
+
+  private static InputStream stream(String s) {
+    return new ByteArrayInputStream(s.getBytes(UTF_8));
+  }
+
+  private static String read(InputStream input) throws Exception {
+    try (InputStream i = input) {
+      return IOUtils.toString(i, UTF_8);
+    }
+  }
+}
@@ -25,8 +25,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.protocol.output.BatchReport;
-import org.sonar.batch.protocol.output.BatchReportWriter;
-import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.core.util.Protobuf;
 
 import java.io.File;
 import java.util.NoSuchElementException;
@@ -45,16 +44,12 @@ public class ReportIteratorTest {
 
   @Before
   public void setUp() throws Exception {
-    File dir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(dir);
-
-    writer.writeComponentCoverage(1, newArrayList(
+    file = temp.newFile();
+    Protobuf.writeStream(newArrayList(
       BatchReport.Coverage.newBuilder()
         .setLine(1)
         .build()
-    ));
-
-    file = new FileStructure(dir).fileFor(FileStructure.Domain.COVERAGES, 1);
+    ), file, false);
   }
 
   @After
@@ -47,8 +47,12 @@ import org.sonar.server.computation.component.ViewsComponent;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexDefinition;
+import org.sonar.server.user.PermissionCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.sonar.db.component.ComponentTesting.newView;
 import static org.sonar.db.permission.PermissionTemplateTesting.newPermissionTemplateDto;
 import static org.sonar.server.computation.component.Component.Type.PROJECT;
@@ -81,6 +85,8 @@ public class ApplyPermissionsStepTest extends BaseStepTest {
 
   IssueAuthorizationIndexer issueAuthorizationIndexer;
 
+  PermissionCache permissionCache = mock(PermissionCache.class);
+
   ApplyPermissionsStep step;
 
   @Before
@@ -92,7 +98,7 @@ public class ApplyPermissionsStepTest extends BaseStepTest {
     issueAuthorizationIndexer = new IssueAuthorizationIndexer(dbClient, esTester.client());
     issueAuthorizationIndexer.setEnabled(true);
 
-    step = new ApplyPermissionsStep(dbClient, dbIdsRepository, issueAuthorizationIndexer, new PermissionRepository(dbClient, settings), treeRootHolder);
+    step = new ApplyPermissionsStep(dbClient, dbIdsRepository, issueAuthorizationIndexer, new PermissionRepository(dbClient, settings), treeRootHolder, permissionCache);
   }
 
   @After
@@ -118,6 +124,7 @@ public class ApplyPermissionsStepTest extends BaseStepTest {
     assertThat(dbClient.componentDao().selectOrFailByKey(dbSession, ROOT_KEY).getAuthorizationUpdatedAt()).isNotNull();
     assertThat(dbClient.roleDao().selectGroupPermissions(dbSession, DefaultGroups.ANYONE, projectDto.getId())).containsOnly(UserRole.USER);
     verifyAuthorisationIndex(ROOT_UUID, DefaultGroups.ANYONE);
+    verify(permissionCache).invalidate();
   }
 
   @Test
@@ -138,6 +145,7 @@ public class ApplyPermissionsStepTest extends BaseStepTest {
 
     // Check that authorization updated at has not been changed -> Nothing has been done
     assertThat(projectDto.getAuthorizationUpdatedAt()).isEqualTo(SOME_DATE);
+    verify(permissionCache, never()).invalidate();
   }
 
   @Test
@@ -19,26 +19,50 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.collect.AbstractIterator;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.sonar.server.computation.step.ComputationStepData.DB_EVENTS;
+import static org.sonar.server.computation.step.ComputationStepData.DB_FILE_SOURCES;
+import static org.sonar.server.computation.step.ComputationStepData.DB_PROJECT_LINKS;
+import static org.sonar.server.computation.step.ComputationStepData.DUPLICATIONS;
+import static org.sonar.server.computation.step.ComputationStepData.REPORT;
 
 public class ComputationStepExecutorTest {
   @Rule
   public LogTester logTester = new LogTester();
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  // a wrong scheduling of steps would lead to a dead lock
+  public Timeout timeout = Timeout.seconds(60);
+  @Rule
+  public CeConfigurationRule ceConfiguration = new CeConfigurationRule().setStepsThreadCount(4);
 
   @Test
   public void execute_call_execute_on_each_ComputationStep_in_order_returned_by_instances_method() {
@@ -90,6 +114,126 @@ public class ComputationStepExecutorTest {
     assertThat(infoLogs.get(1)).contains("step2 | time=");
   }
 
+  @Test
+  public void steps_sharing_no_data_are_executed_concurrently() {
+    // each step waits for the other one to be started
+    CountDownLatch started = new CountDownLatch(2);
+    List<String> executed = new CopyOnWriteArrayList<>();
+    ComputationStep step1 = mockDataAwareStep("step1", executed, started, EnumSet.of(REPORT), EnumSet.of(DB_EVENTS));
+    ComputationStep step2 = mockDataAwareStep("step2", executed, started, EnumSet.of(REPORT), EnumSet.of(DB_PROJECT_LINKS));
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2), ceConfiguration).execute();
+
+    assertThat(executed).containsOnly("step1", "step2");
+  }
+
+  @Test
+  public void step_reading_data_written_by_a_previous_step_is_executed_after_it() {
+    List<String> executed = new CopyOnWriteArrayList<>();
+    ComputationStep step1 = mockDataAwareStep("step1", executed, null, EnumSet.of(REPORT), EnumSet.of(DUPLICATIONS));
+    ComputationStep step2 = mockDataAwareStep("step2", executed, null, EnumSet.of(DUPLICATIONS), EnumSet.of(DB_FILE_SOURCES));
+    ComputationStep step3 = mockDataAwareStep("step3", executed, null, EnumSet.of(REPORT), EnumSet.of(DUPLICATIONS));
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2, step3), ceConfiguration).execute();
+
+    assertThat(executed).containsExactly("step1", "step2", "step3");
+  }
+
+  @Test
+  public void step_not_declaring_data_is_executed_alone() {
+    List<String> executed = new CopyOnWriteArrayList<>();
+    ComputationStep step1 = mockDataAwareStep("step1", executed, null, EnumSet.of(REPORT), EnumSet.of(DB_EVENTS));
+    ComputationStep step2 = mockComputationStep("step2");
+    ComputationStep step3 = mockDataAwareStep("step3", executed, null, EnumSet.of(REPORT), EnumSet.of(DB_PROJECT_LINKS));
+
+    assertThat(ComputationStepExecutor.dependsOn(step2, step1)).isTrue();
+    assertThat(ComputationStepExecutor.dependsOn(step3, step2)).isTrue();
+    assertThat(ComputationStepExecutor.dependsOn(step3, step1)).isFalse();
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2, step3), ceConfiguration).execute();
+
+    assertThat(executed).containsExactly("step1", "step3");
+    verify(step2).execute();
+  }
+
+  @Test
+  public void concurrent_execution_let_exception_thrown_by_ComputationStep_go_up_as_is_and_does_not_start_other_steps() {
+    List<String> executed = new CopyOnWriteArrayList<>();
+    ComputationStep step1 = mockComputationStep("step1");
+    doThrow(new IllegalArgumentException("Exception should go up")).when(step1).execute();
+    ComputationStep step2 = mockDataAwareStep("step2", executed, null, EnumSet.of(REPORT), EnumSet.of(DB_EVENTS));
+
+    try {
+      new ComputationStepExecutor(mockComputationSteps(step1, step2), ceConfiguration).execute();
+      fail("exception should have been raised");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Exception should go up");
+    }
+    assertThat(executed).isEmpty();
+  }
+
+  @Test
+  public void step_is_retrieved_once_the_steps_executed_alone_before_it_are_done() {
+    final List<String> executed = new CopyOnWriteArrayList<>();
+    final ComputationStep step1 = mockComputationStep("step1");
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        executed.add("step1");
+        return null;
+      }
+    }).when(step1).execute();
+    final ComputationStep step2 = mockDataAwareStep("step2", executed, null, EnumSet.of(REPORT), EnumSet.of(DB_EVENTS));
+    ComputationSteps steps = mock(ComputationSteps.class);
+    when(steps.instances()).thenReturn(new Iterable<ComputationStep>() {
+      @Override
+      public Iterator<ComputationStep> iterator() {
+        return new AbstractIterator<ComputationStep>() {
+          private int next = 0;
+
+          @Override
+          protected ComputationStep computeNext() {
+            next++;
+            if (next == 1) {
+              return step1;
+            }
+            if (next == 2) {
+              // like the components of step2, which may rely on data loaded by step1
+              assertThat(executed).containsExactly("step1");
+              return step2;
+            }
+            return endOfData();
+          }
+        };
+      }
+    });
+
+    new ComputationStepExecutor(steps, ceConfiguration).execute();
+
+    assertThat(executed).containsExactly("step1", "step2");
+  }
+
+  private static ComputationStep mockDataAwareStep(String desc, final List<String> executed, @Nullable final CountDownLatch started,
+    Set<ComputationStepData> readData, Set<ComputationStepData> writtenData) {
+    DataAwareComputationStep mock = mock(DataAwareComputationStep.class);
+    when(mock.getDescription()).thenReturn(desc);
+    when(mock.readData()).thenReturn(readData);
+    when(mock.writtenData()).thenReturn(writtenData);
+    final String description = desc;
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        if (started != null) {
+          started.countDown();
+          started.await();
+        }
+        executed.add(description);
+        return null;
+      }
+    }).when(mock).execute();
+    return mock;
+  }
+
   private static ComputationSteps mockComputationSteps(ComputationStep... computationSteps) {
     ComputationSteps steps = mock(ComputationSteps.class);
     when(steps.instances()).thenReturn(Arrays.asList(computationSteps));
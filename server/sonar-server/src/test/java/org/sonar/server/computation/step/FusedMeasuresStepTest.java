@@ -0,0 +1,145 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ComponentVisitor;
+import org.sonar.server.computation.component.CrawlerDepthLimit;
+import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonar.server.computation.component.Component.Type.DIRECTORY;
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.Component.Type.MODULE;
+import static org.sonar.server.computation.component.Component.Type.PROJECT;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.POST_ORDER;
+import static org.sonar.server.computation.component.ReportComponent.builder;
+
+public class FusedMeasuresStepTest {
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private List<String> visits = new ArrayList<>();
+  private SizeMeasuresStep sizeMeasuresStep = mock(SizeMeasuresStep.class);
+  private CoverageMeasuresStep coverageMeasuresStep = mock(CoverageMeasuresStep.class);
+  private CommentMeasuresStep commentMeasuresStep = mock(CommentMeasuresStep.class);
+  private DuplicationMeasuresStep duplicationMeasuresStep = mock(DuplicationMeasuresStep.class);
+  private LanguageDistributionMeasuresStep languageDistributionMeasuresStep = mock(LanguageDistributionMeasuresStep.class);
+  private UnitTestMeasuresStep unitTestMeasuresStep = mock(UnitTestMeasuresStep.class);
+  private ComplexityMeasuresStep complexityMeasuresStep = mock(ComplexityMeasuresStep.class);
+
+  private FusedMeasuresStep underTest = new FusedMeasuresStep(treeRootHolder, sizeMeasuresStep, coverageMeasuresStep, commentMeasuresStep,
+    duplicationMeasuresStep, languageDistributionMeasuresStep, unitTestMeasuresStep, complexityMeasuresStep);
+
+  @Before
+  public void setUp() throws Exception {
+    treeRootHolder.setRoot(
+      builder(PROJECT, 1).setKey("project")
+        .addChildren(
+          builder(MODULE, 12).setKey("module")
+            .addChildren(
+              builder(DIRECTORY, 123).setKey("directory")
+                .addChildren(
+                  builder(FILE, 1231).setKey("file1").build(),
+                  builder(FILE, 1232).setKey("file2").build())
+                .build())
+            .build())
+        .build());
+
+    when(sizeMeasuresStep.createVisitors()).thenReturn(visitors("size1", "size2"));
+    when(coverageMeasuresStep.createVisitors()).thenReturn(visitors("coverage"));
+    when(commentMeasuresStep.createVisitors()).thenReturn(visitors("comment"));
+    when(duplicationMeasuresStep.createVisitors()).thenReturn(visitors("duplication"));
+    when(languageDistributionMeasuresStep.createVisitors()).thenReturn(visitors("languageDistribution"));
+    when(unitTestMeasuresStep.createVisitors()).thenReturn(visitors("unitTest"));
+    when(complexityMeasuresStep.createVisitors()).thenReturn(visitors("complexity"));
+  }
+
+  @Test
+  public void visitors_of_all_steps_visit_each_component_once_in_steps_order() {
+    underTest.execute();
+
+    List<String> expected = new ArrayList<>();
+    for (String componentKey : ImmutableList.of("file1", "file2", "directory", "module", "project")) {
+      for (String visitorName : ImmutableList.of("size1", "size2", "coverage", "comment", "duplication", "languageDistribution", "unitTest", "complexity")) {
+        expected.add(visitorName + "@" + componentKey);
+      }
+    }
+    assertThat(visits).isEqualTo(expected);
+  }
+
+  @Test
+  public void steps_are_not_executed_on_their_own() {
+    underTest.execute();
+
+    verify(sizeMeasuresStep, never()).execute();
+    verify(duplicationMeasuresStep, never()).execute();
+    verify(complexityMeasuresStep, never()).execute();
+  }
+
+  @Test
+  public void execution_time_of_each_visitor_is_logged() {
+    underTest.execute();
+
+    List<String> logs = logTester.logs(LoggerLevel.INFO);
+    assertThat(logs).hasSize(9);
+    assertThat(logs.get(0)).isEqualTo("  Execution time for each measure visitor:");
+    assertThat(logs.get(1)).startsWith("  - " + sizeMeasuresStep.getClass().getSimpleName() + "/RecordingVisitor | time=");
+    assertThat(logs.get(8)).startsWith("  - " + complexityMeasuresStep.getClass().getSimpleName() + "/RecordingVisitor | time=");
+  }
+
+  private List<ComponentVisitor> visitors(String... names) {
+    List<ComponentVisitor> res = new ArrayList<>();
+    for (String name : names) {
+      res.add(new RecordingVisitor(name));
+    }
+    return res;
+  }
+
+  private class RecordingVisitor extends TypeAwareVisitorAdapter {
+    private final String name;
+
+    private RecordingVisitor(String name) {
+      super(CrawlerDepthLimit.LEAVES, POST_ORDER);
+      this.name = name;
+    }
+
+    @Override
+    public void visitAny(Component any) {
+      visits.add(name + "@" + any.getKey());
+    }
+  }
+}
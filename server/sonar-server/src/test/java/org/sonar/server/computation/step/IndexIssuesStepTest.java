@@ -19,33 +19,184 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
-import org.sonar.server.computation.component.Component;
-import org.sonar.server.computation.component.ReportComponent;
+import org.sonar.server.computation.issue.DumbRule;
+import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.computation.issue.PersistedIssues;
+import org.sonar.server.computation.issue.RuleRepositoryRule;
+import org.sonar.server.issue.index.IssueDoc;
 import org.sonar.server.issue.index.IssueIndexer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
-import static org.sonar.server.computation.component.Component.Type.*;
-import static org.sonar.server.computation.component.ReportComponent.*;
+import static org.sonar.server.computation.component.Component.Type.DIRECTORY;
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.Component.Type.MODULE;
+import static org.sonar.server.computation.component.Component.Type.PROJECT;
+import static org.sonar.server.computation.component.ReportComponent.builder;
 
 public class IndexIssuesStepTest {
 
-  static String PROJECT_UUID = "PROJECT_UUID";
+  static final String PROJECT_UUID = "PROJECT_UUID";
+  static final long NOW = 1_500_000_000_000L;
+  static final RuleKey RULE_KEY = RuleKey.of("xoo", "S01");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
 
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule()
-    .setRoot(builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey("PROJECT_KEY").build());
+    .setRoot(builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey("PROJECT_KEY")
+      .addChildren(builder(MODULE, 2).setUuid("MODULE_UUID").setKey("MODULE_KEY").setPath("module")
+        .addChildren(builder(DIRECTORY, 3).setUuid("DIR_UUID").setKey("DIR_KEY").setPath("src/main/java")
+          .addChildren(builder(FILE, 4).setUuid("FILE_UUID").setKey("FILE_KEY").setPath("src/main/java/Foo.java").build())
+          .build())
+        .build())
+      .build());
+
+  @Rule
+  public RuleRepositoryRule ruleRepository = new RuleRepositoryRule();
+
+  IssueIndexer issueIndexer = mock(IssueIndexer.class);
+  PersistedIssues persistedIssues = new PersistedIssues();
+  IssueCache issueCache;
+  IndexIssuesStep underTest;
+
+  List<IssueDoc> indexedDocs = new ArrayList<>();
+  List<String> loadedKeys = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    ruleRepository.add(new DumbRule(RULE_KEY).setLanguage("xoo"));
+    issueCache = new IssueCache(temp.newFile(), System2.INSTANCE);
+    persistedIssues.setUpdatedAt(NOW);
+    underTest = new IndexIssuesStep(issueIndexer, treeRootHolder, issueCache, ruleRepository, persistedIssues);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        Iterators.addAll(indexedDocs, (Iterator<IssueDoc>) invocation.getArguments()[1]);
+        loadedKeys.addAll((Collection<String>) invocation.getArguments()[2]);
+        return null;
+      }
+    }).when(issueIndexer).index(anyString(), any(Iterator.class), anyCollectionOf(String.class));
+  }
+
+  @Test
+  public void index_new_issue_from_cache() {
+    issueCache.newAppender().append(newIssue("ISSUE", "FILE_UUID")
+      .setNew(true)
+      .setLine(10)
+      .setAssignee("john")
+      .setTags(Sets.newHashSet("tag1"))
+      .setAttributes(ImmutableMap.of("JIRA", "http://jira.com"))).close();
+
+    underTest.execute();
+
+    assertThat(loadedKeys).isEmpty();
+    assertThat(indexedDocs).hasSize(1);
+    IssueDoc doc = indexedDocs.get(0);
+    assertThat(doc.key()).isEqualTo("ISSUE");
+    assertThat(doc.projectUuid()).isEqualTo(PROJECT_UUID);
+    assertThat(doc.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(doc.modulePath()).isEqualTo(".PROJECT_UUID.MODULE_UUID.");
+    assertThat(doc.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(doc.filePath()).isEqualTo("src/main/java/Foo.java");
+    assertThat(doc.directoryPath()).isEqualTo("src/main/java");
+    assertThat(doc.ruleKey()).isEqualTo(RULE_KEY);
+    assertThat(doc.language()).isEqualTo("xoo");
+    assertThat(doc.severity()).isEqualTo(Severity.MAJOR);
+    assertThat(doc.status()).isEqualTo(Issue.STATUS_OPEN);
+    assertThat(doc.line()).isEqualTo(10);
+    assertThat(doc.assignee()).isEqualTo("john");
+    assertThat(doc.tags()).containsOnly("tag1");
+    assertThat(doc.attributes()).containsEntry("JIRA", "http://jira.com");
+    assertThat(doc.type()).isEqualTo(RuleType.BUG);
+    assertThat(doc.getTechnicalUpdateDate().getTime()).isEqualTo(NOW);
+  }
 
   @Test
-  public void call_indexers() {
-    IssueIndexer issueIndexer = mock(IssueIndexer.class);
-    IndexIssuesStep underTest = new IndexIssuesStep(issueIndexer, treeRootHolder);
+  public void index_issues_of_directories_and_modules() {
+    issueCache.newAppender()
+      .append(newIssue("ON_DIR", "DIR_UUID").setNew(true))
+      .append(newIssue("ON_MODULE", "MODULE_UUID").setNew(true))
+      .append(newIssue("ON_PROJECT", PROJECT_UUID).setNew(true))
+      .close();
 
     underTest.execute();
 
-    verify(issueIndexer).index(PROJECT_UUID);
+    assertThat(indexedDocs).hasSize(3);
+    IssueDoc onDir = indexedDocs.get(0);
+    assertThat(onDir.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(onDir.filePath()).isEqualTo("src/main/java");
+    assertThat(onDir.directoryPath()).isEqualTo("src/main/java");
+    IssueDoc onModule = indexedDocs.get(1);
+    assertThat(onModule.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(onModule.modulePath()).isEqualTo(".PROJECT_UUID.MODULE_UUID.");
+    assertThat(onModule.filePath()).isNull();
+    assertThat(onModule.directoryPath()).isNull();
+    IssueDoc onProject = indexedDocs.get(2);
+    assertThat(onProject.moduleUuid()).isEqualTo(PROJECT_UUID);
+    assertThat(onProject.modulePath()).isEqualTo(".PROJECT_UUID.");
+  }
+
+  @Test
+  public void do_not_index_unchanged_issues() {
+    issueCache.newAppender().append(newIssue("ISSUE", "FILE_UUID").setNew(false).setChanged(false)).close();
+
+    underTest.execute();
+
+    assertThat(indexedDocs).isEmpty();
+    assertThat(loadedKeys).isEmpty();
+  }
+
+  @Test
+  public void load_from_db_the_issues_in_conflict_and_the_issues_of_removed_components() {
+    persistedIssues.addConflict("CONFLICT");
+    issueCache.newAppender()
+      .append(newIssue("CONFLICT", "FILE_UUID").setNew(false).setChanged(true))
+      .append(newIssue("ON_REMOVED_FILE", "REMOVED_FILE_UUID").setNew(false).setChanged(true))
+      .append(newIssue("NEW", "FILE_UUID").setNew(true))
+      .close();
+
+    underTest.execute();
+
+    assertThat(indexedDocs).hasSize(1);
+    assertThat(indexedDocs.get(0).key()).isEqualTo("NEW");
+    assertThat(loadedKeys).containsOnly("CONFLICT", "ON_REMOVED_FILE");
+  }
+
+  private static DefaultIssue newIssue(String key, String componentUuid) {
+    return new DefaultIssue()
+      .setKey(key)
+      .setType(RuleType.BUG)
+      .setRuleKey(RULE_KEY)
+      .setComponentUuid(componentUuid)
+      .setProjectUuid(PROJECT_UUID)
+      .setSeverity(Severity.MAJOR)
+      .setStatus(Issue.STATUS_OPEN);
   }
 }
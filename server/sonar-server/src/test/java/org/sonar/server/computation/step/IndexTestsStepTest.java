@@ -19,12 +19,16 @@
  */
 package org.sonar.server.computation.step;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
 import java.util.List;
 import org.elasticsearch.search.SearchHit;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
@@ -39,6 +43,9 @@ import org.sonar.server.test.index.TestIndexDefinition;
 import org.sonar.server.test.index.TestIndexer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
 
 public class IndexTestsStepTest extends BaseStepTest {
 
@@ -52,6 +59,7 @@ public class IndexTestsStepTest extends BaseStepTest {
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   DbClient dbClient = dbTester.getDbClient();
+  List<ListenableFuture<Void>> indexingFutures = new ArrayList<>();
 
   @Before
   public void setUp() {
@@ -60,8 +68,16 @@ public class IndexTestsStepTest extends BaseStepTest {
 
   @Override
   protected ComputationStep step() {
-    TestIndexer testIndexer = new TestIndexer(dbClient, esTester.client());
+    TestIndexer testIndexer = spy(new TestIndexer(dbClient, esTester.client()));
     testIndexer.setEnabled(true);
+    doAnswer(new Answer<ListenableFuture<Void>>() {
+      @Override
+      public ListenableFuture<Void> answer(InvocationOnMock invocation) throws Throwable {
+        ListenableFuture<Void> future = (ListenableFuture<Void>) invocation.callRealMethod();
+        indexingFutures.add(future);
+        return future;
+      }
+    }).when(testIndexer).indexAsync(anyString());
     return new IndexTestsStep(testIndexer, treeRootHolder);
   }
 
@@ -73,6 +89,9 @@ public class IndexTestsStepTest extends BaseStepTest {
     treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").build());
 
     step().execute();
+    // tests are indexed asynchronously
+    assertThat(indexingFutures).hasSize(1);
+    indexingFutures.get(0).get();
 
     List<SearchHit> docs = esTester.getDocuments(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE);
     assertThat(docs).hasSize(1);
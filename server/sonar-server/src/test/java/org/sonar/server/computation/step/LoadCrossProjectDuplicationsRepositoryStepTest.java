@@ -259,6 +259,61 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
       );
   }
 
+  @Test
+  public void load_candidate_once_when_hash_is_repeated_in_file() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseProjectSnapshot(baseProjectSnapshot);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+
+    ComponentDto otherFIle = createFile("OTHER_FILE_KEY", otherProject);
+    SnapshotDto otherFileSnapshot = createFileSnapshot(otherFIle, otherProjectSnapshot);
+
+    String hash = "a8998353e96320ec";
+    DuplicationUnitDto duplicate = new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setProjectSnapshotId(otherProjectSnapshot.getId())
+      .setSnapshotId(otherFileSnapshot.getId());
+    dbClient.duplicationDao().insert(dbSession, duplicate);
+    dbSession.commit();
+
+    BatchReport.CpdTextBlock originBlock1 = BatchReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    BatchReport.CpdTextBlock originBlock2 = BatchReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(60)
+      .setEndLine(75)
+      .setStartTokenIndex(20)
+      .setEndTokenIndex(30)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock1, originBlock2));
+
+    underTest.execute();
+
+    Class<ArrayList<Block>> listClass = (Class<ArrayList<Block>>) (Class) ArrayList.class;
+    ArgumentCaptor<ArrayList<Block>> originBlocks = ArgumentCaptor.forClass(listClass);
+    ArgumentCaptor<ArrayList<Block>> duplicationBlocks = ArgumentCaptor.forClass(listClass);
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), originBlocks.capture(), duplicationBlocks.capture());
+
+    assertThat(originBlocks.getValue()).hasSize(2);
+    assertThat(duplicationBlocks.getValue()).containsExactly(
+      new Block.Builder()
+        .setResourceId(otherFIle.getKey())
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(duplicate.getIndexInFile())
+        .setLines(duplicate.getStartLine(), duplicate.getEndLine())
+        .build());
+  }
+
   @Test
   public void nothing_to_do_when_cross_project_duplication_is_disabled() throws Exception {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(false);
@@ -20,28 +20,30 @@
 package org.sonar.server.computation.step;
 
 import java.io.File;
-import java.io.IOException;
 import org.apache.commons.io.FileUtils;
-import org.hamcrest.Description;
-import org.hamcrest.TypeSafeMatcher;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.db.ce.CeTaskTypes;
-import org.sonar.server.computation.batch.MutableBatchReportDirectoryHolder;
+import org.sonar.server.computation.batch.MutableBatchReportFileHolder;
 import org.sonar.server.computation.queue.CeTask;
 import org.sonar.server.computation.queue.report.ReportFiles;
 
-import static org.mockito.Matchers.argThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-public class ExtractReportStepTest {
+public class OpenReportStepTest {
 
   public static final String TASK_UUID = "1";
   @Rule
@@ -53,52 +55,55 @@ public class ExtractReportStepTest {
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
-  MutableBatchReportDirectoryHolder reportDirectoryHolder = mock(MutableBatchReportDirectoryHolder.class);
+  MutableBatchReportFileHolder reportFileHolder = mock(MutableBatchReportFileHolder.class);
   ReportFiles reportFiles = mock(ReportFiles.class);
   CeTask ceTask = new CeTask.Builder().setType(CeTaskTypes.REPORT).setUuid(TASK_UUID).build();
 
-  ExtractReportStep underTest = new ExtractReportStep(reportFiles, ceTask, tempFolder, reportDirectoryHolder);
+  OpenReportStep underTest = new OpenReportStep(reportFiles, ceTask, tempFolder, reportFileHolder);
 
   @Test
-  public void fail_if_report_zip_does_not_exist() throws Exception {
-    File zip = tempFolder.newFile();
-    FileUtils.forceDelete(zip);
+  public void fail_if_report_does_not_exist() throws Exception {
+    File report = tempFolder.newFile();
+    FileUtils.forceDelete(report);
     expectedException.expect(IllegalStateException.class);
-    expectedException.expectMessage("Fail to unzip " + zip.getPath());
+    expectedException.expectMessage("Analysis report does not exist: " + report.getPath());
 
-    when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(zip);
+    when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(report);
+
+    underTest.execute();
+  }
+
+  @Test
+  public void open_report_in_place() throws Exception {
+    File report = tempFolder.newFile();
+    try (ReportContainer container = ReportContainer.create(report)) {
+      container.write(FileStructure.METADATA, "{report}".getBytes(UTF_8));
+      container.finish();
+    }
+    when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(report);
 
     underTest.execute();
+
+    verify(reportFileHolder).setFile(report);
+    assertThat(logTester.logs(LoggerLevel.INFO)).hasSize(1);
   }
 
   @Test
-  public void unzip_report() throws Exception {
+  public void convert_zip_report_of_older_scanners() throws Exception {
     File zipDir = tempFolder.newDir();
-    final File metadataFile = new File(zipDir, "metadata.pb");
-    FileUtils.write(metadataFile, "{report}");
+    FileUtils.write(new File(zipDir, FileStructure.METADATA), "{report}");
     File zip = tempFolder.newFile();
     ZipUtils.zipDir(zipDir, zip);
     when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(zip);
 
     underTest.execute();
 
-    verify(reportDirectoryHolder).setDirectory(argThat(new TypeSafeMatcher<File>() {
-      @Override
-      protected boolean matchesSafely(File dir) {
-        try {
-          return dir.isDirectory() && dir.exists() &&
-            // directory contains the uncompressed report (which contains only metadata.pb in this test)
-            dir.listFiles().length == 1 &&
-            FileUtils.contentEquals(dir.listFiles()[0], metadataFile);
-        } catch (IOException e) {
-          throw new IllegalStateException(e);
-        }
-      }
-
-      @Override
-      public void describeTo(Description description) {
-
-      }
-    }));
+    ArgumentCaptor<File> file = ArgumentCaptor.forClass(File.class);
+    verify(reportFileHolder).setFile(file.capture());
+    assertThat(file.getValue()).isNotEqualTo(zip);
+    try (ReportContainer container = ReportContainer.open(file.getValue())) {
+      assertThat(container.entries()).containsExactly(FileStructure.METADATA);
+      assertThat(IOUtils.toString(container.read(FileStructure.METADATA), UTF_8)).isEqualTo("{report}");
+    }
   }
 }
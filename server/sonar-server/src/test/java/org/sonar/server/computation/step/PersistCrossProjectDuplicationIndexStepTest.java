@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.step;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -123,6 +124,25 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     assertThat(dtos).extracting("projectSnapshotId").containsOnly(PROJECT_SNAPSHOT_ID);
   }
 
+  @Test
+  public void persist_more_cpd_text_blocks_than_batch_size() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    List<BatchReport.CpdTextBlock> blocks = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      blocks.add(BatchReport.CpdTextBlock.newBuilder()
+        .setHash(Long.toHexString(i))
+        .setStartLine(i)
+        .setEndLine(i + 10)
+        .build());
+    }
+    reportReader.putDuplicationBlocks(FILE_REF, blocks);
+
+    underTest.execute();
+
+    assertThat(dbTester.countRowsOfTable("duplications_index")).isEqualTo(2500);
+    assertThat(dbTester.countSql("select count(distinct index_in_file) from duplications_index")).isEqualTo(2500);
+  }
+
   @Test
   public void nothing_to_persist_when_no_cpd_text_blocks_in_report() throws Exception {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
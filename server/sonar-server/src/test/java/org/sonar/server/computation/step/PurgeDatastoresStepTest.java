@@ -24,61 +24,91 @@ import com.google.common.collect.FluentIterable;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.Mockito;
-import org.sonar.api.config.Settings;
-import org.sonar.db.DbClient;
-import org.sonar.db.DbSession;
-import org.sonar.db.purge.IdUuidPair;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
-import org.sonar.server.computation.component.MutableDbIdsRepositoryRule;
 import org.sonar.server.computation.component.ReportComponent;
-import org.sonar.server.computation.component.SettingsRepository;
 import org.sonar.server.computation.component.ViewsComponent;
-import org.sonar.server.computation.dbcleaner.ProjectCleaner;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeTaskSubmit;
 import org.sonar.server.util.WrapInSingleElementArray;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.any;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(DataProviderRunner.class)
 public class PurgeDatastoresStepTest extends BaseStepTest {
 
   private static final String PROJECT_KEY = "PROJECT_KEY";
-  private static final long PROJECT_ID = 123L;
   private static final String PROJECT_UUID = "UUID-1234";
 
   @Rule
-  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
   @Rule
-  public MutableDbIdsRepositoryRule dbIdsRepository = MutableDbIdsRepositoryRule.standalone();
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  CeQueue queue = mock(CeQueue.class);
 
-  ProjectCleaner projectCleaner = mock(ProjectCleaner.class);
-  SettingsRepository settingsRepository = mock(SettingsRepository.class);
+  PurgeDatastoresStep underTest = new PurgeDatastoresStep(dbTester.getDbClient(), queue, treeRootHolder);
 
-  PurgeDatastoresStep underTest = new PurgeDatastoresStep(mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS), projectCleaner, dbIdsRepository, treeRootHolder, settingsRepository);
+  @Before
+  public void setUp() {
+    when(queue.prepareSubmit()).thenReturn(new CeTaskSubmit.Builder("TASK_UUID"));
+  }
 
   @Test
-  public void call_purge_method_of_the_purge_task_for_project() {
+  public void submit_purge_task_for_project() {
     Component project = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
 
-    verify_call_purge_method_of_the_purge_task(project);
+    verify_submit_purge_task(project);
   }
 
   @Test
-  public void call_purge_method_of_the_purge_task_for_view() {
+  public void submit_purge_task_for_view() {
     Component project = ViewsComponent.builder(Component.Type.VIEW, PROJECT_KEY).setUuid(PROJECT_UUID).build();
 
-    verify_call_purge_method_of_the_purge_task(project);
+    verify_submit_purge_task(project);
+  }
+
+  @Test
+  public void do_not_submit_purge_task_if_already_pending() {
+    insertTask(CeTaskTypes.PURGE, CeQueueDto.Status.PENDING);
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build());
+
+    underTest.execute();
+
+    verify(queue, never()).submit(any(CeTaskSubmit.class));
+  }
+
+  @Test
+  public void submit_purge_task_if_other_purge_is_in_progress() {
+    insertTask(CeTaskTypes.PURGE, CeQueueDto.Status.IN_PROGRESS);
+    insertTask(CeTaskTypes.REPORT, CeQueueDto.Status.PENDING);
+
+    verify_submit_purge_task(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build());
+  }
+
+  @Test
+  public void do_not_submit_purge_task_if_submits_are_paused() {
+    when(queue.isSubmitPaused()).thenReturn(true);
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build());
+
+    underTest.execute();
+
+    verify(queue, never()).submit(any(CeTaskSubmit.class));
   }
 
   @DataProvider
@@ -93,10 +123,10 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
 
   @Test
   @UseDataProvider("nonRootProjectComponentTypes")
-  public void do_not_call_purge_method_of_the_purge_task_for_other_report_components(Component.Type type) {
+  public void do_not_submit_purge_task_for_other_report_components(Component.Type type) {
     Component component = ReportComponent.builder(type, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
 
-    verify_do_not_call_purge_method_of_the_purge_task(component);
+    verify_do_not_submit_purge_task(component);
   }
 
   @DataProvider
@@ -111,31 +141,39 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
 
   @Test
   @UseDataProvider("nonRootViewsComponentTypes")
-  public void do_not_call_purge_method_of_the_purge_task_for_other_views_components(Component.Type type) {
+  public void do_not_submit_purge_task_for_other_views_components(Component.Type type) {
     Component component = ViewsComponent.builder(type, PROJECT_KEY).setUuid(PROJECT_UUID).build();
 
-    verify_do_not_call_purge_method_of_the_purge_task(component);
+    verify_do_not_submit_purge_task(component);
   }
 
-  private void verify_do_not_call_purge_method_of_the_purge_task(Component component) {
+  private void verify_do_not_submit_purge_task(Component component) {
     treeRootHolder.setRoot(component);
 
     underTest.execute();
 
-    verifyNoMoreInteractions(projectCleaner);
+    verify(queue, never()).submit(any(CeTaskSubmit.class));
   }
 
-  private void verify_call_purge_method_of_the_purge_task(Component project) {
+  private void verify_submit_purge_task(Component project) {
     treeRootHolder.setRoot(project);
-    when(settingsRepository.getSettings(project)).thenReturn(new Settings());
-    dbIdsRepository.setComponentId(project, PROJECT_ID);
 
     underTest.execute();
 
-    ArgumentCaptor<IdUuidPair> argumentCaptor = ArgumentCaptor.forClass(IdUuidPair.class);
-    verify(projectCleaner).purge(any(DbSession.class), argumentCaptor.capture(), any(Settings.class));
-    assertThat(argumentCaptor.getValue().getId()).isEqualTo(PROJECT_ID);
-    assertThat(argumentCaptor.getValue().getUuid()).isEqualTo(PROJECT_UUID);
+    ArgumentCaptor<CeTaskSubmit> argumentCaptor = ArgumentCaptor.forClass(CeTaskSubmit.class);
+    verify(queue).submit(argumentCaptor.capture());
+    assertThat(argumentCaptor.getValue().getType()).isEqualTo(CeTaskTypes.PURGE);
+    assertThat(argumentCaptor.getValue().getComponentUuid()).isEqualTo(PROJECT_UUID);
+  }
+
+  private void insertTask(String type, CeQueueDto.Status status) {
+    CeQueueDto dto = new CeQueueDto();
+    dto.setUuid(type + status);
+    dto.setTaskType(type);
+    dto.setComponentUuid(PROJECT_UUID);
+    dto.setStatus(status);
+    dbTester.getDbClient().ceQueueDao().insert(dbTester.getSession(), dto);
+    dbTester.getSession().commit();
   }
 
   private static Object[][] dataproviderFromComponentTypeValues(Predicate<Component.Type> predicate) {
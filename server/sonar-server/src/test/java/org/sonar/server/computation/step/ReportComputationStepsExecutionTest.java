@@ -0,0 +1,144 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.util.concurrent.Futures;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.picocontainer.ComponentAdapter;
+import org.picocontainer.DefaultPicoContainer;
+import org.picocontainer.NameBinding;
+import org.sonar.batch.protocol.Constants;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.core.config.CorePropertyDefinitions;
+import org.sonar.core.platform.ComponentContainer;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
+import org.sonar.server.computation.container.ComputeEngineContainerImpl;
+import org.sonar.server.computation.container.ReportComputeEngineContainerPopulator;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeTask;
+import org.sonar.server.computation.queue.CeTaskSubmit;
+import org.sonar.server.computation.queue.report.ReportFiles;
+import org.sonar.server.properties.ProjectSettingsFactory;
+import org.sonar.server.startup.RegisterMetrics;
+import org.sonar.server.test.index.TestIndexer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Executes the steps of {@link ReportComputationSteps} in the container of a report task, on several threads. Only the
+ * dependencies provided by the server are mocked.
+ */
+public class ReportComputationStepsExecutionTest {
+
+  private static final String TASK_UUID = "TASK_1";
+  private static final String PROJECT_UUID = "PROJECT_UUID";
+  private static final String PROJECT_KEY = "PROJECT_KEY";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Test
+  public void execute_steps_concurrently_in_the_container_of_the_task() throws Exception {
+    File report = temp.newFile();
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(report));
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setRootComponentRef(1).setProjectKey(PROJECT_KEY).setAnalysisDate(1_500_000_000L).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setType(Constants.ComponentType.PROJECT).setKey(PROJECT_KEY).addChildRef(2).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(2).setType(Constants.ComponentType.FILE).setPath("src/Foo.java").setLines(2).build());
+    try (OutputStream source = writer.writeSource(2)) {
+      source.write("line 1\nline 2".getBytes(StandardCharsets.UTF_8));
+    }
+    writer.getContainer().finish();
+    writer.getContainer().close();
+
+    new RegisterMetrics(dbTester.getDbClient()).start();
+    ComponentDto project = ComponentTesting.newProjectDto(PROJECT_UUID).setKey(PROJECT_KEY);
+    dbTester.getDbClient().componentDao().insert(dbTester.getSession(), project);
+    dbTester.getSession().commit();
+
+    ReportFiles reportFiles = mock(ReportFiles.class);
+    when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(report);
+    CeQueue queue = mock(CeQueue.class);
+    when(queue.prepareSubmit()).thenReturn(new CeTaskSubmit.Builder("PURGE_1"));
+    TestIndexer testIndexer = mock(TestIndexer.class);
+    when(testIndexer.indexAsync(PROJECT_UUID)).thenReturn(Futures.<Void>immediateFuture(null));
+    CeTask task = new CeTask.Builder().setUuid(TASK_UUID).setType("REPORT").setComponentUuid(PROJECT_UUID).setComponentKey(PROJECT_KEY).build();
+
+    Settings settings = new Settings(new PropertyDefinitions(CorePropertyDefinitions.all()));
+    ComponentContainer parent = new MockingComponentContainer();
+    parent.add(reportFiles, queue, testIndexer, new CeConfigurationRule().setStepsThreadCount(4), dbTester.getDbClient(), System2.INSTANCE, settings,
+      new ProjectSettingsFactory(settings, dbTester.getDbClient().propertiesDao()));
+    ComputeEngineContainerImpl container = new ComputeEngineContainerImpl(parent, new ReportComputeEngineContainerPopulator(task, null));
+    try {
+      container.getComponentByType(ComputationStepExecutor.class).execute();
+    } finally {
+      container.cleanup();
+    }
+
+    assertThat(dbTester.countRowsOfTable("snapshots")).isEqualTo(2);
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(1);
+    verify(queue).submit(any(CeTaskSubmit.class));
+    verify(testIndexer).indexAsync(PROJECT_UUID);
+  }
+
+  private static boolean isMockable(Class<?> type) {
+    // collections are injected by pico
+    return !type.isArray() && !type.isPrimitive() && !Modifier.isFinal(type.getModifiers()) && !type.getName().startsWith("java.");
+  }
+
+  /**
+   * Provides a mock of any dependency that is not in the container
+   */
+  private static class MockingComponentContainer extends ComponentContainer {
+    MockingComponentContainer() {
+      super(new DefaultPicoContainer(ComponentContainer.createPicoContainer()) {
+        @Override
+        public <T> ComponentAdapter<T> getComponentAdapter(Class<T> componentType, NameBinding componentNameBinding) {
+          ComponentAdapter<T> adapter = super.getComponentAdapter(componentType, componentNameBinding);
+          if (adapter == null && isMockable(componentType)) {
+            addComponent(componentType, mock(componentType));
+            adapter = super.getComponentAdapter(componentType, componentNameBinding);
+          }
+          return adapter;
+        }
+      });
+    }
+  }
+}
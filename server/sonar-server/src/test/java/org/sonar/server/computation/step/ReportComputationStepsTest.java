@@ -20,15 +20,24 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.collect.Lists;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.core.platform.ComponentContainer;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.core.platform.ContainerPopulator;
+import org.sonar.server.computation.configuration.CeConfiguration;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
 import org.sonar.server.computation.container.ComputeEngineContainer;
 import org.sonar.server.computation.container.ComputeEngineContainerImpl;
+import org.sonar.server.devcockpit.DevCockpitBridge;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ReportComputationStepsTest {
   @Rule
@@ -37,7 +46,7 @@ public class ReportComputationStepsTest {
   @Test
   public void instances_throws_ISE_if_container_does_not_have_any_step() throws Exception {
     expectedException.expect(IllegalStateException.class);
-    expectedException.expectMessage("Component not found: " + ExtractReportStep.class);
+    expectedException.expectMessage("Component not found: " + OpenReportStep.class);
 
     ComputeEngineContainerImpl computeEngineContainer = new ComputeEngineContainerImpl(new ComponentContainer(), new ContainerPopulator<ComputeEngineContainer>() {
       @Override
@@ -54,10 +63,10 @@ public class ReportComputationStepsTest {
     expectedException.expect(IllegalStateException.class);
     expectedException.expectMessage("Component not found: class org.sonar.server.computation.step.LogScannerContextStep");
 
-    final ExtractReportStep reportExtractionStep = mock(ExtractReportStep.class);
+    final OpenReportStep openReportStep = mock(OpenReportStep.class);
     ComponentContainer componentContainer = new ComponentContainer() {
       {
-        addSingleton(reportExtractionStep);
+        addSingleton(openReportStep);
       }
     };
     ComputeEngineContainerImpl computeEngineContainer = new ComputeEngineContainerImpl(componentContainer, new ContainerPopulator<ComputeEngineContainer>() {
@@ -69,4 +78,65 @@ public class ReportComputationStepsTest {
 
     Lists.newArrayList(new ReportComputationSteps(computeEngineContainer).instances());
   }
+
+  @Test
+  public void instances_executes_measure_visitors_steps_through_FusedMeasuresStep_when_measure_steps_are_fused() {
+    List<ComputationStep> steps = Lists.newArrayList(new ReportComputationSteps(mockContainer(true)).instances());
+
+    assertThat(countInstancesOf(steps, FusedMeasuresStep.class)).isEqualTo(1);
+    assertThat(countInstancesOf(steps, MeasureVisitorsStep.class)).isEqualTo(0);
+    assertThat(countInstancesOf(steps, NewCoverageMeasuresStep.class)).isEqualTo(1);
+  }
+
+  @Test
+  public void instances_does_not_execute_FusedMeasuresStep_when_measure_steps_are_not_fused() {
+    List<ComputationStep> steps = Lists.newArrayList(new ReportComputationSteps(mockContainer(false)).instances());
+
+    assertThat(countInstancesOf(steps, FusedMeasuresStep.class)).isEqualTo(0);
+    assertThat(countInstancesOf(steps, MeasureVisitorsStep.class)).isEqualTo(7);
+  }
+
+  @Test
+  public void measure_visitors_steps_are_declared_right_after_FusedMeasuresStep() {
+    List<Class<? extends ComputationStep>> classes = new ReportComputationSteps(mockContainer(true)).orderedStepClasses();
+
+    int fusedIndex = classes.indexOf(FusedMeasuresStep.class);
+    int measureVisitorsStepCount = 0;
+    for (int i = 0; i < classes.size(); i++) {
+      if (MeasureVisitorsStep.class.isAssignableFrom(classes.get(i))) {
+        measureVisitorsStepCount++;
+        assertThat(i).isEqualTo(fusedIndex + measureVisitorsStepCount);
+      }
+    }
+    assertThat(measureVisitorsStepCount).isEqualTo(7);
+  }
+
+  private static ComputeEngineContainer mockContainer(boolean measureStepsFused) {
+    final CeConfiguration ceConfiguration = new CeConfigurationRule().setMeasureStepsFused(measureStepsFused);
+    ComputeEngineContainer container = mock(ComputeEngineContainer.class);
+    when(container.getComponentByType(any(Class.class))).thenAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        Class<?> type = (Class<?>) invocation.getArguments()[0];
+        if (type.equals(CeConfiguration.class)) {
+          return ceConfiguration;
+        }
+        if (type.equals(DevCockpitBridge.class)) {
+          return null;
+        }
+        return mock(type);
+      }
+    });
+    return container;
+  }
+
+  private static int countInstancesOf(List<ComputationStep> steps, Class<?> type) {
+    int count = 0;
+    for (ComputationStep step : steps) {
+      if (type.isInstance(step)) {
+        count++;
+      }
+    }
+    return count;
+  }
 }
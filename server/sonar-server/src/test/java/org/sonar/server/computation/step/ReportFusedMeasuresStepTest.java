@@ -0,0 +1,202 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.collect.ImmutableList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.FileAttributes;
+import org.sonar.server.computation.duplication.DuplicationRepositoryRule;
+import org.sonar.server.computation.duplication.TextBlock;
+import org.sonar.server.computation.measure.Measure;
+import org.sonar.server.computation.measure.MeasureRepositoryRule;
+import org.sonar.server.computation.metric.MetricRepositoryRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.api.measures.CoreMetrics.CLASSES_KEY;
+import static org.sonar.api.measures.CoreMetrics.COMMENT_LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.COMPLEXITY_IN_CLASSES_KEY;
+import static org.sonar.api.measures.CoreMetrics.COMPLEXITY_IN_FUNCTIONS_KEY;
+import static org.sonar.api.measures.CoreMetrics.COMPLEXITY_KEY;
+import static org.sonar.api.measures.CoreMetrics.CONDITIONS_TO_COVER_KEY;
+import static org.sonar.api.measures.CoreMetrics.FUNCTIONS_KEY;
+import static org.sonar.api.measures.CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY;
+import static org.sonar.api.measures.CoreMetrics.LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.LINES_TO_COVER_KEY;
+import static org.sonar.api.measures.CoreMetrics.NCLOC_KEY;
+import static org.sonar.api.measures.CoreMetrics.PUBLIC_API_KEY;
+import static org.sonar.api.measures.CoreMetrics.PUBLIC_UNDOCUMENTED_API_KEY;
+import static org.sonar.api.measures.CoreMetrics.SKIPPED_TESTS_KEY;
+import static org.sonar.api.measures.CoreMetrics.TESTS_KEY;
+import static org.sonar.api.measures.CoreMetrics.TEST_ERRORS_KEY;
+import static org.sonar.api.measures.CoreMetrics.TEST_EXECUTION_TIME_KEY;
+import static org.sonar.api.measures.CoreMetrics.TEST_FAILURES_KEY;
+import static org.sonar.api.measures.CoreMetrics.UNCOVERED_CONDITIONS_KEY;
+import static org.sonar.api.measures.CoreMetrics.UNCOVERED_LINES_KEY;
+import static org.sonar.server.computation.component.Component.Type.DIRECTORY;
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.Component.Type.MODULE;
+import static org.sonar.server.computation.component.Component.Type.PROJECT;
+import static org.sonar.server.computation.component.ReportComponent.builder;
+import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
+
+/**
+ * Checks that {@link FusedMeasuresStep} computes the same measures as the steps it replaces when they are executed
+ * one after the other.
+ */
+public class ReportFusedMeasuresStepTest {
+
+  private static final int ROOT_REF = 1;
+  private static final int MODULE_REF = 12;
+  private static final int DIRECTORY_1_REF = 123;
+  private static final int DIRECTORY_2_REF = 124;
+  private static final int FILE_1_REF = 1231;
+  private static final int FILE_2_REF = 1232;
+  private static final int FILE_3_REF = 1241;
+  private static final int UNIT_TEST_REF = 1242;
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule()
+    .setRoot(
+      builder(PROJECT, ROOT_REF)
+        .addChildren(
+          builder(MODULE, MODULE_REF)
+            .addChildren(
+              builder(DIRECTORY, DIRECTORY_1_REF)
+                .addChildren(
+                  builder(FILE, FILE_1_REF).setFileAttributes(new FileAttributes(false, "java")).build(),
+                  builder(FILE, FILE_2_REF).setFileAttributes(new FileAttributes(false, "js")).build())
+                .build(),
+              builder(DIRECTORY, DIRECTORY_2_REF)
+                .addChildren(
+                  builder(FILE, FILE_3_REF).setFileAttributes(new FileAttributes(false, "java")).build(),
+                  builder(FILE, UNIT_TEST_REF).setFileAttributes(new FileAttributes(true, "java")).build())
+                .build())
+            .build())
+        .build());
+  @Rule
+  public MetricRepositoryRule metricRepository = new MetricRepositoryRule();
+  @Rule
+  public MeasureRepositoryRule sequentialMeasureRepository = MeasureRepositoryRule.create(treeRootHolder, metricRepository);
+  @Rule
+  public MeasureRepositoryRule fusedMeasureRepository = MeasureRepositoryRule.create(treeRootHolder, metricRepository);
+  @Rule
+  public DuplicationRepositoryRule duplicationRepository = DuplicationRepositoryRule.create(treeRootHolder);
+
+  @Before
+  public void setUp() {
+    for (Metric<?> metric : CoreMetrics.getMetrics()) {
+      metricRepository.add(metric);
+    }
+    duplicationRepository.addDuplication(FILE_1_REF, new TextBlock(1, 5), new TextBlock(10, 14));
+    duplicationRepository.addDuplication(FILE_3_REF, new TextBlock(2, 4), FILE_1_REF, new TextBlock(20, 22));
+  }
+
+  @Test
+  public void fused_step_computes_same_measures_as_sequential_steps() {
+    addFileMeasures(FILE_1_REF, 0);
+    addRawMeasure(FILE_1_REF, LINES_KEY, newMeasureBuilder().create(100));
+    addFileMeasures(FILE_2_REF, 1);
+    addRawMeasure(FILE_2_REF, LINES_KEY, newMeasureBuilder().create(101));
+    // without lines, the duplicated lines density of the file and of its directory depends on their comment lines
+    addFileMeasures(FILE_3_REF, 2);
+    addUnitTestMeasures(UNIT_TEST_REF);
+
+    for (ComputationStep step : createSteps(sequentialMeasureRepository)) {
+      step.execute();
+    }
+    List<MeasureVisitorsStep> fusedSteps = createSteps(fusedMeasureRepository);
+    new FusedMeasuresStep(treeRootHolder, (SizeMeasuresStep) fusedSteps.get(0), (CoverageMeasuresStep) fusedSteps.get(1),
+      (CommentMeasuresStep) fusedSteps.get(2), (DuplicationMeasuresStep) fusedSteps.get(3), (LanguageDistributionMeasuresStep) fusedSteps.get(4),
+      (UnitTestMeasuresStep) fusedSteps.get(5), (ComplexityMeasuresStep) fusedSteps.get(6)).execute();
+
+    for (int ref : new int[] {ROOT_REF, MODULE_REF, DIRECTORY_1_REF, DIRECTORY_2_REF, FILE_1_REF, FILE_2_REF, FILE_3_REF, UNIT_TEST_REF}) {
+      Component component = treeRootHolder.getComponentByRef(ref);
+      assertThat(measuresOf(fusedMeasureRepository, component)).isEqualTo(measuresOf(sequentialMeasureRepository, component));
+    }
+    // measures computed by each of the steps are compared
+    assertThat(measuresOf(fusedMeasureRepository, treeRootHolder.getRoot())).containsKeys(
+      CoreMetrics.FILES_KEY, CoreMetrics.COVERAGE_KEY, CoreMetrics.COMMENT_LINES_DENSITY_KEY, CoreMetrics.DUPLICATED_LINES_DENSITY_KEY,
+      CoreMetrics.NCLOC_LANGUAGE_DISTRIBUTION_KEY, CoreMetrics.TEST_SUCCESS_DENSITY_KEY, CoreMetrics.FUNCTION_COMPLEXITY_KEY);
+  }
+
+  /**
+   * Steps in the order they are declared in {@link ReportComputationSteps}
+   */
+  private List<MeasureVisitorsStep> createSteps(MeasureRepositoryRule measureRepository) {
+    return ImmutableList.of(
+      new SizeMeasuresStep(treeRootHolder, metricRepository, measureRepository),
+      new CoverageMeasuresStep(treeRootHolder, metricRepository, measureRepository),
+      new CommentMeasuresStep(treeRootHolder, metricRepository, measureRepository),
+      new DuplicationMeasuresStep(treeRootHolder, metricRepository, measureRepository, duplicationRepository),
+      new LanguageDistributionMeasuresStep(treeRootHolder, metricRepository, measureRepository),
+      new UnitTestMeasuresStep(treeRootHolder, metricRepository, measureRepository),
+      new ComplexityMeasuresStep(treeRootHolder, metricRepository, measureRepository));
+  }
+
+  private void addFileMeasures(int fileRef, int offset) {
+    addRawMeasure(fileRef, NCLOC_KEY, newMeasureBuilder().create(70 + offset));
+    addRawMeasure(fileRef, COMMENT_LINES_KEY, newMeasureBuilder().create(15 + offset));
+    addRawMeasure(fileRef, PUBLIC_API_KEY, newMeasureBuilder().create(8 + offset));
+    addRawMeasure(fileRef, PUBLIC_UNDOCUMENTED_API_KEY, newMeasureBuilder().create(3 + offset));
+    addRawMeasure(fileRef, CLASSES_KEY, newMeasureBuilder().create(1 + offset));
+    addRawMeasure(fileRef, FUNCTIONS_KEY, newMeasureBuilder().create(6 + offset));
+    addRawMeasure(fileRef, COMPLEXITY_KEY, newMeasureBuilder().create(12 + offset));
+    addRawMeasure(fileRef, COMPLEXITY_IN_CLASSES_KEY, newMeasureBuilder().create(10 + offset));
+    addRawMeasure(fileRef, COMPLEXITY_IN_FUNCTIONS_KEY, newMeasureBuilder().create(9 + offset));
+    addRawMeasure(fileRef, FUNCTION_COMPLEXITY_DISTRIBUTION_KEY, newMeasureBuilder().create("1=" + (2 + offset) + ";2=3;4=1"));
+    addRawMeasure(fileRef, LINES_TO_COVER_KEY, newMeasureBuilder().create(40 + offset));
+    addRawMeasure(fileRef, UNCOVERED_LINES_KEY, newMeasureBuilder().create(10 + offset));
+    addRawMeasure(fileRef, CONDITIONS_TO_COVER_KEY, newMeasureBuilder().create(12 + offset));
+    addRawMeasure(fileRef, UNCOVERED_CONDITIONS_KEY, newMeasureBuilder().create(5 + offset));
+  }
+
+  private void addUnitTestMeasures(int unitTestRef) {
+    addRawMeasure(unitTestRef, TESTS_KEY, newMeasureBuilder().create(20));
+    addRawMeasure(unitTestRef, TEST_ERRORS_KEY, newMeasureBuilder().create(1));
+    addRawMeasure(unitTestRef, TEST_FAILURES_KEY, newMeasureBuilder().create(2));
+    addRawMeasure(unitTestRef, SKIPPED_TESTS_KEY, newMeasureBuilder().create(3));
+    addRawMeasure(unitTestRef, TEST_EXECUTION_TIME_KEY, newMeasureBuilder().create(1500L));
+  }
+
+  private void addRawMeasure(int componentRef, String metricKey, Measure measure) {
+    sequentialMeasureRepository.addRawMeasure(componentRef, metricKey, measure);
+    fusedMeasureRepository.addRawMeasure(componentRef, metricKey, measure);
+  }
+
+  /**
+   * {@link Measure#equals(Object)} does not compare values, so measures are compared through their string representation.
+   */
+  private static Map<String, String> measuresOf(MeasureRepositoryRule measureRepository, Component component) {
+    Map<String, String> res = new HashMap<>();
+    for (Map.Entry<String, Measure> entry : measureRepository.getRawMeasures(component).entries()) {
+      res.put(entry.getKey(), entry.getValue().toString());
+    }
+    return res;
+  }
+}
@@ -25,6 +25,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 import org.sonar.server.computation.configuration.CeConfigurationRule;
+import org.sonar.server.computation.queue.CeQueueSubmitNotifier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -51,7 +52,7 @@ public class CeProcessingSchedulerImplMultiThreadTest {
     CeProcessingSchedulerImpl underTest = null;
     try {
       processingExecutorService = new CeProcessingSchedulerExecutorServiceImpl(ceConfiguration);
-      underTest = new CeProcessingSchedulerImpl(ceConfiguration, processingExecutorService, ceWorkerRunnable);
+      underTest = new CeProcessingSchedulerImpl(ceConfiguration, processingExecutorService, ceWorkerRunnable, new CeQueueSubmitNotifier());
 
       underTest.startScheduling();
 
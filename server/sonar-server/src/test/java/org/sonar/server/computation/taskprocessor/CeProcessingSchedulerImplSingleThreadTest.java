@@ -43,6 +43,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 import org.sonar.server.computation.configuration.CeConfigurationRule;
+import org.sonar.server.computation.queue.CeQueueSubmitNotifier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -62,7 +63,9 @@ public class CeProcessingSchedulerImplSingleThreadTest {
   private SchedulerCall regularDelayedPoll = new SchedulerCall(ceWorkerRunnable, 2000L, TimeUnit.MILLISECONDS);
   private SchedulerCall notDelayedPoll = new SchedulerCall(ceWorkerRunnable);
 
-  private CeProcessingSchedulerImpl underTest = new CeProcessingSchedulerImpl(ceConfiguration, processingExecutorService, ceWorkerRunnable);
+  private CeQueueSubmitNotifier submitNotifier = new CeQueueSubmitNotifier();
+
+  private CeProcessingSchedulerImpl underTest = new CeProcessingSchedulerImpl(ceConfiguration, processingExecutorService, ceWorkerRunnable, submitNotifier);
 
   @Test
   public void polls_without_delay_when_CeWorkerCallable_returns_true() throws Exception {
@@ -175,6 +178,57 @@ public class CeProcessingSchedulerImplSingleThreadTest {
       );
   }
 
+  @Test
+  public void submitted_tasks_cancel_delayed_polling_and_poll_without_delay() throws Exception {
+    when(ceWorkerRunnable.call())
+      .thenReturn(true)
+      .thenReturn(false)
+      .thenThrow(ERROR_TO_INTERRUPT_CHAINING);
+
+    underTest.startScheduling();
+    Future<?> delayedPoll = processingExecutorService.futures.peek();
+
+    submitNotifier.notifySubmitted(1);
+
+    assertThat(delayedPoll.isCancelled()).isTrue();
+    processingExecutorService.runFutures();
+    assertThat(processingExecutorService.getSchedulerCalls()).containsExactly(
+      regularDelayedPoll,
+      notDelayedPoll,
+      notDelayedPoll,
+      regularDelayedPoll
+      );
+  }
+
+  @Test
+  public void submitted_tasks_are_ignored_when_worker_is_not_waiting() throws Exception {
+    when(ceWorkerRunnable.call())
+      .thenReturn(true)
+      .thenThrow(ERROR_TO_INTERRUPT_CHAINING);
+
+    underTest.startScheduling();
+    submitNotifier.notifySubmitted(1);
+    // worker is now busy (not delayed poll is pending)
+    submitNotifier.notifySubmitted(1);
+
+    processingExecutorService.runFutures();
+    assertThat(processingExecutorService.getSchedulerCalls()).containsExactly(
+      regularDelayedPoll,
+      notDelayedPoll,
+      notDelayedPoll
+      );
+  }
+
+  @Test
+  public void stop_unregisters_from_submit_notifications() throws Exception {
+    underTest.startScheduling();
+    underTest.stop();
+
+    submitNotifier.notifySubmitted(1);
+
+    assertThat(processingExecutorService.getSchedulerCalls()).containsExactly(regularDelayedPoll);
+  }
+
   private void startSchedulingAndRun() throws ExecutionException, InterruptedException {
     underTest.startScheduling();
 
@@ -0,0 +1,162 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.taskprocessor.purge;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.purge.IdUuidPair;
+import org.sonar.db.purge.PurgeYieldCondition;
+import org.sonar.db.purge.PurgeYieldedException;
+import org.sonar.server.computation.dbcleaner.ProjectCleaner;
+import org.sonar.server.computation.queue.CeQueue;
+import org.sonar.server.computation.queue.CeTask;
+import org.sonar.server.computation.queue.CeTaskSubmit;
+import org.sonar.server.properties.ProjectSettingsFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PurgeTaskProcessorTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  ProjectCleaner projectCleaner = mock(ProjectCleaner.class);
+  ProjectSettingsFactory projectSettingsFactory = mock(ProjectSettingsFactory.class);
+  CeQueue queue = mock(CeQueue.class);
+
+  PurgeTaskProcessor underTest = new PurgeTaskProcessor(dbTester.getDbClient(), projectCleaner, projectSettingsFactory, queue);
+
+  @Before
+  public void setUp() {
+    when(queue.prepareSubmit()).thenReturn(new CeTaskSubmit.Builder("NEW_TASK_UUID"));
+  }
+
+  @Test
+  public void handle_purge_tasks() {
+    assertThat(underTest.getHandledCeTaskTypes()).containsOnly(CeTaskTypes.PURGE);
+  }
+
+  @Test
+  public void purge_project_with_its_settings() {
+    ComponentDto project = ComponentTesting.newProjectDto("PROJECT_UUID").setKey("PROJECT_KEY");
+    dbTester.getDbClient().componentDao().insert(dbTester.getSession(), project);
+    dbTester.getSession().commit();
+    Settings settings = new Settings();
+    when(projectSettingsFactory.newProjectSettings("PROJECT_KEY")).thenReturn(settings);
+
+    assertThat(underTest.process(newTask("PROJECT_UUID"))).isNull();
+
+    ArgumentCaptor<IdUuidPair> argumentCaptor = ArgumentCaptor.forClass(IdUuidPair.class);
+    verify(projectCleaner).purge(any(DbSession.class), argumentCaptor.capture(), eq(settings), any(PurgeYieldCondition.class));
+    assertThat(argumentCaptor.getValue().getId()).isEqualTo(project.getId());
+    assertThat(argumentCaptor.getValue().getUuid()).isEqualTo("PROJECT_UUID");
+    verify(queue, never()).submit(any(CeTaskSubmit.class));
+  }
+
+  @Test
+  public void yield_when_other_task_of_component_is_pending() {
+    insertProject();
+
+    underTest.process(newTask("PROJECT_UUID"));
+
+    ArgumentCaptor<PurgeYieldCondition> argumentCaptor = ArgumentCaptor.forClass(PurgeYieldCondition.class);
+    verify(projectCleaner).purge(any(DbSession.class), any(IdUuidPair.class), any(Settings.class), argumentCaptor.capture());
+    PurgeYieldCondition yieldCondition = argumentCaptor.getValue();
+    assertThat(yieldCondition.shouldYield()).isFalse();
+
+    insertTask(CeTaskTypes.PURGE, "PROJECT_UUID", CeQueueDto.Status.PENDING);
+    insertTask(CeTaskTypes.REPORT, "OTHER_PROJECT_UUID", CeQueueDto.Status.PENDING);
+    insertTask(CeTaskTypes.REPORT, "PROJECT_UUID", CeQueueDto.Status.IN_PROGRESS);
+    assertThat(yieldCondition.shouldYield()).isFalse();
+
+    insertTask(CeTaskTypes.REPORT, "PROJECT_UUID", CeQueueDto.Status.PENDING);
+    assertThat(yieldCondition.shouldYield()).isTrue();
+  }
+
+  @Test
+  public void submit_purge_again_when_it_yields() {
+    insertProject();
+    doThrow(PurgeYieldedException.class).when(projectCleaner).purge(any(DbSession.class), any(IdUuidPair.class), any(Settings.class), any(PurgeYieldCondition.class));
+
+    assertThat(underTest.process(newTask("PROJECT_UUID"))).isNull();
+
+    ArgumentCaptor<CeTaskSubmit> argumentCaptor = ArgumentCaptor.forClass(CeTaskSubmit.class);
+    verify(queue).submit(argumentCaptor.capture());
+    assertThat(argumentCaptor.getValue().getType()).isEqualTo(CeTaskTypes.PURGE);
+    assertThat(argumentCaptor.getValue().getComponentUuid()).isEqualTo("PROJECT_UUID");
+  }
+
+  @Test
+  public void do_nothing_if_component_does_not_exist_anymore() {
+    underTest.process(newTask("DELETED_UUID"));
+
+    verifyZeroInteractions(projectCleaner);
+  }
+
+  @Test
+  public void fail_if_task_has_no_component() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Purge task TASK_UUID has no component");
+
+    underTest.process(newTask(null));
+  }
+
+  private void insertProject() {
+    dbTester.getDbClient().componentDao().insert(dbTester.getSession(), ComponentTesting.newProjectDto("PROJECT_UUID").setKey("PROJECT_KEY"));
+    dbTester.getSession().commit();
+    when(projectSettingsFactory.newProjectSettings("PROJECT_KEY")).thenReturn(new Settings());
+  }
+
+  private void insertTask(String type, String componentUuid, CeQueueDto.Status status) {
+    CeQueueDto dto = new CeQueueDto();
+    dto.setUuid(type + componentUuid + status);
+    dto.setTaskType(type);
+    dto.setComponentUuid(componentUuid);
+    dto.setStatus(status);
+    dbTester.getDbClient().ceQueueDao().insert(dbTester.getSession(), dto);
+    dbTester.getSession().commit();
+  }
+
+  private static CeTask newTask(String componentUuid) {
+    return new CeTask.Builder().setUuid("TASK_UUID").setType(CeTaskTypes.PURGE).setComponentUuid(componentUuid).build();
+  }
+}
@@ -120,9 +120,35 @@ public class ComponentActionTest {
     assertThat(response.getCurrent().getId()).isEqualTo("T3");
   }
 
+  @Test
+  public void purge_tasks_must_not_be_picked_as_current_analysis() {
+    userSession.addComponentUuidPermission(UserRole.USER, "PROJECT_1", "PROJECT_1");
+    insertActivity("T1", "PROJECT_1", CeActivityDto.Status.FAILED);
+    insertActivity("T2", "PROJECT_1", CeActivityDto.Status.SUCCESS, CeTaskTypes.PURGE);
+    insertQueue("T3", "PROJECT_1", CeQueueDto.Status.PENDING, CeTaskTypes.PURGE);
+    insertQueue("T4", "PROJECT_1", CeQueueDto.Status.PENDING);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("componentId", "PROJECT_1")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .execute();
+
+    WsCe.ProjectResponse response = Protobuf.read(wsResponse.getInputStream(), WsCe.ProjectResponse.parser());
+    assertThat(response.getQueueCount()).isEqualTo(1);
+    assertThat(response.getQueue(0).getId()).isEqualTo("T4");
+    // the failed analysis is still reported, even if the purge succeeded afterwards
+    assertThat(response.hasCurrent()).isTrue();
+    assertThat(response.getCurrent().getId()).isEqualTo("T1");
+    assertThat(response.getCurrent().getStatus()).isEqualTo(WsCe.TaskStatus.FAILED);
+  }
+
   private CeQueueDto insertQueue(String taskUuid, String componentUuid, CeQueueDto.Status status) {
+    return insertQueue(taskUuid, componentUuid, status, CeTaskTypes.REPORT);
+  }
+
+  private CeQueueDto insertQueue(String taskUuid, String componentUuid, CeQueueDto.Status status, String taskType) {
     CeQueueDto queueDto = new CeQueueDto();
-    queueDto.setTaskType(CeTaskTypes.REPORT);
+    queueDto.setTaskType(taskType);
     queueDto.setComponentUuid(componentUuid);
     queueDto.setUuid(taskUuid);
     queueDto.setStatus(status);
@@ -132,8 +158,12 @@ public class ComponentActionTest {
   }
 
   private CeActivityDto insertActivity(String taskUuid, String componentUuid, CeActivityDto.Status status) {
+    return insertActivity(taskUuid, componentUuid, status, CeTaskTypes.REPORT);
+  }
+
+  private CeActivityDto insertActivity(String taskUuid, String componentUuid, CeActivityDto.Status status, String taskType) {
     CeQueueDto queueDto = new CeQueueDto();
-    queueDto.setTaskType(CeTaskTypes.REPORT);
+    queueDto.setTaskType(taskType);
     queueDto.setComponentUuid(componentUuid);
     queueDto.setUuid(taskUuid);
     CeActivityDto activityDto = new CeActivityDto(queueDto);
@@ -22,10 +22,13 @@ package org.sonar.server.computation.ws;
 import java.io.InputStream;
 import org.junit.Test;
 import org.mockito.Matchers;
+import org.sonar.batch.protocol.output.ReportCodec;
 import org.sonar.core.util.Protobuf;
 import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.computation.queue.CeTask;
 import org.sonar.server.computation.queue.report.ReportSubmitter;
+import org.sonar.server.computation.queue.report.ReportUploads;
+import org.sonar.server.exceptions.BadRequestException;
 import org.sonarqube.ws.MediaTypes;
 import org.sonar.server.ws.TestResponse;
 import org.sonar.server.ws.WsActionTester;
@@ -42,7 +45,8 @@ import static org.mockito.Mockito.when;
 public class SubmitActionTest {
 
   ReportSubmitter reportSubmitter = mock(ReportSubmitter.class);
-  SubmitAction underTest = new SubmitAction(reportSubmitter);
+  ReportUploads reportUploads = mock(ReportUploads.class);
+  SubmitAction underTest = new SubmitAction(reportSubmitter, reportUploads);
   WsActionTester tester = new WsActionTester(underTest);
 
   @Test
@@ -99,4 +103,32 @@ public class SubmitActionTest {
     verify(reportSubmitter).submit(eq("my_project"), Matchers.isNull(String.class), eq("my_project"), any(InputStream.class));
 
   }
+
+  @Test
+  public void submit_report_sent_by_chunks() {
+    CeTask task = new CeTask.Builder().setUuid("TASK_1").setType(CeTaskTypes.REPORT).setComponentUuid("PROJECT_1").setSubmitterLogin("robert").build();
+    InputStream report = mock(InputStream.class);
+    when(reportUploads.open("my_project", "U1", ReportCodec.LZ4)).thenReturn(report);
+    when(reportSubmitter.submit(eq("my_project"), Matchers.isNull(String.class), eq("my_project"), eq(report))).thenReturn(task);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .setParam("codec", "lz4")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .setMethod("POST")
+      .execute();
+
+    WsCe.SubmitResponse submitResponse = Protobuf.read(wsResponse.getInputStream(), WsCe.SubmitResponse.PARSER);
+    assertThat(submitResponse.getTaskId()).isEqualTo("TASK_1");
+    verify(reportUploads).delete("U1");
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void fail_if_neither_report_nor_upload_is_set() {
+    tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setMethod("POST")
+      .execute();
+  }
 }
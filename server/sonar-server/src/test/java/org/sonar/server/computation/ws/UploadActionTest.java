@@ -0,0 +1,101 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import java.io.InputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.core.util.Protobuf;
+import org.sonar.server.computation.queue.report.ReportUploads;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.TestResponse;
+import org.sonar.server.ws.WsActionTester;
+import org.sonar.test.JsonAssert;
+import org.sonarqube.ws.MediaTypes;
+import org.sonarqube.ws.WsCe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.sonar.core.permission.GlobalPermissions.SCAN_EXECUTION;
+
+public class UploadActionTest {
+
+  @Rule
+  public UserSessionRule userSession = UserSessionRule.standalone();
+
+  ReportUploads reportUploads = mock(ReportUploads.class);
+  UploadAction underTest = new UploadAction(userSession, reportUploads);
+  WsActionTester tester = new WsActionTester(underTest);
+
+  @Test
+  public void append_chunk_to_upload() {
+    userSession.setGlobalPermissions(SCAN_EXECUTION);
+    when(reportUploads.append(eq("my_project"), eq("U1"), eq(100L), any(InputStream.class))).thenReturn(150L);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .setParam("offset", "100")
+      .setParam("chunk", "{binary}")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .setMethod("POST")
+      .execute();
+
+    WsCe.UploadResponse response = Protobuf.read(wsResponse.getInputStream(), WsCe.UploadResponse.PARSER);
+    assertThat(response.getReceived()).isEqualTo(150L);
+  }
+
+  @Test
+  public void test_example_json_response() {
+    userSession.setGlobalPermissions(SCAN_EXECUTION);
+    when(reportUploads.append(eq("my_project"), eq("U1"), eq(8388608L), any(InputStream.class))).thenReturn(16777216L);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .setParam("offset", "8388608")
+      .setParam("chunk", "{binary}")
+      .setMediaType(MediaTypes.JSON)
+      .setMethod("POST")
+      .execute();
+
+    JsonAssert.assertJson(tester.getDef().responseExampleAsString()).isSimilarTo(wsResponse.getInput());
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_if_not_allowed_to_analyze_project() {
+    try {
+      tester.newRequest()
+        .setParam("projectKey", "my_project")
+        .setParam("uploadId", "U1")
+        .setParam("offset", "0")
+        .setParam("chunk", "{binary}")
+        .setMethod("POST")
+        .execute();
+    } finally {
+      verifyZeroInteractions(reportUploads);
+    }
+  }
+}
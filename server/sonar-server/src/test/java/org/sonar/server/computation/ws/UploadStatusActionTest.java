@@ -0,0 +1,85 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.core.util.Protobuf;
+import org.sonar.server.computation.queue.report.ReportUploads;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.TestResponse;
+import org.sonar.server.ws.WsActionTester;
+import org.sonar.test.JsonAssert;
+import org.sonarqube.ws.MediaTypes;
+import org.sonarqube.ws.WsCe;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonar.core.permission.GlobalPermissions.SCAN_EXECUTION;
+
+public class UploadStatusActionTest {
+
+  @Rule
+  public UserSessionRule userSession = UserSessionRule.standalone();
+
+  ReportUploads reportUploads = mock(ReportUploads.class);
+  UploadStatusAction underTest = new UploadStatusAction(userSession, reportUploads);
+  WsActionTester tester = new WsActionTester(underTest);
+
+  @Test
+  public void return_received_bytes_and_supported_codecs() {
+    userSession.setGlobalPermissions(SCAN_EXECUTION);
+    when(reportUploads.received("my_project", "U1")).thenReturn(42L);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .execute();
+
+    WsCe.UploadResponse response = Protobuf.read(wsResponse.getInputStream(), WsCe.UploadResponse.PARSER);
+    assertThat(response.getReceived()).isEqualTo(42L);
+    assertThat(response.getCodecsList()).containsExactly("lz4", "gzip", "none");
+  }
+
+  @Test
+  public void test_example_json_response() {
+    userSession.setGlobalPermissions(SCAN_EXECUTION);
+    when(reportUploads.received("my_project", "U1")).thenReturn(8388608L);
+
+    TestResponse wsResponse = tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .setMediaType(MediaTypes.JSON)
+      .execute();
+
+    JsonAssert.assertJson(tester.getDef().responseExampleAsString()).isSimilarTo(wsResponse.getInput());
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_if_not_allowed_to_analyze_project() {
+    tester.newRequest()
+      .setParam("projectKey", "my_project")
+      .setParam("uploadId", "U1")
+      .execute();
+  }
+}
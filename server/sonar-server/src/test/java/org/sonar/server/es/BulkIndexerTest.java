@@ -88,6 +88,19 @@ public class BulkIndexerTest {
     assertThat(replicas()).isEqualTo(1);
   }
 
+  @Test
+  public void large_indexing_restores_default_refresh_interval_if_refresh_was_disabled() {
+    esTester.client().nativeClient().admin().indices().prepareUpdateSettings(FakeIndexDefinition.INDEX)
+      .setSettings(ImmutableMap.<String, Object>of("index.refresh_interval", "-1")).get();
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX).setLarge(true);
+    indexer.start();
+    indexer.add(newIndexRequest(1));
+    indexer.stop();
+
+    assertThat(setting("index.refresh_interval")).isEqualTo("30s");
+  }
+
   @Test
   public void bulk_delete() throws Exception {
     int max = 500;
@@ -109,6 +122,31 @@ public class BulkIndexerTest {
     assertThat(count()).isEqualTo(removeFrom);
   }
 
+  @Test
+  public void index_and_delete_in_same_bulk() throws Exception {
+    Map[] docs = new Map[100];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = ImmutableMap.of(FakeIndexDefinition.INT_FIELD, i);
+    }
+    esTester.putDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, docs);
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX);
+    indexer.start();
+    indexer.addDeletion(esTester.client().prepareSearch(FakeIndexDefinition.INDEX)
+      .setTypes(FakeIndexDefinition.TYPE)
+      .setQuery(QueryBuilders.filteredQuery(
+        QueryBuilders.matchAllQuery(),
+        FilterBuilders.rangeFilter(FakeIndexDefinition.INT_FIELD).gte(50))));
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(1000 + i));
+    }
+    // deletions are asynchronous, they are completed when indexer is stopped
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(60);
+    assertThat(indexer.getRetries()).isZero();
+  }
+
   @Test
   public void disable_refresh() {
     BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
@@ -130,9 +168,13 @@ public class BulkIndexerTest {
   }
 
   private int replicas() {
+    return Integer.parseInt(setting(IndexMetaData.SETTING_NUMBER_OF_REPLICAS));
+  }
+
+  private String setting(String key) {
     GetSettingsResponse settingsResp = esTester.client().nativeClient().admin().indices()
       .prepareGetSettings(FakeIndexDefinition.INDEX).get();
-    return Integer.parseInt(settingsResp.getSetting(FakeIndexDefinition.INDEX, IndexMetaData.SETTING_NUMBER_OF_REPLICAS));
+    return settingsResp.getSetting(FakeIndexDefinition.INDEX, key);
   }
 
   private IndexRequest newIndexRequest(int intField) {
@@ -0,0 +1,121 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.server.es.BulkThrottle.INITIAL_BYTE_SIZE;
+import static org.sonar.server.es.BulkThrottle.MAX_BYTE_SIZE;
+import static org.sonar.server.es.BulkThrottle.MIN_BYTE_SIZE;
+import static org.sonar.server.es.BulkThrottle.TARGET_LATENCY_MS;
+
+public class BulkThrottleTest {
+
+  BulkThrottle underTest = new BulkThrottle(4, null, System2.INSTANCE);
+
+  @Test
+  public void halve_concurrency_and_size_on_rejection() {
+    underTest.acquire();
+    underTest.release(10L, true);
+
+    assertThat(underTest.concurrency()).isEqualTo(2);
+    assertThat(underTest.flushByteSize()).isEqualTo(INITIAL_BYTE_SIZE / 2);
+
+    for (int i = 0; i < 10; i++) {
+      underTest.acquire();
+      underTest.release(10L, true);
+    }
+    assertThat(underTest.concurrency()).isEqualTo(1);
+    assertThat(underTest.flushByteSize()).isEqualTo(MIN_BYTE_SIZE);
+  }
+
+  @Test
+  public void decrease_size_on_slow_requests() {
+    underTest.acquire();
+    underTest.release(TARGET_LATENCY_MS * 2, false);
+
+    assertThat(underTest.concurrency()).isEqualTo(4);
+    assertThat(underTest.flushByteSize()).isEqualTo(INITIAL_BYTE_SIZE * 3 / 4);
+  }
+
+  @Test
+  public void increase_size_and_concurrency_on_fast_requests() {
+    underTest.acquire();
+    underTest.release(10L, true);
+
+    for (int i = 0; i < 20; i++) {
+      underTest.acquire();
+      underTest.release(10L, false);
+    }
+
+    assertThat(underTest.concurrency()).isEqualTo(4);
+    assertThat(underTest.flushByteSize()).isEqualTo(MAX_BYTE_SIZE);
+  }
+
+  @Test
+  public void fixed_size_is_not_adapted() {
+    underTest = new BulkThrottle(4, 500L, System2.INSTANCE);
+
+    underTest.acquire();
+    underTest.release(TARGET_LATENCY_MS * 2, true);
+
+    assertThat(underTest.flushByteSize()).isEqualTo(500L);
+    assertThat(underTest.concurrency()).isEqualTo(2);
+  }
+
+  @Test
+  public void acquire_blocks_when_concurrency_is_reached() throws Exception {
+    underTest = new BulkThrottle(1, null, System2.INSTANCE);
+    underTest.acquire();
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        underTest.acquire();
+        acquired.countDown();
+      }
+    };
+    thread.start();
+
+    assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+    underTest.release(10L, false);
+    assertThat(acquired.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void await_end_of_requests_and_tasks() throws Exception {
+    assertThat(underTest.awaitIdle(10, TimeUnit.MILLISECONDS)).isTrue();
+
+    underTest.acquire();
+    underTest.beginTask();
+    assertThat(underTest.awaitIdle(10, TimeUnit.MILLISECONDS)).isFalse();
+
+    underTest.release(10L, false);
+    assertThat(underTest.awaitIdle(10, TimeUnit.MILLISECONDS)).isFalse();
+
+    underTest.endTask();
+    assertThat(underTest.awaitIdle(10, TimeUnit.MILLISECONDS)).isTrue();
+  }
+}
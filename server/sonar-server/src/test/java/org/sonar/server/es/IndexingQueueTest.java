@@ -0,0 +1,228 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexingQueueTest {
+
+  System2 system2 = mock(System2.class);
+  IndexingQueue underTest = new IndexingQueue("test", 2, 1L, system2);
+  List<String> executions = new CopyOnWriteArrayList<>();
+
+  @After
+  public void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  public void execute_pass() throws Exception {
+    when(system2.now()).thenReturn(100L);
+
+    ListenableFuture<Void> future = underTest.submit("P1", new RecordingTask("P1"));
+
+    future.get(10, TimeUnit.SECONDS);
+    assertThat(executions).containsExactly("P1@100");
+    assertThat(underTest.depth()).isEqualTo(0);
+    assertThat(underTest.lagMs()).isEqualTo(0L);
+  }
+
+  @Test
+  public void merge_pending_requests_on_same_project() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ListenableFuture<Void> blocking = underTest.submit("P1", new BlockingTask(latch));
+
+    when(system2.now()).thenReturn(100L);
+    ListenableFuture<Void> first = underTest.submit("P1", new RecordingTask("first"));
+    when(system2.now()).thenReturn(150L);
+    ListenableFuture<Void> second = underTest.submit("P1", new RecordingTask("second"));
+    when(system2.now()).thenReturn(400L);
+
+    assertThat(underTest.depth()).isEqualTo(1);
+    assertThat(underTest.lagMs()).isEqualTo(300L);
+
+    latch.countDown();
+    blocking.get(10, TimeUnit.SECONDS);
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    // single pass, with the date of the most recent request
+    assertThat(executions).containsExactly("first@150");
+  }
+
+  @Test
+  public void pass_on_whole_index_absorbs_pending_passes_on_projects() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ListenableFuture<Void> blocking = underTest.submit(null, new BlockingTask(latch));
+
+    when(system2.now()).thenReturn(100L);
+    ListenableFuture<Void> p1 = underTest.submit("P1", new RecordingTask("P1"));
+    ListenableFuture<Void> p2 = underTest.submit("P2", new RecordingTask("P2"));
+    when(system2.now()).thenReturn(200L);
+    ListenableFuture<Void> all = underTest.submit(null, new RecordingTask("ALL"));
+    ListenableFuture<Void> p3 = underTest.submit("P3", new RecordingTask("P3"));
+
+    assertThat(underTest.depth()).isEqualTo(1);
+
+    latch.countDown();
+    for (ListenableFuture<Void> future : Arrays.asList(blocking, p1, p2, all, p3)) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    assertThat(executions).containsExactly("ALL@200");
+  }
+
+  @Test
+  public void passes_on_different_projects_are_executed_concurrently() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ListenableFuture<Void> blocking = underTest.submit("P1", new BlockingTask(latch));
+
+    // does not wait for P1
+    underTest.submit("P2", new RecordingTask("P2")).get(10, TimeUnit.SECONDS);
+    assertThat(executions).containsExactly("P2@0");
+    assertThat(blocking.isDone()).isFalse();
+
+    latch.countDown();
+    blocking.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void fail_all_merged_requests_if_pass_fails() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    underTest.submit("P1", new BlockingTask(latch));
+    ListenableFuture<Void> first = underTest.submit("P1", new FailingTask());
+    ListenableFuture<Void> second = underTest.submit("P1", new RecordingTask("second"));
+    latch.countDown();
+
+    for (ListenableFuture<Void> future : Arrays.asList(first, second)) {
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("Fail to index");
+      }
+    }
+
+    // the queue is still usable
+    underTest.submit("P1", new RecordingTask("P1")).get(10, TimeUnit.SECONDS);
+    assertThat(executions).containsExactly("P1@0");
+  }
+
+  @Test
+  public void task_of_first_request_covers_the_merged_requests() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ListenableFuture<Void> blocking = underTest.submit("P1", new BlockingTask(latch));
+    ListenableFuture<Void> first = underTest.submit("P1", new RecordingTask("first"));
+    ListenableFuture<Void> second = underTest.submit("P1", new FailingTask());
+
+    latch.countDown();
+    for (ListenableFuture<Void> future : Arrays.asList(blocking, first, second)) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    // the task of the second request is not executed
+    assertThat(executions).containsExactly("first@0");
+  }
+
+  @Test
+  public void fail_requests_submitted_after_stop() throws Exception {
+    underTest.stop();
+
+    ListenableFuture<Void> future = underTest.submit("P1", new RecordingTask("P1"));
+
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+    }
+    assertThat(executions).isEmpty();
+    assertThat(underTest.depth()).isEqualTo(0);
+  }
+
+  @Test
+  public void fail_pending_requests_when_running_pass_completes_after_stop() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ListenableFuture<Void> blocking = underTest.submit("P1", new BlockingTask(latch));
+    ListenableFuture<Void> pending = underTest.submit("P1", new RecordingTask("P1"));
+
+    underTest.stop();
+    latch.countDown();
+
+    blocking.get(10, TimeUnit.SECONDS);
+    try {
+      pending.get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+    }
+    assertThat(executions).isEmpty();
+  }
+
+  private class RecordingTask implements IndexingQueue.PassTask {
+    private final String name;
+
+    RecordingTask(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void execute(long requestedAt) {
+      executions.add(name + "@" + requestedAt);
+    }
+  }
+
+  private static class BlockingTask implements IndexingQueue.PassTask {
+    private final CountDownLatch latch;
+
+    BlockingTask(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void execute(long requestedAt) {
+      try {
+        latch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class FailingTask implements IndexingQueue.PassTask {
+    @Override
+    public void execute(long requestedAt) {
+      throw new IllegalStateException("Fail to index");
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.commons.io.FileUtils;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.process.ProcessProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelReindexerTest {
+
+  static final int DOCS_PER_PARTITION = 30;
+
+  @Rule
+  public EsTester esTester = new EsTester().addDefinitions(new FakeIndexDefinition());
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  Settings settings = new Settings();
+  FakePartitionedIndexer indexer = new FakePartitionedIndexer("P1", "P2", "P3", "P4", "P5");
+  ParallelReindexer underTest;
+  File checkpointFile;
+
+  @Before
+  public void setUp() throws Exception {
+    File dataDir = temp.newFolder();
+    settings.setProperty(ProcessProperties.PATH_DATA, dataDir.getAbsolutePath());
+    settings.setProperty(ParallelReindexer.THREADS_PROPERTY, 3);
+    checkpointFile = new File(dataDir, "es-reindex/fakes-fake");
+    underTest = new ParallelReindexer(esTester.client(), settings, System2.INSTANCE);
+  }
+
+  @Test
+  public void index_all_partitions_if_index_is_empty() {
+    underTest.reindexIfNeeded(indexer);
+
+    assertThat(indexer.indexedPartitions).containsOnly("P1", "P2", "P3", "P4", "P5");
+    assertThat(count()).isEqualTo(5 * DOCS_PER_PARTITION);
+    assertThat(checkpointFile).doesNotExist();
+  }
+
+  @Test
+  public void do_nothing_if_index_is_not_empty() throws Exception {
+    esTester.putDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, FakeIndexDefinition.newDoc(1));
+
+    underTest.reindexIfNeeded(indexer);
+
+    assertThat(indexer.indexedPartitions).isEmpty();
+  }
+
+  @Test
+  public void resume_interrupted_indexing() throws Exception {
+    esTester.putDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, FakeIndexDefinition.newDoc(1));
+    FileUtils.writeLines(checkpointFile, Arrays.asList(indexCreationDate(), "P1", "P3"));
+
+    underTest.reindexIfNeeded(indexer);
+
+    assertThat(indexer.indexedPartitions).containsOnly("P2", "P4", "P5");
+    assertThat(count()).isEqualTo(1 + 3 * DOCS_PER_PARTITION);
+    assertThat(checkpointFile).doesNotExist();
+  }
+
+  @Test
+  public void ignore_checkpoint_of_another_index() throws Exception {
+    esTester.putDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE, FakeIndexDefinition.newDoc(1));
+    FileUtils.writeLines(checkpointFile, Arrays.asList("123456", "P1"));
+
+    underTest.reindexIfNeeded(indexer);
+
+    assertThat(indexer.indexedPartitions).isEmpty();
+    assertThat(checkpointFile).doesNotExist();
+  }
+
+  @Test
+  public void keep_checkpoint_if_indexing_fails() {
+    indexer.failingPartition = "P4";
+
+    try {
+      underTest.reindexIfNeeded(indexer);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to read partition P4");
+    }
+
+    assertThat(checkpointFile).exists();
+  }
+
+  @Test
+  public void restore_index_settings_if_indexing_fails() {
+    indexer.failingPartition = "P4";
+
+    try {
+      underTest.reindexIfNeeded(indexer);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to read partition P4");
+    }
+
+    assertThat(indexSetting("index.refresh_interval")).isEqualTo("30s");
+  }
+
+  private long count() {
+    return esTester.countDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE);
+  }
+
+  private String indexCreationDate() {
+    return indexSetting("index.creation_date");
+  }
+
+  private String indexSetting(String key) {
+    return esTester.client().nativeClient().admin().indices().prepareGetSettings(FakeIndexDefinition.INDEX).get()
+      .getSetting(FakeIndexDefinition.INDEX, key);
+  }
+
+  private static class FakePartitionedIndexer implements PartitionedIndexer {
+    private final List<String> partitions;
+    private final List<String> indexedPartitions = new CopyOnWriteArrayList<>();
+    private String failingPartition = null;
+
+    FakePartitionedIndexer(String... partitions) {
+      this.partitions = Arrays.asList(partitions);
+    }
+
+    @Override
+    public String getIndexName() {
+      return FakeIndexDefinition.INDEX;
+    }
+
+    @Override
+    public String getTypeName() {
+      return FakeIndexDefinition.TYPE;
+    }
+
+    @Override
+    public List<String> selectPartitions() {
+      return partitions;
+    }
+
+    @Override
+    public void indexPartition(String partition, BulkIndexer bulk) {
+      if (partition.equals(failingPartition)) {
+        throw new IllegalStateException("Fail to read partition " + partition);
+      }
+      int offset = 100 * partitions.indexOf(partition);
+      for (int i = 0; i < DOCS_PER_PARTITION; i++) {
+        bulk.add(new IndexRequest(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)
+          .source(FakeIndexDefinition.newDoc(offset + i)));
+      }
+      indexedPartitions.add(partition);
+    }
+  }
+}
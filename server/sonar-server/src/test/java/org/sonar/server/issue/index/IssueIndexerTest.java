@@ -20,6 +20,9 @@
 package org.sonar.server.issue.index;
 
 import com.google.common.collect.Iterators;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -30,8 +33,11 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
+import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsTester;
+import org.sonar.server.issue.IssueTesting;
 
+import static com.google.common.collect.Sets.newHashSet;
 import static org.assertj.core.api.Assertions.assertThat;
 
 
@@ -116,6 +122,67 @@ public class IssueIndexerTest {
     assertThat(docs.get(0).key()).isEqualTo("ABCDE");
   }
 
+  @Test
+  public void index_provided_documents_and_load_others_from_db() {
+    dbTester.prepareDbUnit(getClass(), "index.xml");
+    IssueDoc provided = IssueTesting.newDoc().setKey("PROVIDED").setProjectUuid("THE_PROJECT").setTechnicalUpdateDate(new Date(1600000000000L));
+
+    IssueIndexer indexer = createIndexer();
+    indexer.index("THE_PROJECT", Iterators.singletonIterator(provided), Arrays.asList("ABCDE"));
+
+    List<IssueDoc> docs = esTester.getDocuments("issues", "issue", IssueDoc.class);
+    assertThat(docs).hasSize(2);
+    assertThat(newHashSet(docs.get(0).key(), docs.get(1).key())).containsOnly("PROVIDED", "ABCDE");
+
+    // issues of the project updated before the provided documents are not indexed again
+    esTester.truncateIndices();
+    indexer.index("THE_PROJECT");
+    assertThat(esTester.countDocuments("issues", "issue")).isZero();
+  }
+
+  @Test
+  public void index_project_from_its_own_last_indexed_date() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+    // issue of project 1 is updated before the one of project 2
+    dbTester.executeUpdateSql("update issues set updated_at=1540000000000 where kee='ABCDE'");
+    IssueIndexer indexer = createIndexer();
+
+    indexer.index("THE_PROJECT_2");
+    indexer.index("THE_PROJECT_1");
+
+    List<IssueDoc> docs = esTester.getDocuments("issues", "issue", IssueDoc.class);
+    assertThat(docs).hasSize(2);
+    assertThat(newHashSet(docs.get(0).key(), docs.get(1).key())).containsOnly("ABCDE", "EDCBA");
+  }
+
+  @Test
+  public void do_not_index_provided_documents_if_disabled() {
+    IssueIndexer indexer = createIndexer();
+    indexer.setEnabled(false);
+
+    indexer.index("THE_PROJECT", Iterators.singletonIterator(IssueTesting.newDoc()), Collections.<String>emptyList());
+
+    assertThat(esTester.countDocuments("issues", "issue")).isZero();
+  }
+
+  @Test
+  public void index_partitions() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+    IssueIndexer indexer = createIndexer();
+
+    List<String> partitions = indexer.selectPartitions();
+    assertThat(partitions).containsOnly("THE_PROJECT_1", "THE_PROJECT_2");
+
+    BulkIndexer bulk = new BulkIndexer(esTester.client(), IssueIndexDefinition.INDEX);
+    bulk.start();
+    indexer.indexPartition("THE_PROJECT_1", bulk);
+    bulk.stop();
+
+    List<IssueDoc> docs = esTester.getDocuments("issues", "issue", IssueDoc.class);
+    assertThat(docs).hasSize(1);
+    assertThat(docs.get(0).key()).isEqualTo("ABCDE");
+  }
+
   private IssueIndexer createIndexer() {
     IssueIndexer indexer = new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client());
     indexer.setEnabled(true);
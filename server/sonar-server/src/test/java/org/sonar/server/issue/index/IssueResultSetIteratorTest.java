@@ -21,6 +21,7 @@ package org.sonar.server.issue.index;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Maps;
+import java.util.Arrays;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import org.junit.Before;
@@ -225,4 +226,14 @@ public class IssueResultSetIteratorTest {
     assertThat(it.hasNext()).isFalse();
     it.close();
   }
+
+  @Test
+  public void select_by_keys() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    IssueResultSetIterator it = IssueResultSetIterator.createForKeys(dbTester.getDbClient(), dbTester.getSession(), Arrays.asList("BCD", "EFG", "UNKNOWN"));
+    Map<String, IssueDoc> issuesByKey = issuesByKey(it);
+    it.close();
+
+    assertThat(issuesByKey.keySet()).containsOnly("BCD", "EFG");
+  }
 }
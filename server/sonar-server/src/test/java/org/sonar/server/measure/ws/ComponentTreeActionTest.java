@@ -271,6 +271,75 @@ public class ComponentTreeActionTest {
     assertThat(response.getComponentsList()).extracting("id").containsExactly("file-uuid-1", "file-uuid-2", "file-uuid-3");
   }
 
+  @Test
+  public void sort_by_metric_value_descending_and_paginated() {
+    ComponentDto projectDto = newProjectDto("project-uuid");
+    SnapshotDto projectSnapshot = componentDb.insertProjectAndSnapshot(projectDto);
+    MetricDto ncloc = insertNclocMetric();
+    MetricDto complexity = insertComplexityMetric();
+    for (int i = 1; i <= 9; i++) {
+      SnapshotDto fileSnapshot = componentDb.insertComponentAndSnapshot(newFileDto(projectDto, "file-uuid-" + i).setName("file-" + i), projectSnapshot);
+      dbClient.measureDao().insert(dbSession,
+        newMeasureDto(ncloc, fileSnapshot.getId()).setValue((double) i),
+        newMeasureDto(complexity, fileSnapshot.getId()).setValue(10.0d * i));
+    }
+    componentDb.insertComponentAndSnapshot(newFileDto(projectDto, "file-without-measure").setName("file-0"), projectSnapshot);
+    db.commit();
+
+    ComponentTreeWsResponse response = call(ws.newRequest()
+      .setParam(PARAM_BASE_COMPONENT_ID, "project-uuid")
+      .setParam(Param.SORT, METRIC_SORT)
+      .setParam(Param.ASCENDING, "false")
+      .setParam(PARAM_METRIC_SORT, "ncloc")
+      .setParam(PARAM_METRIC_KEYS, "ncloc,complexity")
+      .setParam(Param.PAGE, "2")
+      .setParam(Param.PAGE_SIZE, "3"));
+
+    assertThat(response.getPaging().getTotal()).isEqualTo(10);
+    assertThat(response.getComponentsList()).extracting("id").containsExactly("file-uuid-6", "file-uuid-5", "file-uuid-4");
+    assertThat(response.getComponentsList().get(0).getMeasuresList()).extracting("value").containsOnly("6", "60");
+
+    response = call(ws.newRequest()
+      .setParam(PARAM_BASE_COMPONENT_ID, "project-uuid")
+      .setParam(Param.SORT, METRIC_SORT)
+      .setParam(Param.ASCENDING, "false")
+      .setParam(PARAM_METRIC_SORT, "ncloc")
+      .setParam(PARAM_METRIC_KEYS, "ncloc")
+      .setParam(Param.PAGE, "4")
+      .setParam(Param.PAGE_SIZE, "3"));
+
+    assertThat(response.getComponentsList()).extracting("id").containsExactly("file-without-measure");
+  }
+
+  @Test
+  public void sort_by_metric_value_with_best_value() {
+    ComponentDto projectDto = newProjectDto("project-uuid");
+    SnapshotDto projectSnapshot = componentDb.insertProjectAndSnapshot(projectDto);
+    SnapshotDto fileSnapshot1 = componentDb.insertComponentAndSnapshot(newFileDto(projectDto, "file-uuid-1").setName("file-1"), projectSnapshot);
+    componentDb.insertComponentAndSnapshot(newFileDto(projectDto, "file-uuid-2").setName("file-2"), projectSnapshot);
+    SnapshotDto fileSnapshot3 = componentDb.insertComponentAndSnapshot(newFileDto(projectDto, "file-uuid-3").setName("file-3"), projectSnapshot);
+    MetricDto coverage = dbClient.metricDao().insert(dbSession, newMetricDtoWithoutOptimization()
+      .setKey("coverage")
+      .setValueType(ValueType.PERCENT.name())
+      .setOptimizedBestValue(true)
+      .setBestValue(100d));
+    dbClient.measureDao().insert(dbSession,
+      newMeasureDto(coverage, fileSnapshot1.getId()).setValue(50.0d),
+      newMeasureDto(coverage, fileSnapshot3.getId()).setValue(80.0d));
+    db.commit();
+
+    ComponentTreeWsResponse response = call(ws.newRequest()
+      .setParam(PARAM_BASE_COMPONENT_ID, "project-uuid")
+      .setParam(Param.SORT, METRIC_SORT)
+      .setParam(Param.ASCENDING, "false")
+      .setParam(PARAM_METRIC_SORT, "coverage")
+      .setParam(PARAM_METRIC_KEYS, "coverage")
+      .setParam(Param.PAGE_SIZE, "2"));
+
+    assertThat(response.getComponentsList()).extracting("id").containsExactly("file-uuid-2", "file-uuid-3");
+    assertThat(response.getComponentsList().get(0).getMeasuresList()).extracting("value").containsOnly("100.0");
+  }
+
   @Test
   public void load_developer_descendants() {
     ComponentDto developer = newDeveloper("developer").setUuid("developer-uuid");
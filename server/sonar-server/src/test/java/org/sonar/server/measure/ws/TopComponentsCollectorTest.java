@@ -0,0 +1,107 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.ws;
+
+import java.util.Collections;
+import java.util.List;
+import org.apache.ibatis.session.ResultContext;
+import org.junit.Test;
+import org.sonar.api.measures.Metric.ValueType;
+import org.sonar.db.component.ComponentDtoWithSnapshotIdAndMeasure;
+import org.sonar.db.metric.MetricDto;
+import org.sonarqube.ws.client.measure.ComponentTreeWsRequest;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonar.db.metric.MetricTesting.newMetricDto;
+import static org.sonar.server.measure.ws.ComponentTreeAction.METRIC_SORT;
+import static org.sonar.server.measure.ws.ComponentTreeAction.NAME_SORT;
+
+public class TopComponentsCollectorTest {
+
+  MetricDto ncloc = newMetricDto().setKey("ncloc").setValueType(ValueType.INT.name()).setOptimizedBestValue(false);
+
+  @Test
+  public void keep_only_first_components() {
+    TopComponentsCollector underTest = newCollector(3, false, asList(METRIC_SORT, NAME_SORT));
+
+    for (double value : new double[] {5d, 1d, 4d, 2d, 3d}) {
+      underTest.handleResult(newContext(newComponent("file-" + (int) value, value)));
+    }
+    underTest.handleResult(newContext(newComponent("file-without-measure", null)));
+
+    assertThat(underTest.getSortedComponents()).extracting("uuid").containsExactly("file-1", "file-2", "file-3");
+  }
+
+  @Test
+  public void keep_order_of_stream_for_equal_components() {
+    TopComponentsCollector underTest = newCollector(2, false, Collections.singletonList(METRIC_SORT));
+
+    underTest.handleResult(newContext(newComponent("file-b", 1d)));
+    underTest.handleResult(newContext(newComponent("file-a", 1d)));
+    underTest.handleResult(newContext(newComponent("file-c", 1d)));
+
+    assertThat(underTest.getSortedComponents()).extracting("uuid").containsExactly("file-b", "file-a");
+  }
+
+  @Test
+  public void stop_reading_when_components_are_sorted_by_metric_value() {
+    TopComponentsCollector underTest = newCollector(2, true, Collections.singletonList(METRIC_SORT));
+
+    ResultContext equalValueContext = newContext(newComponent("file-3", 2d));
+    ResultContext greaterValueContext = newContext(newComponent("file-4", 3d));
+    underTest.handleResult(newContext(newComponent("file-1", 1d)));
+    underTest.handleResult(newContext(newComponent("file-2", 2d)));
+    underTest.handleResult(equalValueContext);
+    underTest.handleResult(greaterValueContext);
+
+    verify(equalValueContext, never()).stop();
+    verify(greaterValueContext).stop();
+    assertThat(underTest.getSortedComponents()).extracting("uuid").containsExactly("file-1", "file-2");
+  }
+
+  private TopComponentsCollector newCollector(int limit, boolean sortedByMetricValue, List<String> sort) {
+    ComponentTreeWsRequest wsRequest = new ComponentTreeWsRequest()
+      .setSort(sort)
+      .setAsc(true)
+      .setMetricSort("ncloc")
+      .setMetricKeys(Collections.singletonList("ncloc"));
+    return new TopComponentsCollector(wsRequest, Collections.singletonList(ncloc), limit, ncloc, null, sortedByMetricValue);
+  }
+
+  private static ComponentDtoWithSnapshotIdAndMeasure newComponent(String uuid, Double value) {
+    ComponentDtoWithSnapshotIdAndMeasure component = new ComponentDtoWithSnapshotIdAndMeasure()
+      .setMeasureId(value == null ? null : 1L)
+      .setMeasureValue(value);
+    component.setSnapshotId(10L);
+    component.setUuid(uuid).setName(uuid).setQualifier("FIL");
+    return component;
+  }
+
+  private static ResultContext newContext(ComponentDtoWithSnapshotIdAndMeasure component) {
+    ResultContext context = mock(ResultContext.class);
+    when(context.getResultObject()).thenReturn(component);
+    return context;
+  }
+}
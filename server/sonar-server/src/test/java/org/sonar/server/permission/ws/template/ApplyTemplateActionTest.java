@@ -55,6 +55,7 @@ import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.permission.PermissionService;
 import org.sonar.server.permission.ws.PermissionDependenciesFinder;
 import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.user.PermissionCache;
 import org.sonar.server.usergroups.ws.UserGroupFinder;
 import org.sonar.server.ws.TestRequest;
 import org.sonar.server.ws.TestResponse;
@@ -96,6 +97,7 @@ public class ApplyTemplateActionTest {
   PermissionTemplateDto template1;
   PermissionTemplateDto template2;
   IssueAuthorizationIndexer issueAuthorizationIndexer = mock(IssueAuthorizationIndexer.class);
+  PermissionCache permissionCache = mock(PermissionCache.class);
 
   @Before
   public void setUp() {
@@ -105,7 +107,7 @@ public class ApplyTemplateActionTest {
 
     PermissionRepository repository = new PermissionRepository(dbClient, new Settings());
     ComponentFinder componentFinder = new ComponentFinder(dbClient);
-    PermissionService permissionService = new PermissionService(dbClient, repository, issueAuthorizationIndexer, userSession, componentFinder);
+    PermissionService permissionService = new PermissionService(dbClient, repository, issueAuthorizationIndexer, userSession, componentFinder, permissionCache);
     PermissionDependenciesFinder permissionDependenciesFinder = new PermissionDependenciesFinder(dbClient, componentFinder, new UserGroupFinder(dbClient), resourceTypes);
 
     ApplyTemplateAction underTest = new ApplyTemplateAction(dbClient, permissionService, permissionDependenciesFinder);
@@ -147,6 +149,7 @@ public class ApplyTemplateActionTest {
 
     assertTemplate1AppliedToProject();
     verify(issueAuthorizationIndexer).index();
+    verify(permissionCache).invalidate();
   }
 
   @Test
@@ -25,11 +25,14 @@ import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
+import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.es.NewIndex;
 import org.sonar.server.issue.index.IssueIndexDefinition;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class EsMonitorTest {
 
@@ -78,4 +81,21 @@ public class EsMonitorTest {
     assertThat(indexAttributes.get("Shards")).isEqualTo(NewIndex.DEFAULT_NUMBER_OF_SHARDS);
     assertThat(indexAttributes.get("Store Size")).isNotNull();
   }
+
+  @Test
+  public void indexing_queue_attributes() {
+    BaseIndexer indexer = mock(BaseIndexer.class);
+    when(indexer.getIndexName()).thenReturn("issues");
+    when(indexer.getTypeName()).thenReturn("issue");
+    when(indexer.getQueueDepth()).thenReturn(2);
+    when(indexer.getQueueLagMs()).thenReturn(350L);
+    EsMonitor monitor = new EsMonitor(esTester.client(), new BaseIndexer[] {indexer});
+
+    assertThat(monitor.getIndexingQueueDepth()).isEqualTo(2);
+    assertThat(monitor.getIndexingLagMs()).isEqualTo(350L);
+    Map queuesAttributes = (Map) monitor.attributes().get("Indexing Queues");
+    Map queueAttributes = (Map) queuesAttributes.get("issues/issue");
+    assertThat(queueAttributes.get("Pending Passes")).isEqualTo(2);
+    assertThat(queueAttributes.get("Lag (ms)")).isEqualTo(350L);
+  }
 }
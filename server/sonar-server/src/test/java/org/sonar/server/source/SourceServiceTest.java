@@ -21,8 +21,10 @@ package org.sonar.server.source;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -31,6 +33,7 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto;
+import org.sonar.db.source.SourceLineBlocks;
 import org.sonar.server.source.index.FileSourceTesting;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -40,6 +43,7 @@ import static org.mockito.Mockito.when;
 public class SourceServiceTest {
 
   public static final String FILE_UUID = "FILE_UUID";
+  public static final String LARGE_FILE_UUID = "LARGE_FILE_UUID";
 
   @Rule
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
@@ -49,7 +53,9 @@ public class SourceServiceTest {
 
   HtmlSourceDecorator htmlDecorator = mock(HtmlSourceDecorator.class);
 
-  SourceService underTest = new SourceService(dbTester.getDbClient(), htmlDecorator);
+  SourceBlockCache blockCache = new SourceBlockCache();
+
+  SourceService underTest = new SourceService(dbTester.getDbClient(), htmlDecorator, blockCache);
 
   @Before
   public void injectFakeLines() throws IOException {
@@ -133,9 +139,63 @@ public class SourceServiceTest {
     assertThat(line.isPresent()).isFalse();
   }
 
+  @Test
+  public void get_range_of_lines_over_two_blocks() throws Exception {
+    insertLargeFile();
+
+    Optional<Iterable<DbFileSources.Line>> linesOpt = underTest.getLines(dbTester.getSession(), LARGE_FILE_UUID, 498, 503);
+
+    assertThat(linesOpt.get()).extracting("line").containsExactly(498, 499, 500, 501, 502, 503);
+    assertThat(blockCache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_range_of_lines_decodes_only_required_blocks() throws Exception {
+    insertLargeFile();
+
+    Optional<Iterable<DbFileSources.Line>> linesOpt = underTest.getLines(dbTester.getSession(), LARGE_FILE_UUID, 1001, 1200);
+
+    assertThat(linesOpt.get()).extracting("line").containsExactly(1001, 1002, 1003);
+    assertThat(blockCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void getLine_in_large_file() throws Exception {
+    insertLargeFile();
+
+    Optional<DbFileSources.Line> line = underTest.getLine(dbTester.getSession(), LARGE_FILE_UUID, 750);
+
+    assertThat(line.get().getSource()).isEqualTo("SOURCE_750");
+    assertThat(blockCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void do_not_cache_sources_stored_as_a_single_block() throws Exception {
+    DbFileSources.Data data = FileSourceTesting.newFakeData(SourceLineBlocks.LINES_PER_BLOCK + 3).build();
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput)) {
+      data.writeTo(compressedOutput);
+    }
+    FileSourceDto dto = new FileSourceDto();
+    dto.setFileUuid(LARGE_FILE_UUID).setProjectUuid("PROJECT_UUID").setDataType(FileSourceDto.Type.SOURCE).setBinaryData(byteOutput.toByteArray());
+    dbTester.getDbClient().fileSourceDao().insert(dto);
+
+    Optional<DbFileSources.Line> line = underTest.getLine(dbTester.getSession(), LARGE_FILE_UUID, 502);
+
+    assertThat(line.get().getSource()).isEqualTo("SOURCE_502");
+    assertThat(blockCache.size()).isEqualTo(0);
+  }
+
   @Test
   public void getLine_absent_file() throws Exception {
     Optional<DbFileSources.Line> line = underTest.getLine(dbTester.getSession(), "FILE_DOES_NOT_EXIST", 10);
     assertThat(line.isPresent()).isFalse();
   }
+
+  private void insertLargeFile() throws IOException {
+    FileSourceDto dto = new FileSourceDto();
+    dto.setFileUuid(LARGE_FILE_UUID).setProjectUuid("PROJECT_UUID");
+    dto.setSourceData(FileSourceTesting.newFakeData(2 * SourceLineBlocks.LINES_PER_BLOCK + 3).build());
+    dbTester.getDbClient().fileSourceDao().insert(dto);
+  }
 }
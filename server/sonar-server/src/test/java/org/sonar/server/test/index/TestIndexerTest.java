@@ -38,6 +38,7 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 import org.sonar.server.test.db.TestTesting;
@@ -95,6 +96,20 @@ public class TestIndexerTest {
     assertThat(countDocuments()).isEqualTo(3);
   }
 
+  @Test
+  public void index_partitions() throws Exception {
+    db.prepareDbUnit(getClass(), "db.xml");
+    TestTesting.updateDataColumn(db.getSession(), "FILE_UUID", TestTesting.newRandomTests(3));
+
+    assertThat(underTest.selectPartitions()).containsOnly("PROJECT_UUID");
+
+    BulkIndexer bulk = new BulkIndexer(es.client(), INDEX);
+    bulk.start();
+    underTest.indexPartition("PROJECT_UUID", bulk);
+    bulk.stop();
+    assertThat(countDocuments()).isEqualTo(3);
+  }
+
   @Test
   public void index_nothing_from_unknown_project() throws Exception {
     db.prepareDbUnit(getClass(), "db.xml");
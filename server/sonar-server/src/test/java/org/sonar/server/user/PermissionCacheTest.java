@@ -0,0 +1,134 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.user;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.sonar.api.web.UserRole;
+import org.sonar.db.component.ResourceDao;
+import org.sonar.db.component.ResourceDto;
+import org.sonar.db.user.AuthorizationDao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PermissionCacheTest {
+
+  static final String LOGIN = "marius";
+  static final int USER_ID = 10;
+
+  AuthorizationDao authorizationDao = mock(AuthorizationDao.class);
+  ResourceDao resourceDao = mock(ResourceDao.class);
+
+  PermissionCache underTest = new PermissionCache(authorizationDao, resourceDao);
+
+  @Test
+  public void global_permissions_are_loaded_once() {
+    when(authorizationDao.selectGlobalPermissions(LOGIN)).thenReturn(Arrays.asList("admin"));
+
+    assertThat(underTest.selectGlobalPermissions(LOGIN)).containsOnly("admin");
+    assertThat(underTest.selectGlobalPermissions(LOGIN)).containsOnly("admin");
+
+    verify(authorizationDao, times(1)).selectGlobalPermissions(LOGIN);
+  }
+
+  @Test
+  public void global_permissions_of_anonymous() {
+    when(authorizationDao.selectGlobalPermissions(null)).thenReturn(Arrays.asList("scan"));
+
+    assertThat(underTest.selectGlobalPermissions(null)).containsOnly("scan");
+    assertThat(underTest.selectGlobalPermissions(null)).containsOnly("scan");
+
+    verify(authorizationDao, times(1)).selectGlobalPermissions(null);
+  }
+
+  @Test
+  public void project_permissions_are_cached_by_user_and_permission() {
+    when(authorizationDao.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER)).thenReturn(Arrays.asList("P1"));
+    when(authorizationDao.selectAuthorizedRootProjectsKeys(null, UserRole.USER)).thenReturn(Arrays.asList("P2"));
+    when(authorizationDao.selectAuthorizedRootProjectsUuids(USER_ID, UserRole.ADMIN)).thenReturn(Arrays.asList("U1"));
+
+    assertThat(underTest.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER)).containsOnly("P1");
+    assertThat(underTest.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER)).containsOnly("P1");
+    assertThat(underTest.selectAuthorizedRootProjectsKeys(null, UserRole.USER)).containsOnly("P2");
+    assertThat(underTest.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.ADMIN)).isEmpty();
+    assertThat(underTest.selectAuthorizedRootProjectsUuids(USER_ID, UserRole.ADMIN)).containsOnly("U1");
+    assertThat(underTest.selectAuthorizedRootProjectsUuids(USER_ID, UserRole.ADMIN)).containsOnly("U1");
+
+    verify(authorizationDao, times(1)).selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER);
+    verify(authorizationDao, times(1)).selectAuthorizedRootProjectsKeys(null, UserRole.USER);
+    verify(authorizationDao, times(1)).selectAuthorizedRootProjectsUuids(USER_ID, UserRole.ADMIN);
+  }
+
+  @Test
+  public void invalidate_drops_permissions() {
+    when(authorizationDao.selectGlobalPermissions(LOGIN)).thenReturn(Arrays.asList("admin"));
+    when(authorizationDao.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER)).thenReturn(Arrays.asList("P1"));
+
+    underTest.selectGlobalPermissions(LOGIN);
+    underTest.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER);
+    underTest.invalidate();
+    underTest.selectGlobalPermissions(LOGIN);
+    underTest.selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER);
+
+    verify(authorizationDao, times(2)).selectGlobalPermissions(LOGIN);
+    verify(authorizationDao, times(2)).selectAuthorizedRootProjectsKeys(USER_ID, UserRole.USER);
+  }
+
+  @Test
+  public void entries_expire() throws Exception {
+    underTest = new PermissionCache(authorizationDao, resourceDao, 1L);
+    when(authorizationDao.selectGlobalPermissions(LOGIN)).thenReturn(Arrays.asList("admin"));
+
+    underTest.selectGlobalPermissions(LOGIN);
+    Thread.sleep(10L);
+    underTest.selectGlobalPermissions(LOGIN);
+
+    verify(authorizationDao, times(2)).selectGlobalPermissions(LOGIN);
+  }
+
+  @Test
+  public void root_project_of_component() {
+    when(resourceDao.getRootProjectByComponentKey("FILE")).thenReturn(new ResourceDto().setKey("PROJECT"));
+    when(resourceDao.selectResource("FILE_UUID")).thenReturn(new ResourceDto().setProjectUuid("PROJECT_UUID"));
+
+    assertThat(underTest.selectRootProjectKey("FILE")).isEqualTo("PROJECT");
+    assertThat(underTest.selectRootProjectKey("FILE")).isEqualTo("PROJECT");
+    assertThat(underTest.selectProjectUuid("FILE_UUID")).isEqualTo("PROJECT_UUID");
+    assertThat(underTest.selectProjectUuid("FILE_UUID")).isEqualTo("PROJECT_UUID");
+
+    verify(resourceDao, times(1)).getRootProjectByComponentKey("FILE");
+    verify(resourceDao, times(1)).selectResource("FILE_UUID");
+  }
+
+  @Test
+  public void unknown_components_are_not_cached() {
+    assertThat(underTest.selectRootProjectKey("UNKNOWN")).isNull();
+    assertThat(underTest.selectRootProjectKey("UNKNOWN")).isNull();
+    assertThat(underTest.selectProjectUuid("UNKNOWN")).isNull();
+    assertThat(underTest.selectProjectUuid("UNKNOWN")).isNull();
+
+    verify(resourceDao, times(2)).getRootProjectByComponentKey("UNKNOWN");
+    verify(resourceDao, times(2)).selectResource("UNKNOWN");
+  }
+}
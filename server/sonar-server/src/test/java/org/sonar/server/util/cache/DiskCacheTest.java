@@ -25,6 +25,9 @@ import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
@@ -52,6 +55,43 @@ public class DiskCacheTest {
     }
   }
 
+  @Test
+  public void write_and_read_with_several_appenders() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    cache.newAppender().append("foo").close();
+    cache.newAppender().close();
+    cache.newAppender().append("bar").append("baz").close();
+
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
+  @Test
+  public void write_and_read_compressed() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, new SerializableCodec<String>(), true);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).isEmpty();
+    }
+
+    cache.newAppender().append("foo").append("bar").close();
+    cache.newAppender().close();
+    cache.newAppender().append("baz").close();
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
+  @Test
+  public void write_and_read_with_custom_codec() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, new UpperCaseCodec(), false);
+    cache.newAppender().append("foo").append("bar").close();
+
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("FOO", "BAR");
+    }
+  }
+
   @Test
   public void fail_if_file_is_not_writable() throws Exception {
     try {
@@ -77,4 +117,16 @@ public class DiskCacheTest {
       assertThat(e).hasMessage("expected error");
     }
   }
+
+  private static class UpperCaseCodec implements DiskCacheCodec<String> {
+    @Override
+    public void encode(String s, DataOutputStream output) throws IOException {
+      output.writeUTF(s.toUpperCase());
+    }
+
+    @Override
+    public String decode(DataInputStream input) throws IOException {
+      return input.readUTF();
+    }
+  }
 }
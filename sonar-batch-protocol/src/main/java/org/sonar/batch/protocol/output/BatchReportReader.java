@@ -19,154 +19,130 @@
  */
 package org.sonar.batch.protocol.output;
 
-import java.io.File;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.InputStream;
 import javax.annotation.CheckForNull;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.core.util.Protobuf;
 
+import static org.sonar.batch.protocol.output.FileStructure.entryFor;
 import static org.sonar.core.util.CloseableIterator.emptyCloseableIterator;
 
 public class BatchReportReader {
 
-  private final FileStructure fileStructure;
+  private final ReportContainer container;
 
-  public BatchReportReader(File dir) {
-    this.fileStructure = new FileStructure(dir);
+  public BatchReportReader(ReportContainer container) {
+    this.container = container;
   }
 
   public BatchReport.Metadata readMetadata() {
-    File file = fileStructure.metadataFile();
-    if (!fileExists(file)) {
-      throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
+    InputStream input = container.read(FileStructure.METADATA);
+    if (input == null) {
+      throw new IllegalStateException("Metadata is missing in analysis report: " + container.getFile());
     }
-    return Protobuf.read(file, BatchReport.Metadata.PARSER);
+    return Protobuf.read(input, BatchReport.Metadata.PARSER);
   }
 
   public CloseableIterator<BatchReport.ActiveRule> readActiveRules() {
-    File file = fileStructure.activeRules();
-    if (!fileExists(file)) {
-      return emptyCloseableIterator();
-    }
-    return Protobuf.readStream(file, BatchReport.ActiveRule.PARSER);
+    return readStream(FileStructure.ACTIVE_RULES, BatchReport.ActiveRule.PARSER);
   }
 
   public CloseableIterator<BatchReport.Measure> readComponentMeasures(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.Measure.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.MEASURES, componentRef), BatchReport.Measure.PARSER);
   }
 
   @CheckForNull
   public BatchReport.Changesets readChangesets(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.read(file, BatchReport.Changesets.PARSER);
+    InputStream input = container.read(entryFor(FileStructure.Domain.CHANGESETS, componentRef));
+    if (input != null) {
+      return Protobuf.read(input, BatchReport.Changesets.PARSER);
     }
     return null;
   }
 
   public BatchReport.Component readComponent(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
-    if (!fileExists(file)) {
-      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
+    InputStream input = container.read(entryFor(FileStructure.Domain.COMPONENT, componentRef));
+    if (input == null) {
+      throw new IllegalStateException("Unable to find report for component #" + componentRef + " in analysis report: " + container.getFile());
     }
-    return Protobuf.read(file, BatchReport.Component.PARSER);
+    return Protobuf.read(input, BatchReport.Component.PARSER);
   }
 
   public CloseableIterator<BatchReport.Issue> readComponentIssues(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.Issue.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.ISSUES, componentRef), BatchReport.Issue.PARSER);
   }
 
   public CloseableIterator<BatchReport.Duplication> readComponentDuplications(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.Duplication.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.DUPLICATIONS, componentRef), BatchReport.Duplication.PARSER);
   }
 
   public CloseableIterator<BatchReport.CpdTextBlock> readCpdTextBlocks(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.CpdTextBlock.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef), BatchReport.CpdTextBlock.parser());
   }
 
   public CloseableIterator<BatchReport.Symbol> readComponentSymbols(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.Symbol.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.SYMBOLS, componentRef), BatchReport.Symbol.PARSER);
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    return container.contains(entryFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef));
   }
 
   public CloseableIterator<BatchReport.SyntaxHighlighting> readComponentSyntaxHighlighting(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.SyntaxHighlighting.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef), BatchReport.SyntaxHighlighting.PARSER);
   }
 
   public boolean hasCoverage(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    return file.exists();
+    return container.contains(entryFor(FileStructure.Domain.COVERAGES, componentRef));
   }
 
   public CloseableIterator<BatchReport.Coverage> readComponentCoverage(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, BatchReport.Coverage.PARSER);
-    }
-    return emptyCloseableIterator();
+    return readStream(entryFor(FileStructure.Domain.COVERAGES, fileRef), BatchReport.Coverage.PARSER);
   }
 
+  /**
+   * Content of the analysis log, or null if it does not exist. The stream must be closed by caller.
+   */
   @CheckForNull
-  public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-    return null;
+  public InputStream readAnalysisLog() {
+    return container.read(FileStructure.ANALYSIS_LOG);
   }
 
+  /**
+   * Source of the file, or null if it does not exist. The stream must be closed by caller.
+   */
   @CheckForNull
-  public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-
-    return null;
+  public InputStream readFileSource(int fileRef) {
+    return container.read(entryFor(FileStructure.Domain.SOURCE, fileRef));
   }
 
+  /**
+   * Stream of delimited {@link BatchReport.Test}, or null if it does not exist. The stream must be closed by caller.
+   */
   @CheckForNull
-  public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
-    if (fileExists(file)) {
-      return file;
-    }
+  public InputStream readTests(int testFileRef) {
+    return container.read(entryFor(FileStructure.Domain.TESTS, testFileRef));
+  }
 
-    return null;
+  /**
+   * Stream of delimited {@link BatchReport.CoverageDetail}, or null if it does not exist. The stream must be closed by caller.
+   */
+  @CheckForNull
+  public InputStream readCoverageDetails(int testFileRef) {
+    return container.read(entryFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef));
   }
 
-  private static boolean fileExists(File file) {
-    return file.exists() && file.isFile();
+  public ReportContainer getContainer() {
+    return container;
   }
 
-  public FileStructure getFileStructure() {
-    return fileStructure;
+  private <M extends Message> CloseableIterator<M> readStream(String entry, Parser<M> parser) {
+    InputStream input = container.read(entry);
+    if (input == null) {
+      return emptyCloseableIterator();
+    }
+    return Protobuf.readStream(input, parser);
   }
 }
@@ -19,123 +19,180 @@
  */
 package org.sonar.batch.protocol.output;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import com.google.protobuf.Message;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.sonar.core.util.ContextException;
 import org.sonar.core.util.Protobuf;
 
+import static org.sonar.batch.protocol.output.FileStructure.entryFor;
+
+/**
+ * Writes the entries of the report into a {@link ReportContainer}. Data of different components can be written concurrently.
+ * <p/>
+ * Issues appended one by one are buffered per component and written as a single segment per component by
+ * {@link #flush()}, or earlier when the buffers exceed {@link #MAX_BUFFERED_ISSUES_BYTES}.
+ */
 public class BatchReportWriter {
 
-  private final FileStructure fileStructure;
+  static final int MAX_BUFFERED_ISSUES_BYTES = 8 * 1024 * 1024;
 
-  public BatchReportWriter(File dir) {
-    if (!dir.exists() && !dir.mkdirs()) {
-      throw new IllegalStateException("Unable to create directory: " + dir);
-    }
-    this.fileStructure = new FileStructure(dir);
+  private final ReportContainer container;
+  // serialized issues not written to the container yet, by component ref. Guarded by itself.
+  private final Map<Integer, ByteArrayOutputStream> bufferedIssues = new LinkedHashMap<>();
+  private int bufferedIssuesBytes = 0;
+
+  public BatchReportWriter(ReportContainer container) {
+    this.container = container;
   }
 
-  public FileStructure getFileStructure() {
-    return fileStructure;
+  public ReportContainer getContainer() {
+    return container;
   }
 
   public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
-    File file = fileStructure.fileFor(domain, componentRef);
-    return file.exists() && file.isFile();
+    if (domain == FileStructure.Domain.ISSUES) {
+      synchronized (bufferedIssues) {
+        if (bufferedIssues.containsKey(componentRef)) {
+          return true;
+        }
+      }
+    }
+    return container.contains(entryFor(domain, componentRef));
   }
 
   /**
    * Metadata is mandatory
    */
-  public File writeMetadata(BatchReport.Metadata metadata) {
-    Protobuf.write(metadata, fileStructure.metadataFile());
-    return fileStructure.metadataFile();
+  public void writeMetadata(BatchReport.Metadata metadata) {
+    write(FileStructure.METADATA, metadata);
   }
 
-  public File writeActiveRules(Iterable<BatchReport.ActiveRule> activeRules) {
-    Protobuf.writeStream(activeRules, fileStructure.activeRules(), false);
-    return fileStructure.metadataFile();
+  public void writeActiveRules(Iterable<BatchReport.ActiveRule> activeRules) {
+    writeStream(FileStructure.ACTIVE_RULES, activeRules);
   }
 
-  public File writeComponent(BatchReport.Component component) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, component.getRef());
-    Protobuf.write(component, file);
-    return file;
+  public void writeComponent(BatchReport.Component component) {
+    write(entryFor(FileStructure.Domain.COMPONENT, component.getRef()), component);
   }
 
-  public File writeComponentIssues(int componentRef, Iterable<BatchReport.Issue> issues) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    Protobuf.writeStream(issues, file, false);
-    return file;
+  /**
+   * Replaces the issues of the component, including the ones appended and not flushed yet
+   */
+  public void writeComponentIssues(int componentRef, Iterable<BatchReport.Issue> issues) {
+    synchronized (bufferedIssues) {
+      ByteArrayOutputStream buffer = bufferedIssues.remove(componentRef);
+      if (buffer != null) {
+        bufferedIssuesBytes -= buffer.size();
+      }
+      writeStream(entryFor(FileStructure.Domain.ISSUES, componentRef), issues);
+    }
   }
 
+  /**
+   * The issue is written to the report only on next call to {@link #flush()}
+   */
   public void appendComponentIssue(int componentRef, BatchReport.Issue issue) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
-      issue.writeDelimitedTo(out);
-    } catch (Exception e) {
-      throw ContextException.of("Unable to write issue", e).addContext("file", file);
+    synchronized (bufferedIssues) {
+      ByteArrayOutputStream buffer = bufferedIssues.get(componentRef);
+      if (buffer == null) {
+        buffer = new ByteArrayOutputStream();
+        bufferedIssues.put(componentRef, buffer);
+      }
+      int sizeBefore = buffer.size();
+      try {
+        issue.writeDelimitedTo(buffer);
+      } catch (IOException e) {
+        throw ContextException.of("Unable to write issue", e).addContext("entry", entryFor(FileStructure.Domain.ISSUES, componentRef));
+      }
+      bufferedIssuesBytes += buffer.size() - sizeBefore;
+      if (bufferedIssuesBytes > MAX_BUFFERED_ISSUES_BYTES) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Writes the issues appended since the last call, as a single segment per component. Must be called before
+   * reading these issues from the container, and before finishing it.
+   */
+  public void flush() {
+    synchronized (bufferedIssues) {
+      for (Map.Entry<Integer, ByteArrayOutputStream> buffer : bufferedIssues.entrySet()) {
+        container.append(entryFor(FileStructure.Domain.ISSUES, buffer.getKey()), buffer.getValue().toByteArray());
+      }
+      bufferedIssues.clear();
+      bufferedIssuesBytes = 0;
     }
   }
 
-  public File writeComponentMeasures(int componentRef, Iterable<BatchReport.Measure> measures) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    Protobuf.writeStream(measures, file, false);
-    return file;
+  public void writeComponentMeasures(int componentRef, Iterable<BatchReport.Measure> measures) {
+    writeStream(entryFor(FileStructure.Domain.MEASURES, componentRef), measures);
+  }
+
+  public void writeComponentChangesets(BatchReport.Changesets changesets) {
+    write(entryFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef()), changesets);
   }
 
-  public File writeComponentChangesets(BatchReport.Changesets changesets) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef());
-    Protobuf.write(changesets, file);
-    return file;
+  public void writeComponentDuplications(int componentRef, Iterable<BatchReport.Duplication> duplications) {
+    writeStream(entryFor(FileStructure.Domain.DUPLICATIONS, componentRef), duplications);
   }
 
-  public File writeComponentDuplications(int componentRef, Iterable<BatchReport.Duplication> duplications) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    Protobuf.writeStream(duplications, file, false);
-    return file;
+  public void writeCpdTextBlocks(int componentRef, Iterable<BatchReport.CpdTextBlock> blocks) {
+    writeStream(entryFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef), blocks);
   }
 
-  public File writeCpdTextBlocks(int componentRef, Iterable<BatchReport.CpdTextBlock> blocks) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
-    Protobuf.writeStream(blocks, file, false);
-    return file;
+  public void writeComponentSymbols(int componentRef, Iterable<BatchReport.Symbol> symbols) {
+    writeStream(entryFor(FileStructure.Domain.SYMBOLS, componentRef), symbols);
   }
 
-  public File writeComponentSymbols(int componentRef, Iterable<BatchReport.Symbol> symbols) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    Protobuf.writeStream(symbols, file, false);
-    return file;
+  public void writeComponentSyntaxHighlighting(int componentRef, Iterable<BatchReport.SyntaxHighlighting> syntaxHighlightingRules) {
+    writeStream(entryFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef), syntaxHighlightingRules);
   }
 
-  public File writeComponentSyntaxHighlighting(int componentRef, Iterable<BatchReport.SyntaxHighlighting> syntaxHighlightingRules) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    Protobuf.writeStream(syntaxHighlightingRules, file, false);
-    return file;
+  public void writeComponentCoverage(int componentRef, Iterable<BatchReport.Coverage> coverageList) {
+    writeStream(entryFor(FileStructure.Domain.COVERAGES, componentRef), coverageList);
   }
 
-  public File writeComponentCoverage(int componentRef, Iterable<BatchReport.Coverage> coverageList) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    Protobuf.writeStream(coverageList, file, false);
-    return file;
+  public void writeTests(int componentRef, Iterable<BatchReport.Test> tests) {
+    writeStream(entryFor(FileStructure.Domain.TESTS, componentRef), tests);
   }
 
-  public File writeTests(int componentRef, Iterable<BatchReport.Test> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, componentRef);
-    Protobuf.writeStream(tests, file, false);
-    return file;
+  public void writeCoverageDetails(int componentRef, Iterable<BatchReport.CoverageDetail> tests) {
+    writeStream(entryFor(FileStructure.Domain.COVERAGE_DETAILS, componentRef), tests);
   }
 
-  public File writeCoverageDetails(int componentRef, Iterable<BatchReport.CoverageDetail> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, componentRef);
-    Protobuf.writeStream(tests, file, false);
-    return file;
+  /**
+   * Stream to write the source of a file. Source is added to the report when the stream is closed.
+   */
+  public OutputStream writeSource(int componentRef) {
+    return container.newOutputStream(entryFor(FileStructure.Domain.SOURCE, componentRef), false);
   }
 
-  public File getSourceFile(int componentRef) {
-    return fileStructure.fileFor(FileStructure.Domain.SOURCE, componentRef);
+  /**
+   * Stream to append text to the analysis log. Text is added to the report when the stream is closed.
+   */
+  public OutputStream appendAnalysisLog() {
+    return container.newOutputStream(FileStructure.ANALYSIS_LOG, true);
+  }
+
+  private void write(String entry, Message message) {
+    try (OutputStream out = container.newOutputStream(entry, false)) {
+      message.writeTo(out);
+    } catch (Exception e) {
+      throw ContextException.of("Unable to write message", e).addContext("entry", entry);
+    }
+  }
+
+  private <M extends Message> void writeStream(String entry, Iterable<M> messages) {
+    try (OutputStream out = container.newOutputStream(entry, false)) {
+      Protobuf.writeStream(messages, out);
+    } catch (Exception e) {
+      throw ContextException.of("Unable to write messages", e).addContext("entry", entry);
+    }
   }
 
 }
@@ -19,13 +19,15 @@
  */
 package org.sonar.batch.protocol.output;
 
-import java.io.File;
-
 /**
- * Structure of files in the zipped report
+ * Names of the entries of the analysis report, see {@link ReportContainer}
  */
 public class FileStructure {
 
+  public static final String METADATA = "metadata.pb";
+  public static final String ANALYSIS_LOG = "analysis.log";
+  public static final String ACTIVE_RULES = "activerules.pb";
+
   public enum Domain {
     ISSUES("issues-", Domain.PB),
     COMPONENT("component-", Domain.PB),
@@ -50,29 +52,12 @@ public class FileStructure {
     }
   }
 
-  private final File dir;
-
-  public FileStructure(File dir) {
-    if (!dir.exists() || !dir.isDirectory()) {
-      throw new IllegalArgumentException("Directory of analysis report does not exist: " + dir);
-    }
-    this.dir = dir;
-  }
-
-  public File metadataFile() {
-    return new File(dir, "metadata.pb");
-  }
-
-  public File analysisLog() {
-    return new File(dir, "analysis.log");
-  }
-
-  public File activeRules() {
-    return new File(dir, "activerules.pb");
+  private FileStructure() {
+    // only static stuff
   }
 
-  public File fileFor(Domain domain, int componentRef) {
-    return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
+  public static String entryFor(Domain domain, int componentRef) {
+    return domain.filePrefix + componentRef + domain.fileSuffix;
   }
 
 }
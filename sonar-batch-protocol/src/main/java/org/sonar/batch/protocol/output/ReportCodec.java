@@ -0,0 +1,122 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+
+/**
+ * Compression of the analysis report during its upload. The scanner selects the first codec, in order
+ * of preference, which is supported by the server.
+ */
+public enum ReportCodec {
+
+  LZ4("lz4") {
+    @Override
+    public OutputStream encode(OutputStream output) {
+      return new LZ4BlockOutputStream(output, BLOCK_SIZE);
+    }
+
+    @Override
+    public InputStream decode(InputStream input) {
+      return new LZ4BlockInputStream(input);
+    }
+  },
+
+  GZIP("gzip") {
+    @Override
+    public OutputStream encode(OutputStream output) throws IOException {
+      return new GZIPOutputStream(output, BLOCK_SIZE);
+    }
+
+    @Override
+    public InputStream decode(InputStream input) throws IOException {
+      return new GZIPInputStream(input, BLOCK_SIZE);
+    }
+  },
+
+  NONE("none") {
+    @Override
+    public OutputStream encode(OutputStream output) {
+      return output;
+    }
+
+    @Override
+    public InputStream decode(InputStream input) {
+      return input;
+    }
+  };
+
+  private static final int BLOCK_SIZE = 1 << 16;
+
+  private final String key;
+
+  ReportCodec(String key) {
+    this.key = key;
+  }
+
+  public String key() {
+    return key;
+  }
+
+  public abstract OutputStream encode(OutputStream output) throws IOException;
+
+  public abstract InputStream decode(InputStream input) throws IOException;
+
+  @CheckForNull
+  public static ReportCodec fromKey(String key) {
+    for (ReportCodec codec : values()) {
+      if (codec.key.equals(key)) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  public static List<String> keys() {
+    List<String> keys = new ArrayList<>();
+    for (ReportCodec codec : values()) {
+      keys.add(codec.key);
+    }
+    return keys;
+  }
+
+  /**
+   * The preferred codec among the keys supported by the other side, {@link #NONE} if none is known
+   */
+  public static ReportCodec select(Iterable<String> supportedKeys) {
+    ReportCodec selected = NONE;
+    for (String supportedKey : supportedKeys) {
+      ReportCodec codec = fromKey(supportedKey);
+      if (codec != null && codec.ordinal() < selected.ordinal()) {
+        selected = codec;
+      }
+    }
+    return selected;
+  }
+}
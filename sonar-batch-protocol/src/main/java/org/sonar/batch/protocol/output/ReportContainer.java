@@ -0,0 +1,461 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+
+/**
+ * Single file containing all the entries of an analysis report. Entries are appended while the report is generated,
+ * instead of being written to one file per component and component data, and the file is read in place by the
+ * Compute Engine, without being extracted.
+ * <p/>
+ * Layout of the file:
+ * <pre>
+ *   header  : magic (int), version (int)
+ *   segment : entry name (UTF), replace flag (boolean), length (int), data (length bytes)
+ *   ...
+ *   index   : number of entries (int), then for each entry: name (UTF), number of segments (int), offset (long) and length (int) of each segment
+ *   trailer : offset of index (long), magic (int)
+ * </pre>
+ * An entry can be appended several times, its content is the concatenation of its segments since the last segment
+ * flagged as replacing the entry. Index and trailer are
+ * written by {@link #finish()}. Segments of a report which has not been finished are found by scanning the file.
+ * <p/>
+ * A container created by {@link #create(File)} can be read while being written. Entries can be appended concurrently.
+ * <p/>
+ * Note that the report is still uploaded to the server only once it is finished. Uploading segments while the report
+ * is being produced is not implemented.
+ */
+public class ReportContainer implements Closeable {
+
+  private static final int MAGIC = 0x53515243;
+  // distinct from the header magic, so that the end of a segment is less likely to be taken for a trailer
+  private static final int TRAILER_MAGIC = 0x53514958;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int TRAILER_SIZE = 12;
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private final Map<String, List<Segment>> index;
+  // whole file mapped in memory, only when opened in read-only mode. Dropped on close.
+  @CheckForNull
+  private volatile ByteBuffer mapped;
+  private boolean writable;
+  private long position;
+
+  private ReportContainer(File file, RandomAccessFile randomAccessFile, Map<String, List<Segment>> index, @CheckForNull ByteBuffer mapped,
+    boolean writable, long position) {
+    this.file = file;
+    this.randomAccessFile = randomAccessFile;
+    this.channel = randomAccessFile.getChannel();
+    this.index = index;
+    this.mapped = mapped;
+    this.writable = writable;
+    this.position = position;
+  }
+
+  /**
+   * Creates an empty container. Existing file is overwritten.
+   */
+  public static ReportContainer create(File file) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "rw");
+      raf.setLength(0L);
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+      return new ReportContainer(file, raf, new LinkedHashMap<String, List<Segment>>(), null, true, HEADER_SIZE);
+    } catch (IOException e) {
+      closeQuietly(raf);
+      throw new IllegalStateException("Unable to create analysis report: " + file, e);
+    }
+  }
+
+  /**
+   * Opens an existing container in read-only mode. File is mapped in memory when its size allows it.
+   */
+  public static ReportContainer open(File file) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(file, "r");
+      long size = raf.length();
+      if (size < HEADER_SIZE || raf.readInt() != MAGIC) {
+        throw new IllegalStateException("File is not an analysis report: " + file);
+      }
+      int version = raf.readInt();
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported version " + version + " of analysis report: " + file);
+      }
+      ByteBuffer mapped = size <= Integer.MAX_VALUE ? raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, size) : null;
+      Map<String, List<Segment>> index = readIndex(raf, size);
+      if (index == null) {
+        index = scan(raf, size);
+      }
+      return new ReportContainer(file, raf, index, mapped, false, size);
+    } catch (IOException e) {
+      closeQuietly(raf);
+      throw new IllegalStateException("Unable to open analysis report: " + file, e);
+    } catch (RuntimeException e) {
+      closeQuietly(raf);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns true if the file looks like an analysis report, whatever its version
+   */
+  public static boolean isContainer(File file) {
+    if (!file.isFile() || file.length() < HEADER_SIZE) {
+      return false;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return raf.readInt() == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Entries, in order of creation
+   */
+  public synchronized List<String> entries() {
+    return Collections.unmodifiableList(new ArrayList<>(index.keySet()));
+  }
+
+  public synchronized boolean contains(String entry) {
+    return index.containsKey(entry);
+  }
+
+  /**
+   * Number of segments making the current content of the entry, zero if the entry does not exist
+   */
+  synchronized int segmentCount(String entry) {
+    List<Segment> segments = index.get(entry);
+    return segments == null ? 0 : segments.size();
+  }
+
+  /**
+   * Content of the entry, or null if the entry does not exist. Segments appended after the call are not
+   * visible in the returned stream.
+   */
+  @CheckForNull
+  public InputStream read(String entry) {
+    List<Segment> segments;
+    synchronized (this) {
+      List<Segment> entrySegments = index.get(entry);
+      if (entrySegments == null) {
+        return null;
+      }
+      segments = new ArrayList<>(entrySegments);
+    }
+    return new SegmentsInputStream(segments);
+  }
+
+  /**
+   * Replaces the content of the entry, which is created if it does not exist yet
+   */
+  public void write(String entry, byte[] data) {
+    addSegment(entry, false, data, 0, data.length);
+  }
+
+  /**
+   * Appends data to the entry, which is created if it does not exist yet
+   */
+  public void append(String entry, byte[] data) {
+    addSegment(entry, true, data, 0, data.length);
+  }
+
+  /**
+   * Returns a stream whose content is added to the entry as a single segment when the stream is closed.
+   * Nothing is added if the stream is not closed.
+   *
+   * @param append if false, the content replaces existing content of the entry
+   */
+  public OutputStream newOutputStream(final String entry, final boolean append) {
+    checkWritable();
+    return new ByteArrayOutputStream() {
+      private boolean closed = false;
+
+      @Override
+      public void close() {
+        if (!closed) {
+          closed = true;
+          addSegment(entry, append, buf, 0, count);
+        }
+      }
+    };
+  }
+
+  private synchronized void addSegment(String entry, boolean append, byte[] data, int offset, int length) {
+    checkWritable();
+    try {
+      ByteArrayOutputStream header = new ByteArrayOutputStream(entry.length() + 7);
+      DataOutputStream headerOutput = new DataOutputStream(header);
+      headerOutput.writeUTF(entry);
+      headerOutput.writeBoolean(!append);
+      headerOutput.writeInt(length);
+      long dataPosition = position + header.size();
+      writeFully(ByteBuffer.wrap(header.toByteArray()), position);
+      writeFully(ByteBuffer.wrap(data, offset, length), dataPosition);
+      position = dataPosition + length;
+      addToIndex(index, entry, !append, new Segment(dataPosition, length));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write entry " + entry + " of analysis report: " + file, e);
+    }
+  }
+
+  /**
+   * Writes index of entries at the end of file. Container can not be modified anymore.
+   */
+  public synchronized void finish() {
+    checkWritable();
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      output.writeInt(index.size());
+      for (Map.Entry<String, List<Segment>> entry : index.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeInt(entry.getValue().size());
+        for (Segment segment : entry.getValue()) {
+          output.writeLong(segment.offset);
+          output.writeInt(segment.length);
+        }
+      }
+      output.writeLong(position);
+      output.writeInt(TRAILER_MAGIC);
+      writeFully(ByteBuffer.wrap(bytes.toByteArray()), position);
+      position += bytes.size();
+      channel.force(false);
+      writable = false;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write index of analysis report: " + file, e);
+    }
+  }
+
+  /**
+   * Closes the file. The memory mapping is dropped, so that it can be released as soon as the streams
+   * returned by {@link #read(String)} are not referenced anymore. It is not unmapped explicitly, as these streams
+   * may still be reading it.
+   */
+  @Override
+  public void close() {
+    mapped = null;
+    closeQuietly(randomAccessFile);
+  }
+
+  private void checkWritable() {
+    if (!writable) {
+      throw new IllegalStateException("Analysis report is read-only: " + file);
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer, long at) throws IOException {
+    long pos = at;
+    while (buffer.hasRemaining()) {
+      pos += channel.write(buffer, pos);
+    }
+  }
+
+  private ByteBuffer load(Segment segment) {
+    ByteBuffer map = mapped;
+    if (map != null) {
+      ByteBuffer buffer = map.duplicate();
+      buffer.position((int) segment.offset);
+      buffer.limit((int) segment.offset + segment.length);
+      return buffer.slice();
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(segment.length);
+    try {
+      long pos = segment.offset;
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, pos);
+        if (read < 0) {
+          throw new EOFException();
+        }
+        pos += read;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read analysis report: " + file, e);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  @CheckForNull
+  private static Map<String, List<Segment>> readIndex(RandomAccessFile raf, long size) throws IOException {
+    if (size < HEADER_SIZE + TRAILER_SIZE) {
+      return null;
+    }
+    raf.seek(size - TRAILER_SIZE);
+    long indexOffset = raf.readLong();
+    if (raf.readInt() != TRAILER_MAGIC || indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE) {
+      return null;
+    }
+    raf.seek(indexOffset);
+    int entries = raf.readInt();
+    Map<String, List<Segment>> index = new LinkedHashMap<>(entries * 2);
+    for (int i = 0; i < entries; i++) {
+      String name = raf.readUTF();
+      int count = raf.readInt();
+      List<Segment> segments = new ArrayList<>(count);
+      for (int j = 0; j < count; j++) {
+        segments.add(new Segment(raf.readLong(), raf.readInt()));
+      }
+      index.put(name, segments);
+    }
+    return index;
+  }
+
+  /**
+   * Rebuilds the index of a report that has not been finished. A truncated last segment is ignored.
+   */
+  private static Map<String, List<Segment>> scan(RandomAccessFile raf, long size) throws IOException {
+    Map<String, List<Segment>> index = new LinkedHashMap<>();
+    long pos = HEADER_SIZE;
+    raf.seek(pos);
+    try {
+      while (pos < size) {
+        String name = raf.readUTF();
+        boolean replace = raf.readBoolean();
+        int length = raf.readInt();
+        long dataOffset = raf.getFilePointer();
+        if (length < 0 || dataOffset + length > size) {
+          break;
+        }
+        addToIndex(index, name, replace, new Segment(dataOffset, length));
+        pos = dataOffset + length;
+        raf.seek(pos);
+      }
+    } catch (EOFException e) {
+      // truncated segment
+    }
+    return index;
+  }
+
+  private static void addToIndex(Map<String, List<Segment>> index, String entry, boolean replace, Segment segment) {
+    List<Segment> segments = index.get(entry);
+    if (segments == null) {
+      segments = new ArrayList<>(1);
+      index.put(entry, segments);
+    } else if (replace) {
+      segments.clear();
+    }
+    segments.add(segment);
+  }
+
+  private static void closeQuietly(@CheckForNull Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static class Segment {
+    private final long offset;
+    private final int length;
+
+    Segment(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Concatenation of segments, which are loaded one at a time
+   */
+  private class SegmentsInputStream extends InputStream {
+    private final List<Segment> segments;
+    private int nextSegment = 0;
+    private ByteBuffer current = ByteBuffer.allocate(0);
+
+    SegmentsInputStream(List<Segment> segments) {
+      this.segments = segments;
+    }
+
+    private boolean ensureData() {
+      while (!current.hasRemaining()) {
+        if (nextSegment >= segments.size()) {
+          return false;
+        }
+        current = load(segments.get(nextSegment));
+        nextSegment++;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() {
+      if (!ensureData()) {
+        return -1;
+      }
+      return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureData()) {
+        return -1;
+      }
+      int count = Math.min(len, current.remaining());
+      current.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return current.remaining();
+    }
+
+    @Override
+    public void close() {
+      nextSegment = segments.size();
+      current = ByteBuffer.allocate(0);
+    }
+  }
+}
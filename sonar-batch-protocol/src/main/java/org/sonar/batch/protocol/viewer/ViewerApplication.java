@@ -25,12 +25,12 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
-import java.util.Scanner;
 import javax.swing.JEditorPane;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -47,11 +47,12 @@ import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeSelectionModel;
+import org.apache.commons.io.IOUtils;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReport.Component;
 import org.sonar.batch.protocol.output.BatchReport.Metadata;
 import org.sonar.batch.protocol.output.BatchReportReader;
-import org.sonar.batch.protocol.output.FileStructure.Domain;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.core.util.CloseableIterator;
 
 public class ViewerApplication {
@@ -107,8 +108,8 @@ public class ViewerApplication {
 
   private void loadReport() {
     final JFileChooser fc = new JFileChooser();
-    fc.setDialogTitle("Choose scanner report directory");
-    fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+    fc.setDialogTitle("Choose scanner report file");
+    fc.setFileSelectionMode(JFileChooser.FILES_ONLY);
     fc.setFileHidingEnabled(false);
     fc.setApproveButtonText("Open scanner report");
     int returnVal = fc.showOpenDialog(frame);
@@ -132,7 +133,7 @@ public class ViewerApplication {
   }
 
   private void loadReport(File file) {
-    reader = new BatchReportReader(file);
+    reader = new BatchReportReader(ReportContainer.open(file));
     metadata = reader.readMetadata();
     updateTitle();
     loadComponents();
@@ -218,18 +219,18 @@ public class ViewerApplication {
   }
 
   private void updateSource(Component component) {
-    File sourceFile = reader.getFileStructure().fileFor(Domain.SOURCE, component.getRef());
     sourceEditor.setText("");
 
-    if (sourceFile.exists()) {
-      try (Scanner s = new Scanner(sourceFile, StandardCharsets.UTF_8.name()).useDelimiter("\\Z")) {
-        if (s.hasNext()) {
-          sourceEditor.setText(s.next());
-        }
+    InputStream source = reader.readFileSource(component.getRef());
+    if (source != null) {
+      try {
+        sourceEditor.setText(IOUtils.toString(source, StandardCharsets.UTF_8.name()));
       } catch (IOException ex) {
         StringWriter errors = new StringWriter();
         ex.printStackTrace(new PrintWriter(errors));
         sourceEditor.setText(errors.toString());
+      } finally {
+        IOUtils.closeQuietly(source);
       }
     }
   }
@@ -19,12 +19,10 @@
  */
 package org.sonar.batch.protocol.output;
 
-import com.google.common.collect.Lists;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
-import org.apache.commons.io.FileUtils;
+import java.io.OutputStream;
 import org.apache.commons.io.IOUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -43,19 +41,24 @@ public class BatchReportReaderTest {
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
-  File dir;
+  ReportContainer container;
 
   BatchReportReader underTest;
 
   @Before
   public void setUp() throws Exception {
-    dir = temp.newFolder();
-    underTest = new BatchReportReader(dir);
+    container = ReportContainer.create(temp.newFile());
+    underTest = new BatchReportReader(container);
+  }
+
+  @After
+  public void tearDown() {
+    container.close();
   }
 
   @Test
   public void read_metadata() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     BatchReport.Metadata.Builder metadata = BatchReport.Metadata.newBuilder()
       .setAnalysisDate(15000000L)
       .setProjectKey("PROJECT_A")
@@ -77,7 +80,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_components() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     BatchReport.Component.Builder component = BatchReport.Component.newBuilder()
       .setRef(1)
       .setPath("src/main/java/Foo.java");
@@ -93,7 +96,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_issues() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     BatchReport.Issue issue = BatchReport.Issue.newBuilder()
       .setLine(50)
       .build();
@@ -110,7 +113,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_measures() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     BatchReport.Measure.Builder measure = BatchReport.Measure.newBuilder()
       .setStringValue("value_a");
     writer.writeComponentMeasures(1, asList(measure.build()));
@@ -125,7 +128,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_changesets() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     BatchReport.Changesets.Builder scm = BatchReport.Changesets.newBuilder()
       .setComponentRef(1)
       .addChangeset(BatchReport.Changesets.Changeset.newBuilder().setDate(123_456_789).setAuthor("jack.daniels").setRevision("123-456-789"));
@@ -142,7 +145,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_duplications() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1).build());
     writer.writeComponent(BatchReport.Component.newBuilder()
@@ -163,7 +166,7 @@ public class BatchReportReaderTest {
       .build();
     writer.writeComponentDuplications(1, asList(duplication));
 
-    BatchReportReader sut = new BatchReportReader(dir);
+    BatchReportReader sut = new BatchReportReader(container);
     assertThat(sut.readComponentDuplications(1)).hasSize(1);
   }
 
@@ -174,7 +177,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_duplication_blocks() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1).build());
     writer.writeComponent(BatchReport.Component.newBuilder()
@@ -189,7 +192,7 @@ public class BatchReportReaderTest {
       .build();
     writer.writeCpdTextBlocks(1, singletonList(duplicationBlock));
 
-    BatchReportReader sut = new BatchReportReader(dir);
+    BatchReportReader sut = new BatchReportReader(container);
     assertThat(sut.readCpdTextBlocks(1)).hasSize(1);
   }
 
@@ -200,7 +203,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_syntax_highlighting() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1)
       .build());
@@ -232,7 +235,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_symbols() {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1)
       .build());
@@ -254,7 +257,7 @@ public class BatchReportReaderTest {
         .build())
       .build()));
 
-    underTest = new BatchReportReader(dir);
+    underTest = new BatchReportReader(container);
     assertThat(underTest.readComponentSymbols(1)).hasSize(1);
   }
 
@@ -265,7 +268,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_coverage() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
       .setRootComponentRef(1)
       .build());
@@ -292,8 +295,8 @@ public class BatchReportReaderTest {
         .setOverallCoveredConditions(5)
         .build()));
 
-    underTest = new BatchReportReader(dir);
-    try (CloseableIterator<BatchReport.Coverage> it = new BatchReportReader(dir).readComponentCoverage(1)) {
+    underTest = new BatchReportReader(container);
+    try (CloseableIterator<BatchReport.Coverage> it = new BatchReportReader(container).readComponentCoverage(1)) {
       BatchReport.Coverage coverage = it.next();
       assertThat(coverage.getLine()).isEqualTo(1);
       assertThat(coverage.getConditions()).isEqualTo(1);
@@ -310,19 +313,9 @@ public class BatchReportReaderTest {
     assertThat(underTest.readComponentCoverage(UNKNOWN_COMPONENT_REF)).isEmpty();
   }
 
-  @Test
-  public void read_source_lines() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
-    File file = writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 1);
-    FileUtils.writeLines(file, Lists.newArrayList("line1", "line2"));
-
-    File sourceFile = new BatchReportReader(dir).readFileSource(1);
-    assertThat(sourceFile).isEqualTo(file);
-  }
-
   @Test
   public void read_tests() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeTests(1, asList(
       BatchReport.Test.newBuilder()
         .setDurationInMs(60_000)
@@ -331,7 +324,7 @@ public class BatchReportReaderTest {
         .setStatus(Constants.TestStatus.OK)
         .build()));
 
-    try (InputStream inputStream = FileUtils.openInputStream(underTest.readTests(1))) {
+    try (InputStream inputStream = underTest.readTests(1)) {
       BatchReport.Test testResult = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       assertThat(testResult.getDurationInMs()).isEqualTo(60_000);
       assertThat(testResult.getStacktrace()).isEqualTo("stacktrace");
@@ -347,7 +340,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_coverage_details() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
+    BatchReportWriter writer = new BatchReportWriter(container);
     writer.writeCoverageDetails(1, asList(
       BatchReport.CoverageDetail.newBuilder()
         .setTestName("test-name")
@@ -356,7 +349,7 @@ public class BatchReportReaderTest {
           .setFileRef(2))
         .build()));
 
-    try (InputStream inputStream = FileUtils.openInputStream(underTest.readCoverageDetails(1))) {
+    try (InputStream inputStream = underTest.readCoverageDetails(1)) {
       BatchReport.CoverageDetail coverageDetail = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverageDetail.getTestName()).isEqualTo("test-name");
       assertThat(coverageDetail.getCoveredFile(0).getFileRef()).isEqualTo(2);
@@ -371,12 +364,12 @@ public class BatchReportReaderTest {
 
   @Test
   public void read_file_source() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(dir);
-    try (FileOutputStream outputStream = new FileOutputStream(writer.getSourceFile(1))) {
+    BatchReportWriter writer = new BatchReportWriter(container);
+    try (OutputStream outputStream = writer.writeSource(1)) {
       IOUtils.write("line1\nline2", outputStream);
     }
 
-    try (InputStream inputStream = FileUtils.openInputStream(underTest.readFileSource(1))) {
+    try (InputStream inputStream = underTest.readFileSource(1)) {
       assertThat(IOUtils.readLines(inputStream)).containsOnly("line1", "line2");
     }
   }
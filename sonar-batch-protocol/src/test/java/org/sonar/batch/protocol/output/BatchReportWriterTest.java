@@ -20,8 +20,11 @@
 package org.sonar.batch.protocol.output;
 
 import com.google.common.collect.Iterators;
-import java.io.File;
-import org.apache.commons.io.FileUtils;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,21 +40,18 @@ public class BatchReportWriterTest {
 
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
-  File dir;
+  ReportContainer container;
   BatchReportWriter underTest;
 
   @Before
   public void setUp() throws Exception {
-    dir = temp.newFolder();
-    underTest = new BatchReportWriter(dir);
+    container = ReportContainer.create(temp.newFile());
+    underTest = new BatchReportWriter(container);
   }
 
-  @Test
-  public void create_dir_if_does_not_exist() {
-    FileUtils.deleteQuietly(dir);
-    underTest = new BatchReportWriter(dir);
-
-    assertThat(dir).isDirectory().exists();
+  @After
+  public void tearDown() {
+    container.close();
   }
 
   @Test
@@ -62,7 +62,7 @@ public class BatchReportWriterTest {
       .setRootComponentRef(1);
     underTest.writeMetadata(metadata.build());
 
-    BatchReport.Metadata read = Protobuf.read(underTest.getFileStructure().metadataFile(), BatchReport.Metadata.PARSER);
+    BatchReport.Metadata read = Protobuf.read(container.read(FileStructure.METADATA), BatchReport.Metadata.PARSER);
     assertThat(read.getAnalysisDate()).isEqualTo(15000000L);
     assertThat(read.getProjectKey()).isEqualTo("PROJECT_A");
     assertThat(read.getRootComponentRef()).isEqualTo(1);
@@ -85,8 +85,7 @@ public class BatchReportWriterTest {
     underTest.writeComponent(component.build());
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.COMPONENT, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.COMPONENT, 1));
     BatchReport.Component read = Protobuf.read(file, BatchReport.Component.PARSER);
     assertThat(read.getRef()).isEqualTo(1);
     assertThat(read.getChildRefList()).containsOnly(5, 42);
@@ -108,13 +107,98 @@ public class BatchReportWriterTest {
     underTest.writeComponentIssues(1, asList(issue));
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.ISSUES, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.ISSUES, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.ISSUES, 1));
     try (CloseableIterator<BatchReport.Issue> read = Protobuf.readStream(file, BatchReport.Issue.PARSER)) {
       assertThat(Iterators.size(read)).isEqualTo(1);
     }
   }
 
+  @Test
+  public void append_issues() {
+    BatchReport.Issue issue = BatchReport.Issue.newBuilder()
+      .setLine(50)
+      .setMsg("the message")
+      .build();
+
+    underTest.appendComponentIssue(1, issue);
+    underTest.appendComponentIssue(1, issue);
+    underTest.appendComponentIssue(2, issue);
+
+    // issues are buffered until flushed
+    assertThat(underTest.hasComponentData(FileStructure.Domain.ISSUES, 1)).isTrue();
+    assertThat(container.contains(FileStructure.entryFor(FileStructure.Domain.ISSUES, 1))).isFalse();
+
+    underTest.flush();
+    underTest.appendComponentIssue(1, issue);
+    underTest.flush();
+
+    // one segment per component and per flush
+    assertThat(container.segmentCount(FileStructure.entryFor(FileStructure.Domain.ISSUES, 1))).isEqualTo(2);
+    assertThat(container.segmentCount(FileStructure.entryFor(FileStructure.Domain.ISSUES, 2))).isEqualTo(1);
+    try (CloseableIterator<BatchReport.Issue> read = Protobuf.readStream(container.read(FileStructure.entryFor(FileStructure.Domain.ISSUES, 1)), BatchReport.Issue.PARSER)) {
+      assertThat(Iterators.size(read)).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void write_issues_replaces_issues_appended_and_not_flushed_yet() {
+    BatchReport.Issue issue = BatchReport.Issue.newBuilder()
+      .setLine(50)
+      .setMsg("the message")
+      .build();
+    underTest.appendComponentIssue(1, issue);
+
+    underTest.writeComponentIssues(1, asList(issue));
+    underTest.flush();
+
+    try (CloseableIterator<BatchReport.Issue> read = Protobuf.readStream(container.read(FileStructure.entryFor(FileStructure.Domain.ISSUES, 1)), BatchReport.Issue.PARSER)) {
+      assertThat(Iterators.size(read)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void issues_are_flushed_when_buffers_are_full() {
+    BatchReport.Issue issue = BatchReport.Issue.newBuilder()
+      .setMsg(new String(new char[1024 * 1024]).replace('\0', 'a'))
+      .build();
+
+    for (int i = 0; i < 9; i++) {
+      underTest.appendComponentIssue(i, issue);
+    }
+
+    assertThat(container.contains(FileStructure.entryFor(FileStructure.Domain.ISSUES, 0))).isTrue();
+  }
+
+  @Test
+  public void write_replaces_existing_data() {
+    BatchReport.Measure measure = BatchReport.Measure.newBuilder()
+      .setStringValue("text-value")
+      .build();
+
+    underTest.writeComponentMeasures(1, asList(measure, measure));
+    underTest.writeComponentMeasures(1, asList(measure));
+
+    try (CloseableIterator<BatchReport.Measure> read = Protobuf.readStream(container.read(FileStructure.entryFor(FileStructure.Domain.MEASURES, 1)), BatchReport.Measure.PARSER)) {
+      assertThat(Iterators.size(read)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void write_source_and_analysis_log() throws Exception {
+    try (OutputStream out = underTest.writeSource(1)) {
+      out.write("line1\nline2".getBytes(StandardCharsets.UTF_8));
+    }
+    try (OutputStream out = underTest.appendAnalysisLog()) {
+      out.write("foo\n".getBytes(StandardCharsets.UTF_8));
+    }
+    try (OutputStream out = underTest.appendAnalysisLog()) {
+      out.write("bar\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertThat(IOUtils.toString(container.read(FileStructure.entryFor(FileStructure.Domain.SOURCE, 1)), StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+    assertThat(IOUtils.toString(container.read(FileStructure.ANALYSIS_LOG), StandardCharsets.UTF_8)).isEqualTo("foo\nbar\n");
+  }
+
   @Test
   public void write_measures() {
     assertThat(underTest.hasComponentData(FileStructure.Domain.MEASURES, 1)).isFalse();
@@ -128,8 +212,7 @@ public class BatchReportWriterTest {
     underTest.writeComponentMeasures(1, asList(measure));
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.MEASURES, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.MEASURES, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.MEASURES, 1));
     try (CloseableIterator<BatchReport.Measure> read = Protobuf.readStream(file, BatchReport.Measure.PARSER)) {
       assertThat(Iterators.size(read)).isEqualTo(1);
     }
@@ -151,8 +234,7 @@ public class BatchReportWriterTest {
     underTest.writeComponentChangesets(scm);
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.CHANGESETS, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.CHANGESETS, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.CHANGESETS, 1));
     BatchReport.Changesets read = Protobuf.read(file, BatchReport.Changesets.PARSER);
     assertThat(read.getComponentRef()).isEqualTo(1);
     assertThat(read.getChangesetCount()).isEqualTo(1);
@@ -180,8 +262,7 @@ public class BatchReportWriterTest {
     underTest.writeComponentDuplications(1, asList(duplication));
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.DUPLICATIONS, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.DUPLICATIONS, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.DUPLICATIONS, 1));
     try (CloseableIterator<BatchReport.Duplication> duplications = Protobuf.readStream(file, BatchReport.Duplication.PARSER)) {
       BatchReport.Duplication dup = duplications.next();
       assertThat(dup.getOriginPosition()).isNotNull();
@@ -203,8 +284,7 @@ public class BatchReportWriterTest {
     underTest.writeCpdTextBlocks(1, asList(duplicationBlock));
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.CPD_TEXT_BLOCKS, 1)).isTrue();
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.CPD_TEXT_BLOCKS, 1));
     try (CloseableIterator<BatchReport.CpdTextBlock> duplicationBlocks = Protobuf.readStream(file, BatchReport.CpdTextBlock.parser())) {
       BatchReport.CpdTextBlock duplicationBlockResult = duplicationBlocks.next();
       assertThat(duplicationBlockResult.getHash()).isEqualTo("abcdefghijklmnop");
@@ -240,8 +320,7 @@ public class BatchReportWriterTest {
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.SYMBOLS, 1)).isTrue();
 
-    File file = underTest.getFileStructure().fileFor(FileStructure.Domain.SYMBOLS, 1);
-    assertThat(file).exists().isFile();
+    InputStream file = container.read(FileStructure.entryFor(FileStructure.Domain.SYMBOLS, 1));
     try (CloseableIterator<BatchReport.Symbol> read = Protobuf.readStream(file, BatchReport.Symbol.PARSER)) {
       assertThat(read).hasSize(1);
     }
@@ -19,56 +19,17 @@
  */
 package org.sonar.batch.protocol.output;
 
-import org.apache.commons.io.FileUtils;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.TemporaryFolder;
-
-import java.io.File;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.Assert.fail;
 
 public class FileStructureTest {
 
-  @Rule
-  public TemporaryFolder temp = new TemporaryFolder();
-
-  @Test
-  public void fail_if_dir_does_not_exist() throws Exception {
-    File dir = temp.newFolder();
-    FileUtils.deleteQuietly(dir);
-    try {
-      new FileStructure(dir);
-      fail();
-    } catch (IllegalArgumentException e) {
-      assertThat(e).hasMessageContaining("Directory of analysis report does not exist");
-    }
-  }
-
   @Test
-  public void fail_if_invalid_dir() throws Exception {
-    // not a dir but a file
-    File dir = temp.newFile();
-    try {
-      new FileStructure(dir);
-      fail();
-    } catch (IllegalArgumentException e) {
-      assertThat(e).hasMessageContaining("Directory of analysis report does not exist");
-    }
-  }
-
-  @Test
-  public void locate_files() throws Exception {
-    File dir = temp.newFolder();
-    FileUtils.write(new File(dir, "metadata.pb"), "metadata content");
-    FileUtils.write(new File(dir, "issues-3.pb"), "issues of component 3");
-    FileUtils.write(new File(dir, "component-42.pb"), "details of component 42");
-
-    FileStructure structure = new FileStructure(dir);
-    assertThat(structure.metadataFile()).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.COMPONENT, 42)).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 3)).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 42)).doesNotExist();
+  public void entry_names() {
+    assertThat(FileStructure.METADATA).isEqualTo("metadata.pb");
+    assertThat(FileStructure.entryFor(FileStructure.Domain.COMPONENT, 42)).isEqualTo("component-42.pb");
+    assertThat(FileStructure.entryFor(FileStructure.Domain.ISSUES, 3)).isEqualTo("issues-3.pb");
+    assertThat(FileStructure.entryFor(FileStructure.Domain.SOURCE, 3)).isEqualTo("source-3.txt");
   }
 }
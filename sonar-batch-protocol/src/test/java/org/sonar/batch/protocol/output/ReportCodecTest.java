@@ -0,0 +1,70 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportCodecTest {
+
+  @Test
+  public void encode_and_decode() throws Exception {
+    byte[] data = new byte[200_000];
+    new Random(1L).nextBytes(data);
+    Arrays.fill(data, 0, 100_000, (byte) 'a');
+
+    for (ReportCodec codec : ReportCodec.values()) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (OutputStream output = codec.encode(bytes)) {
+        output.write(data);
+      }
+      if (codec != ReportCodec.NONE) {
+        assertThat(bytes.size()).isLessThan(data.length);
+      }
+      try (InputStream input = codec.decode(new ByteArrayInputStream(bytes.toByteArray()))) {
+        assertThat(IOUtils.toByteArray(input)).isEqualTo(data);
+      }
+    }
+  }
+
+  @Test
+  public void keys() {
+    assertThat(ReportCodec.keys()).containsExactly("lz4", "gzip", "none");
+    assertThat(ReportCodec.fromKey("gzip")).isEqualTo(ReportCodec.GZIP);
+    assertThat(ReportCodec.fromKey("zstd")).isNull();
+  }
+
+  @Test
+  public void select_preferred_codec_supported_by_both_sides() {
+    assertThat(ReportCodec.select(Arrays.asList("none", "gzip", "lz4"))).isEqualTo(ReportCodec.LZ4);
+    assertThat(ReportCodec.select(Arrays.asList("zstd", "gzip"))).isEqualTo(ReportCodec.GZIP);
+    assertThat(ReportCodec.select(Arrays.asList("zstd"))).isEqualTo(ReportCodec.NONE);
+    assertThat(ReportCodec.select(Collections.<String>emptyList())).isEqualTo(ReportCodec.NONE);
+  }
+}
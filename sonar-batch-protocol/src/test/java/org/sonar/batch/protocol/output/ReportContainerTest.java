@@ -0,0 +1,265 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportContainerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void write_and_read_entries() throws Exception {
+    File file = temp.newFile();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.write("foo", bytes("foo"));
+      container.write("empty", new byte[0]);
+
+      assertThat(container.contains("foo")).isTrue();
+      assertThat(container.contains("empty")).isTrue();
+      assertThat(container.contains("bar")).isFalse();
+      assertThat(read(container, "foo")).isEqualTo("foo");
+      assertThat(read(container, "empty")).isEmpty();
+      assertThat(container.read("bar")).isNull();
+      assertThat(container.entries()).containsExactly("foo", "empty");
+    }
+  }
+
+  @Test
+  public void append_and_replace_segments() throws Exception {
+    try (ReportContainer container = ReportContainer.create(temp.newFile())) {
+      container.append("log", bytes("a"));
+      container.append("log", bytes("b"));
+      container.write("replaced", bytes("old"));
+      container.write("replaced", bytes("new"));
+      try (OutputStream out = container.newOutputStream("log", true)) {
+        out.write(bytes("c"));
+      }
+
+      assertThat(read(container, "log")).isEqualTo("abc");
+      assertThat(read(container, "replaced")).isEqualTo("new");
+    }
+  }
+
+  @Test
+  public void stream_is_a_snapshot_of_existing_segments() throws Exception {
+    try (ReportContainer container = ReportContainer.create(temp.newFile())) {
+      container.append("log", bytes("a"));
+      InputStream input = container.read("log");
+      container.append("log", bytes("b"));
+
+      assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("a");
+    }
+  }
+
+  @Test
+  public void open_finished_container() throws Exception {
+    File file = temp.newFile();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.append("log", bytes("a"));
+      container.write("foo", bytes("foo"));
+      container.write("foo", bytes("bar"));
+      container.append("log", bytes("b"));
+      container.finish();
+    }
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      assertThat(container.entries()).containsExactly("log", "foo");
+      assertThat(read(container, "log")).isEqualTo("ab");
+      assertThat(read(container, "foo")).isEqualTo("bar");
+    }
+  }
+
+  @Test
+  public void open_container_which_has_not_been_finished() throws Exception {
+    File file = temp.newFile();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.append("log", bytes("a"));
+      container.write("foo", bytes("foo"));
+      container.write("foo", bytes("bar"));
+      container.append("log", bytes("b"));
+    }
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      assertThat(container.entries()).containsExactly("log", "foo");
+      assertThat(read(container, "log")).isEqualTo("ab");
+      assertThat(read(container, "foo")).isEqualTo("bar");
+    }
+  }
+
+  @Test
+  public void segment_ending_like_header_is_not_taken_for_trailer() throws Exception {
+    File file = temp.newFile();
+    // offset of the first segment, followed by the header magic
+    byte[] data = ByteBuffer.allocate(12).putLong(8L).putInt(0x53515243).array();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.write("foo", bytes("foo"));
+      container.write("bar", data);
+    }
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      assertThat(container.entries()).containsExactly("foo", "bar");
+      assertThat(IOUtils.toByteArray(container.read("bar"))).isEqualTo(data);
+    }
+  }
+
+  @Test
+  public void can_not_read_closed_container() throws Exception {
+    File file = temp.newFile();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.write("foo", bytes("foo"));
+      container.finish();
+    }
+
+    ReportContainer container = ReportContainer.open(file);
+    InputStream input = container.read("foo");
+    container.close();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to read analysis report");
+    input.read();
+  }
+
+  @Test
+  public void ignore_truncated_segment() throws Exception {
+    File file = temp.newFile();
+    try (ReportContainer container = ReportContainer.create(file)) {
+      container.write("foo", bytes("foo"));
+      container.write("bar", bytes("bar"));
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 1);
+    }
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      assertThat(container.entries()).containsExactly("foo");
+    }
+  }
+
+  @Test
+  public void can_not_modify_finished_container() throws Exception {
+    try (ReportContainer container = ReportContainer.create(temp.newFile())) {
+      container.finish();
+
+      thrown.expect(IllegalStateException.class);
+      thrown.expectMessage("Analysis report is read-only");
+      container.write("foo", bytes("foo"));
+    }
+  }
+
+  @Test
+  public void can_not_modify_opened_container() throws Exception {
+    File file = temp.newFile();
+    ReportContainer.create(file).close();
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      thrown.expect(IllegalStateException.class);
+      container.append("foo", bytes("foo"));
+    }
+  }
+
+  @Test
+  public void fail_to_open_file_which_is_not_a_container() throws Exception {
+    File file = temp.newFile();
+    FileUtils.write(file, "not a report");
+
+    assertThat(ReportContainer.isContainer(file)).isFalse();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("File is not an analysis report");
+    ReportContainer.open(file);
+  }
+
+  @Test
+  public void is_container() throws Exception {
+    File file = temp.newFile();
+    ReportContainer.create(file).close();
+
+    assertThat(ReportContainer.isContainer(file)).isTrue();
+    assertThat(ReportContainer.isContainer(temp.newFolder())).isFalse();
+  }
+
+  @Test
+  public void write_entries_concurrently() throws Exception {
+    File file = temp.newFile();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (final ReportContainer container = ReportContainer.create(file)) {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        final String entry = "entry-" + i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 10; j++) {
+              container.append(entry, bytes(String.valueOf(j)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      container.finish();
+    } finally {
+      executor.shutdown();
+    }
+
+    try (ReportContainer container = ReportContainer.open(file)) {
+      assertThat(container.entries()).hasSize(100);
+      for (int i = 0; i < 100; i++) {
+        assertThat(read(container, "entry-" + i)).isEqualTo("0123456789");
+      }
+    }
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String read(ReportContainer container, String entry) throws IOException {
+    try (InputStream input = container.read(entry)) {
+      return IOUtils.toString(input, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -46,6 +46,7 @@ import org.sonar.api.utils.dag.DirectAcyclicGraph;
 import org.sonar.batch.postjob.PostJobOptimizer;
 import org.sonar.batch.postjob.PostJobWrapper;
 import org.sonar.batch.sensor.DefaultSensorContext;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.batch.sensor.SensorOptimizer;
 import org.sonar.batch.sensor.SensorWrapper;
 import org.sonar.core.platform.ComponentContainer;
@@ -60,14 +61,16 @@ public class BatchExtensionDictionnary {
   private final SensorOptimizer sensorOptimizer;
   private final PostJobContext postJobContext;
   private final PostJobOptimizer postJobOptimizer;
+  private final FileSensorExecutor fileSensorExecutor;
 
   public BatchExtensionDictionnary(ComponentContainer componentContainer, DefaultSensorContext sensorContext, SensorOptimizer sensorOptimizer, PostJobContext postJobContext,
-    PostJobOptimizer postJobOptimizer) {
+    PostJobOptimizer postJobOptimizer, FileSensorExecutor fileSensorExecutor) {
     this.componentContainer = componentContainer;
     this.sensorContext = sensorContext;
     this.sensorOptimizer = sensorOptimizer;
     this.postJobContext = postJobContext;
     this.postJobOptimizer = postJobOptimizer;
+    this.fileSensorExecutor = fileSensorExecutor;
   }
 
   public <T> Collection<T> select(Class<T> type, @Nullable Project project, boolean sort, @Nullable ExtensionMatcher matcher) {
@@ -96,7 +99,7 @@ public class BatchExtensionDictionnary {
     List<T> result = Lists.newArrayList();
     for (Object extension : getExtensions(type)) {
       if (org.sonar.api.batch.Sensor.class.equals(type) && extension instanceof Sensor) {
-        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer);
+        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer, fileSensorExecutor);
       }
       if (shouldKeep(type, extension, project, matcher)) {
         result.add((T) extension);
@@ -105,7 +108,7 @@ public class BatchExtensionDictionnary {
     if (org.sonar.api.batch.Sensor.class.equals(type)) {
       // Retrieve new Sensors and wrap then in SensorWrapper
       for (Object extension : getExtensions(Sensor.class)) {
-        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer);
+        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer, fileSensorExecutor);
         if (shouldKeep(type, extension, project, matcher)) {
           result.add((T) extension);
         }
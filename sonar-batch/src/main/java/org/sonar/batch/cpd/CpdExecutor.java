@@ -22,6 +22,7 @@ package org.sonar.batch.cpd;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
@@ -39,9 +40,19 @@ import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
 import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.CheckForNull;
 
 import static com.google.common.collect.FluentIterable.from;
 
@@ -49,12 +60,22 @@ import static com.google.common.collect.FluentIterable.from;
  * Runs on the root module, at the end of the project analysis.
  * It executes copy paste detection involving all files of all modules, which were indexed during sensors execution for each module
  * by {@link CpdSensor). The sensor is responsible for handling exclusions and block sizes.
+ * <p/>
+ * Files are processed concurrently by {@link #THREADS_PROPERTY} threads, the index being read-only at this stage.
+ * Detection on a file is abandoned after {@link #TIMEOUT_PROPERTY} seconds. Duplications are written to the report
+ * by the calling thread, in the order of the index, so that the report does not depend on the number of threads.
  */
 public class CpdExecutor {
   private static final Logger LOG = Loggers.get(CpdExecutor.class);
   static final int MAX_CLONE_GROUP_PER_FILE = 100;
   static final int MAX_CLONE_PART_PER_GROUP = 100;
 
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+  public static final String TIMEOUT_PROPERTY = "sonar.cpd.timeoutPerFile";
+  static final int DEFAULT_TIMEOUT_SECONDS = 300;
+  // number of files submitted in advance per thread. Bounds the number of blocks and results held in memory.
+  private static final int FILES_IN_ADVANCE_PER_THREAD = 4;
+
   private final SonarDuplicationsIndex index;
   private final ReportPublisher publisher;
   private final BatchComponentCache batchComponentCache;
@@ -68,30 +89,91 @@ public class CpdExecutor {
   }
 
   public void execute() {
+    execute(TimeUnit.SECONDS.toMillis(getTimeoutSeconds()));
+  }
+
+  @VisibleForTesting
+  void execute(long timeoutMs) {
+    // sorts the index, which is then only read by the detection threads
     Iterator<ResourceBlocks> it = index.iterator();
 
-    while (it.hasNext()) {
-      ResourceBlocks resourceBlocks = it.next();
-      runCpdAnalysis(resourceBlocks.resourceId(), resourceBlocks.blocks());
+    int threads = getThreads();
+    ThreadPoolExecutor executorService = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat("CPD-%d").setDaemon(true).build());
+    try {
+      Deque<Detection> detections = new ArrayDeque<>();
+      while (it.hasNext()) {
+        ResourceBlocks resourceBlocks = it.next();
+        Detection detection = submit(executorService, resourceBlocks.resourceId(), resourceBlocks.blocks());
+        if (detection != null) {
+          detections.add(detection);
+        }
+        if (detections.size() >= threads * FILES_IN_ADVANCE_PER_THREAD) {
+          complete(executorService, detections.poll(), timeoutMs);
+        }
+      }
+      while (!detections.isEmpty()) {
+        complete(executorService, detections.poll(), timeoutMs);
+      }
+    } finally {
+      // threads may still be busy on files that timed out
+      executorService.shutdownNow();
     }
   }
 
-  private void runCpdAnalysis(String resource, Collection<Block> fileBlocks) {
-    LOG.debug("Detection of duplications for {}", resource);
-
+  @CheckForNull
+  private Detection submit(ThreadPoolExecutor executorService, String resource, Collection<Block> fileBlocks) {
     BatchComponent component = batchComponentCache.get(resource);
     if (component == null) {
       LOG.error("Resource not found in component cache: {}. Skipping CPD computation for it", resource);
-      return;
+      return null;
     }
+    Detection detection = new Detection(component, fileBlocks);
+    detection.future = executorService.submit(detection);
+    return detection;
+  }
 
-    List<CloneGroup> duplications;
+  private void complete(ThreadPoolExecutor executorService, Detection detection, long timeoutMs) {
+    List<CloneGroup> duplications = waitFor(executorService, detection, timeoutMs);
+    if (duplications != null) {
+      saveDuplications(detection.component, filter(detection.component, duplications));
+    }
+  }
+
+  /**
+   * Waits for at most {@code timeoutMs} from the start of the detection, time spent in the queue of the executor
+   * excluded. Returns {@code null} on timeout.
+   */
+  @CheckForNull
+  private static List<CloneGroup> waitFor(ThreadPoolExecutor executorService, Detection detection, long timeoutMs) {
+    String resource = detection.component.key();
     try {
-      duplications = SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail during detection of duplication for " + resource, e);
+      while (true) {
+        long startedAt = detection.startedAt;
+        long waitMs = startedAt == 0L ? timeoutMs : (startedAt + timeoutMs - System.currentTimeMillis());
+        if (waitMs <= 0L) {
+          LOG.warn("Timeout during detection of duplications for {}. File is ignored.", resource);
+          detection.future.cancel(true);
+          // the detection algorithm does not support interruption, so the thread may stay busy until the end of the analysis
+          executorService.setMaximumPoolSize(executorService.getMaximumPoolSize() + 1);
+          executorService.setCorePoolSize(executorService.getCorePoolSize() + 1);
+          return null;
+        }
+        try {
+          return detection.future.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          // check again the elapsed time, as the detection may have started after the beginning of the wait
+        }
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail during detection of duplication for " + resource, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted during detection of duplication for " + resource, e);
     }
+  }
 
+  private List<CloneGroup> filter(BatchComponent component, List<CloneGroup> duplications) {
     InputFile inputFile = (InputFile) component.inputComponent();
 
     List<CloneGroup> filtered;
@@ -101,8 +183,17 @@ public class CpdExecutor {
     } else {
       filtered = duplications;
     }
+    return filtered;
+  }
+
+  private int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
 
-    saveDuplications(component, filtered);
+  private int getTimeoutSeconds() {
+    int timeout = settings.getInt(TIMEOUT_PROPERTY);
+    return timeout > 0 ? timeout : DEFAULT_TIMEOUT_SECONDS;
   }
 
   @VisibleForTesting
@@ -177,4 +268,23 @@ public class CpdExecutor {
     }
     return dupBuilder.build();
   }
+
+  private class Detection implements Callable<List<CloneGroup>> {
+    private final BatchComponent component;
+    private final Collection<Block> fileBlocks;
+    private volatile long startedAt = 0L;
+    private Future<List<CloneGroup>> future;
+
+    private Detection(BatchComponent component, Collection<Block> fileBlocks) {
+      this.component = component;
+      this.fileBlocks = fileBlocks;
+    }
+
+    @Override
+    public List<CloneGroup> call() {
+      startedAt = System.currentTimeMillis();
+      LOG.debug("Detection of duplications for {}", component.key());
+      return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
+    }
+  }
 }
@@ -35,6 +35,7 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
 import org.sonar.duplications.java.JavaStatementBuilder;
@@ -52,11 +53,13 @@ public class JavaCpdIndexer extends CpdIndexer {
   private final FileSystem fs;
   private final Settings settings;
   private final SonarDuplicationsIndex index;
+  private final FileSensorExecutor executor;
 
-  public JavaCpdIndexer(FileSystem fs, Settings settings, SonarDuplicationsIndex index) {
+  public JavaCpdIndexer(FileSystem fs, Settings settings, SonarDuplicationsIndex index, FileSensorExecutor executor) {
     this.fs = fs;
     this.settings = settings;
     this.index = index;
+    this.executor = executor;
   }
 
   @Override
@@ -80,26 +83,42 @@ public class JavaCpdIndexer extends CpdIndexer {
   }
 
   private void createIndex(Iterable<InputFile> sourceFiles) {
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
-
-    for (InputFile inputFile : sourceFiles) {
-      LOG.debug("Populating index from {}", inputFile);
-      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+    // chunkers are not thread-safe
+    final ThreadLocal<Chunkers> chunkers = new ThreadLocal<Chunkers>() {
+      @Override
+      protected Chunkers initialValue() {
+        return new Chunkers();
+      }
+    };
+    executor.execute(sourceFiles, new FileSensorExecutor.FileTask() {
+      @Override
+      public void execute(InputFile inputFile) {
+        createIndex(inputFile, chunkers.get());
+      }
+    });
+  }
 
-      List<Statement> statements;
+  private void createIndex(InputFile inputFile, Chunkers chunkers) {
+    LOG.debug("Populating index from {}", inputFile);
+    String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
 
-      try(Reader reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding())) {
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new IllegalStateException("Cannot find file " + inputFile.file(), e);
-      } catch (IOException e ) {
-        throw new IllegalStateException("Exception hnadling file: " + inputFile.file(), e);
-      }
+    List<Statement> statements;
 
-      List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
-      index.insert(inputFile, blocks);
+    try(Reader reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding())) {
+      statements = chunkers.statementChunker.chunk(chunkers.tokenChunker.chunk(reader));
+    } catch (FileNotFoundException e) {
+      throw new IllegalStateException("Cannot find file " + inputFile.file(), e);
+    } catch (IOException e ) {
+      throw new IllegalStateException("Exception hnadling file: " + inputFile.file(), e);
     }
+
+    List<Block> blocks = chunkers.blockChunker.chunk(resourceEffectiveKey, statements);
+    index.insert(inputFile, blocks);
+  }
+
+  private static class Chunkers {
+    private final TokenChunker tokenChunker = JavaTokenProducer.build();
+    private final StatementChunker statementChunker = JavaStatementBuilder.build();
+    private final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
   }
 }
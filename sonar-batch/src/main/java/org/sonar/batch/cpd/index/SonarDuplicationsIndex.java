@@ -68,8 +68,11 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
         }
       }));
     }
-    for (Block block : blocks) {
-      mem.insert(block);
+    // files may be indexed concurrently, see JavaCpdIndexer
+    synchronized (mem) {
+      for (Block block : blocks) {
+        mem.insert(block);
+      }
     }
   }
 
@@ -19,29 +19,34 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.google.common.base.Preconditions;
-import com.persistit.Exchange;
-import com.persistit.Value;
-import com.persistit.encoding.CoderManager;
+import com.google.common.collect.Maps;
 import com.persistit.Persistit;
+import com.persistit.Volume;
+import com.persistit.encoding.CoderManager;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
-import com.persistit.Volume;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import javax.annotation.CheckForNull;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.BatchSide;
 
 @BatchSide
 public class Caches implements Startable {
-  private final Map<String, Exchange> cacheMap = Maps.newHashMap();
+  private final Map<String, Cache<?>> cacheMap = Maps.newHashMap();
+  private final CachesManager cachesManager;
   private Persistit persistit;
   private Volume volume;
+  // off-heap storage
+  private ValueCoders valueCoders;
+  @CheckForNull
+  private OffHeapStorage offHeapStorage;
 
   public Caches(CachesManager caches) {
+    this.cachesManager = caches;
     persistit = caches.persistit();
     doStart();
   }
@@ -52,6 +57,16 @@ public class Caches implements Startable {
   }
 
   private void doStart() {
+    if (cachesManager.isOffHeap()) {
+      valueCoders = new ValueCoders(persistit);
+      try {
+        File dir = Files.createTempDirectory(cachesManager.tempDir().toPath(), "offheap").toFile();
+        offHeapStorage = new OffHeapStorage(dir, OffHeapStorage.DEFAULT_SEGMENT_SIZE);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to create a cache storage", e);
+      }
+      return;
+    }
     try {
       persistit.flush();
       volume = persistit.createTemporaryVolume();
@@ -61,18 +76,27 @@ public class Caches implements Startable {
   }
 
   public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
-    CoderManager cm = persistit.getCoderManager();
-    cm.registerValueCoder(clazz, coder);
+    if (offHeapStorage != null) {
+      valueCoders.register(clazz, coder);
+    } else {
+      CoderManager cm = persistit.getCoderManager();
+      cm.registerValueCoder(clazz, coder);
+    }
   }
 
   public <V> Cache<V> createCache(String cacheName) {
-    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
+    Preconditions.checkState(offHeapStorage != null || (volume != null && volume.isOpened()), "Caches are not initialized");
     Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: " + cacheName);
+    if (offHeapStorage != null) {
+      Cache<V> cache = new OffHeapCache<>(cacheName, offHeapStorage, valueCoders);
+      cacheMap.put(cacheName, cache);
+      return cache;
+    }
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
+      // creates the tree of the cache
+      persistit.releaseExchange(persistit.getExchange(volume, cacheName, true));
+      Cache<V> cache = new PersistitCache<>(cacheName, persistit, volume);
+      cacheMap.put(cacheName, cache);
       return cache;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create cache: " + cacheName, e);
@@ -81,12 +105,13 @@ public class Caches implements Startable {
 
   @Override
   public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
-    }
-
     cacheMap.clear();
 
+    if (offHeapStorage != null) {
+      offHeapStorage.close();
+      offHeapStorage = null;
+    }
+
     if (volume != null) {
       try {
         volume.close();
@@ -19,15 +19,18 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.base.Preconditions;
 import com.persistit.Persistit;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
 import java.io.File;
 import java.util.Properties;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.batch.bootstrap.GlobalProperties;
 
 import static org.sonar.core.util.FileUtils.deleteQuietly;
 
@@ -38,12 +41,32 @@ import static org.sonar.core.util.FileUtils.deleteQuietly;
  */
 @BatchSide
 public class CachesManager implements Startable {
+
+  /**
+   * Storage of caches: {@link #PERSISTIT_STORAGE} (default) or {@link #OFF_HEAP_STORAGE}
+   */
+  public static final String STORAGE_PROPERTY = "sonar.batch.cache.storage";
+  public static final String PERSISTIT_STORAGE = "persistit";
+  public static final String OFF_HEAP_STORAGE = "offheap";
+
   private File tempDir;
   private Persistit persistit;
   private final TempFolder tempFolder;
+  private final boolean offHeap;
 
   public CachesManager(TempFolder tempFolder) {
+    this(tempFolder, PERSISTIT_STORAGE);
+  }
+
+  public CachesManager(TempFolder tempFolder, GlobalProperties globalProperties) {
+    this(tempFolder, StringUtils.defaultIfBlank(globalProperties.property(STORAGE_PROPERTY), PERSISTIT_STORAGE));
+  }
+
+  CachesManager(TempFolder tempFolder, String storage) {
+    Preconditions.checkArgument(PERSISTIT_STORAGE.equals(storage) || OFF_HEAP_STORAGE.equals(storage),
+      "Unsupported value of property %s: %s", STORAGE_PROPERTY, storage);
     this.tempFolder = tempFolder;
+    this.offHeap = OFF_HEAP_STORAGE.equals(storage);
     initPersistit();
   }
 
@@ -51,6 +74,10 @@ public class CachesManager implements Startable {
     try {
       tempDir = tempFolder.newDir("caches");
       persistit = new Persistit();
+      if (offHeap) {
+        // Persistit is used only to encode values with the registered coders. Volumes and journal are not needed.
+        return;
+      }
       persistit.setPersistitLogger(new Slf4jAdapter(LoggerFactory.getLogger("PERSISTIT")));
       Properties props = new Properties();
       props.setProperty("datapath", tempDir.getAbsolutePath());
@@ -76,7 +103,7 @@ public class CachesManager implements Startable {
 
   @Override
   public void stop() {
-    if (persistit != null) {
+    if (persistit != null && persistit.isInitialized()) {
       try {
         persistit.close(false);
         persistit = null;
@@ -84,6 +111,7 @@ public class CachesManager implements Startable {
         throw new IllegalStateException("Fail to close caches", e);
       }
     }
+    persistit = null;
     deleteQuietly(tempDir);
     tempDir = null;
   }
@@ -95,4 +123,8 @@ public class CachesManager implements Startable {
   Persistit persistit() {
     return persistit;
   }
+
+  boolean isOffHeap() {
+    return offHeap;
+  }
 }
@@ -0,0 +1,310 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.AbstractIterator;
+import com.persistit.Value;
+import com.persistit.encoding.ValueCoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * Cache which values are stored in {@link OffHeapStorage}. Keys and addresses of values are kept in
+ * a sorted in-memory index.
+ * <p>
+ * Values are encoded with the {@link ValueCoder} registered for their class in {@link Caches}, else
+ * with Java serialization.
+ * </p>
+ * <p>
+ * Operations are synchronized on the cache.
+ * </p>
+ */
+class OffHeapCache<V> extends Cache<V> {
+
+  private static final byte SERIALIZED = 0;
+
+  private final OffHeapStorage storage;
+  private final ValueCoders coders;
+  private final Value value;
+  private final NavigableMap<Object[], Long> index = new TreeMap<>(KeyComparator.INSTANCE);
+  // incremented on each change of index, so that iterators know when their snapshot is stale
+  private int modCount = 0;
+
+  OffHeapCache(String name, OffHeapStorage storage, ValueCoders coders) {
+    super(name);
+    this.storage = storage;
+    this.coders = coders;
+    this.value = new Value(coders.persistit());
+    this.value.setMaximumSize(Value.MAXIMUM_SIZE);
+  }
+
+  @Override
+  synchronized void doPut(Object[] key, V v) {
+    try {
+      index.put(key, storage.append(encode(v)));
+      modCount++;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name(), e);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  synchronized V doGet(Object[] key) {
+    Long address = index.get(key);
+    return address == null ? null : read(key, address);
+  }
+
+  @Override
+  synchronized boolean doContainsKey(Object[] key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  synchronized boolean doRemove(Object[] key) {
+    if (index.remove(key) != null) {
+      modCount++;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  synchronized void doClear(Object[] key) {
+    Iterator<Object[]> keys = index.tailMap(key, true).keySet().iterator();
+    while (keys.hasNext() && startsWith(keys.next(), key)) {
+      keys.remove();
+    }
+    modCount++;
+  }
+
+  @Override
+  public synchronized void clear() {
+    index.clear();
+    modCount++;
+  }
+
+  @Override
+  synchronized Set<Object> doKeySet(Object[] prefix) {
+    Set<Object> keys = new LinkedHashSet<>();
+    for (Object[] key : entriesStartingWith(prefix).keySet()) {
+      if (!startsWith(key, prefix)) {
+        break;
+      }
+      keys.add(key[prefix.length]);
+    }
+    return keys;
+  }
+
+  @Override
+  Iterable<V> doValues(final Object[] prefix) {
+    return new Iterable<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        final Iterator<Entry<V>> entries = new EntryIterator(prefix);
+        return new AbstractIterator<V>() {
+          @Override
+          protected V computeNext() {
+            return entries.hasNext() ? entries.next().value() : endOfData();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  Iterable<Entry<V>> doEntries(final Object[] prefix) {
+    return new Iterable<Entry<V>>() {
+      @Override
+      public Iterator<Entry<V>> iterator() {
+        return new EntryIterator(prefix);
+      }
+    };
+  }
+
+  /**
+   * Entries which keys are greater than {@code prefix}. Iteration must stop at the first key which does not
+   * start with {@code prefix}.
+   */
+  private NavigableMap<Object[], Long> entriesStartingWith(Object[] prefix) {
+    return index.tailMap(prefix, false);
+  }
+
+  private static boolean startsWith(Object[] key, Object[] prefix) {
+    if (key.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (KeyComparator.compareParts(key[i], prefix[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private V read(Object[] key, long address) {
+    try {
+      return decode(storage.read(address));
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element " + Arrays.toString(key) + " from cache " + name(), e);
+    }
+  }
+
+  private byte[] encode(V v) throws IOException {
+    ValueCoder coder = coders.coderFor(v.getClass());
+    if (coder == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      bytes.write(SERIALIZED);
+      try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+        output.writeObject(v);
+      }
+      return bytes.toByteArray();
+    }
+    value.clear();
+    value.setStreamMode(true);
+    coder.put(value, v, null);
+    byte[] bytes = new byte[1 + value.getEncodedSize()];
+    bytes[0] = (byte) coders.idOf(v.getClass());
+    System.arraycopy(value.getEncodedBytes(), 0, bytes, 1, value.getEncodedSize());
+    return bytes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V decode(byte[] bytes) throws IOException, ClassNotFoundException {
+    if (bytes[0] == SERIALIZED) {
+      try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+        return (V) input.readObject();
+      }
+    }
+    Map.Entry<Class<?>, ValueCoder> coder = coders.coderById(bytes[0]);
+    value.clear();
+    value.putEncodedBytes(bytes, 1, bytes.length - 1);
+    value.setStreamMode(true);
+    return (V) coder.getValue().get(value, coder.getKey(), null);
+  }
+
+  /**
+   * Iterates over a snapshot of the keys and addresses, so that the cache can be modified while iterating.
+   * Addresses are looked up again only if the cache has been modified since the snapshot.
+   */
+  private class EntryIterator extends AbstractIterator<Entry<V>> {
+    private final List<Object[]> keys = new ArrayList<>();
+    private final long[] addresses;
+    private final int expectedModCount;
+    private int next = 0;
+
+    private EntryIterator(Object[] prefix) {
+      synchronized (OffHeapCache.this) {
+        this.expectedModCount = modCount;
+        long[] snapshot = new long[16];
+        for (Map.Entry<Object[], Long> entry : entriesStartingWith(prefix).entrySet()) {
+          if (!startsWith(entry.getKey(), prefix)) {
+            break;
+          }
+          if (keys.size() == snapshot.length) {
+            snapshot = Arrays.copyOf(snapshot, snapshot.length * 2);
+          }
+          snapshot[keys.size()] = entry.getValue();
+          keys.add(entry.getKey());
+        }
+        this.addresses = snapshot;
+      }
+    }
+
+    @Override
+    protected Entry<V> computeNext() {
+      synchronized (OffHeapCache.this) {
+        return nextEntry();
+      }
+    }
+
+    private Entry<V> nextEntry() {
+      while (next < keys.size()) {
+        Object[] key = keys.get(next);
+        long address = addresses[next];
+        next++;
+        if (modCount != expectedModCount) {
+          // key may have been removed or replaced since the creation of the iterator
+          Long currentAddress = index.get(key);
+          if (currentAddress == null) {
+            continue;
+          }
+          address = currentAddress;
+        }
+        return new Entry<>(Arrays.copyOf(key, key.length), read(key, address));
+      }
+      return endOfData();
+    }
+  }
+
+  /**
+   * Keys are compared part by part, a key being lower than the keys it is prefix of. Parts of
+   * the same type are compared by their natural order, else by the names of their types.
+   */
+  enum KeyComparator implements Comparator<Object[]> {
+    INSTANCE;
+
+    @Override
+    public int compare(Object[] key1, Object[] key2) {
+      int length = Math.min(key1.length, key2.length);
+      for (int i = 0; i < length; i++) {
+        int c = compareParts(key1[i], key2[i]);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return Integer.compare(key1.length, key2.length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareParts(@CheckForNull Object part1, @CheckForNull Object part2) {
+      if (part1 == part2) {
+        return 0;
+      }
+      if (part1 == null) {
+        return -1;
+      }
+      if (part2 == null) {
+        return 1;
+      }
+      if (part1.getClass() != part2.getClass()) {
+        return part1.getClass().getName().compareTo(part2.getClass().getName());
+      }
+      if (part1 instanceof Comparable) {
+        return ((Comparable) part1).compareTo(part2);
+      }
+      throw new IllegalArgumentException("Cache key is not comparable: " + part1);
+    }
+  }
+}
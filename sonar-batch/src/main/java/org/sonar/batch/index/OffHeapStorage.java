@@ -0,0 +1,105 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.sonar.core.util.FileUtils.deleteQuietly;
+
+/**
+ * Append-only storage of byte arrays in memory-mapped files, so that values are kept out of the heap.
+ * Records are never overwritten, the space of the values which are replaced or removed is
+ * reclaimed only when the storage is closed.
+ * <p>
+ * The address of a record is made of the index of its segment (high 32 bits) and of its offset in
+ * the segment (low 32 bits). The storage is shared by all the caches, which can be used concurrently
+ * by the sensors executed in parallel, so all the accesses are synchronized.
+ * </p>
+ */
+class OffHeapStorage {
+
+  static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+  private static final int LENGTH_SIZE = 4;
+
+  private final File dir;
+  private final int segmentSize;
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private MappedByteBuffer current;
+
+  OffHeapStorage(File dir, int segmentSize) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+  }
+
+  synchronized long append(byte[] bytes) {
+    int recordSize = LENGTH_SIZE + bytes.length;
+    if (current == null || current.remaining() < recordSize) {
+      // values larger than a segment get their own segment
+      current = newSegment(Math.max(segmentSize, recordSize));
+    }
+    long address = ((long) (segments.size() - 1) << 32) | current.position();
+    current.putInt(bytes.length);
+    current.put(bytes);
+    return address;
+  }
+
+  synchronized byte[] read(long address) {
+    MappedByteBuffer segment = segments.get((int) (address >>> 32));
+    int offset = (int) address;
+    byte[] bytes = new byte[segment.getInt(offset)];
+    // duplicate() does not copy data, it only isolates the position of this read
+    ByteBuffer buffer = segment.duplicate();
+    buffer.position(offset + LENGTH_SIZE);
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  synchronized int segmentCount() {
+    return segments.size();
+  }
+
+  private synchronized MappedByteBuffer newSegment(int size) {
+    File file = new File(dir, "segment-" + segments.size() + ".dat");
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      // mapping remains valid when the file is closed
+      MappedByteBuffer segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      segments.add(segment);
+      return segment;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create cache segment " + file, e);
+    }
+  }
+
+  /**
+   * Releases the segments. Mapped memory is unmapped when the buffers are garbage collected.
+   */
+  synchronized void close() {
+    segments.clear();
+    current = null;
+    deleteQuietly(dir);
+  }
+}
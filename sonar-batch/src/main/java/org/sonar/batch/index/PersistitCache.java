@@ -0,0 +1,338 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Sets;
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.KeyFilter;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import com.persistit.Volume;
+import com.persistit.exception.PersistitException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Cache stored in a Persistit volume.
+ * <p>
+ * {@link com.persistit.Exchange} is not thread-safe, so each operation borrows an exchange from the pool of
+ * {@link Persistit}, which is per thread, and releases it when done. Iterators use their own copy of the exchange.
+ * </p>
+ */
+class PersistitCache<V> extends Cache<V> {
+
+  private final Persistit persistit;
+  private final Volume volume;
+
+  PersistitCache(String name, Persistit persistit, Volume volume) {
+    super(name);
+    this.persistit = persistit;
+    this.volume = volume;
+  }
+
+  private Exchange borrowExchange() {
+    try {
+      Exchange exchange = persistit.getExchange(volume, name(), false);
+      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+      return exchange;
+    } catch (PersistitException e) {
+      throw new IllegalStateException("Fail to get exchange of cache " + name(), e);
+    }
+  }
+
+  private void releaseExchange(Exchange exchange) {
+    persistit.releaseExchange(exchange);
+  }
+
+  @Override
+  void doPut(Object[] key, V value) {
+    Exchange exchange = borrowExchange();
+    resetKey(exchange, key);
+    try {
+      exchange.getValue().put(value);
+      exchange.store();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  @CheckForNull
+  V doGet(Object[] key) {
+    Exchange exchange = borrowExchange();
+    resetKey(exchange, key);
+    try {
+      exchange.fetch();
+      if (!exchange.getValue().isDefined()) {
+        return null;
+      }
+      return (V) exchange.getValue().get();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  boolean doContainsKey(Object[] key) {
+    Exchange exchange = borrowExchange();
+    resetKey(exchange, key);
+    try {
+      exchange.fetch();
+      return exchange.isValueDefined();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to check if element is in cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  boolean doRemove(Object[] key) {
+    Exchange exchange = borrowExchange();
+    resetKey(exchange, key);
+    try {
+      return exchange.remove();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  void doClear(Object[] key) {
+    Exchange exchange = borrowExchange();
+    resetKey(exchange, key);
+    try {
+      Key to = new Key(exchange.getKey());
+      to.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), to);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear values from cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  public void clear() {
+    Exchange exchange = borrowExchange();
+    try {
+      exchange.clear();
+      exchange.removeAll();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear cache", e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  Set<Object> doKeySet(Object[] prefix) {
+    Exchange exchange = borrowExchange();
+    try {
+      Set<Object> keys = Sets.newLinkedHashSet();
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      for (Object o : prefix) {
+        iteratorExchange.append(o);
+      }
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+      }
+      return keys;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get keys from cache " + name(), e);
+    } finally {
+      releaseExchange(exchange);
+    }
+  }
+
+  @Override
+  Iterable<V> doValues(Object[] prefix) {
+    return new ValueIterable<>(this, prefix);
+  }
+
+  @Override
+  Iterable<Entry<V>> doEntries(Object[] prefix) {
+    return new EntryIterable<>(this, prefix);
+  }
+
+  private static void resetKey(Exchange exchange, Object[] keys) {
+    exchange.clear();
+    for (Object o : keys) {
+      exchange.append(o);
+    }
+  }
+
+  //
+  // LAZY ITERATORS AND ITERABLES
+  //
+
+  private static class ValueIterable<T> implements Iterable<T> {
+    private final PersistitCache<?> cache;
+    private final Object[] keys;
+
+    private ValueIterable(PersistitCache<?> cache, Object... keys) {
+      this.cache = cache;
+      this.keys = keys;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      Exchange originExchange = cache.borrowExchange();
+      try {
+        originExchange.clear();
+        KeyFilter filter = new KeyFilter();
+        for (Object key : keys) {
+          originExchange.append(key);
+          filter = filter.append(KeyFilter.simpleTerm(key));
+        }
+        originExchange.append(Key.BEFORE);
+        Exchange iteratorExchange = new Exchange(originExchange);
+        return new ValueIterator<>(iteratorExchange, filter);
+      } finally {
+        cache.releaseExchange(originExchange);
+      }
+    }
+  }
+
+  private static class ValueIterator<T> implements Iterator<T> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        return (T) exchange.getValue().get();
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private static class EntryIterable<T> implements Iterable<Entry<T>> {
+    private final PersistitCache<?> cache;
+    private final Object[] keys;
+
+    private EntryIterable(PersistitCache<?> cache, Object... keys) {
+      this.cache = cache;
+      this.keys = keys;
+    }
+
+    @Override
+    public Iterator<Entry<T>> iterator() {
+      Exchange originExchange = cache.borrowExchange();
+      try {
+        originExchange.clear();
+        KeyFilter filter = new KeyFilter();
+        for (Object key : keys) {
+          originExchange.append(key);
+          filter = filter.append(KeyFilter.simpleTerm(key));
+        }
+        originExchange.append(Key.BEFORE);
+        Exchange iteratorExchange = new Exchange(originExchange);
+        return new EntryIterator<>(iteratorExchange, filter);
+      } finally {
+        cache.releaseExchange(originExchange);
+      }
+    }
+  }
+
+  private static class EntryIterator<T> implements Iterator<Entry<T>> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Entry<T> next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        T value = (T) exchange.getValue().get();
+        Key key = exchange.getKey();
+        Object[] array = new Object[key.getDepth()];
+        for (int i = 0; i < key.getDepth(); i++) {
+          array[i] = key.indexTo(i - key.getDepth()).decode();
+        }
+        return new Entry<>(array, value);
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Preconditions;
+import com.persistit.Persistit;
+import com.persistit.encoding.ValueCoder;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+
+/**
+ * The {@link ValueCoder} registered in {@link Caches} for the off-heap caches. Coders are identified by
+ * a one-byte id, the id 0 being reserved for Java serialization.
+ */
+class ValueCoders {
+
+  private static final int MAX_CODERS = Byte.MAX_VALUE;
+
+  private final Persistit persistit;
+  private final Map<Class<?>, Integer> idsByClass = new HashMap<>();
+  private final List<Map.Entry<Class<?>, ValueCoder>> codersById = new ArrayList<>();
+
+  /**
+   * @param persistit used only to instantiate {@link com.persistit.Value}. It does not need to be initialized.
+   */
+  ValueCoders(Persistit persistit) {
+    this.persistit = persistit;
+    // id 0 is Java serialization
+    codersById.add(null);
+  }
+
+  Persistit persistit() {
+    return persistit;
+  }
+
+  void register(Class<?> clazz, ValueCoder coder) {
+    Integer id = idsByClass.get(clazz);
+    Map.Entry<Class<?>, ValueCoder> entry = new AbstractMap.SimpleImmutableEntry<Class<?>, ValueCoder>(clazz, coder);
+    if (id == null) {
+      Preconditions.checkState(codersById.size() <= MAX_CODERS, "Too many value coders");
+      idsByClass.put(clazz, codersById.size());
+      codersById.add(entry);
+    } else {
+      codersById.set(id, entry);
+    }
+  }
+
+  @CheckForNull
+  ValueCoder coderFor(Class<?> clazz) {
+    Integer id = idsByClass.get(clazz);
+    return id == null ? null : codersById.get(id).getValue();
+  }
+
+  int idOf(Class<?> clazz) {
+    return idsByClass.get(clazz);
+  }
+
+  Map.Entry<Class<?>, ValueCoder> coderById(int id) {
+    return codersById.get(id);
+  }
+}
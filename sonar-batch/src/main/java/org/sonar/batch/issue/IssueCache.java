@@ -20,6 +20,7 @@
 package org.sonar.batch.issue;
 
 import org.sonar.batch.issue.tracking.TrackedIssue;
+import org.sonar.batch.issue.tracking.TrackedIssueValueCoder;
 
 import org.sonar.api.batch.BatchSide;
 import org.sonar.batch.index.Cache;
@@ -37,6 +38,7 @@ public class IssueCache {
   private final Cache<TrackedIssue> cache;
 
   public IssueCache(Caches caches) {
+    caches.registerValueCoder(TrackedIssue.class, new TrackedIssueValueCoder());
     cache = caches.createCache("issues");
   }
 
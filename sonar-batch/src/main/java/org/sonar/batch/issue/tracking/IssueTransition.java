@@ -66,7 +66,7 @@ public class IssueTransition {
       localIssueTracking.init();
     }
 
-    BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
+    BatchReportReader reader = reportPublisher.getReader();
     int nbComponents = componentCache.all().size();
 
     if (nbComponents == 0) {
@@ -0,0 +1,99 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue.tracking;
+
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
+import javax.annotation.Nullable;
+import org.sonar.api.rule.RuleKey;
+
+public class TrackedIssueValueCoder implements ValueCoder {
+
+  @Override
+  public void put(Value value, Object object, CoderContext context) {
+    TrackedIssue issue = (TrackedIssue) object;
+    RuleKey ruleKey = issue.getRuleKey();
+    putUTFOrNull(value, ruleKey != null ? ruleKey.toString() : null);
+    putUTFOrNull(value, issue.key());
+    putUTFOrNull(value, issue.severity());
+    putIntOrNull(value, issue.startLine());
+    putIntOrNull(value, issue.startLineOffset());
+    putIntOrNull(value, issue.endLine());
+    putIntOrNull(value, issue.endLineOffset());
+    Double effortToFix = issue.effortToFix();
+    if (effortToFix != null) {
+      value.put(effortToFix.doubleValue());
+    } else {
+      value.putNull();
+    }
+    value.put(issue.isNew());
+    value.putDate(issue.creationDate());
+    putUTFOrNull(value, issue.resolution());
+    putUTFOrNull(value, issue.status());
+    putUTFOrNull(value, issue.assignee());
+    putUTFOrNull(value, issue.reporter());
+    putUTFOrNull(value, issue.componentKey());
+    putUTFOrNull(value, issue.getMessage());
+  }
+
+  private static void putUTFOrNull(Value value, @Nullable String utfOrNull) {
+    if (utfOrNull != null) {
+      value.putUTF(utfOrNull);
+    } else {
+      value.putNull();
+    }
+  }
+
+  /**
+   * Boxed values are not written with {@link Value#put(Object)}, as equal instances would be encoded
+   * as references to each other.
+   */
+  private static void putIntOrNull(Value value, @Nullable Integer intOrNull) {
+    if (intOrNull != null) {
+      value.put(intOrNull.intValue());
+    } else {
+      value.putNull();
+    }
+  }
+
+  @Override
+  public Object get(Value value, Class<?> clazz, CoderContext context) {
+    TrackedIssue issue = new TrackedIssue();
+    issue.setRuleKey(value.isNull(true) ? null : RuleKey.parse(value.getString()));
+    issue.setKey(value.getString());
+    issue.setSeverity(value.getString());
+    issue.setStartLine(value.isNull(true) ? null : value.getInt());
+    issue.setStartLineOffset(value.isNull(true) ? null : value.getInt());
+    issue.setEndLine(value.isNull(true) ? null : value.getInt());
+    issue.setEndLineOffset(value.isNull(true) ? null : value.getInt());
+    issue.setEffortToFix(value.isNull(true) ? null : value.getDouble());
+    issue.setNew(value.getBoolean());
+    issue.setCreationDate(value.getDate());
+    issue.setResolution(value.getString());
+    issue.setStatus(value.getString());
+    issue.setAssignee(value.getString());
+    issue.setReporter(value.getString());
+    issue.setComponentKey(value.getString());
+    issue.setMessage(value.getString());
+    return issue;
+  }
+
+}
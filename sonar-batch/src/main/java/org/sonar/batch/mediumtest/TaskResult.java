@@ -48,6 +48,7 @@ import org.sonar.batch.protocol.output.BatchReport.Component;
 import org.sonar.batch.protocol.output.BatchReport.Metadata;
 import org.sonar.batch.protocol.output.BatchReport.Symbol;
 import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.report.BatchReportUtils;
 import org.sonar.batch.report.ReportPublisher;
 import org.sonar.batch.scan.ProjectScanContainer;
@@ -72,7 +73,7 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
     }
 
     ReportPublisher reportPublisher = container.getComponentByType(ReportPublisher.class);
-    reader = new BatchReportReader(reportPublisher.getReportDir());
+    reader = new BatchReportReader(ReportContainer.open(reportPublisher.getReportFile()));
     if (!container.getComponentByType(AnalysisMode.class).isIssues()) {
       Metadata readMetadata = getReportReader().readMetadata();
       int rootComponentRef = readMetadata.getRootComponentRef();
@@ -260,7 +261,7 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
 
   public BatchReport.Test testExecutionFor(InputFile testFile, String testName) {
     int ref = reportComponents.get(((DefaultInputFile) testFile).key()).getRef();
-    try (InputStream inputStream = FileUtils.openInputStream(getReportReader().readTests(ref))) {
+    try (InputStream inputStream = getReportReader().readTests(ref)) {
       BatchReport.Test test = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       while (test != null) {
         if (test.getName().equals(testName)) {
@@ -276,7 +277,7 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
 
   public BatchReport.CoverageDetail coveragePerTestFor(InputFile testFile, String testName) {
     int ref = reportComponents.get(((DefaultInputFile) testFile).key()).getRef();
-    try (InputStream inputStream = FileUtils.openInputStream(getReportReader().readCoverageDetails(ref))) {
+    try (InputStream inputStream = getReportReader().readCoverageDetails(ref)) {
       BatchReport.CoverageDetail details = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       while (details != null) {
         if (details.getTestName().equals(testName)) {
@@ -20,11 +20,9 @@
 package org.sonar.batch.report;
 
 import java.io.BufferedWriter;
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeSet;
@@ -63,8 +61,7 @@ public class AnalysisContextReportPublisher {
       return;
     }
     this.writer = writer;
-    File analysisLog = writer.getFileStructure().analysisLog();
-    try (BufferedWriter fileWriter = Files.newBufferedWriter(analysisLog.toPath(), StandardCharsets.UTF_8)) {
+    try (BufferedWriter fileWriter = newLogWriter()) {
       if (LOG.isDebugEnabled()) {
         writeEnvVariables(fileWriter);
         writeSystemProps(fileWriter);
@@ -105,8 +102,7 @@ public class AnalysisContextReportPublisher {
     if (mode.isIssues()) {
       return;
     }
-    File analysisLog = writer.getFileStructure().analysisLog();
-    try (BufferedWriter fileWriter = Files.newBufferedWriter(analysisLog.toPath(), StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+    try (BufferedWriter fileWriter = newLogWriter()) {
       fileWriter.append(String.format("Settings for module: %s", moduleDefinition.getKey())).append('\n');
       Map<String, String> moduleSettings = settings.getProperties();
       for (String prop : new TreeSet<>(moduleSettings.keySet())) {
@@ -120,6 +116,10 @@ public class AnalysisContextReportPublisher {
     }
   }
 
+  private BufferedWriter newLogWriter() {
+    return new BufferedWriter(new OutputStreamWriter(writer.appendAnalysisLog(), StandardCharsets.UTF_8));
+  }
+
   private static boolean isSqProp(String propKey) {
     return propKey.startsWith(SONAR_PROP_PREFIX);
   }
@@ -20,12 +20,10 @@
 package org.sonar.batch.report;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Throwables;
 import com.google.common.io.Files;
 import com.squareup.okhttp.HttpUrl;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
@@ -36,20 +34,15 @@ import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.BatchSide;
-import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.config.Settings;
-import org.sonar.api.utils.TempFolder;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.batch.analysis.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.BatchWsClient;
+import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.scan.ImmutableProjectReactor;
-import org.sonarqube.ws.MediaTypes;
-import org.sonarqube.ws.WsCe;
-import org.sonarqube.ws.client.PostRequest;
-import org.sonarqube.ws.client.WsResponse;
 
 import static org.sonar.core.util.FileUtils.deleteQuietly;
 
@@ -61,53 +54,67 @@ public class ReportPublisher implements Startable {
   public static final String KEEP_REPORT_PROP_KEY = "sonar.batch.keepReport";
   public static final String VERBOSE_KEY = "sonar.verbose";
   public static final String METADATA_DUMP_FILENAME = "report-task.txt";
+  public static final String REPORT_FILENAME = "batch-report.dat";
 
   private final Settings settings;
   private final BatchWsClient wsClient;
   private final AnalysisContextReportPublisher contextPublisher;
   private final ImmutableProjectReactor projectReactor;
   private final DefaultAnalysisMode analysisMode;
-  private final TempFolder temp;
   private final ReportPublisherStep[] publishers;
 
-  private File reportDir;
+  private File reportFile;
+  private ReportContainer container;
   private BatchReportWriter writer;
 
   public ReportPublisher(Settings settings, BatchWsClient wsClient, AnalysisContextReportPublisher contextPublisher,
-    ImmutableProjectReactor projectReactor, DefaultAnalysisMode analysisMode, TempFolder temp, ReportPublisherStep[] publishers) {
+    ImmutableProjectReactor projectReactor, DefaultAnalysisMode analysisMode, ReportPublisherStep[] publishers) {
     this.settings = settings;
     this.wsClient = wsClient;
     this.contextPublisher = contextPublisher;
     this.projectReactor = projectReactor;
     this.analysisMode = analysisMode;
-    this.temp = temp;
     this.publishers = publishers;
   }
 
   @Override
   public void start() {
-    reportDir = new File(projectReactor.getRoot().getWorkDir(), "batch-report");
-    writer = new BatchReportWriter(reportDir);
+    File workDir = projectReactor.getRoot().getWorkDir();
+    if (!workDir.exists() && !workDir.mkdirs()) {
+      throw new IllegalStateException("Unable to create directory: " + workDir);
+    }
+    reportFile = new File(workDir, REPORT_FILENAME);
+    container = ReportContainer.create(reportFile);
+    writer = new BatchReportWriter(container);
     contextPublisher.init(writer);
   }
 
   @Override
   public void stop() {
+    container.close();
     if (!settings.getBoolean(KEEP_REPORT_PROP_KEY) && !settings.getBoolean(VERBOSE_KEY)) {
-      deleteQuietly(reportDir);
+      deleteQuietly(reportFile);
     } else {
-      LOG.info("Analysis report generated in " + reportDir);
+      LOG.info("Analysis report generated in " + reportFile);
     }
   }
 
-  public File getReportDir() {
-    return reportDir;
+  public File getReportFile() {
+    return reportFile;
   }
 
   public BatchReportWriter getWriter() {
     return writer;
   }
 
+  /**
+   * Reader of the report being generated
+   */
+  public BatchReportReader getReader() {
+    writer.flush();
+    return new BatchReportReader(container);
+  }
+
   public void execute() {
     // If this is a issues mode analysis then we should not upload reports
     String taskId = null;
@@ -121,23 +128,15 @@ public class ReportPublisher implements Startable {
   }
 
   private File generateReportFile() {
-    try {
-      long startTime = System.currentTimeMillis();
-      for (ReportPublisherStep publisher : publishers) {
-        publisher.publish(writer);
-      }
-      long stopTime = System.currentTimeMillis();
-      LOG.info("Analysis report generated in {}ms, dir size={}", stopTime - startTime, FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
-
-      startTime = System.currentTimeMillis();
-      File reportZip = temp.newFile("batch-report", ".zip");
-      ZipUtils.zipDir(reportDir, reportZip);
-      stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports compressed in {}ms, zip size={}", stopTime - startTime, FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportZip)));
-      return reportZip;
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to prepare analysis report", e);
+    long startTime = System.currentTimeMillis();
+    for (ReportPublisherStep publisher : publishers) {
+      publisher.publish(writer);
     }
+    writer.flush();
+    container.finish();
+    long stopTime = System.currentTimeMillis();
+    LOG.info("Analysis report generated in {}ms, size={}", stopTime - startTime, FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportFile)));
+    return reportFile;
   }
 
   /**
@@ -147,25 +146,15 @@ public class ReportPublisher implements Startable {
   String upload(File report) {
     LOG.debug("Upload report");
     long startTime = System.currentTimeMillis();
-    ProjectDefinition projectDefinition = projectReactor.getRoot();
-    PostRequest.Part filePart = new PostRequest.Part(MediaTypes.ZIP, report);
-    PostRequest post = new PostRequest("api/ce/submit")
-      .setMediaType(MediaTypes.PROTOBUF)
-      .setParam("projectKey", projectDefinition.getKey())
-      .setParam("projectName", projectDefinition.getName())
-      .setParam("projectBranch", projectDefinition.getBranch())
-      .setPart("report", filePart);
-    WsResponse response = wsClient.call(post).failIfNotSuccessful();
-    try (InputStream protobuf = response.contentStream()) {
-      return WsCe.SubmitResponse.parser().parseFrom(protobuf).getTaskId();
-    } catch (Exception e) {
-      throw Throwables.propagate(e);
+    try {
+      return new ReportUploader(wsClient).upload(report, projectReactor.getRoot());
     } finally {
       long stopTime = System.currentTimeMillis();
       LOG.info("Analysis report uploaded in " + (stopTime - startTime) + "ms");
     }
   }
 
+
   @VisibleForTesting
   void logSuccess(@Nullable String taskId) {
     if (taskId == null) {
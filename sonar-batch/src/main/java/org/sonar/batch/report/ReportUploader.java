@@ -0,0 +1,191 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.report;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.Parser;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.batch.bootstrap.BatchWsClient;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonar.core.util.Uuids;
+import org.sonarqube.ws.MediaTypes;
+import org.sonarqube.ws.WsCe;
+import org.sonarqube.ws.client.GetRequest;
+import org.sonarqube.ws.client.HttpException;
+import org.sonarqube.ws.client.PostRequest;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
+
+import static org.sonar.core.util.FileUtils.deleteQuietly;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CHUNK;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CODEC;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_OFFSET;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_PROJECT_KEY;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
+
+/**
+ * Sends the analysis report by chunks, so that a network failure only requires to send again the
+ * bytes not received by the server. The report is compressed with the preferred codec supported by the server.
+ */
+class ReportUploader {
+
+  private static final Logger LOG = Loggers.get(ReportUploader.class);
+
+  private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final long DEFAULT_RETRY_DELAY_MS = 2_000L;
+  private static final int MAX_ATTEMPTS = 5;
+
+  private final BatchWsClient wsClient;
+  private final int chunkSize;
+  private final long retryDelayMs;
+
+  ReportUploader(BatchWsClient wsClient) {
+    this(wsClient, DEFAULT_CHUNK_SIZE, DEFAULT_RETRY_DELAY_MS);
+  }
+
+  @VisibleForTesting
+  ReportUploader(BatchWsClient wsClient, int chunkSize, long retryDelayMs) {
+    this.wsClient = wsClient;
+    this.chunkSize = chunkSize;
+    this.retryDelayMs = retryDelayMs;
+  }
+
+  /**
+   * @return the id of the Compute Engine task
+   */
+  String upload(File report, ProjectDefinition project) {
+    String uploadId = Uuids.create();
+    WsCe.UploadResponse status = uploadStatus(project.getKey(), uploadId);
+    ReportCodec codec = ReportCodec.select(status.getCodecsList());
+    File encoded = encode(report, codec);
+    try {
+      sendChunks(project.getKey(), uploadId, encoded);
+      return submit(project, uploadId, codec);
+    } finally {
+      if (!encoded.equals(report)) {
+        deleteQuietly(encoded);
+      }
+    }
+  }
+
+  private void sendChunks(String projectKey, String uploadId, File file) {
+    long size = file.length();
+    long received = 0L;
+    boolean resync = false;
+    int failures = 0;
+    while (true) {
+      try {
+        if (resync) {
+          received = uploadStatus(projectKey, uploadId).getReceived();
+          resync = false;
+        }
+        if (received >= size) {
+          return;
+        }
+        long length = Math.min(chunkSize, size - received);
+        received = uploadChunk(projectKey, uploadId, file, received, length).getReceived();
+        failures = 0;
+      } catch (IllegalStateException | HttpException e) {
+        failures++;
+        if (!isRetryable(e) || failures >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        LOG.warn("Fail to upload analysis report, resuming upload in {}ms: {}", failures * retryDelayMs, e.getMessage());
+        sleep(failures * retryDelayMs);
+        resync = true;
+      }
+    }
+  }
+
+  private static boolean isRetryable(RuntimeException e) {
+    // IllegalStateException is raised by the connector on network failures
+    return !(e instanceof HttpException) || ((HttpException) e).code() >= 500;
+  }
+
+  private static void sleep(long delayMs) {
+    try {
+      Thread.sleep(delayMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while uploading analysis report", e);
+    }
+  }
+
+  private static File encode(File report, ReportCodec codec) {
+    if (codec == ReportCodec.NONE) {
+      return report;
+    }
+    File encoded = new File(report.getParentFile(), report.getName() + "." + codec.key());
+    try (OutputStream output = codec.encode(new BufferedOutputStream(FileUtils.openOutputStream(encoded)))) {
+      FileUtils.copyFile(report, output);
+    } catch (IOException e) {
+      deleteQuietly(encoded);
+      throw new IllegalStateException("Fail to compress analysis report with " + codec.key(), e);
+    }
+    LOG.debug("Analysis report compressed with {} | size={}", codec.key(), FileUtils.byteCountToDisplaySize(encoded.length()));
+    return encoded;
+  }
+
+  private WsCe.UploadResponse uploadStatus(String projectKey, String uploadId) {
+    GetRequest get = new GetRequest("api/ce/upload_status")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .setParam(PARAM_PROJECT_KEY, projectKey)
+      .setParam(PARAM_UPLOAD_ID, uploadId);
+    return call(get, WsCe.UploadResponse.parser());
+  }
+
+  private WsCe.UploadResponse uploadChunk(String projectKey, String uploadId, File file, long offset, long length) {
+    PostRequest post = new PostRequest("api/ce/upload")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .setParam(PARAM_PROJECT_KEY, projectKey)
+      .setParam(PARAM_UPLOAD_ID, uploadId)
+      .setParam(PARAM_OFFSET, offset)
+      .setPart(PARAM_CHUNK, new PostRequest.Part(MediaTypes.DEFAULT, file, offset, length));
+    return call(post, WsCe.UploadResponse.parser());
+  }
+
+  private String submit(ProjectDefinition project, String uploadId, ReportCodec codec) {
+    PostRequest post = new PostRequest("api/ce/submit")
+      .setMediaType(MediaTypes.PROTOBUF)
+      .setParam("projectKey", project.getKey())
+      .setParam("projectName", project.getName())
+      .setParam("projectBranch", project.getBranch())
+      .setParam(PARAM_UPLOAD_ID, uploadId)
+      .setParam(PARAM_CODEC, codec.key());
+    return call(post, WsCe.SubmitResponse.parser()).getTaskId();
+  }
+
+  private <T> T call(WsRequest request, Parser<T> parser) {
+    WsResponse response = wsClient.call(request);
+    try (InputStream protobuf = response.contentStream()) {
+      return parser.parseFrom(protobuf);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read response of " + response.requestUrl(), e);
+    }
+  }
+}
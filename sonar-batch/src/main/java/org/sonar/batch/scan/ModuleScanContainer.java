@@ -70,6 +70,7 @@ import org.sonar.batch.scan.filesystem.ModuleInputFileCache;
 import org.sonar.batch.scan.filesystem.StatusDetectionFactory;
 import org.sonar.batch.scan.report.IssuesReports;
 import org.sonar.batch.sensor.DefaultSensorStorage;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.batch.sensor.SensorOptimizer;
 import org.sonar.batch.sensor.coverage.CoverageExclusions;
 import org.sonar.batch.source.HighlightableBuilder;
@@ -131,6 +132,7 @@ public class ModuleScanContainer extends ComponentContainer {
       QProfileVerifier.class,
 
       SensorOptimizer.class,
+      FileSensorExecutor.class,
       PostJobOptimizer.class,
 
       DefaultPostJobContext.class,
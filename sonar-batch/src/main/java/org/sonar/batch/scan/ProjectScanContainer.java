@@ -84,6 +84,7 @@ import org.sonar.batch.rule.DefaultActiveRulesLoader;
 import org.sonar.batch.rule.DefaultRulesLoader;
 import org.sonar.batch.rule.RulesLoader;
 import org.sonar.batch.rule.RulesProvider;
+import org.sonar.batch.scan.filesystem.FileMetadataCache;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.batch.scan.measure.DefaultMetricFinder;
 import org.sonar.batch.scan.measure.DeprecatedMetricFinder;
@@ -168,6 +169,7 @@ public class ProjectScanContainer extends ComponentContainer {
       // file system
       InputPathCache.class,
       PathResolver.class,
+      FileMetadataCache.class,
 
       // rules
       new ActiveRulesProvider(),
@@ -0,0 +1,301 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Strings;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.util.BatchUtils;
+import org.sonar.home.cache.PersistentCache;
+
+/**
+ * Keeps metadata of indexed files (lines, hash, line offsets) from one analysis to the next, in the project area of the
+ * persistent cache. Metadata of a file is reused without reading it as long as its size, last modification time and file key
+ * (inode) are unchanged and it is read with the same encoding. The whole index is dropped when the version of the batch changes.
+ */
+@BatchSide
+public class FileMetadataCache implements Startable {
+
+  public static final String ENABLED_PROPERTY = "sonar.batch.fileMetadataCache";
+
+  static final String CACHE_KEY = "file_metadata";
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileMetadataCache.class);
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Files modified less than this delay before the start of analysis are not cached: on file systems with a coarse
+   * modification time, a later change done in the same time slice would go unnoticed.
+   */
+  private static final long MTIME_GRANULARITY_MS = 2000L;
+
+  private final PersistentCache cache;
+  private final boolean enabled;
+  private final String version;
+  private final long analysisStart;
+  private final ConcurrentMap<String, Entry> current = new ConcurrentHashMap<>();
+  private Map<String, Entry> previous = Collections.emptyMap();
+
+  public FileMetadataCache(PersistentCache cache, Settings settings, System2 system2) {
+    this(cache, settings, system2, Strings.nullToEmpty(BatchUtils.getServerVersion()));
+  }
+
+  FileMetadataCache(PersistentCache cache, Settings settings, System2 system2, String version) {
+    this.cache = cache;
+    this.enabled = !settings.hasKey(ENABLED_PROPERTY) || settings.getBoolean(ENABLED_PROPERTY);
+    this.version = version;
+    this.analysisStart = system2.now();
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      byte[] data = cache.get(CACHE_KEY);
+      if (data != null) {
+        previous = read(data);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to load file metadata cache, metadata of all files will be computed", e);
+    }
+    LOG.debug("{} file metadata loaded from cache", previous.size());
+  }
+
+  @Override
+  public void stop() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      cache.put(CACHE_KEY, write(current));
+    } catch (IOException e) {
+      LOG.warn("Failed to save file metadata cache", e);
+    }
+    previous = Collections.emptyMap();
+    current.clear();
+  }
+
+  /**
+   * Initializes metadata of the file, either from the cache when the file did not change since previous analysis,
+   * or by reading it. This method can be called concurrently.
+   */
+  public void initMetadata(DefaultInputFile inputFile, FileMetadata fileMetadata) {
+    if (!enabled) {
+      inputFile.initMetadata(fileMetadata.readMetadata(inputFile.file(), inputFile.charset()));
+      return;
+    }
+    String key = inputFile.absolutePath();
+    // attributes are read before the content, so that a modification done while reading is detected next time
+    FileState state = FileState.of(inputFile.path());
+    String charset = inputFile.charset().name();
+    Entry entry = previous.get(key);
+    if (state != null && entry != null && entry.state.equals(state) && entry.charset.equals(charset)) {
+      entry.applyTo(inputFile);
+      current.put(key, entry);
+      return;
+    }
+    inputFile.initMetadata(fileMetadata.readMetadata(inputFile.file(), inputFile.charset()));
+    if (state != null && state.lastModified < analysisStart - MTIME_GRANULARITY_MS) {
+      current.put(key, new Entry(state, charset, inputFile));
+    }
+  }
+
+  private Map<String, Entry> read(byte[] data) throws IOException {
+    try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+      if (in.readInt() != FORMAT_VERSION || !version.equals(in.readUTF())) {
+        LOG.debug("File metadata cache was created by another version, ignoring it");
+        return Collections.emptyMap();
+      }
+      int size = in.readInt();
+      Map<String, Entry> entries = new HashMap<>(size);
+      for (int i = 0; i < size; i++) {
+        String key = in.readUTF();
+        entries.put(key, Entry.read(in));
+      }
+      return entries;
+    }
+  }
+
+  private byte[] write(Map<String, Entry> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(version);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        out.writeUTF(entry.getKey());
+        entry.getValue().write(out);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  static class FileState {
+    private final long size;
+    private final long lastModified;
+    private final String fileKey;
+
+    FileState(long size, long lastModified, String fileKey) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    @CheckForNull
+    static FileState of(Path path) {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        // file key is not available on all platforms
+        Object fileKey = attributes.fileKey();
+        return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey == null ? "" : fileKey.toString());
+      } catch (IOException e) {
+        LOG.debug("Unable to read attributes of " + path, e);
+        return null;
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FileState other = (FileState) o;
+      return size == other.size && lastModified == other.lastModified && fileKey.equals(other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * (int) (size ^ (size >>> 32)) + (int) (lastModified ^ (lastModified >>> 32))) + fileKey.hashCode();
+    }
+  }
+
+  private static class Entry {
+    private final FileState state;
+    private final String charset;
+    private final int lines;
+    private final int nonBlankLines;
+    private final String hash;
+    private final int[] originalLineOffsets;
+    private final int lastValidOffset;
+
+    Entry(FileState state, String charset, int lines, int nonBlankLines, String hash, int[] originalLineOffsets, int lastValidOffset) {
+      this.state = state;
+      this.charset = charset;
+      this.lines = lines;
+      this.nonBlankLines = nonBlankLines;
+      this.hash = hash;
+      this.originalLineOffsets = originalLineOffsets;
+      this.lastValidOffset = lastValidOffset;
+    }
+
+    Entry(FileState state, String charset, DefaultInputFile inputFile) {
+      this(state, charset, inputFile.lines(), inputFile.nonBlankLines(), inputFile.hash(), inputFile.originalLineOffsets(), inputFile.lastValidOffset());
+    }
+
+    void applyTo(DefaultInputFile inputFile) {
+      inputFile.setLines(lines);
+      inputFile.setNonBlankLines(nonBlankLines);
+      inputFile.setHash(hash);
+      inputFile.setOriginalLineOffsets(originalLineOffsets);
+      inputFile.setLastValidOffset(lastValidOffset);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeLong(state.size);
+      out.writeLong(state.lastModified);
+      out.writeUTF(state.fileKey);
+      out.writeUTF(charset);
+      out.writeInt(lines);
+      out.writeInt(nonBlankLines);
+      out.writeUTF(hash);
+      out.writeInt(lastValidOffset);
+      // offsets are stored as line lengths, which are small and compress well
+      int previousOffset = 0;
+      for (int offset : originalLineOffsets) {
+        writeVarInt(out, offset - previousOffset);
+        previousOffset = offset;
+      }
+    }
+
+    static Entry read(DataInputStream in) throws IOException {
+      FileState state = new FileState(in.readLong(), in.readLong(), in.readUTF());
+      String charset = in.readUTF();
+      int lines = in.readInt();
+      int nonBlankLines = in.readInt();
+      String hash = in.readUTF();
+      int lastValidOffset = in.readInt();
+      int[] originalLineOffsets = new int[lines];
+      int offset = 0;
+      for (int i = 0; i < lines; i++) {
+        offset += readVarInt(in);
+        originalLineOffsets[i] = offset;
+      }
+      return new Entry(state, charset, lines, nonBlankLines, hash, originalLineOffsets, lastValidOffset);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+      int v = value;
+      while ((v & ~0x7F) != 0) {
+        out.writeByte((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      out.writeByte(v);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+      int value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = in.readUnsignedByte();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+  }
+}
@@ -137,10 +137,13 @@ public class DefaultSensorStorage implements SensorStorage {
       LOG.debug("Metric " + metric.key() + " is an internal metric computed by SonarQube. Provided value is ignored.");
       return measure;
     }
-    if (measureCache.contains(resource, measure)) {
-      throw new SonarException("Can not add the same measure twice on " + resource + ": " + measure);
+    // sensors may store measures concurrently, see FileSensor
+    synchronized (measureCache) {
+      if (measureCache.contains(resource, measure)) {
+        throw new SonarException("Can not add the same measure twice on " + resource + ": " + measure);
+      }
+      measureCache.put(resource, measure);
     }
-    measureCache.put(resource, measure);
     return measure;
   }
 
@@ -170,7 +173,9 @@ public class DefaultSensorStorage implements SensorStorage {
 
   @Override
   public void store(Issue issue) {
-    moduleIssues.initAndAddIssue(issue);
+    synchronized (moduleIssues) {
+      moduleIssues.initAndAddIssue(issue);
+    }
   }
 
   private File getFile(InputFile file) {
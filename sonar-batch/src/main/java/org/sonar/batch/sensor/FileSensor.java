@@ -0,0 +1,41 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.sensor;
+
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.Sensor;
+import org.sonar.api.batch.sensor.SensorContext;
+
+/**
+ * Sensor which analyses each file independently of the others. When parallel execution of sensors is enabled
+ * (see {@link FileSensorExecutor#THREADS_PROPERTY}), files are analysed concurrently by
+ * {@link #execute(SensorContext, InputFile)}, which must then be thread-safe.
+ * {@link #execute(SensorContext)} is expected to analyse sequentially all the files
+ * matching {@link #filesToAnalyse(FilePredicates)}.
+ */
+public interface FileSensor extends Sensor {
+
+  FilePredicate filesToAnalyse(FilePredicates predicates);
+
+  void execute(SensorContext context, InputFile inputFile);
+
+}
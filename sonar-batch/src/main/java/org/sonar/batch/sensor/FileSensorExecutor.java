@@ -0,0 +1,141 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.sensor;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.config.Settings;
+
+/**
+ * Executes a task on each file of a module. By default files are processed sequentially in the current thread.
+ * When the property {@link #THREADS_PROPERTY} is greater than 1, they are processed by a work-stealing pool of
+ * this number of threads.
+ */
+@BatchSide
+public class FileSensorExecutor implements Startable {
+
+  public static final String THREADS_PROPERTY = "sonar.batch.sensors.threads";
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileSensorExecutor.class);
+
+  public interface FileTask {
+    void execute(InputFile inputFile);
+  }
+
+  private final Settings settings;
+  private ForkJoinPool pool;
+
+  public FileSensorExecutor(Settings settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public void start() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      LOG.info("Analyse files with {} threads", threads);
+      pool = new ForkJoinPool(threads);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (pool != null) {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      pool = null;
+    }
+  }
+
+  @VisibleForTesting
+  @CheckForNull
+  ForkJoinPool pool() {
+    return pool;
+  }
+
+  /**
+   * Executes the task on each file and waits for completion. If some tasks fail, then the exception of the
+   * first file in iteration order is rethrown, once all the other tasks are done.
+   */
+  public void execute(Iterable<InputFile> inputFiles, final FileTask task) {
+    if (pool == null) {
+      for (InputFile inputFile : inputFiles) {
+        task.execute(inputFile);
+      }
+      return;
+    }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (final InputFile inputFile : inputFiles) {
+      tasks.add(pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          task.execute(inputFile);
+        }
+      }));
+    }
+    RuntimeException failure = null;
+    for (ForkJoinTask<?> forkJoinTask : tasks) {
+      try {
+        forkJoinTask.join();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Executes the sensor on the files it declares.
+   */
+  public void execute(final FileSensor sensor, final SensorContext context) {
+    if (pool == null) {
+      sensor.execute(context);
+      return;
+    }
+    FileSystem fs = context.fileSystem();
+    execute(fs.inputFiles(sensor.filesToAnalyse(fs.predicates())), new FileTask() {
+      @Override
+      public void execute(InputFile inputFile) {
+        sensor.execute(context, inputFile);
+      }
+    });
+  }
+}
@@ -34,10 +34,12 @@ public class SensorWrapper implements org.sonar.api.batch.Sensor {
   private SensorContext adaptor;
   private DefaultSensorDescriptor descriptor;
   private SensorOptimizer optimizer;
+  private FileSensorExecutor fileSensorExecutor;
 
-  public SensorWrapper(Sensor newSensor, SensorContext adaptor, SensorOptimizer optimizer) {
+  public SensorWrapper(Sensor newSensor, SensorContext adaptor, SensorOptimizer optimizer, FileSensorExecutor fileSensorExecutor) {
     this.wrappedSensor = newSensor;
     this.optimizer = optimizer;
+    this.fileSensorExecutor = fileSensorExecutor;
     descriptor = new DefaultSensorDescriptor();
     newSensor.describe(descriptor);
     this.adaptor = adaptor;
@@ -54,7 +56,11 @@ public class SensorWrapper implements org.sonar.api.batch.Sensor {
 
   @Override
   public void analyse(Project module, org.sonar.api.batch.SensorContext context) {
-    wrappedSensor.execute(adaptor);
+    if (wrappedSensor instanceof FileSensor) {
+      fileSensorExecutor.execute((FileSensor) wrappedSensor, adaptor);
+    } else {
+      wrappedSensor.execute(adaptor);
+    }
   }
 
   @Override
@@ -51,8 +51,8 @@ public final class CodeColorizerSensor implements Sensor {
   @Override
   public void execute(final SensorContext context) {
     FileSystem fs = context.fileSystem();
+    BatchReportReader reader = reportPublisher.getReader();
     for (InputFile f : fs.inputFiles(fs.predicates().all())) {
-      BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
       int batchId = resourceCache.get(f).batchId();
       String language = f.language();
       if (reader.hasSyntaxHighlighting(batchId) || language == null) {
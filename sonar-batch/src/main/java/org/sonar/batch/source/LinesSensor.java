@@ -20,48 +20,60 @@
 package org.sonar.batch.source;
 
 import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
-import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.batch.sensor.FileSensor;
 
 @Phase(name = Phase.Name.PRE)
-public final class LinesSensor implements Sensor {
+public final class LinesSensor implements FileSensor {
 
   @Override
   public void describe(SensorDescriptor descriptor) {
     descriptor.name("Lines Sensor");
   }
 
+  @Override
+  public FilePredicate filesToAnalyse(FilePredicates predicates) {
+    return predicates.hasType(Type.MAIN);
+  }
+
   @Override
   public void execute(final SensorContext context) {
     FileSystem fs = context.fileSystem();
-    for (InputFile f : fs.inputFiles(fs.predicates().hasType(Type.MAIN))) {
+    for (InputFile f : fs.inputFiles(filesToAnalyse(fs.predicates()))) {
+      execute(context, f);
+    }
+  }
+
+  @Override
+  public void execute(SensorContext context, InputFile f) {
+    ((DefaultMeasure<Integer>) context.<Integer>newMeasure()
+      .on(f)
+      .forMetric(CoreMetrics.LINES)
+      .withValue(f.lines()))
+        .setFromCore()
+        .save();
+    if (f.language() == null) {
+      // As an approximation for files with no language plugin we consider every non blank line as ncloc
+      ((DefaultMeasure<Integer>) context.<Integer>newMeasure()
+        .on(f)
+        .forMetric(CoreMetrics.NCLOC)
+        .withValue(((DefaultInputFile) f).nonBlankLines()))
+          .save();
+      // No test and no coverage on those files
       ((DefaultMeasure<Integer>) context.<Integer>newMeasure()
         .on(f)
-        .forMetric(CoreMetrics.LINES)
-        .withValue(f.lines()))
-          .setFromCore()
+        .forMetric(CoreMetrics.LINES_TO_COVER)
+        .withValue(0))
           .save();
-      if (f.language() == null) {
-        // As an approximation for files with no language plugin we consider every non blank line as ncloc
-        ((DefaultMeasure<Integer>) context.<Integer>newMeasure()
-          .on(f)
-          .forMetric(CoreMetrics.NCLOC)
-          .withValue(((DefaultInputFile) f).nonBlankLines()))
-            .save();
-        // No test and no coverage on those files
-        ((DefaultMeasure<Integer>) context.<Integer>newMeasure()
-          .on(f)
-          .forMetric(CoreMetrics.LINES_TO_COVER)
-          .withValue(0))
-            .save();
-      }
     }
   }
 
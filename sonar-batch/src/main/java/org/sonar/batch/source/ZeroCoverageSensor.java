@@ -25,11 +25,12 @@ import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.measure.Metric;
-import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.batch.sensor.coverage.CoverageType;
@@ -38,13 +39,14 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.batch.sensor.FileSensor;
 
 import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Sets.newHashSet;
 
 @Phase(name = Phase.Name.POST)
-public final class ZeroCoverageSensor implements Sensor {
+public final class ZeroCoverageSensor implements FileSensor {
 
   private static final class MeasureToMetricKey implements Function<Measure, String> {
     @Override
@@ -71,16 +73,25 @@ public final class ZeroCoverageSensor implements Sensor {
     descriptor.name("Zero Coverage Sensor");
   }
 
+  @Override
+  public FilePredicate filesToAnalyse(FilePredicates predicates) {
+    return predicates.hasType(Type.MAIN);
+  }
+
   @Override
   public void execute(final SensorContext context) {
     FileSystem fs = context.fileSystem();
-    for (InputFile f : fs.inputFiles(fs.predicates().hasType(Type.MAIN))) {
-      if (!isCoverageMeasuresAlreadyDefined(f)) {
-        Measure execLines = measureCache.byMetric(f.key(), CoreMetrics.EXECUTABLE_LINES_DATA_KEY);
-        if (execLines != null) {
-          storeZeroCoverageForEachExecutableLine(context, f, execLines);
-        }
+    for (InputFile f : fs.inputFiles(filesToAnalyse(fs.predicates()))) {
+      execute(context, f);
+    }
+  }
 
+  @Override
+  public void execute(SensorContext context, InputFile f) {
+    if (!isCoverageMeasuresAlreadyDefined(f)) {
+      Measure execLines = measureCache.byMetric(f.key(), CoreMetrics.EXECUTABLE_LINES_DATA_KEY);
+      if (execLines != null) {
+        storeZeroCoverageForEachExecutableLine(context, f, execLines);
       }
     }
   }
@@ -38,6 +38,7 @@ import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.resources.Project;
 import org.sonar.batch.postjob.PostJobOptimizer;
 import org.sonar.batch.sensor.DefaultSensorContext;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.batch.sensor.SensorOptimizer;
 import org.sonar.core.platform.ComponentContainer;
 
@@ -53,7 +54,7 @@ public class BatchExtensionDictionnaryTest {
       iocContainer.addSingleton(extension);
     }
     return new BatchExtensionDictionnary(iocContainer, mock(DefaultSensorContext.class), mock(SensorOptimizer.class), mock(PostJobContext.class),
-      mock(PostJobOptimizer.class));
+      mock(PostJobOptimizer.class), mock(FileSensorExecutor.class));
   }
 
   @Test
@@ -101,7 +102,7 @@ public class BatchExtensionDictionnaryTest {
     child.addSingleton(c);
 
     BatchExtensionDictionnary dictionnary = new BatchExtensionDictionnary(child, mock(DefaultSensorContext.class), mock(SensorOptimizer.class), mock(PostJobContext.class),
-      mock(PostJobOptimizer.class));
+      mock(PostJobOptimizer.class), mock(FileSensorExecutor.class));
     assertThat(dictionnary.select(Sensor.class, null, true, null)).containsOnly(a, b, c);
   }
 
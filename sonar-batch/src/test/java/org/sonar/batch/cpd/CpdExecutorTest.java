@@ -23,6 +23,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputModule;
 import org.sonar.api.config.Settings;
@@ -34,12 +37,16 @@ import org.sonar.batch.index.BatchComponent;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.protocol.output.BatchReport.Duplicate;
 import org.sonar.batch.protocol.output.BatchReport.Duplication;
 import org.sonar.batch.report.ReportPublisher;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
 
 import java.io.File;
 import java.io.IOException;
@@ -49,6 +56,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -74,15 +82,15 @@ public class CpdExecutorTest {
 
   @Before
   public void setUp() throws IOException {
-    File outputDir = temp.newFolder();
+    ReportContainer container = ReportContainer.create(temp.newFile());
 
     settings = new Settings();
     index = mock(SonarDuplicationsIndex.class);
     publisher = mock(ReportPublisher.class);
-    when(publisher.getWriter()).thenReturn(new BatchReportWriter(outputDir));
+    when(publisher.getWriter()).thenReturn(new BatchReportWriter(container));
     componentCache = new BatchComponentCache();
     executor = new CpdExecutor(settings, index, publisher, componentCache);
-    reader = new BatchReportReader(outputDir);
+    reader = new BatchReportReader(container);
 
     Project p = new Project("foo");
     componentCache.add(p, null).setInputComponent(new DefaultInputModule("foo"));
@@ -113,6 +121,47 @@ public class CpdExecutorTest {
     assertThat(executor.getMinimumTokens("php")).isEqualTo(33);
   }
 
+  @Test
+  public void execute_detects_duplications_between_files() {
+    settings.setProperty(CpdExecutor.THREADS_PROPERTY, "4");
+    SonarDuplicationsIndex realIndex = new SonarDuplicationsIndex(publisher, componentCache, settings);
+    realIndex.insert((InputFile) batchComponent1.inputComponent(), newBlocks(batchComponent1, 1L, 2L, 3L));
+    realIndex.insert((InputFile) batchComponent2.inputComponent(), newBlocks(batchComponent2, 1L, 2L, 3L));
+    realIndex.insert((InputFile) batchComponent3.inputComponent(), newBlocks(batchComponent3, 4L, 5L, 6L));
+
+    new CpdExecutor(settings, realIndex, publisher, componentCache).execute();
+
+    Duplication[] dups = readDuplications(1);
+    assertDuplication(dups[0], 1, 30, batchComponent2.batchId(), 1, 30);
+    assertThat(reader.readComponentDuplications(batchComponent2.batchId())).hasSize(1);
+    assertThat(reader.readComponentDuplications(batchComponent3.batchId())).isEmpty();
+  }
+
+  @Test
+  public void timeout_on_file() {
+    settings.setProperty(CpdExecutor.THREADS_PROPERTY, "1");
+    final List<Block> blocks1 = newBlocks(batchComponent1, 1L);
+    List<Block> blocks2 = newBlocks(batchComponent2, 2L);
+    when(index.iterator()).thenReturn(Arrays.asList(new ResourceBlocks(batchComponent1.key(), blocks1), new ResourceBlocks(batchComponent2.key(), blocks2)).iterator());
+    when(index.getBySequenceHash(any(ByteArray.class))).thenAnswer(new Answer<List<Block>>() {
+      @Override
+      public List<Block> answer(InvocationOnMock invocation) throws Throwable {
+        if (invocation.getArguments()[0].equals(new ByteArray(1L))) {
+          // pathological file
+          Thread.sleep(10_000L);
+          return blocks1;
+        }
+        return Collections.emptyList();
+      }
+    });
+
+    executor.execute(100L);
+
+    assertThat(logTester.logs(LoggerLevel.WARN)).contains("Timeout during detection of duplications for " + batchComponent1.key() + ". File is ignored.");
+    assertThat(reader.readComponentDuplications(batchComponent1.batchId())).isEmpty();
+    assertThat(reader.readComponentDuplications(batchComponent2.batchId())).isEmpty();
+  }
+
   @Test
   public void testNothingToSave() {
     executor.saveDuplications(batchComponent1, Collections.<CloneGroup>emptyList());
@@ -234,6 +283,20 @@ public class CpdExecutorTest {
     assertThat(d.getDuplicate(0).getRange().getEndLine()).isEqualTo(rangeEndLine);
   }
   
+  private static List<Block> newBlocks(BatchComponent component, long... hashes) {
+    List<Block> blocks = new ArrayList<>();
+    for (int i = 0; i < hashes.length; i++) {
+      blocks.add(Block.builder()
+        .setResourceId(component.key())
+        .setBlockHash(new ByteArray(hashes[i]))
+        .setIndexInFile(i)
+        .setLines(i * 10 + 1, i * 10 + 10)
+        .setUnit(i * 50, i * 50 + 100)
+        .build());
+    }
+    return blocks;
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
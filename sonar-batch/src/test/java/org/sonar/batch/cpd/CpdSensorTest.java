@@ -43,7 +43,7 @@ public class CpdSensorTest {
 
   @Before
   public void setUp() throws IOException {
-    sonarEngine = new JavaCpdIndexer(null, null, null);
+    sonarEngine = new JavaCpdIndexer(null, null, null, null);
     sonarBridgeEngine = new DefaultCpdIndexer(new CpdMappings(), null, null, null);
     settings = new Settings(new PropertyDefinitions(CpdComponents.class));
 
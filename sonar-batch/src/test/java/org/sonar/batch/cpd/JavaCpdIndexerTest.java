@@ -35,6 +35,7 @@ import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
 import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.duplications.block.Block;
 
 import java.io.File;
@@ -59,6 +60,7 @@ public class JavaCpdIndexerTest {
   private Settings settings;
   private JavaCpdIndexer engine;
   private DefaultInputFile file;
+  private DefaultFileSystem fs;
 
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
@@ -68,7 +70,7 @@ public class JavaCpdIndexerTest {
     MockitoAnnotations.initMocks(this);
 
     File baseDir = temp.newFolder();
-    DefaultFileSystem fs = new DefaultFileSystem(baseDir);
+    fs = new DefaultFileSystem(baseDir);
     file = new DefaultInputFile("foo", "src/ManyStatements.java").setLanguage(JAVA);
     fs.add(file);
     BatchComponentCache batchComponentCache = new BatchComponentCache();
@@ -77,12 +79,12 @@ public class JavaCpdIndexerTest {
     FileUtils.copyURLToFile(this.getClass().getResource("ManyStatements.java"), ioFile);
 
     settings = new Settings();
-    engine = new JavaCpdIndexer(fs, settings, index);
+    engine = new JavaCpdIndexer(fs, settings, index, new FileSensorExecutor(settings));
   }
 
   @Test
   public void languageSupported() {
-    JavaCpdIndexer engine = new JavaCpdIndexer(mock(FileSystem.class), new Settings(), index);
+    JavaCpdIndexer engine = new JavaCpdIndexer(mock(FileSystem.class), new Settings(), index, mock(FileSensorExecutor.class));
     assertThat(engine.isLanguageSupported(JAVA)).isTrue();
     assertThat(engine.isLanguageSupported("php")).isFalse();
   }
@@ -103,4 +105,20 @@ public class JavaCpdIndexerTest {
 
     assertThat(blockList).hasSize(26);
   }
+
+  @Test
+  public void testParallelJavaIndexing() throws Exception {
+    settings.setProperty(FileSensorExecutor.THREADS_PROPERTY, 2);
+    FileSensorExecutor executor = new FileSensorExecutor(settings);
+    executor.start();
+    try {
+      engine = new JavaCpdIndexer(fs, settings, index, executor);
+      engine.index(JAVA);
+    } finally {
+      executor.stop();
+    }
+
+    verify(index).insert(eq(file), blockCaptor.capture());
+    assertThat(blockCaptor.getValue()).hasSize(26);
+  }
 }
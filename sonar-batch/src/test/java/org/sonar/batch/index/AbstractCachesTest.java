@@ -42,10 +42,15 @@ public abstract class AbstractCachesTest {
   protected Caches caches;
 
   private static CachesManager createCacheOnTemp() {
-    Map<String, String> props = ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.getRoot().getAbsolutePath(),
-      CoreProperties.GLOBAL_WORKING_DIRECTORY, temp.getRoot().getAbsolutePath());
+    return createCacheOnTemp(CachesManager.PERSISTIT_STORAGE);
+  }
 
-    return new CachesManager(new GlobalTempFolderProvider().provide(new GlobalProperties(props)));
+  protected static CachesManager createCacheOnTemp(String storage) {
+    Map<String, String> props = ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.getRoot().getAbsolutePath(),
+      CoreProperties.GLOBAL_WORKING_DIRECTORY, temp.getRoot().getAbsolutePath(),
+      CachesManager.STORAGE_PROPERTY, storage);
+    GlobalProperties globalProperties = new GlobalProperties(props);
+    return new CachesManager(new GlobalTempFolderProvider().provide(globalProperties), globalProperties);
   }
 
   @BeforeClass
@@ -20,6 +20,11 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 import org.sonar.batch.index.Cache.Entry;
 
@@ -65,6 +70,36 @@ public class CacheTest extends AbstractCachesTest {
     assertThat(values).isEmpty();
   }
 
+  @Test
+  public void put_and_get_from_several_threads() throws Exception {
+    final Cache<String> cache = caches.createCache("capitals");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final String thread = String.valueOf(t);
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < 500; i++) {
+              cache.put(thread, i, "value " + thread + "-" + i);
+              assertThat(cache.get(thread, i)).isEqualTo("value " + thread + "-" + i);
+            }
+            assertThat(cache.values(thread)).hasSize(500);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(cache.keySet()).containsOnly("0", "1", "2", "3");
+    assertThat(cache.get("3", 499)).isEqualTo("value 3-499");
+  }
+
   @Test
   public void test_key_being_prefix_of_another_key() throws Exception {
     Cache<String> cache = caches.createCache("components");
@@ -24,19 +24,45 @@ import org.junit.Test;
 import java.io.File;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class CachesManagerTest extends AbstractCachesTest {
   @Test
   public void should_stop_and_clean_temp_dir() {
-    File tempDir = cachesManager.tempDir();
+    // do not stop the manager shared by tests
+    CachesManager underTest = createCacheOnTemp(CachesManager.PERSISTIT_STORAGE);
+    File tempDir = underTest.tempDir();
     assertThat(tempDir).isDirectory().exists();
-    assertThat(cachesManager.persistit()).isNotNull();
-    assertThat(cachesManager.persistit().isInitialized()).isTrue();
+    assertThat(underTest.persistit()).isNotNull();
+    assertThat(underTest.persistit().isInitialized()).isTrue();
 
-    cachesManager.stop();
+    underTest.stop();
 
     assertThat(tempDir).doesNotExist();
-    assertThat(cachesManager.tempDir()).isNull();
-    assertThat(cachesManager.persistit()).isNull();
+    assertThat(underTest.tempDir()).isNull();
+    assertThat(underTest.persistit()).isNull();
+  }
+
+  @Test
+  public void do_not_initialize_persistit_when_storage_is_off_heap() {
+    CachesManager offHeapManager = createCacheOnTemp(CachesManager.OFF_HEAP_STORAGE);
+    File tempDir = offHeapManager.tempDir();
+    assertThat(offHeapManager.isOffHeap()).isTrue();
+    assertThat(offHeapManager.persistit().isInitialized()).isFalse();
+
+    offHeapManager.stop();
+
+    assertThat(tempDir).doesNotExist();
+    assertThat(offHeapManager.persistit()).isNull();
+  }
+
+  @Test
+  public void fail_if_storage_is_not_supported() {
+    try {
+      createCacheOnTemp("unknown");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unsupported value of property sonar.batch.cache.storage: unknown");
+    }
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same behavior as Persistit-based caches is expected
+ */
+public class OffHeapCacheTest extends CacheTest {
+
+  private static CachesManager offHeapCachesManager;
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @BeforeClass
+  public static void startOffHeapManager() {
+    offHeapCachesManager = createCacheOnTemp(CachesManager.OFF_HEAP_STORAGE);
+    offHeapCachesManager.start();
+  }
+
+  @AfterClass
+  public static void stopOffHeapManager() {
+    offHeapCachesManager.stop();
+  }
+
+  @Before
+  @Override
+  public void start() {
+    caches = new Caches(offHeapCachesManager);
+    caches.start();
+  }
+
+  @Test
+  public void cache_is_off_heap() {
+    assertThat(caches.createCache("foo")).isInstanceOf(OffHeapCache.class);
+  }
+
+  @Test
+  public void replace_value() {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("france", "lyon");
+    cache.put("france", "paris");
+
+    assertThat(cache.get("france")).isEqualTo("paris");
+    assertThat(cache.values()).containsExactly("paris");
+  }
+
+  @Test
+  public void encode_values_with_registered_coder() {
+    caches.registerValueCoder(City.class, new CityCoder());
+    Cache<City> cache = caches.createCache("cities");
+    cache.put("france", new City("paris", 2_200_000));
+
+    City city = cache.get("france");
+    assertThat(city.name).isEqualTo("paris");
+    assertThat(city.population).isEqualTo(2_200_000);
+    assertThat(city.decoded).isTrue();
+  }
+
+  @Test
+  public void fail_to_decode_value() {
+    caches.registerValueCoder(City.class, new CityCoder() {
+      @Override
+      public Object get(Value value, Class<?> clazz, CoderContext context) {
+        throw new IllegalArgumentException("corrupted");
+      }
+    });
+    Cache<City> cache = caches.createCache("cities");
+    cache.put("europe", "france", new City("paris", 2_200_000));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail to get element [europe, france] from cache cities");
+    cache.get("europe", "france");
+  }
+
+  @Test
+  public void serialize_values_without_coder() {
+    Cache<City> cache = caches.createCache("cities");
+    cache.put("france", new City("paris", 2_200_000));
+
+    City city = cache.get("france");
+    assertThat(city.name).isEqualTo("paris");
+    assertThat(city.decoded).isFalse();
+  }
+
+  @Test
+  public void sort_keys_of_different_types() {
+    Cache<String> cache = caches.createCache("numbers");
+    cache.put(10, "ten");
+    cache.put(2, "two");
+    cache.put("one", "one");
+    cache.put(2, 1, "two one");
+
+    assertThat(cache.values()).containsExactly("two", "two one", "ten", "one");
+    assertThat(cache.values(2)).containsExactly("two one");
+  }
+
+  @Test
+  public void modify_cache_while_iterating() {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("europe", "france", "paris");
+    cache.put("europe", "italy", "rome");
+    cache.put("europe", "spain", "madrid");
+
+    int count = 0;
+    for (Cache.Entry<String> entry : cache.entries("europe")) {
+      cache.remove("europe", "spain");
+      cache.put("europe", "italy", "milano");
+      count++;
+    }
+
+    assertThat(count).isEqualTo(2);
+    assertThat(cache.values("europe")).containsExactly("paris", "milano");
+  }
+
+  @Test
+  public void put_concurrently_in_caches_sharing_the_same_storage() throws Exception {
+    final Cache<String> capitals = caches.createCache("capitals");
+    final Cache<String> cities = caches.createCache("cities");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < 2_000; i++) {
+              capitals.put("capital-" + thread + "-" + i, "capital value " + thread + "-" + i);
+              cities.put("city-" + thread + "-" + i, "city value " + thread + "-" + i);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    for (int t = 0; t < 4; t++) {
+      for (int i = 0; i < 2_000; i++) {
+        assertThat(capitals.get("capital-" + t + "-" + i)).isEqualTo("capital value " + t + "-" + i);
+        assertThat(cities.get("city-" + t + "-" + i)).isEqualTo("city value " + t + "-" + i);
+      }
+    }
+  }
+
+  private static class City implements Serializable {
+    private final String name;
+    private final int population;
+    private transient boolean decoded = false;
+
+    City(String name, int population) {
+      this.name = name;
+      this.population = population;
+    }
+  }
+
+  private static class CityCoder implements ValueCoder {
+    @Override
+    public void put(Value value, Object object, CoderContext context) {
+      City city = (City) object;
+      value.putString(city.name);
+      value.put(city.population);
+    }
+
+    @Override
+    public Object get(Value value, Class<?> clazz, CoderContext context) {
+      City city = new City(value.getString(), value.getInt());
+      city.decoded = true;
+      return city;
+    }
+  }
+}
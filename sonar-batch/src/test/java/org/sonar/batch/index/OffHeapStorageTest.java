@@ -0,0 +1,73 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapStorageTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void append_and_read() throws Exception {
+    OffHeapStorage underTest = new OffHeapStorage(temp.newFolder(), 100);
+
+    long address1 = underTest.append("foo".getBytes());
+    long address2 = underTest.append(new byte[0]);
+    long address3 = underTest.append("bar".getBytes());
+
+    assertThat(underTest.read(address1)).isEqualTo("foo".getBytes());
+    assertThat(underTest.read(address2)).isEmpty();
+    assertThat(underTest.read(address3)).isEqualTo("bar".getBytes());
+    assertThat(underTest.segmentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void create_segment_when_current_one_is_full() throws Exception {
+    OffHeapStorage underTest = new OffHeapStorage(temp.newFolder(), 10);
+
+    long address1 = underTest.append("foo".getBytes());
+    long address2 = underTest.append("bar".getBytes());
+    long address3 = underTest.append("a value larger than a segment".getBytes());
+
+    assertThat(underTest.segmentCount()).isEqualTo(3);
+    assertThat(underTest.read(address1)).isEqualTo("foo".getBytes());
+    assertThat(underTest.read(address2)).isEqualTo("bar".getBytes());
+    assertThat(underTest.read(address3)).isEqualTo("a value larger than a segment".getBytes());
+  }
+
+  @Test
+  public void close_deletes_files() throws Exception {
+    File dir = temp.newFolder();
+    OffHeapStorage underTest = new OffHeapStorage(dir, 10);
+    underTest.append("foo".getBytes());
+
+    underTest.close();
+
+    assertThat(dir).doesNotExist();
+    assertThat(underTest.segmentCount()).isEqualTo(0);
+  }
+}
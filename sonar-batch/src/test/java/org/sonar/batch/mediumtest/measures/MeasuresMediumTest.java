@@ -34,6 +34,7 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.batch.mediumtest.BatchMediumTester;
 import org.sonar.batch.mediumtest.TaskResult;
 import org.sonar.batch.protocol.output.BatchReport.Measure;
+import org.sonar.batch.sensor.FileSensorExecutor;
 import org.sonar.xoo.XooPlugin;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -128,4 +129,35 @@ public class MeasuresMediumTest {
       .contains(tuple("lines", 3), tuple("ncloc", 2));
   }
 
+  @Test
+  public void computeLinesInParallel() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      FileUtils.write(new File(srcDir, "sample" + i + ".xoo"), "Sample xoo\n\ncontent");
+      FileUtils.write(new File(srcDir, "sample" + i + ".other"), "Sample other\ncontent\n");
+    }
+
+    TaskResult result = tester.newTask()
+      .properties(ImmutableMap.<String, String>builder()
+        .put("sonar.task", "scan")
+        .put("sonar.projectBaseDir", baseDir.getAbsolutePath())
+        .put("sonar.projectKey", "com.foo.project")
+        .put("sonar.projectName", "Foo Project")
+        .put("sonar.projectVersion", "1.0-SNAPSHOT")
+        .put("sonar.projectDescription", "Description of Foo Project")
+        .put("sonar.sources", "src")
+        .put("sonar.import_unknown_files", "true")
+        .put(FileSensorExecutor.THREADS_PROPERTY, "4")
+        .build())
+      .start();
+
+    Map<String, List<Measure>> allMeasures = result.allMeasures();
+
+    for (int i = 0; i < 20; i++) {
+      assertThat(allMeasures.get("com.foo.project:src/sample" + i + ".xoo")).extracting("metricKey", "intValue")
+        .contains(tuple("lines", 3));
+      assertThat(allMeasures.get("com.foo.project:src/sample" + i + ".other")).extracting("metricKey", "intValue")
+        .contains(tuple("lines", 3), tuple("ncloc", 2));
+    }
+  }
+
 }
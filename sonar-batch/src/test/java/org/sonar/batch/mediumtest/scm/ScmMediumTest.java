@@ -38,6 +38,8 @@ import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReport.Changesets.Changeset;
 import org.sonar.batch.protocol.output.BatchReport.Component;
 import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.ReportContainer;
+import org.sonar.batch.report.ReportPublisher;
 import org.sonar.batch.repository.FileData;
 import org.sonar.xoo.XooPlugin;
 
@@ -117,18 +119,20 @@ public class ScmMediumTest {
   }
 
   private BatchReport.Changesets getChangesets(File baseDir, String path) {
-    File reportDir = new File(baseDir, ".sonar/batch-report");
-    BatchReportReader reader = new BatchReportReader(reportDir);
-
-    Component project = reader.readComponent(reader.readMetadata().getRootComponentRef());
-    Component dir = reader.readComponent(project.getChildRef(0));
-    for (Integer fileRef : dir.getChildRefList()) {
-      Component file = reader.readComponent(fileRef);
-      if (file.getPath().equals(path)) {
-        return reader.readChangesets(file.getRef());
+    File reportFile = new File(baseDir, ".sonar/" + ReportPublisher.REPORT_FILENAME);
+    try (ReportContainer container = ReportContainer.open(reportFile)) {
+      BatchReportReader reader = new BatchReportReader(container);
+
+      Component project = reader.readComponent(reader.readMetadata().getRootComponentRef());
+      Component dir = reader.readComponent(project.getChildRef(0));
+      for (Integer fileRef : dir.getChildRefList()) {
+        Component file = reader.readComponent(fileRef);
+        if (file.getPath().equals(path)) {
+          return reader.readChangesets(file.getRef());
+        }
       }
+      return null;
     }
-    return null;
   }
 
   @Test
@@ -19,7 +19,6 @@
  */
 package org.sonar.batch.report;
 
-import java.io.File;
 import java.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
@@ -34,6 +33,7 @@ import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.core.util.CloseableIterator;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,8 +45,8 @@ public class ActiveRulesPublisherTest {
 
   @Test
   public void write() throws Exception {
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     NewActiveRule ar = new ActiveRulesBuilder().create(RuleKey.of("java", "S001")).setSeverity("BLOCKER").setParam("p1", "v1");
     ActiveRules activeRules = new DefaultActiveRules(Arrays.asList(ar));
@@ -54,7 +54,7 @@ public class ActiveRulesPublisherTest {
     ActiveRulesPublisher underTest = new ActiveRulesPublisher(activeRules);
     underTest.publish(writer);
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
     try (CloseableIterator<BatchReport.ActiveRule> readIt = reader.readActiveRules()) {
       BatchReport.ActiveRule reportAr = readIt.next();
       assertThat(reportAr.getRuleRepository()).isEqualTo("java");
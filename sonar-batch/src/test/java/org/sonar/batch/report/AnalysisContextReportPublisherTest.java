@@ -19,11 +19,13 @@
  */
 package org.sonar.batch.report;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -36,6 +38,8 @@ import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.batch.bootstrap.BatchPluginRepository;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.core.platform.PluginInfo;
 import org.sonar.updatecenter.common.Version;
 
@@ -74,11 +78,11 @@ public class AnalysisContextReportPublisherTest {
   public void shouldOnlyDumpPluginsByDefault() throws Exception {
     when(pluginRepo.getPluginInfos()).thenReturn(Arrays.asList(new PluginInfo("xoo").setName("Xoo").setVersion(Version.create("1.0"))));
 
-    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
     publisher.init(writer);
 
-    assertThat(writer.getFileStructure().analysisLog()).exists();
-    assertThat(FileUtils.readFileToString(writer.getFileStructure().analysisLog())).contains("Xoo 1.0 (xoo)");
+    assertThat(writer.getContainer().contains(FileStructure.ANALYSIS_LOG)).isTrue();
+    assertThat(readAnalysisLog(writer)).contains("Xoo 1.0 (xoo)");
 
     verifyZeroInteractions(system2);
   }
@@ -87,24 +91,24 @@ public class AnalysisContextReportPublisherTest {
   public void shouldNotDumpInIssuesMode() throws Exception {
     when(analysisMode.isIssues()).thenReturn(true);
 
-    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
     publisher.init(writer);
     publisher.dumpSettings(ProjectDefinition.create().setProperty("sonar.projectKey", "foo"), new Settings());
 
-    assertThat(writer.getFileStructure().analysisLog()).doesNotExist();
+    assertThat(writer.getContainer().contains(FileStructure.ANALYSIS_LOG)).isFalse();
   }
 
   @Test
   public void shouldNotDumpSQPropsInSystemProps() throws Exception {
     logTester.setLevel(LoggerLevel.DEBUG);
-    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
     Properties props = new Properties();
     props.setProperty(COM_FOO, "bar");
     props.setProperty(SONAR_SKIP, "true");
     when(system2.properties()).thenReturn(props);
     publisher.init(writer);
 
-    String content = FileUtils.readFileToString(writer.getFileStructure().analysisLog());
+    String content = readAnalysisLog(writer);
     assertThat(content).containsOnlyOnce(COM_FOO);
     assertThat(content).doesNotContain(SONAR_SKIP);
 
@@ -114,7 +118,7 @@ public class AnalysisContextReportPublisherTest {
 
     publisher.dumpSettings(ProjectDefinition.create().setProperty("sonar.projectKey", "foo"), settings);
 
-    content = FileUtils.readFileToString(writer.getFileStructure().analysisLog());
+    content = readAnalysisLog(writer);
     assertThat(content).containsOnlyOnce(COM_FOO);
     assertThat(content).containsOnlyOnce(SONAR_SKIP);
   }
@@ -122,7 +126,7 @@ public class AnalysisContextReportPublisherTest {
   @Test
   public void shouldNotDumpEnvTwice() throws Exception {
     logTester.setLevel(LoggerLevel.DEBUG);
-    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
 
     Map<String, String> env = new HashMap<>();
     env.put(FOO, "BAR");
@@ -130,7 +134,7 @@ public class AnalysisContextReportPublisherTest {
     when(system2.envVariables()).thenReturn(env);
     publisher.init(writer);
 
-    String content = FileUtils.readFileToString(writer.getFileStructure().analysisLog());
+    String content = readAnalysisLog(writer);
     assertThat(content).containsOnlyOnce(FOO);
     assertThat(content).containsOnlyOnce(BIZ);
     assertThat(content).containsSequence(BIZ, FOO);
@@ -140,7 +144,7 @@ public class AnalysisContextReportPublisherTest {
 
     publisher.dumpSettings(ProjectDefinition.create().setProperty("sonar.projectKey", "foo"), settings);
 
-    content = FileUtils.readFileToString(writer.getFileStructure().analysisLog());
+    content = readAnalysisLog(writer);
     assertThat(content).containsOnlyOnce(FOO);
     assertThat(content).containsOnlyOnce(BIZ);
     assertThat(content).doesNotContain("env." + FOO);
@@ -148,10 +152,10 @@ public class AnalysisContextReportPublisherTest {
 
   @Test
   public void shouldNotDumpSensitiveProperties() throws Exception {
-    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    BatchReportWriter writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
     publisher.init(writer);
 
-    assertThat(writer.getFileStructure().analysisLog()).exists();
+    assertThat(writer.getContainer().contains(FileStructure.ANALYSIS_LOG)).isTrue();
 
     Settings settings = new Settings();
     settings.setProperty("sonar.projectKey", "foo");
@@ -159,9 +163,13 @@ public class AnalysisContextReportPublisherTest {
     settings.setProperty("sonar.cpp.license.secured", "AZERTY");
     publisher.dumpSettings(ProjectDefinition.create().setProperty("sonar.projectKey", "foo"), settings);
 
-    assertThat(FileUtils.readFileToString(writer.getFileStructure().analysisLog())).containsSequence(
+    assertThat(readAnalysisLog(writer)).containsSequence(
       "sonar.cpp.license.secured=******",
       "sonar.password=******",
       "sonar.projectKey=foo");
   }
+
+  private static String readAnalysisLog(BatchReportWriter writer) throws IOException {
+    return IOUtils.toString(writer.getContainer().read(FileStructure.ANALYSIS_LOG), StandardCharsets.UTF_8);
+  }
 }
@@ -37,6 +37,7 @@ import org.sonar.batch.protocol.Constants.ComponentLinkType;
 import org.sonar.batch.protocol.output.BatchReport.Component;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 
@@ -89,8 +90,8 @@ public class ComponentsPublisherTest {
 
     ComponentsPublisher publisher = new ComponentsPublisher(reactor, resourceCache);
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
     publisher.publish(writer);
 
     assertThat(writer.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
@@ -103,7 +104,7 @@ public class ComponentsPublisherTest {
     // no such reference
     assertThat(writer.hasComponentData(FileStructure.Domain.COMPONENT, 7)).isFalse();
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
     Component rootProtobuf = reader.readComponent(1);
     assertThat(rootProtobuf.getKey()).isEqualTo("foo");
     assertThat(rootProtobuf.getDescription()).isEqualTo("Root description");
@@ -150,11 +151,11 @@ public class ComponentsPublisherTest {
 
     ComponentsPublisher publisher = new ComponentsPublisher(reactor, resourceCache);
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
     publisher.publish(writer);
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
     Component rootProtobuf = reader.readComponent(1);
     assertThat(rootProtobuf.getVersion()).isEqualTo("1.0");
     assertThat(rootProtobuf.getLinkCount()).isEqualTo(1);
@@ -34,6 +34,7 @@ import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReport.Coverage;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.util.CloseableIterator;
 
@@ -85,12 +86,12 @@ public class CoveragePublisherTest {
     Measure overallCoveredConditions = new Measure<>(CoreMetrics.OVERALL_COVERED_CONDITIONS_BY_LINE).setData("3=2");
     when(measureCache.byMetric("foo:src/Foo.php", CoreMetrics.OVERALL_COVERED_CONDITIONS_BY_LINE_KEY)).thenReturn(overallCoveredConditions);
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     publisher.publish(writer);
 
-    try (CloseableIterator<Coverage> it = new BatchReportReader(outputDir).readComponentCoverage(2)) {
+    try (CloseableIterator<Coverage> it = new BatchReportReader(container).readComponentCoverage(2)) {
       assertThat(it.next()).isEqualTo(Coverage.newBuilder()
         .setLine(2)
         .setUtHits(true)
@@ -36,6 +36,7 @@ import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.metric.BatchMetrics;
 import org.sonar.core.util.CloseableIterator;
@@ -81,12 +82,12 @@ public class MeasuresPublisherTest {
       .setData("foo bar");
     when(measureCache.byResource(sampleFile)).thenReturn(asList(measure, stringMeasure));
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     publisher.publish(writer);
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
 
     assertThat(reader.readComponentMeasures(1)).hasSize(0);
     try (CloseableIterator<BatchReport.Measure> componentMeasures = reader.readComponentMeasures(2)) {
@@ -99,8 +100,8 @@ public class MeasuresPublisherTest {
     Measure measure = new Measure<>(CoreMetrics.LINES_TO_COVER);
     when(measureCache.byResource(sampleFile)).thenReturn(Collections.singletonList(measure));
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     try {
       publisher.publish(writer);
@@ -33,6 +33,7 @@ import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -62,12 +63,12 @@ public class MetadataPublisherTest {
   @Test
   public void write_metadata() throws Exception {
     settings.setProperty(CoreProperties.CPD_CROSS_PROJECT, "true");
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     underTest.publish(writer);
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
     BatchReport.Metadata metadata = reader.readMetadata();
     assertThat(metadata.getAnalysisDate()).isEqualTo(1234567L);
     assertThat(metadata.getProjectKey()).isEqualTo("foo");
@@ -83,12 +84,12 @@ public class MetadataPublisherTest {
     project.setKey("foo:myBranch");
     project.setEffectiveKey("foo:myBranch");
 
-    File outputDir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(outputDir);
+    ReportContainer container = ReportContainer.create(temp.newFile());
+    BatchReportWriter writer = new BatchReportWriter(container);
 
     underTest.publish(writer);
 
-    BatchReportReader reader = new BatchReportReader(outputDir);
+    BatchReportReader reader = new BatchReportReader(container);
     BatchReport.Metadata metadata = reader.readMetadata();
     assertThat(metadata.getAnalysisDate()).isEqualTo(1234567L);
     assertThat(metadata.getProjectKey()).isEqualTo("foo");
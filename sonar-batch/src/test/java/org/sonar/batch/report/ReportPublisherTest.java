@@ -21,8 +21,6 @@ package org.sonar.batch.report;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -32,11 +30,14 @@ import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.Settings;
-import org.sonar.api.utils.TempFolder;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.batch.analysis.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.BatchWsClient;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportContainer;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 import org.sonar.core.config.CorePropertyDefinitions;
 
@@ -69,7 +70,7 @@ public class ReportPublisherTest {
 
   @Test
   public void log_and_dump_information_about_report_uploading() throws IOException {
-    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, mock(TempFolder.class), new ReportPublisherStep[0]);
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[0]);
 
     underTest.logSuccess("TASK-123");
 
@@ -91,7 +92,7 @@ public class ReportPublisherTest {
   @Test
   public void log_public_url_if_defined() throws IOException {
     settings.setProperty(CoreProperties.SERVER_BASE_URL, "https://publicserver/sonarqube");
-    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, mock(TempFolder.class), new ReportPublisherStep[0]);
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[0]);
 
     underTest.logSuccess("TASK-123");
 
@@ -111,7 +112,7 @@ public class ReportPublisherTest {
 
   @Test
   public void log_but_not_dump_information_when_report_is_not_uploaded() {
-    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, mock(TempFolder.class), new ReportPublisherStep[0]);
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[0]);
 
     underTest.logSuccess(/* report not uploaded, no server task */null);
 
@@ -126,24 +127,42 @@ public class ReportPublisherTest {
   @Test
   public void should_not_delete_report_if_property_is_set() throws IOException {
     settings.setProperty("sonar.batch.keepReport", true);
-    Path reportDir = temp.getRoot().toPath().resolve("batch-report");
-    Files.createDirectory(reportDir);
-    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, mock(TempFolder.class), new ReportPublisherStep[0]);
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[0]);
 
     underTest.start();
     underTest.stop();
-    assertThat(reportDir).isDirectory();
+    assertThat(new File(temp.getRoot(), ReportPublisher.REPORT_FILENAME)).isFile();
   }
 
   @Test
   public void should_delete_report_by_default() throws IOException {
-    Path reportDir = temp.getRoot().toPath().resolve("batch-report");
-    Files.createDirectory(reportDir);
-    ReportPublisher job = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, mock(TempFolder.class), new ReportPublisherStep[0]);
+    ReportPublisher job = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[0]);
 
     job.start();
+    assertThat(job.getReportFile()).isFile();
     job.stop();
-    assertThat(reportDir).doesNotExist();
+    assertThat(job.getReportFile()).doesNotExist();
+  }
+
+  @Test
+  public void generate_report_in_a_single_file() throws IOException {
+    ReportPublisherStep step = new ReportPublisherStep() {
+      @Override
+      public void publish(BatchReportWriter writer) {
+        writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("struts").setRootComponentRef(1).build());
+      }
+    };
+    when(mode.isMediumTest()).thenReturn(true);
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, contextPublisher, reactor, mode, new ReportPublisherStep[] {step});
+
+    underTest.start();
+    underTest.execute();
+
+    assertThat(temp.getRoot().list()).containsOnly(ReportPublisher.REPORT_FILENAME);
+    try (ReportContainer container = ReportContainer.open(underTest.getReportFile())) {
+      assertThat(new BatchReportReader(container).readMetadata().getProjectKey()).isEqualTo("struts");
+    }
+    underTest.stop();
   }
 
 }
@@ -0,0 +1,192 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.report;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.batch.bootstrap.BatchWsClient;
+import org.sonar.batch.protocol.output.ReportCodec;
+import org.sonarqube.ws.WsCe;
+import org.sonarqube.ws.client.HttpException;
+import org.sonarqube.ws.client.MockWsResponse;
+import org.sonarqube.ws.client.PostRequest;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReportUploaderTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  BatchWsClient wsClient = mock(BatchWsClient.class);
+  FakeServer server = new FakeServer();
+  ProjectDefinition project = ProjectDefinition.create().setKey("struts").setName("Struts");
+  File report;
+  byte[] reportData;
+
+  @Before
+  public void setUp() throws Exception {
+    reportData = new byte[100_000];
+    new Random(1L).nextBytes(reportData);
+    Arrays.fill(reportData, 0, 50_000, (byte) 'a');
+    report = temp.newFile();
+    FileUtils.writeByteArrayToFile(report, reportData);
+    when(wsClient.call(any(WsRequest.class))).thenAnswer(server);
+  }
+
+  @Test
+  public void upload_report_by_chunks_with_preferred_codec() throws Exception {
+    ReportUploader underTest = new ReportUploader(wsClient, 10_000, 0L);
+
+    assertThat(underTest.upload(report, project)).isEqualTo("TASK_1");
+
+    assertThat(server.submittedCodec).isEqualTo("lz4");
+    assertThat(server.chunks).isGreaterThan(1);
+    assertThat(server.decodedReport()).isEqualTo(reportData);
+    // the compressed copy of the report is deleted
+    assertThat(report.getParentFile().list()).containsOnly(report.getName());
+  }
+
+  @Test
+  public void do_not_compress_if_server_supports_no_known_codec() throws Exception {
+    server.codecs = Arrays.asList("zstd");
+    ReportUploader underTest = new ReportUploader(wsClient, 30_000, 0L);
+
+    underTest.upload(report, project);
+
+    assertThat(server.submittedCodec).isEqualTo("none");
+    assertThat(server.chunks).isEqualTo(4);
+    assertThat(server.decodedReport()).isEqualTo(reportData);
+  }
+
+  @Test
+  public void resume_upload_after_network_failures() throws Exception {
+    server.codecs = Arrays.asList("none");
+    // the second chunk is partially received, then the connection is dropped twice
+    server.failures.add(new IllegalStateException("Fail to request"));
+    server.failures.add(new HttpException("http://localhost/api/ce/upload", 502));
+    ReportUploader underTest = new ReportUploader(wsClient, 30_000, 0L);
+
+    assertThat(underTest.upload(report, project)).isEqualTo("TASK_1");
+
+    assertThat(server.decodedReport()).isEqualTo(reportData);
+  }
+
+  @Test
+  public void fail_after_too_many_consecutive_failures() {
+    for (int i = 0; i < 5; i++) {
+      server.failures.add(new IllegalStateException("Fail to request"));
+    }
+    ReportUploader underTest = new ReportUploader(wsClient, 10_000, 0L);
+
+    expectedException.expect(IllegalStateException.class);
+    underTest.upload(report, project);
+  }
+
+  @Test
+  public void do_not_retry_client_errors() {
+    server.failures.add(new HttpException("http://localhost/api/ce/upload", 400));
+    ReportUploader underTest = new ReportUploader(wsClient, 10_000, 0L);
+
+    expectedException.expect(HttpException.class);
+    underTest.upload(report, project);
+  }
+
+  /**
+   * Emulates the web services api/ce/upload_status, api/ce/upload and api/ce/submit
+   */
+  private static class FakeServer implements Answer<WsResponse> {
+    List<String> codecs = ReportCodec.keys();
+    List<RuntimeException> failures = new ArrayList<>();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    int chunks = 0;
+    String submittedCodec;
+
+    @Override
+    public WsResponse answer(InvocationOnMock invocation) throws Throwable {
+      WsRequest request = (WsRequest) invocation.getArguments()[0];
+      switch (request.getPath()) {
+        case "api/ce/upload_status":
+          return response(WsCe.UploadResponse.newBuilder().setReceived(received.size()).addAllCodecs(codecs).build().toByteArray());
+        case "api/ce/upload":
+          return upload((PostRequest) request);
+        case "api/ce/submit":
+          submittedCodec = request.getParams().get("codec");
+          return response(WsCe.SubmitResponse.newBuilder().setTaskId("TASK_1").build().toByteArray());
+        default:
+          throw new IllegalArgumentException(request.getPath());
+      }
+    }
+
+    private WsResponse upload(PostRequest request) throws Exception {
+      long offset = Long.parseLong(request.getParams().get("offset"));
+      assertThat(offset).isEqualTo(received.size());
+      PostRequest.Part part = request.getParts().get("chunk");
+      byte[] chunk = new byte[(int) part.getLength()];
+      try (InputStream input = FileUtils.openInputStream(part.getFile())) {
+        IOUtils.skipFully(input, part.getOffset());
+        IOUtils.readFully(input, chunk);
+      }
+      chunks++;
+      if (chunks > 1 && !failures.isEmpty()) {
+        // only a part of the chunk has been received before the failure
+        received.write(chunk, 0, chunk.length / 3);
+        throw failures.remove(0);
+      }
+      received.write(chunk);
+      return response(WsCe.UploadResponse.newBuilder().setReceived(received.size()).build().toByteArray());
+    }
+
+    byte[] decodedReport() throws Exception {
+      ReportCodec codec = ReportCodec.fromKey(submittedCodec);
+      try (InputStream input = codec.decode(new ByteArrayInputStream(received.toByteArray()))) {
+        return IOUtils.toByteArray(input);
+      }
+    }
+
+    private static WsResponse response(byte[] protobuf) {
+      return new MockWsResponse().setContent(protobuf);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -34,6 +35,8 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.batch.protocol.output.ReportContainer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -62,8 +65,7 @@ public class SourcePublisherTest {
     resourceCache.add(sampleFile, null).setInputComponent(
       new DefaultInputFile("foo", "src/Foo.php").setLines(5).setModuleBaseDir(baseDir.toPath()).setCharset(StandardCharsets.ISO_8859_1));
     publisher = new SourcePublisher(resourceCache);
-    File outputDir = temp.newFolder();
-    writer = new BatchReportWriter(outputDir);
+    writer = new BatchReportWriter(ReportContainer.create(temp.newFile()));
   }
 
   @Test
@@ -72,8 +74,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("");
+    assertThat(readSource(2)).isEqualTo("");
   }
 
   @Test
@@ -82,8 +83,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n");
   }
 
   @Test
@@ -93,8 +93,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n");
   }
 
   @Test
@@ -103,8 +102,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n5");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n5");
   }
 
   @Test
@@ -113,7 +111,10 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("\n2\n3\n4\n5");
+    assertThat(readSource(2)).isEqualTo("\n2\n3\n4\n5");
+  }
+
+  private String readSource(int ref) throws IOException {
+    return IOUtils.toString(writer.getContainer().read(FileStructure.entryFor(FileStructure.Domain.SOURCE, ref)), StandardCharsets.UTF_8);
   }
 }
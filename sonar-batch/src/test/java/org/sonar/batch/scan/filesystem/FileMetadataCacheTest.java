@@ -0,0 +1,187 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.bootstrap.Slf4jLogger;
+import org.sonar.home.cache.PersistentCache;
+import org.sonar.home.cache.PersistentCacheBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileMetadataCacheTest {
+
+  private static final long NOW = 1_000_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private PersistentCache persistentCache;
+  private File baseDir;
+  private Settings settings = new Settings();
+  private System2 system2 = mock(System2.class);
+
+  @Before
+  public void setUp() throws Exception {
+    persistentCache = new PersistentCacheBuilder(new Slf4jLogger())
+      .setSonarHome(temp.newFolder().toPath())
+      .setAreaForLocalProject("http://localhost:9000", "5.5")
+      .build();
+    baseDir = temp.newFolder();
+    when(system2.now()).thenReturn(NOW);
+  }
+
+  @Test
+  public void reuse_metadata_of_unchanged_file() throws Exception {
+    writeFile("Foo.java", "foo\n\nbar\r\nbaz", NOW - 10_000L);
+    DefaultInputFile first = analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    DefaultInputFile second = analyse("Foo.java", fileMetadata, StandardCharsets.UTF_8);
+
+    verify(fileMetadata, never()).readMetadata(any(File.class), any(Charset.class));
+    assertThat(second.lines()).isEqualTo(4).isEqualTo(first.lines());
+    assertThat(second.nonBlankLines()).isEqualTo(3);
+    assertThat(second.hash()).isEqualTo(first.hash());
+    assertThat(second.originalLineOffsets()).containsExactly(0, 4, 5, 10);
+    assertThat(second.lastValidOffset()).isEqualTo(first.lastValidOffset());
+  }
+
+  @Test
+  public void compute_metadata_of_modified_file() throws Exception {
+    File file = writeFile("Foo.java", "foo", NOW - 10_000L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileUtils.write(file, "foo\nbar");
+    file.setLastModified(NOW - 5_000L);
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    DefaultInputFile inputFile = analyse("Foo.java", fileMetadata, StandardCharsets.UTF_8);
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+    assertThat(inputFile.lines()).isEqualTo(2);
+  }
+
+  @Test
+  public void compute_metadata_when_encoding_changes() throws Exception {
+    writeFile("Foo.java", "foo", NOW - 10_000L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    analyse("Foo.java", fileMetadata, StandardCharsets.ISO_8859_1);
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+  }
+
+  @Test
+  public void drop_cache_when_version_changes() throws Exception {
+    writeFile("Foo.java", "foo", NOW - 10_000L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    FileMetadataCache cache = new FileMetadataCache(persistentCache, settings, system2, "5.6");
+    cache.start();
+    cache.initMetadata(inputFile("Foo.java", StandardCharsets.UTF_8), fileMetadata);
+    cache.stop();
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+  }
+
+  @Test
+  public void do_not_cache_recently_modified_file() throws Exception {
+    writeFile("Foo.java", "foo", NOW - 500L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    analyse("Foo.java", fileMetadata, StandardCharsets.UTF_8);
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+  }
+
+  @Test
+  public void forget_files_not_indexed_by_last_analysis() throws Exception {
+    writeFile("Foo.java", "foo", NOW - 10_000L);
+    writeFile("Bar.java", "bar", NOW - 10_000L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+    analyse("Bar.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    analyse("Foo.java", fileMetadata, StandardCharsets.UTF_8);
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+  }
+
+  @Test
+  public void do_nothing_if_disabled() throws Exception {
+    settings.setProperty(FileMetadataCache.ENABLED_PROPERTY, false);
+    writeFile("Foo.java", "foo", NOW - 10_000L);
+    analyse("Foo.java", new FileMetadata(), StandardCharsets.UTF_8);
+
+    FileMetadata fileMetadata = spy(new FileMetadata());
+    DefaultInputFile inputFile = analyse("Foo.java", fileMetadata, StandardCharsets.UTF_8);
+
+    verify(fileMetadata, times(1)).readMetadata(any(File.class), any(Charset.class));
+    assertThat(inputFile.lines()).isEqualTo(1);
+    assertThat(persistentCache.get(FileMetadataCache.CACHE_KEY)).isNull();
+  }
+
+  private File writeFile(String relativePath, String content, long lastModified) throws IOException {
+    File file = new File(baseDir, relativePath);
+    FileUtils.write(file, content, StandardCharsets.UTF_8);
+    file.setLastModified(lastModified);
+    return file;
+  }
+
+  private DefaultInputFile inputFile(String relativePath, Charset charset) {
+    return new DefaultInputFile("foo", relativePath)
+      .setModuleBaseDir(baseDir.toPath())
+      .setCharset(charset);
+  }
+
+  /**
+   * Simulates an analysis indexing a single file
+   */
+  private DefaultInputFile analyse(String relativePath, FileMetadata fileMetadata, Charset charset) {
+    FileMetadataCache cache = new FileMetadataCache(persistentCache, settings, system2, "5.5");
+    cache.start();
+    DefaultInputFile inputFile = inputFile(relativePath, charset);
+    cache.initMetadata(inputFile, fileMetadata);
+    cache.stop();
+    return inputFile;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.sensor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSensorExecutorTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private Settings settings = new Settings();
+  private FileSensorExecutor underTest = new FileSensorExecutor(settings);
+
+  @After
+  public void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  public void execute_sequentially_by_default() {
+    underTest.start();
+    assertThat(underTest.pool()).isNull();
+
+    final List<String> executions = new ArrayList<>();
+    underTest.execute(files(3), new FileSensorExecutor.FileTask() {
+      @Override
+      public void execute(InputFile inputFile) {
+        executions.add(Thread.currentThread().getName() + " " + inputFile.relativePath());
+      }
+    });
+
+    String thread = Thread.currentThread().getName();
+    assertThat(executions).containsExactly(thread + " src/File0.xoo", thread + " src/File1.xoo", thread + " src/File2.xoo");
+  }
+
+  @Test
+  public void execute_in_parallel() {
+    settings.setProperty(FileSensorExecutor.THREADS_PROPERTY, 4);
+    underTest.start();
+    assertThat(underTest.pool().getParallelism()).isEqualTo(4);
+
+    final Set<String> files = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    underTest.execute(files(1000), new FileSensorExecutor.FileTask() {
+      @Override
+      public void execute(InputFile inputFile) {
+        files.add(inputFile.relativePath());
+      }
+    });
+
+    assertThat(files).hasSize(1000);
+  }
+
+  @Test
+  public void rethrow_failure_once_all_files_are_processed() {
+    settings.setProperty(FileSensorExecutor.THREADS_PROPERTY, 4);
+    underTest.start();
+
+    final AtomicInteger executions = new AtomicInteger();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail on src/File1.xoo");
+    try {
+      underTest.execute(files(100), new FileSensorExecutor.FileTask() {
+        @Override
+        public void execute(InputFile inputFile) {
+          executions.incrementAndGet();
+          if (inputFile.relativePath().startsWith("src/File1")) {
+            throw new IllegalStateException("Fail on " + inputFile.relativePath());
+          }
+        }
+      });
+    } finally {
+      assertThat(executions.get()).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void stop_releases_pool() {
+    settings.setProperty(FileSensorExecutor.THREADS_PROPERTY, 2);
+    underTest.start();
+    underTest.stop();
+
+    assertThat(underTest.pool()).isNull();
+  }
+
+  private static List<InputFile> files(int count) {
+    List<InputFile> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      files.add(new DefaultInputFile("foo", "src/File" + i + ".xoo"));
+    }
+    return files;
+  }
+}
@@ -100,6 +100,17 @@ public final class PurgeProperties {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(PurgeConstants.MAX_ROWS_PER_SECOND)
+        .defaultValue("0")
+        .name("Maximum number of rows deleted per second")
+        .description("Limits the load of the DbCleaner on the database. Projects are purged in background tasks "
+          + "of the Compute Engine, which pause when this number of rows is reached. Zero means no limit.")
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(7)
         .build()
       );
   }
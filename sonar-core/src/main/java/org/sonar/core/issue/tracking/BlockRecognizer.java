@@ -75,8 +75,8 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
       }
     }
 
-    // Check if remaining number of lines exceeds threshold
-    if (basesByLine.keySet().size() * rawsByLine.keySet().size() < 250000) {
+    // Check if remaining number of lines exceeds threshold. Long multiplication prevents int overflow on large files.
+    if ((long) basesByLine.keySet().size() * rawsByLine.keySet().size() < 250000L) {
       List<LinePair> possibleLinePairs = Lists.newArrayList();
       for (Integer baseLine : basesByLine.keySet()) {
         for (Integer rawLine : rawsByLine.keySet()) {
@@ -0,0 +1,245 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.issue.tracking;
+
+import com.google.common.collect.Ordering;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.rule.RuleKey;
+
+/**
+ * Index of the base issues which are not matched yet, grouped by rule then by line, by line hash and by
+ * line hash and message. It is built once per tracking, then narrowed as issues get matched: the matched
+ * base issues are skipped, and lazily removed from the groups which they belong to.
+ */
+class UnmatchedBaseIndex<BASE extends Trackable> {
+
+  /**
+   * Number of matched issues to be skipped during a search before the group is cleaned up
+   */
+  private static final int MAX_SKIPPED_MATCHED_ISSUES = 16;
+
+  private final Tracking<?, BASE> tracking;
+  private final Map<RuleKey, RuleIssues<BASE>> byRule = new HashMap<>();
+
+  UnmatchedBaseIndex(Tracking<?, BASE> tracking) {
+    this.tracking = tracking;
+    for (BASE base : tracking.getUnmatchedBases()) {
+      RuleIssues<BASE> ruleIssues = byRule.get(base.getRuleKey());
+      if (ruleIssues == null) {
+        ruleIssues = new RuleIssues<>();
+        byRule.put(base.getRuleKey(), ruleIssues);
+      }
+      ruleIssues.add(base);
+    }
+    for (RuleIssues<BASE> ruleIssues : byRule.values()) {
+      ruleIssues.sortByLine();
+    }
+  }
+
+  /**
+   * Unmatched base issues with the same rule and the same line (possibly null) as {@code raw}
+   */
+  List<BASE> getByLine(Trackable raw) {
+    RuleIssues<BASE> ruleIssues = byRule.get(raw.getRuleKey());
+    return ruleIssues == null ? Collections.<BASE>emptyList() : removeMatched(ruleIssues.byLine.get(raw.getLine()));
+  }
+
+  /**
+   * Closest unmatched base issue with the same rule and the same line hash as {@code raw}
+   */
+  @CheckForNull
+  BASE getClosestByLineHash(Trackable raw) {
+    RuleIssues<BASE> ruleIssues = byRule.get(raw.getRuleKey());
+    return ruleIssues == null ? null : findClosest(ruleIssues.byLineHash.get(lineHash(raw)), raw);
+  }
+
+  /**
+   * Closest unmatched base issue with the same rule, the same line hash and the same message as {@code raw}
+   */
+  @CheckForNull
+  BASE getClosestByLineHashAndMessage(Trackable raw) {
+    RuleIssues<BASE> ruleIssues = byRule.get(raw.getRuleKey());
+    if (ruleIssues == null) {
+      return null;
+    }
+    Map<String, List<BASE>> byMessage = ruleIssues.byLineHashAndMessage.get(lineHash(raw));
+    return byMessage == null ? null : findClosest(byMessage.get(raw.getMessage()), raw);
+  }
+
+  private List<BASE> removeMatched(@Nullable List<BASE> bases) {
+    if (bases == null) {
+      return Collections.emptyList();
+    }
+    int unmatchedCount = 0;
+    for (int i = 0; i < bases.size(); i++) {
+      BASE base = bases.get(i);
+      if (tracking.containsUnmatchedBase(base)) {
+        bases.set(unmatchedCount, base);
+        unmatchedCount++;
+      }
+    }
+    bases.subList(unmatchedCount, bases.size()).clear();
+    return bases;
+  }
+
+  /**
+   * Search of the unmatched issue which is the closest to the line of {@code raw} in a list of issues sorted
+   * by line. The lowest line is kept when two issues are at the same distance. Issues without line are
+   * selected only if raw issue has no line, or if there are no other candidates.
+   */
+  @CheckForNull
+  private BASE findClosest(@Nullable List<BASE> basesSortedByLine, Trackable raw) {
+    if (basesSortedByLine == null) {
+      return null;
+    }
+    Integer rawLine = raw.getLine();
+    int skippedCount = 0;
+    BASE closest = null;
+    if (rawLine != null) {
+      int below = insertionIndex(basesSortedByLine, rawLine) - 1;
+      int above = below + 1;
+      while (closest == null && (below >= 0 || above < basesSortedByLine.size())) {
+        BASE belowBase = below >= 0 ? basesSortedByLine.get(below) : null;
+        BASE aboveBase = above < basesSortedByLine.size() ? basesSortedByLine.get(above) : null;
+        if (aboveBase == null || (belowBase != null && lineDistance(belowBase, raw) <= lineDistance(aboveBase, raw))) {
+          if (tracking.containsUnmatchedBase(belowBase)) {
+            closest = belowBase;
+          } else {
+            skippedCount++;
+          }
+          below--;
+        } else {
+          if (tracking.containsUnmatchedBase(aboveBase)) {
+            closest = aboveBase;
+          } else {
+            skippedCount++;
+          }
+          above++;
+        }
+      }
+    } else {
+      // issues without line are sorted first
+      for (BASE base : basesSortedByLine) {
+        if (tracking.containsUnmatchedBase(base)) {
+          closest = base;
+          break;
+        }
+        skippedCount++;
+      }
+    }
+    if (skippedCount > MAX_SKIPPED_MATCHED_ISSUES) {
+      removeMatched(basesSortedByLine);
+    }
+    return closest;
+  }
+
+  /**
+   * Index of the first issue which line is greater than or equal to {@code line}
+   */
+  private static int insertionIndex(List<? extends Trackable> sortedByLine, int line) {
+    int low = 0;
+    int high = sortedByLine.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      Integer middleLine = sortedByLine.get(middle).getLine();
+      if (middleLine == null || middleLine < line) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  static String lineHash(Trackable trackable) {
+    return StringUtils.defaultString(trackable.getLineHash(), "");
+  }
+
+  /**
+   * Distance between the lines of two issues. Issues without lines are considered as
+   * being on the same line.
+   */
+  static int lineDistance(Trackable t1, Trackable t2) {
+    Integer line1 = t1.getLine();
+    Integer line2 = t2.getLine();
+    if (line1 == null || line2 == null) {
+      return line1 == line2 ? 0 : Integer.MAX_VALUE;
+    }
+    return Math.abs(line1 - line2);
+  }
+
+  private static class RuleIssues<BASE extends Trackable> {
+    private final Map<Integer, List<BASE>> byLine = new HashMap<>();
+    private final Map<String, List<BASE>> byLineHash = new HashMap<>();
+    private final Map<String, Map<String, List<BASE>>> byLineHashAndMessage = new HashMap<>();
+
+    void add(BASE base) {
+      String lineHash = lineHash(base);
+      get(byLine, base.getLine()).add(base);
+      get(byLineHash, lineHash).add(base);
+      Map<String, List<BASE>> byMessage = byLineHashAndMessage.get(lineHash);
+      if (byMessage == null) {
+        byMessage = new HashMap<>();
+        byLineHashAndMessage.put(lineHash, byMessage);
+      }
+      get(byMessage, base.getMessage()).add(base);
+    }
+
+    void sortByLine() {
+      // stable sort, so issues on the same line keep the order of the base input
+      for (List<BASE> bases : byLineHash.values()) {
+        Collections.sort(bases, LineComparator.INSTANCE);
+      }
+      for (Map<String, List<BASE>> byMessage : byLineHashAndMessage.values()) {
+        for (List<BASE> bases : byMessage.values()) {
+          Collections.sort(bases, LineComparator.INSTANCE);
+        }
+      }
+    }
+
+    private static <K, BASE> List<BASE> get(Map<K, List<BASE>> map, @Nullable K key) {
+      List<BASE> list = map.get(key);
+      if (list == null) {
+        list = new ArrayList<>(1);
+        map.put(key, list);
+      }
+      return list;
+    }
+  }
+
+  private enum LineComparator implements Comparator<Trackable> {
+    INSTANCE;
+
+    private static final Ordering<Integer> NULLS_FIRST = Ordering.<Integer>natural().nullsFirst();
+
+    @Override
+    public int compare(Trackable t1, Trackable t2) {
+      return NULLS_FIRST.compare(t1.getLine(), t2.getLine());
+    }
+  }
+}
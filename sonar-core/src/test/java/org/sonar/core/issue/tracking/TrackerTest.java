@@ -158,6 +158,53 @@ public class TrackerTest {
     assertThat(tracking.baseFor(raw)).isSameAs(base);
   }
 
+  @Test
+  public void match_issue_with_same_message_when_several_issues_on_same_line() {
+    FakeInput baseInput = new FakeInput("H1");
+    Issue base1 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg1");
+    Issue base2 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg2");
+
+    FakeInput rawInput = new FakeInput("H1");
+    Issue raw = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg2");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw)).isSameAs(base2);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(base1);
+  }
+
+  /**
+   * Lines are not in source code, so that issues are not matched by detection of code moves
+   */
+  @Test
+  public void match_closest_issue_with_same_line_hash() {
+    Issue base1 = new Issue(1, "H1", RULE_SYSTEM_PRINT, "msg1");
+    Issue base3 = new Issue(3, "H1", RULE_SYSTEM_PRINT, "msg1");
+    Issue base5 = new Issue(5, "H1", RULE_SYSTEM_PRINT, "msg1");
+    FakeInput baseInput = new FakeInput().addIssue(base1).addIssue(base3).addIssue(base5);
+
+    Issue raw = new Issue(6, "H1", RULE_SYSTEM_PRINT, "msg2");
+    FakeInput rawInput = new FakeInput().addIssue(raw);
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw)).isSameAs(base5);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(base1, base3);
+  }
+
+  @Test
+  public void match_closest_issue_with_same_line_hash_and_message() {
+    Issue base1 = new Issue(1, "H1", RULE_SYSTEM_PRINT, "msg1");
+    Issue base3 = new Issue(3, "H1", RULE_SYSTEM_PRINT, "msg2");
+    Issue base5 = new Issue(5, "H1", RULE_SYSTEM_PRINT, "msg1");
+    FakeInput baseInput = new FakeInput().addIssue(base5).addIssue(base3).addIssue(base1);
+
+    Issue raw = new Issue(2, "H1", RULE_SYSTEM_PRINT, "msg1");
+    FakeInput rawInput = new FakeInput().addIssue(raw);
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw)).isSameAs(base1);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(base3, base5);
+  }
+
   @Test
   public void do_not_fail_if_base_issue_without_line() {
     FakeInput baseInput = new FakeInput("H1", "H2");
@@ -20,13 +20,17 @@
 package org.sonar.db.ce;
 
 import com.google.common.base.Optional;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.ibatis.session.RowBounds;
 import org.sonar.api.utils.Paging;
 import org.sonar.api.utils.System2;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Collections.emptyList;
 import static org.sonar.db.ce.CeQueueDto.Status.IN_PROGRESS;
 import static org.sonar.db.ce.CeQueueDto.Status.PENDING;
@@ -98,6 +102,15 @@ public class CeQueueDao implements Dao {
     mapper(session).resetAllToPendingStatus(system2.now());
   }
 
+  /**
+   * Update the row with: STATUS='PENDING', STARTED_AT=NULL, UPDATED_AT={now}, if it is IN_PROGRESS
+   *
+   * @return true if the task has been reset
+   */
+  public boolean resetToPendingStatus(DbSession session, String uuid) {
+    return mapper(session).updateIfStatus(uuid, PENDING, null, system2.now(), IN_PROGRESS) == 1;
+  }
+
   public int countByStatus(DbSession dbSession, CeQueueDto.Status status) {
     return mapper(dbSession).countByStatus(status);
   }
@@ -107,24 +120,58 @@ public class CeQueueDao implements Dao {
   }
 
   public Optional<CeQueueDto> peek(DbSession session) {
-    List<String> taskUuids = mapper(session).selectEligibleForPeek();
-    if (taskUuids.isEmpty()) {
+    List<CeQueueDto> dtos = peek(session, 1);
+    if (dtos.isEmpty()) {
       return Optional.absent();
     }
-
-    String taskUuid = taskUuids.get(0);
-    return tryToPeek(session, taskUuid);
+    return Optional.of(dtos.get(0));
   }
 
-  private Optional<CeQueueDto> tryToPeek(DbSession session, String taskUuid) {
-    int touchedRows = mapper(session).updateIfStatus(taskUuid, IN_PROGRESS, system2.now(), system2.now(), PENDING);
-    if (touchedRows != 1) {
-      return Optional.absent();
+  /**
+   * Changes the status of at most {@code maxCount} of the oldest tasks eligible for peek to
+   * {@link CeQueueDto.Status#IN_PROGRESS} and returns them, oldest first.
+   * <p>
+   * Each task is claimed with an optimistic update on its status. Tasks claimed concurrently by
+   * another worker are skipped and the next eligible ones are tried instead, so that losing
+   * the race on the oldest task does not prevent from processing the other pending tasks.
+   * No more than one task is returned per component. Tasks of type {@link CeTaskTypes#PURGE} are
+   * returned after the other eligible tasks, whatever their age.
+   * </p>
+   */
+  public List<CeQueueDto> peek(DbSession session, int maxCount) {
+    checkArgument(maxCount > 0, "Max number of tasks to peek must be strictly positive");
+    CeQueueMapper mapper = mapper(session);
+    List<CeQueueDto> eligibles = mapper.selectEligibleForPeek();
+    if (eligibles.isEmpty()) {
+      return emptyList();
     }
 
-    CeQueueDto result = mapper(session).selectByUuid(taskUuid);
+    List<String> peekedUuids = new ArrayList<>(Math.min(maxCount, eligibles.size()));
+    Set<String> peekedComponentUuids = new HashSet<>();
+    long now = system2.now();
+    for (CeQueueDto eligible : eligibles) {
+      if (peekedUuids.size() >= maxCount) {
+        break;
+      }
+      String componentUuid = eligible.getComponentUuid();
+      if ((componentUuid == null || !peekedComponentUuids.contains(componentUuid))
+        && mapper.updateIfStatus(eligible.getUuid(), IN_PROGRESS, now, now, PENDING) == 1) {
+        peekedUuids.add(eligible.getUuid());
+        if (componentUuid != null) {
+          peekedComponentUuids.add(componentUuid);
+        }
+      }
+    }
+    if (peekedUuids.isEmpty()) {
+      return emptyList();
+    }
+
+    List<CeQueueDto> result = new ArrayList<>(peekedUuids.size());
+    for (String peekedUuid : peekedUuids) {
+      result.add(mapper.selectByUuid(peekedUuid));
+    }
     session.commit();
-    return Optional.of(result);
+    return result;
   }
 
   private static CeQueueMapper mapper(DbSession session) {
@@ -35,7 +35,10 @@ public interface CeQueueMapper {
 
   int countByQuery(@Param("query") CeTaskQuery query);
 
-  List<String> selectEligibleForPeek();
+  /**
+   * Only {@link CeQueueDto#getUuid()} and {@link CeQueueDto#getComponentUuid()} are populated.
+   */
+  List<CeQueueDto> selectEligibleForPeek();
 
   @CheckForNull
   CeQueueDto selectByUuid(@Param("uuid") String uuid);
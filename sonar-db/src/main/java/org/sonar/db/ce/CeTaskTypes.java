@@ -23,6 +23,11 @@ public final class CeTaskTypes {
   
   public static final String REPORT = "REPORT";
 
+  /**
+   * Housekeeping of the history of a project. These tasks have a lower priority than the other types.
+   */
+  public static final String PURGE = "PURGE";
+
   private CeTaskTypes() {
     // only statics
   }
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Scopes;
@@ -160,6 +161,24 @@ public class ComponentDao implements Dao {
     return mapper(dbSession).selectAllChildren(componentQuery, rowBounds);
   }
 
+  /**
+   * Streams the direct children, with the measure of the metric {@link ComponentTreeQuery#getSortMetricId()}, as
+   * {@link ComponentDtoWithSnapshotIdAndMeasure}. Paging of the query is ignored. The handler can stop reading
+   * results with {@link org.apache.ibatis.session.ResultContext#stop()}.
+   */
+  public void selectDirectChildren(DbSession dbSession, ComponentTreeQuery componentQuery, ResultHandler handler) {
+    checkArgument(componentQuery.getSortMetricId() != null, "Sort metric is missing");
+    mapper(dbSession).selectDirectChildrenWithMeasure(componentQuery, handler);
+  }
+
+  /**
+   * Same as {@link #selectDirectChildren(DbSession, ComponentTreeQuery, ResultHandler)} for all children.
+   */
+  public void selectAllChildren(DbSession dbSession, ComponentTreeQuery componentQuery, ResultHandler handler) {
+    checkArgument(componentQuery.getSortMetricId() != null, "Sort metric is missing");
+    mapper(dbSession).selectAllChildrenWithMeasure(componentQuery, handler);
+  }
+
   public int countDirectChildren(DbSession dbSession, ComponentTreeQuery query) {
     return mapper(dbSession).countDirectChildren(query);
   }
@@ -0,0 +1,77 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.component;
+
+import java.nio.charset.StandardCharsets;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Component of a tree, with the measure of the metric used to sort the tree.
+ * Measure fields are {@code null} if the component has no measure for this metric.
+ *
+ * @see ComponentTreeQuery.Builder#setSortMetricId(Integer)
+ */
+public class ComponentDtoWithSnapshotIdAndMeasure extends ComponentDtoWithSnapshotId {
+  private Long measureId;
+  private Double measureValue;
+  private String measureTextValue;
+  private byte[] measureDataValue;
+
+  public boolean hasMeasure() {
+    return measureId != null;
+  }
+
+  public ComponentDtoWithSnapshotIdAndMeasure setMeasureId(@Nullable Long measureId) {
+    this.measureId = measureId;
+    return this;
+  }
+
+  @CheckForNull
+  public Double getMeasureValue() {
+    return measureValue;
+  }
+
+  public ComponentDtoWithSnapshotIdAndMeasure setMeasureValue(@Nullable Double measureValue) {
+    this.measureValue = measureValue;
+    return this;
+  }
+
+  /**
+   * @see org.sonar.db.measure.MeasureDto#getData()
+   */
+  @CheckForNull
+  public String getMeasureData() {
+    if (measureDataValue != null) {
+      return new String(measureDataValue, StandardCharsets.UTF_8);
+    }
+    return measureTextValue;
+  }
+
+  public ComponentDtoWithSnapshotIdAndMeasure setMeasureTextValue(@Nullable String measureTextValue) {
+    this.measureTextValue = measureTextValue;
+    return this;
+  }
+
+  public ComponentDtoWithSnapshotIdAndMeasure setMeasureDataValue(@Nullable byte[] measureDataValue) {
+    this.measureDataValue = measureDataValue;
+    return this;
+  }
+}
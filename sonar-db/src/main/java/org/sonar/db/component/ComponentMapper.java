@@ -25,6 +25,7 @@ import java.util.Map;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 
 /**
@@ -77,6 +78,16 @@ public interface ComponentMapper {
 
   int countAllChildren(@Param("query") ComponentTreeQuery componentTreeQuery);
 
+  /**
+   * Return direct children components, with the measure of {@link ComponentTreeQuery#getSortMetricId()}
+   */
+  void selectDirectChildrenWithMeasure(@Param("query") ComponentTreeQuery componentTreeQuery, ResultHandler handler);
+
+  /**
+   * Return all children components, with the measure of {@link ComponentTreeQuery#getSortMetricId()}
+   */
+  void selectAllChildrenWithMeasure(@Param("query") ComponentTreeQuery componentTreeQuery, ResultHandler handler);
+
   /**
    * Return all project (PRJ/TRK) uuids
    */
@@ -35,6 +35,8 @@ import static org.sonar.db.DatabaseUtils.buildLikeValue;
 import static org.sonar.db.WildcardPosition.AFTER;
 
 public class ComponentTreeQuery {
+  private static final String MEASURE_VALUE_SQL_SORT = "CASE WHEN pm.value IS NULL THEN 1 ELSE 0 END, pm.value %s";
+
   @CheckForNull
   private final String nameOrKeyQuery;
   @CheckForNull
@@ -45,6 +47,8 @@ public class ComponentTreeQuery {
   private final Integer pageSize;
   private final SnapshotDto baseSnapshot;
   private final String baseSnapshotPath;
+  @CheckForNull
+  private final Integer sortMetricId;
   private final String sqlSort;
   private final String direction;
 
@@ -56,7 +60,10 @@ public class ComponentTreeQuery {
     this.baseSnapshot = builder.baseSnapshot;
     this.baseSnapshotPath = buildBaseSnapshotPath(baseSnapshot);
     this.direction = builder.asc ? "ASC" : "DESC";
-    this.sqlSort = sortFieldsToSqlSort(builder.sortFields, direction);
+    this.sortMetricId = builder.sortMetricId;
+    checkArgument(!builder.sortByMetricValue || sortMetricId != null, "Metric is required to sort by measure value");
+    String fieldsSqlSort = sortFieldsToSqlSort(builder.sortFields, direction);
+    this.sqlSort = builder.sortByMetricValue ? (String.format(MEASURE_VALUE_SQL_SORT, direction) + ", " + fieldsSqlSort) : fieldsSqlSort;
   }
 
   public Collection<String> getQualifiers() {
@@ -89,6 +96,14 @@ public class ComponentTreeQuery {
     return baseSnapshotPath;
   }
 
+  /**
+   * Id of the metric whose measure is loaded along with the components, or {@code null}
+   */
+  @CheckForNull
+  public Integer getSortMetricId() {
+    return sortMetricId;
+  }
+
   public String getSqlSort() {
     return sqlSort;
   }
@@ -125,6 +140,9 @@ public class ComponentTreeQuery {
     private SnapshotDto baseSnapshot;
     private List<String> sortFields;
     private boolean asc = true;
+    @CheckForNull
+    private Integer sortMetricId;
+    private boolean sortByMetricValue = false;
 
     private Builder() {
       // private constructor
@@ -170,6 +188,25 @@ public class ComponentTreeQuery {
       this.asc = asc;
       return this;
     }
+
+    /**
+     * Loads the measure of the given metric along with each component. Used by
+     * {@link ComponentDao#selectDirectChildren(org.sonar.db.DbSession, ComponentTreeQuery, org.apache.ibatis.session.ResultHandler)}
+     * and {@link ComponentDao#selectAllChildren(org.sonar.db.DbSession, ComponentTreeQuery, org.apache.ibatis.session.ResultHandler)}.
+     */
+    public Builder setSortMetricId(@Nullable Integer sortMetricId) {
+      this.sortMetricId = sortMetricId;
+      return this;
+    }
+
+    /**
+     * Components are first sorted by the numerical value of the measure of the metric set by
+     * {@link #setSortMetricId(Integer)}, components without measure being last, then by the sort fields.
+     */
+    public Builder setSortByMetricValue(boolean sortByMetricValue) {
+      this.sortByMetricValue = sortByMetricValue;
+      return this;
+    }
   }
 
   private static class SortFieldToSqlSortFieldFunction implements Function<String, String> {
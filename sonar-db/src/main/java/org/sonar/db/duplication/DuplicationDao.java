@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
@@ -42,6 +43,22 @@ public class DuplicationDao implements Dao {
     });
   }
 
+  /**
+   * Same as {@link #selectCandidates(DbSession, Long, String, Collection)}, but rows are streamed to the handler
+   * instead of being loaded in a list. Hashes are still partitioned in queries of at most
+   * {@link DatabaseUtils#PARTITION_SIZE_FOR_ORACLE} elements.
+   */
+  public void selectCandidates(final DbSession session, @Nullable final Long projectSnapshotId, final String language, Collection<String> hashes,
+    final ResultHandler handler) {
+    DatabaseUtils.executeLargeInputsWithoutOutput(hashes, new Function<List<String>, Void>() {
+      @Override
+      public Void apply(@Nonnull List<String> partition) {
+        session.getMapper(DuplicationMapper.class).selectCandidates(projectSnapshotId, language, partition, handler);
+        return null;
+      }
+    });
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
@@ -50,4 +67,13 @@ public class DuplicationDao implements Dao {
     session.getMapper(DuplicationMapper.class).batchInsert(dto);
   }
 
+  /**
+   * Writer for bulk insertion of rows in the table DUPLICATIONS_INDEX. It must be closed, then the session
+   * must be committed with {@code session.commit(true)}.
+   * @see DuplicationUnitWriter
+   */
+  public DuplicationUnitWriter newWriter(DbSession session) {
+    return new DuplicationUnitWriter(session);
+  }
+
 }
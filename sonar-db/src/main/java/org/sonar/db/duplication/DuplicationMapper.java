@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface DuplicationMapper {
 
@@ -31,6 +32,12 @@ public interface DuplicationMapper {
     @Param("language") String language,
     @Param("hashes") Collection<String> hashes);
 
+  void selectCandidates(
+    @Nullable @Param("projectSnapshotId") Long projectSnapshotId,
+    @Param("language") String language,
+    @Param("hashes") Collection<String> hashes,
+    ResultHandler handler);
+
   void batchInsert(DuplicationUnitDto unit);
 
 }
@@ -0,0 +1,95 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.duplication;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import org.sonar.db.DatabaseUtils;
+import org.sonar.db.DbSession;
+
+/**
+ * Bulk insertion of rows in the table DUPLICATIONS_INDEX. Rows are sent to database through JDBC batches
+ * of {@link #BATCH_SIZE} rows, instead of one MyBatis statement per row.
+ * <p/>
+ * The inserts are executed on the connection of the session but MyBatis is not aware of them, so the
+ * session must be committed with {@link DbSession#commit(boolean)} and {@code force=true} once the writer
+ * is closed.
+ */
+public class DuplicationUnitWriter implements AutoCloseable {
+
+  static final int BATCH_SIZE = 1000;
+
+  private static final String SQL = "INSERT INTO duplications_index (snapshot_id, project_snapshot_id, hash, index_in_file, start_line, end_line) " +
+    "VALUES (?, ?, ?, ?, ?, ?)";
+
+  private final PreparedStatement stmt;
+  private int pending = 0;
+
+  DuplicationUnitWriter(DbSession session) {
+    try {
+      this.stmt = session.getConnection().prepareStatement(SQL);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to prepare insertion in DUPLICATIONS_INDEX", e);
+    }
+  }
+
+  public DuplicationUnitWriter append(DuplicationUnitDto dto) {
+    try {
+      stmt.setLong(1, dto.getSnapshotId());
+      stmt.setLong(2, dto.getProjectSnapshotId());
+      stmt.setString(3, dto.getHash());
+      stmt.setInt(4, dto.getIndexInFile());
+      stmt.setInt(5, dto.getStartLine());
+      stmt.setInt(6, dto.getEndLine());
+      stmt.addBatch();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to insert in DUPLICATIONS_INDEX", e);
+    }
+    pending++;
+    if (pending >= BATCH_SIZE) {
+      flush();
+    }
+    return this;
+  }
+
+  public void flush() {
+    if (pending == 0) {
+      return;
+    }
+    try {
+      stmt.executeBatch();
+      pending = 0;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to insert in DUPLICATIONS_INDEX", e);
+    }
+  }
+
+  /**
+   * Flushes the pending rows and releases the JDBC statement. The connection of the session is not closed.
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      DatabaseUtils.closeQuietly(stmt);
+    }
+  }
+}
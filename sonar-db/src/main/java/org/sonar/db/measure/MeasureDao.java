@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
@@ -44,6 +45,25 @@ public class MeasureDao implements Dao {
     return mapper(session).selectByComponentAndMetric(componentKey, metricKey);
   }
 
+  /**
+   * Selects the measures of the last snapshot of the specified components for the specified metrics. Measures on
+   * rules and on developers are excluded. Each row has {@link MeasureDto#getComponentKey()} and
+   * {@link MeasureDto#getMetricKey()} set.
+   */
+  public List<MeasureDto> selectByComponentKeysAndMetricKeys(final DbSession session, Collection<String> componentKeys, final Collection<String> metricKeys) {
+    return DatabaseUtils.executeLargeInputs(componentKeys, new Function<List<String>, List<MeasureDto>>() {
+      @Override
+      public List<MeasureDto> apply(@Nonnull final List<String> componentKeysPartition) {
+        return DatabaseUtils.executeLargeInputs(metricKeys, new Function<List<String>, List<MeasureDto>>() {
+          @Override
+          public List<MeasureDto> apply(@Nonnull List<String> metricKeysPartition) {
+            return mapper(session).selectByComponentsAndMetrics(componentKeysPartition, metricKeysPartition);
+          }
+        });
+      }
+    });
+  }
+
   public List<MeasureDto> selectByComponentKeyAndMetricKeys(final DbSession session, final String componentKey, List<String> metricKeys) {
     return DatabaseUtils.executeLargeInputs(metricKeys, new Function<List<String>, List<MeasureDto>>() {
       @Override
@@ -79,6 +99,21 @@ public class MeasureDao implements Dao {
     });
   }
 
+  /**
+   * Streams to the specified {@link ResultHandler} the {@link PastMeasureDto} of all the components of the project
+   * snapshot with the specified id. Each row has {@link PastMeasureDto#getComponentUuid()} set.
+   */
+  public void selectByProjectSnapshotIdAndMetricIds(final DbSession session, final long projectSnapshotId, Set<Integer> metricIds,
+    final ResultHandler resultHandler) {
+    DatabaseUtils.executeLargeInputsWithoutOutput(metricIds, new Function<List<Integer>, Void>() {
+      @Override
+      public Void apply(@Nonnull List<Integer> ids) {
+        mapper(session).selectByProjectSnapshotIdAndStatusAndMetricIds(projectSnapshotId, ids, SnapshotDto.STATUS_PROCESSED, resultHandler);
+        return null;
+      }
+    });
+  }
+
   /**
    * Used by plugin Developer Cockpit
    */
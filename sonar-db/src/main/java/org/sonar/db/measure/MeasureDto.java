@@ -49,6 +49,8 @@ public class MeasureDto {
 
   // TODO to delete – not in db
   private String metricKey;
+  // not in db
+  private String componentKey;
 
   public Long getId() {
     return id;
@@ -219,6 +221,19 @@ public class MeasureDto {
     return this;
   }
 
+  /**
+   * Only set by {@link MeasureDao#selectByComponentKeysAndMetricKeys(org.sonar.db.DbSession, java.util.Collection, java.util.Collection)}
+   */
+  @CheckForNull
+  public String getComponentKey() {
+    return componentKey;
+  }
+
+  public MeasureDto setComponentKey(@Nullable String componentKey) {
+    this.componentKey = componentKey;
+    return this;
+  }
+
   /**
    * @deprecated in 5.5. Does nothing. Kept for compatibility with developer cockpit plugin, version 1.10
    */
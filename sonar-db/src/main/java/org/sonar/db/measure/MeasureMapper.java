@@ -23,11 +23,14 @@ import java.util.Collection;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface MeasureMapper {
 
   MeasureDto selectByKey(@Param("componentKey") String componentKey, @Param("metricKey") String metricKey);
 
+  List<MeasureDto> selectByComponentsAndMetrics(@Param("componentKeys") List<String> componentKeys, @Param("metricKeys") List<String> metricKeys);
+
   List<MeasureDto> selectByComponentAndMetrics(@Param("componentKey") String componentKey, @Param("metricKeys") List<String> metricKeys);
 
   List<MeasureDto> selectBySnapshotAndMetricKeys(@Param("snapshotId") long snapshotId, @Param("metricKeys") List<String> metricKeys);
@@ -49,6 +52,9 @@ public interface MeasureMapper {
   List<PastMeasureDto> selectByComponentUuidAndProjectSnapshotIdAndStatusAndMetricIds(@Param("componentUuid") String componentuuid, @Param("rootSnapshotId") long rootSnapshotId,
     @Param("metricIds") List<Integer> metricIds, @Param("status") String status);
 
+  void selectByProjectSnapshotIdAndStatusAndMetricIds(@Param("rootSnapshotId") long rootSnapshotId, @Param("metricIds") List<Integer> metricIds,
+    @Param("status") String status, ResultHandler resultHandler);
+
   void insert(MeasureDto measureDto);
 
   List<String> selectMetricKeysForSnapshot(@Param("snapshotId") long snapshotId);
@@ -30,6 +30,7 @@ public class PastMeasureDto {
   private Integer metricId;
   private Integer ruleId;
   private Integer personId;
+  private String componentUuid;
 
   public Long getId() {
     return id;
@@ -82,4 +83,17 @@ public class PastMeasureDto {
     this.ruleId = ruleId;
     return this;
   }
+
+  /**
+   * Only set by {@link MeasureDao#selectByProjectSnapshotIdAndMetricIds(org.sonar.db.DbSession, long, java.util.Set, org.apache.ibatis.session.ResultHandler)}
+   */
+  @CheckForNull
+  public String getComponentUuid() {
+    return componentUuid;
+  }
+
+  public PastMeasureDto setComponentUuid(@Nullable String componentUuid) {
+    this.componentUuid = componentUuid;
+    return this;
+  }
 }
@@ -28,6 +28,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import javax.annotation.Nullable;
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.api.utils.System2;
 
 import static com.google.common.collect.FluentIterable.from;
 import static java.util.Arrays.asList;
@@ -40,6 +41,7 @@ class PurgeCommands {
   private final SqlSession session;
   private final PurgeMapper purgeMapper;
   private final PurgeProfiler profiler;
+  private final PurgeThrottle throttle;
   private final Function<PurgeSnapshotQuery, Iterable<Long>> purgeSnapshotQueryToSnapshotIds = new Function<PurgeSnapshotQuery, Iterable<Long>>() {
     @Nullable
     @Override
@@ -48,10 +50,15 @@ class PurgeCommands {
     }
   };
 
-  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler, PurgeThrottle throttle) {
     this.session = session;
     this.purgeMapper = purgeMapper;
     this.profiler = profiler;
+    this.throttle = throttle;
+  }
+
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+    this(session, purgeMapper, profiler, new PurgeThrottle(0, System2.INSTANCE));
   }
 
   @VisibleForTesting
@@ -78,84 +85,84 @@ class PurgeCommands {
 
     profiler.start("deleteResourceLinks (project_links)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
-      purgeMapper.deleteResourceLinks(componentUuidPartition);
+      deleted(purgeMapper.deleteResourceLinks(componentUuidPartition));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceProperties (properties)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResourceProperties(partResourceIds);
+      deleted(purgeMapper.deleteResourceProperties(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceIndex (resource_index)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResourceIndex(partResourceIds);
+      deleted(purgeMapper.deleteResourceIndex(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceGroupRoles (group_roles)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResourceGroupRoles(partResourceIds);
+      deleted(purgeMapper.deleteResourceGroupRoles(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceUserRoles (user_roles)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResourceUserRoles(partResourceIds);
+      deleted(purgeMapper.deleteResourceUserRoles(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceManualMeasures (manual_measures)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
-      purgeMapper.deleteResourceManualMeasures(componentUuidPartition);
+      deleted(purgeMapper.deleteResourceManualMeasures(componentUuidPartition));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteComponentIssueChanges (issue_changes)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
-      purgeMapper.deleteComponentIssueChanges(componentUuidPartition);
+      deleted(purgeMapper.deleteComponentIssueChanges(componentUuidPartition));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteComponentIssues (issues)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
-      purgeMapper.deleteComponentIssues(componentUuidPartition);
+      deleted(purgeMapper.deleteComponentIssues(componentUuidPartition));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceActionPlans (action_plans)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResourceActionPlans(partResourceIds);
+      deleted(purgeMapper.deleteResourceActionPlans(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteComponentEvents (events)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
-      purgeMapper.deleteComponentEvents(componentUuidPartition);
+      deleted(purgeMapper.deleteComponentEvents(componentUuidPartition));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteResource (projects)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteResource(partResourceIds);
+      deleted(purgeMapper.deleteResource(partResourceIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteAuthors (authors)");
     for (List<Long> partResourceIds : componentIdPartitions) {
-      purgeMapper.deleteAuthors(partResourceIds);
+      deleted(purgeMapper.deleteAuthors(partResourceIds));
     }
     session.commit();
     profiler.stop();
@@ -176,21 +183,21 @@ class PurgeCommands {
 
     profiler.start("deleteSnapshotEvents (events)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotEvents(partSnapshotIds);
+      deleted(purgeMapper.deleteSnapshotEvents(partSnapshotIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteSnapshotMeasures (project_measures)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
+      deleted(purgeMapper.deleteSnapshotMeasures(partSnapshotIds));
     }
     session.commit();
     profiler.stop();
 
     profiler.start("deleteSnapshot (snapshots)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshot(partSnapshotIds);
+      deleted(purgeMapper.deleteSnapshot(partSnapshotIds));
     }
     session.commit();
     profiler.stop();
@@ -212,7 +219,7 @@ class PurgeCommands {
     profiler.start("deleteSnapshotWastedMeasures (project_measures)");
     List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
+      deleted(purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData));
     }
     session.commit();
     profiler.stop();
@@ -228,7 +235,7 @@ class PurgeCommands {
   private void deleteSnapshotDuplications(Iterable<List<Long>> snapshotIdsPartition) {
     profiler.start("deleteSnapshotDuplications (duplications_index)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
+      deleted(purgeMapper.deleteSnapshotDuplications(partSnapshotIds));
     }
     session.commit();
     profiler.stop();
@@ -236,15 +243,30 @@ class PurgeCommands {
 
   public void deleteFileSources(String rootUuid) {
     profiler.start("deleteFileSources (file_sources)");
-    purgeMapper.deleteFileSourcesByProjectUuid(rootUuid);
+    deleted(purgeMapper.deleteFileSourcesByProjectUuid(rootUuid));
     session.commit();
     profiler.stop();
   }
 
   public void deleteCeActivity(String rootUuid) {
     profiler.start("deleteCeActivity (ce_activity)");
-    purgeMapper.deleteCeActivityByProjectUuid(rootUuid);
+    deleted(purgeMapper.deleteCeActivityByProjectUuid(rootUuid));
     session.commit();
     profiler.stop();
   }
+
+  /**
+   * Records the rows deleted by the last statement and, when the throttling is enabled, pauses once
+   * the limit of rows per second is reached. Deletions are committed before pausing, so that locks are
+   * not held and that the work already done is kept if the purge is interrupted or yields.
+   */
+  private void deleted(int rows) {
+    profiler.addRows(rows);
+    long pause = throttle.pauseFor(rows);
+    if (pause > 0L) {
+      session.commit();
+      throttle.yieldIfRequested();
+      throttle.pause(pause);
+    }
+  }
 }
@@ -70,8 +70,15 @@ public class PurgeDao implements Dao {
   }
 
   public void purge(DbSession session, PurgeConfiguration conf, PurgeListener listener, PurgeProfiler profiler) {
+    purge(session, conf, listener, profiler, PurgeYieldCondition.NEVER);
+  }
+
+  /**
+   * @throws PurgeYieldedException if the purge is throttled and stops because of {@code yieldCondition}
+   */
+  public void purge(DbSession session, PurgeConfiguration conf, PurgeListener listener, PurgeProfiler profiler, PurgeYieldCondition yieldCondition) {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
-    PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    PurgeCommands commands = new PurgeCommands(session, mapper, profiler, new PurgeThrottle(conf.maxRowsPerSecond(), system2, yieldCondition));
     List<ResourceDto> projects = getProjects(conf.rootProjectIdUuid().getId(), session);
     for (ResourceDto project : projects) {
       LOG.debug("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
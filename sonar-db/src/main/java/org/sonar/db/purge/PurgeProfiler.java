@@ -33,6 +33,7 @@ import org.sonar.api.utils.log.Logger;
 public class PurgeProfiler {
 
   private Map<String, Long> durations = new HashMap<>();
+  private Map<String, Long> rows = new HashMap<>();
   private long startTime;
   private String currentTable;
   private final Clock clock;
@@ -48,6 +49,7 @@ public class PurgeProfiler {
 
   public void reset() {
     durations.clear();
+    rows.clear();
   }
 
   void start(String table) {
@@ -65,6 +67,17 @@ public class PurgeProfiler {
     durations.put(currentTable, cumulatedDuration + (clock.now() - startTime));
   }
 
+  /**
+   * Adds rows deleted or updated by the current command. Negative counts, returned by JDBC
+   * batches, are ignored.
+   */
+  void addRows(int count) {
+    if (count > 0) {
+      Long cumulatedRows = rows.get(currentTable);
+      rows.put(currentTable, (cumulatedRows == null ? 0L : cumulatedRows) + count);
+    }
+  }
+
   public void dump(long totalTime, Logger logger) {
     List<Entry<String, Long>> data = new ArrayList<>(durations.entrySet());
     Collections.sort(data, new Comparator<Entry<String, Long>>() {
@@ -78,6 +91,10 @@ public class PurgeProfiler {
       StringBuilder sb = new StringBuilder();
       sb.append("   o ").append(entry.getKey()).append(": ").append(TimeUtils.formatDuration(entry.getValue()))
         .append(" (").append((int) (entry.getValue() / percent)).append("%)");
+      Long tableRows = rows.get(entry.getKey());
+      if (tableRows != null) {
+        sb.append(", ").append(tableRows).append(" rows");
+      }
       logger.info(sb.toString());
     }
   }
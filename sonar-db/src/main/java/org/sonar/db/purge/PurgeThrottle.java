@@ -0,0 +1,85 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.purge;
+
+import org.sonar.api.utils.System2;
+
+/**
+ * Limits the number of rows deleted per second by the purge. A limit lower or equal to zero
+ * disables the throttling. When throttled, the purge can be stopped by its {@link PurgeYieldCondition}.
+ */
+public class PurgeThrottle {
+
+  private final int maxRowsPerSecond;
+  private final System2 system2;
+  private final PurgeYieldCondition yieldCondition;
+  private long windowStart = -1L;
+  private long rowsInWindow = 0L;
+
+  public PurgeThrottle(int maxRowsPerSecond, System2 system2) {
+    this(maxRowsPerSecond, system2, PurgeYieldCondition.NEVER);
+  }
+
+  public PurgeThrottle(int maxRowsPerSecond, System2 system2, PurgeYieldCondition yieldCondition) {
+    this.maxRowsPerSecond = maxRowsPerSecond;
+    this.system2 = system2;
+    this.yieldCondition = yieldCondition;
+  }
+
+  public boolean isEnabled() {
+    return maxRowsPerSecond > 0;
+  }
+
+  /**
+   * Records that {@code rows} rows have been deleted and returns the number of milliseconds to wait
+   * before deleting other rows, so that the limit is respected.
+   */
+  long pauseFor(int rows) {
+    if (!isEnabled() || rows <= 0) {
+      return 0L;
+    }
+    long now = system2.now();
+    if (windowStart < 0 || now - windowStart >= 1000L) {
+      windowStart = now;
+      rowsInWindow = 0L;
+    }
+    rowsInWindow += rows;
+    long expectedDuration = rowsInWindow * 1000L / maxRowsPerSecond;
+    return Math.max(0L, expectedDuration - (now - windowStart));
+  }
+
+  /**
+   * @throws PurgeYieldedException if the purge must stop
+   */
+  void yieldIfRequested() {
+    if (yieldCondition.shouldYield()) {
+      throw new PurgeYieldedException();
+    }
+  }
+
+  void pause(long durationMs) {
+    try {
+      Thread.sleep(durationMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Purge has been interrupted", e);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.purge;
+
+/**
+ * Lets the caller of a throttled purge (see {@link PurgeConfiguration#maxRowsPerSecond()}) stop it before its
+ * completion, for example when other tasks wait for the same project. As the purge is resumable, the remaining
+ * deletions are done by a next purge.
+ */
+public interface PurgeYieldCondition {
+
+  PurgeYieldCondition NEVER = new PurgeYieldCondition() {
+    @Override
+    public boolean shouldYield() {
+      return false;
+    }
+  };
+
+  /**
+   * Called each time the throttled purge pauses, once the deletions done so far are committed.
+   * When {@code true} is returned, the purge stops by throwing {@link PurgeYieldedException}.
+   */
+  boolean shouldYield();
+}
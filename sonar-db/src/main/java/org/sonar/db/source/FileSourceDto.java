@@ -87,8 +87,7 @@ public class FileSourceDto {
   }
 
   public static DbFileSources.Data decodeSourceData(byte[] binaryData) {
-    // stream is always closed
-    return decodeSourceData(new ByteArrayInputStream(binaryData));
+    return SourceLineBlocks.parse(binaryData).decodeAll();
   }
 
   /**
@@ -96,33 +95,21 @@ public class FileSourceDto {
    * The parameter "input" is always closed by this method.
    */
   public static DbFileSources.Data decodeSourceData(InputStream binaryInput) {
-    LZ4BlockInputStream lz4Input = null;
     try {
-      lz4Input = new LZ4BlockInputStream(binaryInput);
-      return DbFileSources.Data.parseFrom(lz4Input);
+      return decodeSourceData(IOUtils.toByteArray(binaryInput));
     } catch (IOException e) {
       throw new IllegalStateException("Fail to decompress and deserialize source data", e);
     } finally {
-      IOUtils.closeQuietly(lz4Input);
+      IOUtils.closeQuietly(binaryInput);
     }
   }
 
   /**
    * Serialize and compress protobuf message {@link org.sonar.db.protobuf.DbFileSources.Data}
-   * in the column BINARY_DATA.
+   * in the column BINARY_DATA. Lines are stored by blocks, see {@link SourceLineBlocks}.
    */
   public static byte[] encodeSourceData(DbFileSources.Data data) {
-    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
-    try {
-      data.writeTo(compressedOutput);
-      compressedOutput.close();
-      return byteOutput.toByteArray();
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to serialize and compress source data", e);
-    } finally {
-      IOUtils.closeQuietly(compressedOutput);
-    }
+    return SourceLineBlocks.encode(data);
   }
 
   public static List<DbFileSources.Test> decodeTestData(byte[] binaryData) {
@@ -0,0 +1,219 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.sonar.db.protobuf.DbFileSources;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Content of column FILE_SOURCES.BINARY_DATA of sources, split in blocks of consecutive lines which are
+ * compressed independently, so that a range of lines can be read without decompressing the whole file.
+ * <p/>
+ * Format is:
+ * <ul>
+ *   <li>the magic header {@code SQLINES1}</li>
+ *   <li>the number of blocks, then for each block the first line, the last line and the size of the block</li>
+ *   <li>the blocks, each one being a LZ4-compressed {@link DbFileSources.Data}</li>
+ * </ul>
+ * Values without the magic header are the former format, a single LZ4-compressed {@link DbFileSources.Data}.
+ * They are read as a single block covering all lines.
+ */
+public class SourceLineBlocks {
+
+  public static final int LINES_PER_BLOCK = 500;
+
+  private static final byte[] MAGIC = "SQLINES1".getBytes(StandardCharsets.US_ASCII);
+  private static final int BLOCK_HEADER_SIZE = 3 * 4;
+
+  private final byte[] binaryData;
+  private final int[] firstLines;
+  private final int[] lastLines;
+  private final int[] offsets;
+  private final int[] lengths;
+
+  private SourceLineBlocks(byte[] binaryData, int[] firstLines, int[] lastLines, int[] offsets, int[] lengths) {
+    this.binaryData = binaryData;
+    this.firstLines = firstLines;
+    this.lastLines = lastLines;
+    this.offsets = offsets;
+    this.lengths = lengths;
+  }
+
+  /**
+   * Reads the index of blocks. Blocks are not decompressed.
+   */
+  public static SourceLineBlocks parse(byte[] binaryData) {
+    if (!isBlockFormat(binaryData)) {
+      return new SourceLineBlocks(binaryData, new int[] {1}, new int[] {Integer.MAX_VALUE}, new int[] {0}, new int[] {binaryData.length});
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(binaryData);
+    buffer.position(MAGIC.length);
+    int count = buffer.getInt();
+    int[] firstLines = new int[count];
+    int[] lastLines = new int[count];
+    int[] offsets = new int[count];
+    int[] lengths = new int[count];
+    int offset = MAGIC.length + 4 + count * BLOCK_HEADER_SIZE;
+    for (int i = 0; i < count; i++) {
+      firstLines[i] = buffer.getInt();
+      lastLines[i] = buffer.getInt();
+      lengths[i] = buffer.getInt();
+      offsets[i] = offset;
+      offset += lengths[i];
+    }
+    checkArgument(offset == binaryData.length, "Corrupted source data: %s bytes expected, got %s", offset, binaryData.length);
+    return new SourceLineBlocks(binaryData, firstLines, lastLines, offsets, lengths);
+  }
+
+  static boolean isBlockFormat(byte[] binaryData) {
+    return binaryData.length >= MAGIC.length && Arrays.equals(MAGIC, Arrays.copyOf(binaryData, MAGIC.length));
+  }
+
+  /**
+   * Serialize and compress the lines by blocks of {@link #LINES_PER_BLOCK} lines.
+   */
+  public static byte[] encode(DbFileSources.Data data) {
+    return encode(data, LINES_PER_BLOCK);
+  }
+
+  static byte[] encode(DbFileSources.Data data, int linesPerBlock) {
+    checkArgument(linesPerBlock > 0, "Number of lines per block must be strictly positive");
+    List<DbFileSources.Line> lines = data.getLinesList();
+    int count = (lines.size() + linesPerBlock - 1) / linesPerBlock;
+    byte[][] blocks = new byte[count][];
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      DataOutputStream header = new DataOutputStream(output);
+      header.write(MAGIC);
+      header.writeInt(count);
+      for (int i = 0; i < count; i++) {
+        int start = i * linesPerBlock;
+        int end = Math.min(lines.size(), start + linesPerBlock);
+        List<DbFileSources.Line> blockLines = lines.subList(start, end);
+        blocks[i] = compress(DbFileSources.Data.newBuilder().addAllLines(blockLines).build());
+        header.writeInt(lineOf(blockLines.get(0), start));
+        header.writeInt(lineOf(blockLines.get(blockLines.size() - 1), end - 1));
+        header.writeInt(blocks[i].length);
+      }
+      for (byte[] block : blocks) {
+        header.write(block);
+      }
+      header.flush();
+      return output.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to serialize and compress source data", e);
+    }
+  }
+
+  private static int lineOf(DbFileSources.Line line, int index) {
+    return line.hasLine() ? line.getLine() : (index + 1);
+  }
+
+  private static byte[] compress(DbFileSources.Data data) throws IOException {
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
+    try {
+      data.writeTo(compressedOutput);
+      compressedOutput.close();
+      return byteOutput.toByteArray();
+    } finally {
+      IOUtils.closeQuietly(compressedOutput);
+    }
+  }
+
+  public int size() {
+    return firstLines.length;
+  }
+
+  /**
+   * Whether data has been stored before lines were split into blocks. All its lines, whatever
+   * their number, are then in a single block.
+   */
+  public boolean isLegacyFormat() {
+    return size() == 1 && lastLines[0] == Integer.MAX_VALUE;
+  }
+
+  /**
+   * Index of the first block containing lines greater than or equal to {@code line}, or {@link #size()}
+   * if there is no such block.
+   */
+  public int blockIndexOf(int line) {
+    int low = 0;
+    int high = lastLines.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (lastLines[mid] < line) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  public int firstLine(int blockIndex) {
+    return firstLines[blockIndex];
+  }
+
+  public int lastLine(int blockIndex) {
+    return lastLines[blockIndex];
+  }
+
+  /**
+   * Decompresses and deserializes a single block.
+   */
+  public DbFileSources.Data decode(int blockIndex) {
+    LZ4BlockInputStream lz4Input = null;
+    try {
+      lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData, offsets[blockIndex], lengths[blockIndex]));
+      return DbFileSources.Data.parseFrom(lz4Input);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decompress and deserialize source data", e);
+    } finally {
+      IOUtils.closeQuietly(lz4Input);
+    }
+  }
+
+  /**
+   * Decompresses and deserializes all the blocks.
+   */
+  public DbFileSources.Data decodeAll() {
+    if (size() == 1) {
+      return decode(0);
+    }
+    DbFileSources.Data.Builder builder = DbFileSources.Data.newBuilder();
+    for (int i = 0; i < size(); i++) {
+      builder.addAllLines(decode(i).getLinesList());
+    }
+    return builder.build();
+  }
+}
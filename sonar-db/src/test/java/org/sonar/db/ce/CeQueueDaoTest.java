@@ -29,6 +29,7 @@ import java.util.Map;
 import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.sonar.api.utils.Paging;
 import org.sonar.api.utils.internal.TestSystem2;
 import org.sonar.db.DbTester;
@@ -53,6 +54,8 @@ public class CeQueueDaoTest {
 
   @Rule
   public DbTester db = DbTester.create(system2);
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
 
   private CeQueueDao underTest = new CeQueueDao(system2);
   public static final String SELECT_QUEUE_UUID_AND_STATUS_QUERY = "select uuid,status from ce_queue";
@@ -125,6 +128,19 @@ public class CeQueueDaoTest {
     verifyCeQueueStatuses(TASK_UUID_1, PENDING, TASK_UUID_2, PENDING, TASK_UUID_3, PENDING);
   }
 
+  @Test
+  public void test_resetToPendingStatus() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, IN_PROGRESS);
+
+    assertThat(underTest.resetToPendingStatus(db.getSession(), TASK_UUID_1)).isFalse();
+    assertThat(underTest.resetToPendingStatus(db.getSession(), TASK_UUID_2)).isTrue();
+    db.getSession().commit();
+
+    verifyCeQueueStatuses(TASK_UUID_1, PENDING, TASK_UUID_2, PENDING);
+    assertThat(underTest.selectByUuid(db.getSession(), TASK_UUID_2).get().getStartedAt()).isNull();
+  }
+
   @Test
   public void peek_none_if_no_pendings() throws Exception {
     assertThat(underTest.peek(db.getSession()).isPresent()).isFalse();
@@ -183,6 +199,61 @@ public class CeQueueDaoTest {
     assertThat(peek.get().getUuid()).isEqualTo(TASK_UUID_2);
   }
 
+  @Test
+  public void peek_multiple_tasks_returns_oldest_pending_first_up_to_max_count() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 3_000_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_2, PENDING);
+    system2.setNow(INIT_TIME + 6_000_000);
+    insert(TASK_UUID_3, "PROJECT_3", PENDING);
+
+    List<CeQueueDto> peeked = underTest.peek(db.getSession(), 2);
+
+    assertThat(peeked).extracting("uuid").containsExactly(TASK_UUID_1, TASK_UUID_2);
+    assertThat(peeked).extracting("status").containsOnly(IN_PROGRESS);
+    verifyCeQueueStatuses(TASK_UUID_1, IN_PROGRESS, TASK_UUID_2, IN_PROGRESS, TASK_UUID_3, PENDING);
+
+    assertThat(underTest.peek(db.getSession(), 2)).extracting("uuid").containsExactly(TASK_UUID_3);
+    assertThat(underTest.peek(db.getSession(), 2)).isEmpty();
+  }
+
+  @Test
+  public void peek_multiple_tasks_does_not_return_more_than_one_task_per_project() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 3_000_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 6_000_000);
+    insert(TASK_UUID_3, COMPONENT_UUID_2, PENDING);
+
+    List<CeQueueDto> peeked = underTest.peek(db.getSession(), 3);
+
+    assertThat(peeked).extracting("uuid").containsExactly(TASK_UUID_1, TASK_UUID_3);
+    verifyCeQueueStatuses(TASK_UUID_1, IN_PROGRESS, TASK_UUID_2, PENDING, TASK_UUID_3, IN_PROGRESS);
+  }
+
+  @Test
+  public void peek_purge_tasks_after_other_pending_tasks() throws Exception {
+    CeQueueDto purge = new CeQueueDto();
+    purge.setUuid(TASK_UUID_1);
+    purge.setTaskType(CeTaskTypes.PURGE);
+    purge.setComponentUuid(COMPONENT_UUID_1);
+    purge.setStatus(PENDING);
+    insert(purge);
+    system2.setNow(INIT_TIME + 3_000_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_2, PENDING);
+
+    assertThat(underTest.peek(db.getSession(), 1)).extracting("uuid").containsExactly(TASK_UUID_2);
+    assertThat(underTest.peek(db.getSession(), 1)).extracting("uuid").containsExactly(TASK_UUID_1);
+  }
+
+  @Test
+  public void peek_multiple_tasks_fails_if_max_count_is_not_strictly_positive() throws Exception {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Max number of tasks to peek must be strictly positive");
+
+    underTest.peek(db.getSession(), 0);
+  }
+
   @Test
   public void select_by_query() {
     // task status not in query
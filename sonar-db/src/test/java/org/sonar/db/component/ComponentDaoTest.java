@@ -20,8 +20,11 @@
 package org.sonar.db.component;
 
 import com.google.common.base.Optional;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -31,6 +34,7 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 import org.sonar.db.RowNotFoundException;
+import org.sonar.db.measure.MeasureDto;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
@@ -49,6 +53,8 @@ import static org.sonar.db.component.ComponentTesting.newView;
 
 public class ComponentDaoTest {
 
+  private static final int SORT_METRIC_ID = 42;
+
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
@@ -916,6 +922,85 @@ public class ComponentDaoTest {
     assertThat(result).extracting("uuid").containsExactly("file-uuid-6", "file-uuid-5", "file-uuid-4");
   }
 
+  @Test
+  public void select_all_children_with_measure_sorted_by_value() {
+    ComponentDto project = newProjectDto().setKey("project-key").setUuid("project-uuid");
+    SnapshotDto projectSnapshot = componentDb.insertProjectAndSnapshot(project);
+    SnapshotDto moduleSnapshot = componentDb.insertComponentAndSnapshot(newModuleDto("module-1-uuid", project), projectSnapshot);
+    SnapshotDto file1Snapshot = componentDb.insertComponentAndSnapshot(newFileDto(project, "file-1-uuid").setName("file-1"), projectSnapshot);
+    SnapshotDto file2Snapshot = componentDb.insertComponentAndSnapshot(newFileDto(project, "file-2-uuid").setName("file-2"), moduleSnapshot);
+    componentDb.insertComponentAndSnapshot(newFileDto(project, "file-3-uuid").setName("file-3"), moduleSnapshot);
+    insertMeasure(file1Snapshot, SORT_METRIC_ID, 10d);
+    insertMeasure(file2Snapshot, SORT_METRIC_ID, 20d);
+    insertMeasure(file1Snapshot, SORT_METRIC_ID + 1, 30d);
+    insertMeasure(moduleSnapshot, SORT_METRIC_ID, 30d);
+    db.commit();
+    componentDb.indexProjects();
+
+    ComponentTreeQuery query = newTreeQuery(projectSnapshot)
+      .setSortMetricId(SORT_METRIC_ID)
+      .setSortByMetricValue(true)
+      .setAsc(false)
+      .build();
+    final List<ComponentDtoWithSnapshotIdAndMeasure> result = new ArrayList<>();
+    underTest.selectAllChildren(dbSession, query, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        result.add((ComponentDtoWithSnapshotIdAndMeasure) context.getResultObject());
+      }
+    });
+
+    assertThat(result).extracting("uuid").containsExactly("module-1-uuid", "file-2-uuid", "file-1-uuid", "file-3-uuid");
+    assertThat(result).extracting("measureValue").containsExactly(30d, 20d, 10d, null);
+    assertThat(result.get(3).hasMeasure()).isFalse();
+    assertThat(result.get(0).getSnapshotId()).isEqualTo(moduleSnapshot.getId());
+  }
+
+  @Test
+  public void stop_reading_direct_children_with_measure() {
+    ComponentDto project = newProjectDto().setKey("project-key").setUuid("project-uuid");
+    SnapshotDto projectSnapshot = componentDb.insertProjectAndSnapshot(project);
+    for (int i = 1; i <= 5; i++) {
+      SnapshotDto fileSnapshot = componentDb.insertComponentAndSnapshot(newFileDto(project, "file-" + i + "-uuid").setName("file-" + i), projectSnapshot);
+      insertMeasure(fileSnapshot, SORT_METRIC_ID, (double) i);
+    }
+    db.commit();
+    componentDb.indexProjects();
+
+    ComponentTreeQuery query = newTreeQuery(projectSnapshot)
+      .setSortMetricId(SORT_METRIC_ID)
+      .setSortByMetricValue(true)
+      .build();
+    final List<ComponentDtoWithSnapshotIdAndMeasure> result = new ArrayList<>();
+    underTest.selectDirectChildren(dbSession, query, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        result.add((ComponentDtoWithSnapshotIdAndMeasure) context.getResultObject());
+        if (result.size() == 2) {
+          context.stop();
+        }
+      }
+    });
+
+    assertThat(result).extracting("uuid").containsExactly("file-1-uuid", "file-2-uuid");
+  }
+
+  @Test
+  public void fail_to_sort_by_measure_value_without_metric() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Metric is required to sort by measure value");
+
+    newTreeQuery(new SnapshotDto().setId(1L)).setSortByMetricValue(true).build();
+  }
+
+  private void insertMeasure(SnapshotDto snapshot, int metricId, double value) {
+    db.getDbClient().measureDao().insert(dbSession, new MeasureDto()
+      .setMetricId(metricId)
+      .setComponentId(snapshot.getComponentId())
+      .setSnapshotId(snapshot.getId())
+      .setValue(value));
+  }
+
   private static ComponentTreeQuery.Builder newTreeQuery(SnapshotDto baseSnapshot) {
     return ComponentTreeQuery.builder()
       .setPage(1)
@@ -19,7 +19,10 @@
  */
 package org.sonar.db.duplication;
 
+import java.util.ArrayList;
 import java.util.List;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.System2;
@@ -59,6 +62,24 @@ public class DuplicationDaoTest {
     assertThat(blocks).hasSize(2);
   }
 
+  @Test
+  public void select_candidates_with_handler() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    final List<DuplicationUnitDto> blocks = new ArrayList<>();
+    dao.selectCandidates(dbSession, 7L, "java", singletonList("aa"), new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        blocks.add((DuplicationUnitDto) context.getResultObject());
+      }
+    });
+
+    assertThat(blocks).hasSize(1);
+    assertThat(blocks.get(0).getComponentKey()).isEqualTo("bar-last");
+    assertThat(blocks.get(0).getHash()).isEqualTo("aa");
+  }
+
   @Test
   public void insert() {
     db.prepareDbUnit(getClass(), "insert.xml");
@@ -76,4 +97,45 @@ public class DuplicationDaoTest {
     db.assertDbUnit(getClass(), "insert-result.xml", "duplications_index");
   }
 
+  @Test
+  public void insert_with_writer() {
+    db.prepareDbUnit(getClass(), "insert.xml");
+    dbSession.commit();
+
+    DuplicationUnitWriter writer = dao.newWriter(dbSession);
+    writer.append(new DuplicationUnitDto()
+      .setProjectSnapshotId(1)
+      .setSnapshotId(2)
+      .setHash("bb")
+      .setIndexInFile(0)
+      .setStartLine(1)
+      .setEndLine(2));
+    writer.close();
+    dbSession.commit(true);
+
+    db.assertDbUnit(getClass(), "insert-result.xml", "duplications_index");
+  }
+
+  @Test
+  public void insert_more_rows_than_batch_size_with_writer() {
+    db.prepareDbUnit(getClass(), "insert.xml");
+    dbSession.commit();
+
+    DuplicationUnitWriter writer = dao.newWriter(dbSession);
+    int count = DuplicationUnitWriter.BATCH_SIZE * 2 + 10;
+    for (int i = 0; i < count; i++) {
+      writer.append(new DuplicationUnitDto()
+        .setProjectSnapshotId(1)
+        .setSnapshotId(2)
+        .setHash("h" + i)
+        .setIndexInFile(i)
+        .setStartLine(i)
+        .setEndLine(i + 1));
+    }
+    writer.close();
+    dbSession.commit(true);
+
+    assertThat(db.countRowsOfTable("duplications_index")).isEqualTo(count);
+  }
+
 }
@@ -25,10 +25,14 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.System2;
@@ -246,6 +250,70 @@ public class MeasureDaoTest {
     assertThat(measure1.getPersonId()).isNull();
   }
 
+  @Test
+  public void select_last_measures_by_component_keys_and_metric_keys() {
+    db.prepareDbUnit(getClass(), "select_by_component_keys_and_metric_keys.xml");
+
+    List<MeasureDto> measures = underTest.selectByComponentKeysAndMetricKeys(dbSession,
+      newArrayList("project", "project:org.foo", "project:org.foo.Bar", "other"), newArrayList("ncloc"));
+
+    // measures on other metric, on rule, on developer, of disabled component and of previous analysis are excluded
+    assertThat(measures).extracting("id").containsOnly(1L, 3L, 8L);
+    for (MeasureDto measure : measures) {
+      assertThat(measure.getMetricKey()).isEqualTo("ncloc");
+      if (measure.getId() == 3L) {
+        assertThat(measure.getComponentKey()).isEqualTo("project:org.foo");
+        assertThat(measure.getValue()).isEqualTo(20d);
+      }
+    }
+
+    measures = underTest.selectByComponentKeysAndMetricKeys(dbSession, newArrayList("project"), newArrayList("ncloc", "coverage", "unknown"));
+    assertThat(measures).extracting("id").containsOnly(1L, 2L);
+    assertThat(measures).extracting("componentKey").containsOnly("project");
+
+    assertThat(underTest.selectByComponentKeysAndMetricKeys(dbSession, Collections.<String>emptyList(), newArrayList("ncloc"))).isEmpty();
+  }
+
+  @Test
+  public void select_past_measures_of_all_components_by_root_snapshot_id_and_metric_ids() {
+    db.prepareDbUnit(getClass(), "past_measures.xml");
+
+    List<PastMeasureDto> measures = selectByProjectSnapshotIdAndMetricIds(1000L, ImmutableSet.of(1, 2));
+    Map<Long, PastMeasureDto> pastMeasuresById = pastMeasuresById(measures);
+    assertThat(pastMeasuresById.keySet()).containsOnly(1L, 2L, 3L, 4L, 5L, 6L);
+
+    PastMeasureDto projectMeasure = pastMeasuresById.get(1L);
+    assertThat(projectMeasure.getComponentUuid()).isEqualTo("ABCD");
+    assertThat(projectMeasure.getValue()).isEqualTo(60d);
+    assertThat(projectMeasure.getMetricId()).isEqualTo(1);
+    assertThat(pastMeasuresById.get(4L).getComponentUuid()).isEqualTo("BCDE");
+    assertThat(pastMeasuresById.get(6L).getComponentUuid()).isEqualTo("CDEF");
+
+    assertThat(pastMeasuresById(selectByProjectSnapshotIdAndMetricIds(1000L, ImmutableSet.of(2))).keySet()).containsOnly(2L, 4L, 6L);
+    assertThat(selectByProjectSnapshotIdAndMetricIds(987654L, ImmutableSet.of(1, 2))).isEmpty();
+    assertThat(selectByProjectSnapshotIdAndMetricIds(1000L, ImmutableSet.of(123, 456))).isEmpty();
+  }
+
+  @Test
+  public void select_past_measures_of_all_components_ignores_measures_with_person_id() {
+    db.prepareDbUnit(getClass(), "past_measures_with_person_id.xml");
+
+    List<PastMeasureDto> measures = selectByProjectSnapshotIdAndMetricIds(1000L, ImmutableSet.of(1));
+    assertThat(measures).hasSize(1);
+    assertThat(measures.get(0).getPersonId()).isNull();
+  }
+
+  private List<PastMeasureDto> selectByProjectSnapshotIdAndMetricIds(long projectSnapshotId, Set<Integer> metricIds) {
+    final List<PastMeasureDto> result = new ArrayList<>();
+    underTest.selectByProjectSnapshotIdAndMetricIds(dbSession, projectSnapshotId, metricIds, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext resultContext) {
+        result.add((PastMeasureDto) resultContext.getResultObject());
+      }
+    });
+    return result;
+  }
+
   @Test
   public void select_by_snapshot_and_metric_keys() throws Exception {
     db.prepareDbUnit(getClass(), "select_by_snapshot_and_metric_keys.xml");
@@ -27,6 +27,7 @@ import org.sonar.db.DbTester;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 
 public class PurgeCommandsTest {
@@ -48,6 +49,49 @@ public class PurgeCommandsTest {
     dbTester.assertDbUnit(getClass(), "shouldDeleteSnapshot-result.xml", "snapshots", "project_measures", "duplications_index", "events");
   }
 
+  @Test
+  public void pause_between_deletions_when_throttled() {
+    dbTester.prepareDbUnit(getClass(), "shouldDeleteSnapshot.xml");
+    final List<Long> pauses = newArrayList();
+    PurgeThrottle throttle = new PurgeThrottle(1, System2.INSTANCE) {
+      @Override
+      void pause(long durationMs) {
+        pauses.add(durationMs);
+      }
+    };
+
+    new PurgeCommands(dbTester.getSession(), dbTester.getSession().getMapper(PurgeMapper.class), profiler, throttle)
+      .deleteSnapshots(PurgeSnapshotQuery.create().setId(5L));
+
+    dbTester.assertDbUnit(getClass(), "shouldDeleteSnapshot-result.xml", "snapshots", "project_measures", "duplications_index", "events");
+    assertThat(pauses).isNotEmpty();
+  }
+
+  @Test
+  public void stop_when_throttled_purge_yields() {
+    dbTester.prepareDbUnit(getClass(), "shouldDeleteSnapshot.xml");
+    PurgeThrottle throttle = new PurgeThrottle(1, System2.INSTANCE, new PurgeYieldCondition() {
+      @Override
+      public boolean shouldYield() {
+        return true;
+      }
+    }) {
+      @Override
+      void pause(long durationMs) {
+        throw new IllegalStateException("purge must stop instead of pausing");
+      }
+    };
+
+    try {
+      new PurgeCommands(dbTester.getSession(), dbTester.getSession().getMapper(PurgeMapper.class), profiler, throttle)
+        .deleteSnapshots(PurgeSnapshotQuery.create().setId(5L));
+      fail();
+    } catch (PurgeYieldedException e) {
+      // the snapshot itself is deleted by the last statement, which is not reached
+      assertThat(dbTester.countRowsOfTable("snapshots")).isEqualTo(2);
+    }
+  }
+
   /**
    * Test that SQL queries execution do not fail with a huge number of parameter
    */
@@ -73,4 +73,13 @@ public class PurgeConfigurationTest {
 
     assertThat(underTest.scopesWithoutHistoricalData()).contains(Scopes.DIRECTORY, Scopes.FILE);
   }
+
+  @Test
+  public void max_rows_per_second_is_read_from_settings() {
+    Settings settings = new Settings();
+    assertThat(PurgeConfiguration.newDefaultPurgeConfiguration(settings, new IdUuidPair(42L, "any-uuid")).maxRowsPerSecond()).isEqualTo(0);
+
+    settings.setProperty(PurgeConstants.MAX_ROWS_PER_SECOND, 5000);
+    assertThat(PurgeConfiguration.newDefaultPurgeConfiguration(settings, new IdUuidPair(42L, "any-uuid")).maxRowsPerSecond()).isEqualTo(5000);
+  }
 }
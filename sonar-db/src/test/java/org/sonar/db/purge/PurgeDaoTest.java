@@ -215,6 +215,6 @@ public class PurgeDaoTest {
   }
 
   private static PurgeConfiguration newConfigurationWith30Days(System2 system2) {
-    return new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30, system2);
+    return new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30, 0, system2);
   }
 }
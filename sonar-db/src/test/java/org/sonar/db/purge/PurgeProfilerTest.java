@@ -24,6 +24,7 @@ import org.junit.Test;
 import org.sonar.api.utils.log.Logger;
 
 import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.endsWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -80,6 +81,28 @@ public class PurgeProfilerTest {
     verify(logger).info(contains("bar: 5ms"));
   }
 
+  @Test
+  public void dump_number_of_rows_per_table() {
+    profiler.start("foo");
+    clock.sleep(10);
+    profiler.addRows(100);
+    profiler.addRows(-2);
+    profiler.stop();
+
+    profiler.start("foo");
+    profiler.addRows(50);
+    clock.sleep(10);
+    profiler.stop();
+
+    profiler.start("bar");
+    clock.sleep(5);
+    profiler.stop();
+
+    profiler.dump(50, logger);
+    verify(logger).info(contains("foo: 20ms (40%), 150 rows"));
+    verify(logger).info(endsWith("bar: 5ms (10%)"));
+  }
+
   private class MockedClock extends PurgeProfiler.Clock {
     private long now = 0;
 
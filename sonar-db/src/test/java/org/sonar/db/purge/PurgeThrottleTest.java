@@ -0,0 +1,87 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.purge;
+
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PurgeThrottleTest {
+
+  private System2 system2 = mock(System2.class);
+
+  @Test
+  public void never_pause_when_disabled() {
+    PurgeThrottle underTest = new PurgeThrottle(0, system2);
+
+    assertThat(underTest.isEnabled()).isFalse();
+    assertThat(underTest.pauseFor(1_000_000)).isEqualTo(0L);
+  }
+
+  @Test
+  public void pause_when_more_rows_than_limit_are_deleted_within_a_second() {
+    PurgeThrottle underTest = new PurgeThrottle(100, system2);
+
+    assertThat(underTest.isEnabled()).isTrue();
+    assertThat(underTest.pauseFor(50)).isEqualTo(500L);
+    when(system2.now()).thenReturn(500L);
+    assertThat(underTest.pauseFor(50)).isEqualTo(500L);
+  }
+
+  @Test
+  public void do_not_pause_when_rows_are_deleted_slower_than_limit() {
+    PurgeThrottle underTest = new PurgeThrottle(100, system2);
+
+    assertThat(underTest.pauseFor(10)).isEqualTo(100L);
+    when(system2.now()).thenReturn(1_000L);
+    assertThat(underTest.pauseFor(10)).isEqualTo(100L);
+    when(system2.now()).thenReturn(1_900L);
+    assertThat(underTest.pauseFor(10)).isEqualTo(0L);
+  }
+
+  @Test
+  public void pause_proportionally_to_large_deletions() {
+    PurgeThrottle underTest = new PurgeThrottle(1_000, system2);
+
+    assertThat(underTest.pauseFor(20_000)).isEqualTo(20_000L);
+    when(system2.now()).thenReturn(20_000L);
+    assertThat(underTest.pauseFor(500)).isEqualTo(500L);
+  }
+
+  @Test
+  public void pause_sleeps_current_thread() {
+    PurgeThrottle underTest = new PurgeThrottle(1_000, system2);
+
+    long start = System.currentTimeMillis();
+    underTest.pause(20L);
+
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(20L);
+  }
+
+  @Test
+  public void ignore_negative_counts_of_batches() {
+    PurgeThrottle underTest = new PurgeThrottle(1, system2);
+
+    assertThat(underTest.pauseFor(-2)).isEqualTo(0L);
+  }
+}
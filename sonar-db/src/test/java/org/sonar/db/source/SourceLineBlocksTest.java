@@ -0,0 +1,103 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.junit.Test;
+import org.sonar.db.protobuf.DbFileSources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLineBlocksTest {
+
+  @Test
+  public void encode_and_decode_lines_by_blocks() {
+    DbFileSources.Data data = newData(12);
+
+    SourceLineBlocks underTest = SourceLineBlocks.parse(SourceLineBlocks.encode(data, 5));
+
+    assertThat(underTest.size()).isEqualTo(3);
+    assertThat(underTest.isLegacyFormat()).isFalse();
+    assertThat(underTest.firstLine(0)).isEqualTo(1);
+    assertThat(underTest.lastLine(0)).isEqualTo(5);
+    assertThat(underTest.firstLine(2)).isEqualTo(11);
+    assertThat(underTest.lastLine(2)).isEqualTo(12);
+    assertThat(underTest.decode(1).getLinesList()).extracting("line").containsExactly(6, 7, 8, 9, 10);
+    assertThat(underTest.decodeAll()).isEqualTo(data);
+  }
+
+  @Test
+  public void find_block_of_line() {
+    SourceLineBlocks underTest = SourceLineBlocks.parse(SourceLineBlocks.encode(newData(12), 5));
+
+    assertThat(underTest.blockIndexOf(1)).isEqualTo(0);
+    assertThat(underTest.blockIndexOf(5)).isEqualTo(0);
+    assertThat(underTest.blockIndexOf(6)).isEqualTo(1);
+    assertThat(underTest.blockIndexOf(12)).isEqualTo(2);
+    assertThat(underTest.blockIndexOf(13)).isEqualTo(3);
+  }
+
+  @Test
+  public void encode_empty_data() {
+    SourceLineBlocks underTest = SourceLineBlocks.parse(SourceLineBlocks.encode(DbFileSources.Data.getDefaultInstance()));
+
+    assertThat(underTest.size()).isEqualTo(0);
+    assertThat(underTest.blockIndexOf(1)).isEqualTo(0);
+    assertThat(underTest.decodeAll().getLinesCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_data_without_blocks_as_a_single_block() throws IOException {
+    DbFileSources.Data data = newData(3);
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
+    data.writeTo(compressedOutput);
+    compressedOutput.close();
+
+    SourceLineBlocks underTest = SourceLineBlocks.parse(byteOutput.toByteArray());
+
+    assertThat(underTest.size()).isEqualTo(1);
+    assertThat(underTest.isLegacyFormat()).isTrue();
+    assertThat(underTest.blockIndexOf(1000)).isEqualTo(0);
+    assertThat(underTest.decode(0)).isEqualTo(data);
+    assertThat(FileSourceDto.decodeSourceData(byteOutput.toByteArray())).isEqualTo(data);
+  }
+
+  @Test
+  public void file_source_dto_stores_lines_by_blocks() {
+    DbFileSources.Data data = newData(SourceLineBlocks.LINES_PER_BLOCK + 1);
+
+    FileSourceDto dto = new FileSourceDto().setSourceData(data);
+
+    assertThat(SourceLineBlocks.isBlockFormat(dto.getBinaryData())).isTrue();
+    assertThat(SourceLineBlocks.parse(dto.getBinaryData()).size()).isEqualTo(2);
+    assertThat(dto.getSourceData()).isEqualTo(data);
+  }
+
+  private static DbFileSources.Data newData(int lines) {
+    DbFileSources.Data.Builder builder = DbFileSources.Data.newBuilder();
+    for (int i = 1; i <= lines; i++) {
+      builder.addLinesBuilder().setLine(i).setSource("line " + i);
+    }
+    return builder.build();
+  }
+}
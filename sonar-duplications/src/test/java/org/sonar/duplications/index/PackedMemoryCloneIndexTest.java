@@ -28,6 +28,11 @@ import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -109,6 +114,48 @@ public class PackedMemoryCloneIndexTest {
     
   }
 
+  /**
+   * Given: sorted index.
+   * Expected: concurrent searches by hash return the same results as sequential ones.
+   */
+  @Test
+  public void concurrent_search_by_hash() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + i, i % 50));
+    }
+    index.iterator();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (int i = 0; i < 1000; i++) {
+              Collection<Block> blocks = index.getBySequenceHash(new ByteArray((long) (i % 60)));
+              int expected = i % 60 < 50 ? 20 : 0;
+              if (blocks.size() != expected) {
+                return false;
+              }
+              for (Block block : blocks) {
+                if (!block.getBlockHash().equals(new ByteArray((long) (i % 60)))) {
+                  return false;
+                }
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /**
    * Given: index with initial capacity 1.
    * Expected: size and capacity should be increased after insertion of two blocks.
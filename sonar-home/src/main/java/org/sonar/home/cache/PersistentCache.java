@@ -19,38 +19,55 @@
  */
 package org.sonar.home.cache;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-
+/**
+ * Cache of binary values on file system, shared by the processes using the same SonarQube user home.
+ * <p/>
+ * Each entry is an immutable file named by the hash of its key. Values are written to a temporary file that is then
+ * atomically renamed to the entry, so reads don't need any lock: they see either the previous or the new
+ * value. Only {@link #clean()} and {@link #clear()} take the {@link DirectoryLock}.
+ */
 public class PersistentCache {
   private static final char[] hexArray = "0123456789ABCDEF".toCharArray();
   private static final Charset ENCODING = StandardCharsets.UTF_8;
   private static final String DIGEST_ALGO = "MD5";
+  static final String TEMP_FILE_SUFFIX = ".tmp";
+  /**
+   * Writing a value takes far less than that, so older temporary files have been left by processes that died.
+   */
+  static final long TEMP_FILE_EXPIRE_DURATION = TimeUnit.MILLISECONDS.convert(1L, TimeUnit.HOURS);
 
   private final PersistentCacheInvalidation invalidation;
+  private final PersistentCacheInvalidation tempFileInvalidation;
   private final Logger logger;
   private final Path dir;
   private DirectoryLock lock;
 
   public PersistentCache(Path dir, PersistentCacheInvalidation invalidation, Logger logger, DirectoryLock lock) {
+    this(dir, invalidation, new TTLCacheInvalidation(TEMP_FILE_EXPIRE_DURATION), logger, lock);
+  }
+
+  PersistentCache(Path dir, PersistentCacheInvalidation invalidation, PersistentCacheInvalidation tempFileInvalidation, Logger logger,
+    DirectoryLock lock) {
     this.dir = dir;
     this.invalidation = invalidation;
+    this.tempFileInvalidation = tempFileInvalidation;
     this.logger = logger;
     this.lock = lock;
 
@@ -58,7 +75,7 @@ public class PersistentCache {
     logger.debug("cache: " + dir);
   }
 
-  public synchronized void reconfigure() {
+  public void reconfigure() {
     try {
       Files.createDirectories(dir);
     } catch (IOException e) {
@@ -71,7 +88,7 @@ public class PersistentCache {
   }
 
   @CheckForNull
-  public synchronized String getString(@Nonnull String obj) throws IOException {
+  public String getString(@Nonnull String obj) throws IOException {
     byte[] cached = get(obj);
 
     if (cached == null) {
@@ -81,67 +98,64 @@ public class PersistentCache {
     return new String(cached, ENCODING);
   }
 
+  /**
+   * Stream on the cached value. As entries are never modified in place, the stream is opened directly on the entry.
+   */
   @CheckForNull
-  public synchronized InputStream getStream(@Nonnull String obj) throws IOException {
-    String key = getKey(obj);
+  public InputStream getStream(@Nonnull String obj) throws IOException {
+    Path cachePath = getCacheEntryPath(getKey(obj));
 
-    try {
-      lock();
-      Path path = getCacheCopy(key);
-      if (path == null) {
-        return null;
-      }
-      return new DeleteFileOnCloseInputStream(new FileInputStream(path.toFile()), path);
+    if (!validateCacheEntry(cachePath)) {
+      return null;
+    }
 
-    } finally {
-      unlock();
+    try {
+      return Files.newInputStream(cachePath);
+    } catch (NoSuchFileException e) {
+      // entry deleted by a concurrent clean
+      return null;
     }
   }
 
   @CheckForNull
-  public synchronized byte[] get(@Nonnull String obj) throws IOException {
+  public byte[] get(@Nonnull String obj) throws IOException {
     String key = getKey(obj);
 
-    try {
-      lock();
-
-      byte[] cached = getCache(key);
-
-      if (cached != null) {
-        logger.debug("cache hit for " + obj + " -> " + key);
-        return cached;
-      }
+    byte[] cached = getCache(key);
 
-      logger.debug("cache miss for " + obj + " -> " + key);
-    } finally {
-      unlock();
+    if (cached != null) {
+      logger.debug("cache hit for " + obj + " -> " + key);
+      return cached;
     }
 
+    logger.debug("cache miss for " + obj + " -> " + key);
     return null;
   }
 
-  public synchronized void put(@Nonnull String obj, @Nonnull InputStream stream) throws IOException {
+  public void put(@Nonnull String obj, @Nonnull InputStream stream) throws IOException {
     String key = getKey(obj);
+    Path temp = createTempFile(key);
     try {
-      lock();
-      putCache(key, stream);
+      Files.copy(stream, temp, StandardCopyOption.REPLACE_EXISTING);
+      commit(temp, getCacheEntryPath(key));
     } finally {
-      unlock();
+      Files.deleteIfExists(temp);
     }
   }
 
-  public synchronized void put(@Nonnull String obj, @Nonnull byte[] value) throws IOException {
+  public void put(@Nonnull String obj, @Nonnull byte[] value) throws IOException {
     String key = getKey(obj);
+    Path temp = createTempFile(key);
     try {
-      lock();
-      putCache(key, value);
+      Files.write(temp, value);
+      commit(temp, getCacheEntryPath(key));
     } finally {
-      unlock();
+      Files.deleteIfExists(temp);
     }
   }
 
   /**
-   * Deletes all cache entries
+   * Deletes all cache entries. Values being written by other threads or processes are kept.
    */
   public synchronized void clear() {
     logger.info("cache: clearing");
@@ -157,6 +171,7 @@ public class PersistentCache {
 
   /**
    * Deletes cache entries that are no longer valid according to the default expiration time period.
+   * Temporary files left by processes that died while writing are deleted once older than {@link #TEMP_FILE_EXPIRE_DURATION}.
    */
   public synchronized void clean() {
     logger.info("cache: cleaning");
@@ -193,7 +208,7 @@ public class PersistentCache {
     try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, filter)) {
       for (Path p : stream) {
         try {
-          Files.delete(p);
+          Files.deleteIfExists(p);
         } catch (Exception e) {
           logger.error("Error deleting " + p, e);
         }
@@ -204,51 +219,64 @@ public class PersistentCache {
   private class DirectoryClearFilter implements DirectoryStream.Filter<Path> {
     @Override
     public boolean accept(Path entry) throws IOException {
-      return !lock.getFileLockName().equals(entry.getFileName().toString());
+      String fileName = entry.getFileName().toString();
+      return !lock.getFileLockName().equals(fileName) && !isTempFile(fileName);
     }
   }
 
   private class DirectoryCleanFilter implements DirectoryStream.Filter<Path> {
     @Override
     public boolean accept(Path entry) throws IOException {
-      if (lock.getFileLockName().equals(entry.getFileName().toString())) {
+      String fileName = entry.getFileName().toString();
+      if (lock.getFileLockName().equals(fileName)) {
         return false;
       }
 
-      return invalidation.test(entry);
+      try {
+        return isTempFile(fileName) ? tempFileInvalidation.test(entry) : invalidation.test(entry);
+      } catch (NoSuchFileException e) {
+        // temporary file renamed, or entry deleted by another process
+        return false;
+      }
     }
   }
 
-  private void putCache(String key, byte[] value) throws IOException {
-    Path cachePath = getCacheEntryPath(key);
-    Files.write(cachePath, value, CREATE, WRITE, TRUNCATE_EXISTING);
+  private static boolean isTempFile(String fileName) {
+    return fileName.endsWith(TEMP_FILE_SUFFIX);
   }
 
-  private void putCache(String key, InputStream stream) throws IOException {
-    Path cachePath = getCacheEntryPath(key);
-    Files.copy(stream, cachePath, StandardCopyOption.REPLACE_EXISTING);
+  private Path createTempFile(String key) throws IOException {
+    return Files.createTempFile(dir, key + ".", TEMP_FILE_SUFFIX);
   }
 
-  private byte[] getCache(String key) throws IOException {
-    Path cachePath = getCacheEntryPath(key);
-
-    if (!validateCacheEntry(cachePath)) {
-      return null;
+  /**
+   * Publishes the temporary file as the new value of the entry. Readers having opened the previous value keep reading it.
+   */
+  private void commit(Path temp, Path cachePath) throws IOException {
+    try {
+      Files.move(temp, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, cachePath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // on some file systems, an entry can't be replaced while it is being read. The value will be cached later.
+      logger.debug("cache: failed to write entry " + cachePath + ": " + e.getMessage());
     }
-
-    return Files.readAllBytes(cachePath);
   }
 
-  private Path getCacheCopy(String key) throws IOException {
+  @CheckForNull
+  private byte[] getCache(String key) throws IOException {
     Path cachePath = getCacheEntryPath(key);
 
     if (!validateCacheEntry(cachePath)) {
       return null;
     }
 
-    Path temp = Files.createTempFile("sonar_cache", null);
-    Files.copy(cachePath, temp, StandardCopyOption.REPLACE_EXISTING);
-    return temp;
+    try {
+      return Files.readAllBytes(cachePath);
+    } catch (NoSuchFileException e) {
+      // entry deleted by a concurrent clean
+      return null;
+    }
   }
 
   private boolean validateCacheEntry(Path cacheEntryPath) throws IOException {
@@ -256,9 +284,13 @@ public class PersistentCache {
       return false;
     }
 
-    if (invalidation.test(cacheEntryPath)) {
-      logger.debug("cache: evicting entry");
-      Files.delete(cacheEntryPath);
+    try {
+      if (invalidation.test(cacheEntryPath)) {
+        logger.debug("cache: evicting entry");
+        Files.deleteIfExists(cacheEntryPath);
+        return false;
+      }
+    } catch (NoSuchFileException e) {
       return false;
     }
 
@@ -27,11 +27,17 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.mockito.Matchers.any;
 
 import static org.mockito.Mockito.when;
-import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -125,6 +131,102 @@ public class PersistentCacheTest {
     assertCacheHit(true);
   }
 
+  @Test
+  public void reads_and_writes_do_not_lock_directory() throws Exception {
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+    assertCacheHit(true);
+    assertThat(IOUtils.toString(cache.getStream(URI))).isEqualTo(VALUE);
+
+    verify(lock, never()).lock();
+    // no temporary file is left
+    assertThat(tmp.getRoot().list()).hasSize(1);
+  }
+
+  @Test
+  public void put_replaces_value() throws Exception {
+    cache.put(URI, "old".getBytes(StandardCharsets.UTF_8));
+    InputStream previous = cache.getStream(URI);
+    cache.put(URI, IOUtils.toInputStream(VALUE, "UTF-8"));
+
+    assertCacheHit(true);
+    previous.close();
+  }
+
+  @Test
+  public void clear_keeps_values_being_written() throws Exception {
+    Path temp = tmp.getRoot().toPath().resolve("ABCD.123" + PersistentCache.TEMP_FILE_SUFFIX);
+    Files.write(temp, "test".getBytes(StandardCharsets.UTF_8));
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+
+    cache.clear();
+
+    assertCacheHit(false);
+    assertThat(temp).exists();
+  }
+
+  @Test
+  public void clean_deletes_expired_temporary_files() throws Exception {
+    Path expired = tmp.getRoot().toPath().resolve("ABCD.123" + PersistentCache.TEMP_FILE_SUFFIX);
+    Files.write(expired, "test".getBytes(StandardCharsets.UTF_8));
+    expired.toFile().setLastModified(System.currentTimeMillis() - PersistentCache.TEMP_FILE_EXPIRE_DURATION - 60_000L);
+    Path beingWritten = tmp.getRoot().toPath().resolve("ABCD.456" + PersistentCache.TEMP_FILE_SUFFIX);
+    Files.write(beingWritten, "test".getBytes(StandardCharsets.UTF_8));
+
+    cache.clean();
+
+    assertThat(expired).doesNotExist();
+    assertThat(beingWritten).exists();
+  }
+
+  @Test
+  public void clean_expires_temporary_files_independently_of_entries() throws Exception {
+    PersistentCacheInvalidation tempFileInvalidation = mock(PersistentCacheInvalidation.class);
+    cache = new PersistentCache(tmp.getRoot().toPath(), invalidation, tempFileInvalidation, mock(Logger.class), lock);
+    Path temp = tmp.getRoot().toPath().resolve("ABCD.123" + PersistentCache.TEMP_FILE_SUFFIX);
+    Files.write(temp, "test".getBytes(StandardCharsets.UTF_8));
+    when(tempFileInvalidation.test(temp)).thenReturn(true);
+    cache.put(URI, VALUE.getBytes(StandardCharsets.UTF_8));
+
+    cache.clean();
+
+    assertThat(temp).doesNotExist();
+    assertCacheHit(true);
+    verify(invalidation, never()).test(temp);
+  }
+
+  @Test
+  public void concurrent_reads_and_writes() throws Exception {
+    final String[] values = {"first value", "second value"};
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 200; j++) {
+              if (thread % 2 == 0) {
+                cache.put(URI, values[j % 2].getBytes(StandardCharsets.UTF_8));
+              } else {
+                String value = cache.getString(URI);
+                // never a partially written value
+                assertThat(value == null || value.equals(values[0]) || value.equals(values[1])).isTrue();
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(cache.getString(URI)).isIn(values[0], values[1]);
+  }
+
   @Test
   public void testExpiration() throws Exception {
     when(invalidation.test(any(Path.class))).thenReturn(true);
@@ -139,7 +241,6 @@ public class PersistentCacheTest {
   private void assertCacheHit(PersistentCache pCache, boolean hit) throws Exception {
     String expected = hit ? VALUE : null;
     assertThat(pCache.getString(URI)).isEqualTo(expected);
-    verify(lock, atLeast(1)).unlock();
   }
 
 }
@@ -19,29 +19,23 @@
  */
 package org.sonar.api.batch.fs.internal;
 
-import com.google.common.primitives.Ints;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.List;
-import javax.annotation.CheckForNull;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.input.BOMInputStream;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.utils.log.Logger;
@@ -58,6 +52,22 @@ public class FileMetadata {
 
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Byte order marks which are skipped at the beginning of files, longest first.
+   */
+  private static final byte[][] BOMS = {
+    // UTF-32LE
+    {(byte) 0xFF, (byte) 0xFE, 0x00, 0x00},
+    // UTF-32BE
+    {0x00, 0x00, (byte) 0xFE, (byte) 0xFF},
+    // UTF-8
+    {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+    // UTF-16LE
+    {(byte) 0xFF, (byte) 0xFE},
+    // UTF-16BE
+    {(byte) 0xFE, (byte) 0xFF}};
 
   public abstract static class CharHandler {
 
@@ -74,192 +84,273 @@ public class FileMetadata {
     }
   }
 
-  private static class LineCounter extends CharHandler {
-    private int lines = 1;
-    private int nonBlankLines = 0;
-    private boolean blankLine = true;
-    boolean alreadyLoggedInvalidCharacter = false;
-    private final File file;
-    private final Charset encoding;
+  /**
+   * Receives the chars of a file, in bulk
+   */
+  private interface CharsConsumer {
+    void process(char[] chars, int offset, int length);
 
-    LineCounter(File file, Charset encoding) {
-      this.file = file;
-      this.encoding = encoding;
-    }
+    void eof();
+  }
 
-    @Override
-    protected void handleAll(char c) {
-      if (!alreadyLoggedInvalidCharacter && c == '\ufffd') {
-        LOG.warn("Invalid character encountered in file {} at line {} for encoding {}. Please fix file content or configure the encoding to be used using property '{}'.", file,
-          lines, encoding, CoreProperties.ENCODING_PROPERTY);
-        alreadyLoggedInvalidCharacter = true;
-      }
-    }
+  /**
+   * Feeds {@link CharHandler}s one char at a time
+   */
+  private static class CharHandlers implements CharsConsumer {
+    private final CharHandler[] handlers;
+    private boolean afterCR = false;
 
-    @Override
-    protected void newLine() {
-      lines++;
-      if (!blankLine) {
-        nonBlankLines++;
-      }
-      blankLine = true;
+    CharHandlers(CharHandler... handlers) {
+      this.handlers = handlers;
     }
 
     @Override
-    protected void handleIgnoreEoL(char c) {
-      if (!Character.isWhitespace(c)) {
-        blankLine = false;
+    public void process(char[] chars, int offset, int length) {
+      for (int i = offset; i < offset + length; i++) {
+        char c = chars[i];
+        if (afterCR) {
+          for (CharHandler handler : handlers) {
+            if (c == CARRIAGE_RETURN) {
+              handler.newLine();
+              handler.handleAll(c);
+            } else if (c == LINE_FEED) {
+              handler.handleAll(c);
+              handler.newLine();
+            } else {
+              handler.newLine();
+              handler.handleIgnoreEoL(c);
+              handler.handleAll(c);
+            }
+          }
+          afterCR = c == CARRIAGE_RETURN;
+        } else if (c == LINE_FEED) {
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+            handler.newLine();
+          }
+        } else if (c == CARRIAGE_RETURN) {
+          afterCR = true;
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+          }
+        } else {
+          for (CharHandler handler : handlers) {
+            handler.handleIgnoreEoL(c);
+            handler.handleAll(c);
+          }
+        }
       }
     }
 
     @Override
-    protected void eof() {
-      if (!blankLine) {
-        nonBlankLines++;
+    public void eof() {
+      for (CharHandler handler : handlers) {
+        if (afterCR) {
+          handler.newLine();
+        }
+        handler.eof();
       }
     }
-
-    public int lines() {
-      return lines;
-    }
-
-    public int nonBlankLines() {
-      return nonBlankLines;
-    }
-
   }
 
-  private static class FileHashComputer extends CharHandler {
-    private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-    private StringBuilder sb = new StringBuilder();
-    private final CharsetEncoder encoder;
-    private final File file;
-
-    public FileHashComputer(File f) {
-      encoder = StandardCharsets.UTF_8.newEncoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
-      file = f;
-    }
-
-    @Override
-    protected void handleIgnoreEoL(char c) {
-      sb.append(c);
-    }
-
-    @Override
-    protected void newLine() {
-      sb.append(LINE_FEED);
-      processBuffer();
-      sb.setLength(0);
+  /**
+   * MD5 digest of chars encoded in UTF-8. Encoding is done in bulk and is equivalent to a
+   * {@link java.nio.charset.CharsetEncoder} replacing malformed surrogates by '?'.
+   */
+  private static class Utf8Digest {
+    private static final byte REPLACEMENT = '?';
+
+    private final MessageDigest md5 = DigestUtils.getMd5Digest();
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private char pendingHighSurrogate = 0;
+    private int chars = 0;
+
+    void append(char c) {
+      chars++;
+      if (position > bytes.length - 4) {
+        flush();
+      }
+      if (pendingHighSurrogate != 0) {
+        char high = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int codePoint = Character.toCodePoint(high, c);
+          bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+          bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+          return;
+        }
+        bytes[position++] = REPLACEMENT;
+        if (position > bytes.length - 4) {
+          flush();
+        }
+      }
+      if (c < 0x80) {
+        bytes[position++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xC0 | (c >> 6));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c)) {
+        pendingHighSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        bytes[position++] = REPLACEMENT;
+      } else {
+        bytes[position++] = (byte) (0xE0 | (c >> 12));
+        bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      }
     }
 
-    @Override
-    protected void eof() {
-      if (sb.length() > 0) {
-        processBuffer();
-      }
+    /**
+     * Number of chars appended since last call to {@link #digest()}
+     */
+    int chars() {
+      return chars;
     }
 
-    private void processBuffer() {
-      try {
-        if (sb.length() > 0) {
-          ByteBuffer encoded = encoder.encode(CharBuffer.wrap(sb));
-          globalMd5Digest.update(encoded.array(), 0, encoded.limit());
-        }
-      } catch (CharacterCodingException e) {
-        throw new IllegalStateException("Error encoding line hash in file: " + file.getAbsolutePath(), e);
+    private void flush() {
+      if (pendingHighSurrogate != 0) {
+        pendingHighSurrogate = 0;
+        bytes[position++] = REPLACEMENT;
       }
+      md5.update(bytes, 0, position);
+      position = 0;
     }
 
-    @CheckForNull
-    public String getHash() {
-      return Hex.encodeHexString(globalMd5Digest.digest());
+    byte[] digest() {
+      flush();
+      chars = 0;
+      return md5.digest();
     }
   }
 
-  private static class LineHashComputer extends CharHandler {
-    private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-    private final CharsetEncoder encoder;
-    private final StringBuilder sb = new StringBuilder();
-    private final LineHashConsumer consumer;
+  /**
+   * Computes in a single pass all the metadata of a file: lines, non-blank lines, line offsets, hash of
+   * file and optionally hashes of lines.
+   */
+  private static class MetadataComputer implements CharsConsumer {
     private final File file;
-    private int line = 1;
+    private final Charset encoding;
+    @Nullable
+    private final Utf8Digest fileHash;
+    @Nullable
+    private final Utf8Digest lineHash;
+    @Nullable
+    private final LineHashConsumer lineHashConsumer;
+
+    private boolean afterCR = false;
+    private int lines = 1;
+    private int nonBlankLines = 0;
+    private boolean blankLine = true;
+    private boolean alreadyLoggedInvalidCharacter = false;
+    private int currentOriginalOffset = 0;
+    private int[] originalLineOffsets = new int[64];
+    private int lastValidOffset = 0;
+    private byte[] hash;
 
-    public LineHashComputer(LineHashConsumer consumer, File f) {
-      this.consumer = consumer;
-      this.file = f;
-      this.encoder = StandardCharsets.UTF_8.newEncoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    MetadataComputer(File file, Charset encoding, boolean computeFileHash, @Nullable LineHashConsumer lineHashConsumer) {
+      this.file = file;
+      this.encoding = encoding;
+      this.fileHash = computeFileHash ? new Utf8Digest() : null;
+      this.lineHashConsumer = lineHashConsumer;
+      this.lineHash = lineHashConsumer != null ? new Utf8Digest() : null;
     }
 
     @Override
-    protected void handleIgnoreEoL(char c) {
-      if (!Character.isWhitespace(c)) {
-        sb.append(c);
+    public void process(char[] chars, int offset, int length) {
+      for (int i = offset; i < offset + length; i++) {
+        char c = chars[i];
+        if (afterCR) {
+          if (c == CARRIAGE_RETURN) {
+            newLine();
+            handleAll(c);
+          } else if (c == LINE_FEED) {
+            handleAll(c);
+            newLine();
+            afterCR = false;
+          } else {
+            newLine();
+            handleIgnoreEoL(c);
+            handleAll(c);
+            afterCR = false;
+          }
+        } else if (c == LINE_FEED) {
+          handleAll(c);
+          newLine();
+        } else if (c == CARRIAGE_RETURN) {
+          afterCR = true;
+          handleAll(c);
+        } else {
+          handleIgnoreEoL(c);
+          handleAll(c);
+        }
       }
     }
 
-    @Override
-    protected void newLine() {
-      processBuffer();
-      sb.setLength(0);
-      line++;
-    }
-
-    @Override
-    protected void eof() {
-      if (this.line > 0) {
-        processBuffer();
+    private void handleAll(char c) {
+      if (c == '\ufffd' && !alreadyLoggedInvalidCharacter) {
+        LOG.warn("Invalid character encountered in file {} at line {} for encoding {}. Please fix file content or configure the encoding to be used using property '{}'.", file,
+          lines, encoding, CoreProperties.ENCODING_PROPERTY);
+        alreadyLoggedInvalidCharacter = true;
       }
+      currentOriginalOffset++;
     }
 
-    private void processBuffer() {
-      try {
-        if (sb.length() > 0) {
-          ByteBuffer encoded = encoder.encode(CharBuffer.wrap(sb));
-          lineMd5Digest.update(encoded.array(), 0, encoded.limit());
-          consumer.consume(line, lineMd5Digest.digest());
+    private void handleIgnoreEoL(char c) {
+      boolean whitespace = Character.isWhitespace(c);
+      if (!whitespace) {
+        blankLine = false;
+        if (lineHash != null) {
+          lineHash.append(c);
         }
-      } catch (CharacterCodingException e) {
-        throw new IllegalStateException("Error encoding line hash in file: " + file.getAbsolutePath(), e);
       }
-    }
-  }
-
-  private static class LineOffsetCounter extends CharHandler {
-    private int currentOriginalOffset = 0;
-    private List<Integer> originalLineOffsets = new ArrayList<>();
-    private int lastValidOffset = 0;
-
-    public LineOffsetCounter() {
-      originalLineOffsets.add(0);
+      if (fileHash != null) {
+        fileHash.append(c);
+      }
     }
 
-    @Override
-    protected void handleAll(char c) {
-      currentOriginalOffset++;
+    private void newLine() {
+      if (lines == originalLineOffsets.length) {
+        originalLineOffsets = Arrays.copyOf(originalLineOffsets, lines * 2);
+      }
+      originalLineOffsets[lines] = currentOriginalOffset;
+      consumeLineHash();
+      lines++;
+      if (!blankLine) {
+        nonBlankLines++;
+      }
+      blankLine = true;
+      if (fileHash != null) {
+        fileHash.append(LINE_FEED);
+      }
     }
 
-    @Override
-    protected void newLine() {
-      originalLineOffsets.add(currentOriginalOffset);
+    private void consumeLineHash() {
+      if (lineHash != null && lineHash.chars() > 0) {
+        lineHashConsumer.consume(lines, lineHash.digest());
+      }
     }
 
     @Override
-    protected void eof() {
+    public void eof() {
+      if (afterCR) {
+        newLine();
+      }
+      consumeLineHash();
+      if (!blankLine) {
+        nonBlankLines++;
+      }
       lastValidOffset = currentOriginalOffset;
+      if (fileHash != null) {
+        hash = fileHash.digest();
+      }
     }
 
-    public List<Integer> getOriginalLineOffsets() {
-      return originalLineOffsets;
-    }
-
-    public int getLastValidOffset() {
-      return lastValidOffset;
+    Metadata toMetadata() {
+      return new Metadata(lines, nonBlankLines, Hex.encodeHexString(hash), Arrays.copyOf(originalLineOffsets, lines), lastValidOffset);
     }
-
   }
 
   /**
@@ -267,85 +358,108 @@ public class FileMetadata {
    * Maximum performance is needed.
    */
   public Metadata readMetadata(File file, Charset encoding) {
-    LineCounter lineCounter = new LineCounter(file, encoding);
-    FileHashComputer fileHashComputer = new FileHashComputer(file);
-    LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
-    readFile(file, encoding, lineCounter, fileHashComputer, lineOffsetCounter);
-    return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
-      lineOffsetCounter.getLastValidOffset());
+    MetadataComputer computer = new MetadataComputer(file, encoding, true, null);
+    readFile(file, encoding, computer);
+    return computer.toMetadata();
   }
 
   /**
    * For testing purpose
    */
   public Metadata readMetadata(Reader reader) {
-    LineCounter lineCounter = new LineCounter(new File("fromString"), StandardCharsets.UTF_16);
-    FileHashComputer fileHashComputer = new FileHashComputer(new File("fromString"));
-    LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
+    MetadataComputer computer = new MetadataComputer(new File("fromString"), StandardCharsets.UTF_16, true, null);
     try {
-      read(reader, lineCounter, fileHashComputer, lineOffsetCounter);
+      char[] chars = new char[BUFFER_SIZE];
+      int read;
+      while ((read = reader.read(chars)) != -1) {
+        computer.process(chars, 0, read);
+      }
     } catch (IOException e) {
       throw new IllegalStateException("Should never occurs", e);
     }
-    return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
-      lineOffsetCounter.getLastValidOffset());
+    computer.eof();
+    return computer.toMetadata();
   }
 
   public static void readFile(File file, Charset encoding, CharHandler... handlers) {
-    try (BOMInputStream bomIn = new BOMInputStream(new FileInputStream(file),
-      ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
-      Reader reader = new BufferedReader(new InputStreamReader(bomIn, encoding))) {
-      read(reader, handlers);
-    } catch (IOException e) {
-      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
-    }
+    readFile(file, encoding, new CharHandlers(handlers));
   }
 
-  private static void read(Reader reader, CharHandler... handlers) throws IOException {
-    char c;
-    int i = reader.read();
-    boolean afterCR = false;
-    while (i != -1) {
-      c = (char) i;
-      if (afterCR) {
-        for (CharHandler handler : handlers) {
-          if (c == CARRIAGE_RETURN) {
-            handler.newLine();
-            handler.handleAll(c);
-          } else if (c == LINE_FEED) {
-            handler.handleAll(c);
-            handler.newLine();
-          } else {
-            handler.newLine();
-            handler.handleIgnoreEoL(c);
-            handler.handleAll(c);
-          }
-        }
-        afterCR = c == CARRIAGE_RETURN;
-      } else if (c == LINE_FEED) {
-        for (CharHandler handler : handlers) {
-          handler.handleAll(c);
-          handler.newLine();
+  /**
+   * Decodes the file in bulk and feeds the consumer with the chars. Byte order marks are skipped.
+   */
+  private static void readFile(File file, Charset encoding, CharsConsumer consumer) {
+    try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+      CharsetDecoder decoder = encoding.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+      CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+      boolean endOfInput = readAtLeast(channel, bytes, 4);
+      bytes.flip();
+      skipBom(bytes);
+      while (true) {
+        CoderResult result = decoder.decode(bytes, chars, endOfInput);
+        if (result.isError()) {
+          result.throwException();
         }
-      } else if (c == CARRIAGE_RETURN) {
-        afterCR = true;
-        for (CharHandler handler : handlers) {
-          handler.handleAll(c);
+        drain(chars, consumer);
+        if (endOfInput && result.isUnderflow()) {
+          break;
         }
-      } else {
-        for (CharHandler handler : handlers) {
-          handler.handleIgnoreEoL(c);
-          handler.handleAll(c);
+        if (result.isUnderflow()) {
+          bytes.compact();
+          endOfInput = channel.read(bytes) == -1;
+          bytes.flip();
         }
       }
-      i = reader.read();
+      while (decoder.flush(chars).isOverflow()) {
+        drain(chars, consumer);
+      }
+      drain(chars, consumer);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
     }
-    for (CharHandler handler : handlers) {
-      if (afterCR) {
-        handler.newLine();
+    consumer.eof();
+  }
+
+  /**
+   * @return true if end of file is reached
+   */
+  private static boolean readAtLeast(FileChannel channel, ByteBuffer bytes, int size) throws IOException {
+    while (bytes.position() < size) {
+      if (channel.read(bytes) == -1) {
+        return true;
       }
-      handler.eof();
     }
+    return false;
+  }
+
+  private static void skipBom(ByteBuffer bytes) {
+    for (byte[] bom : BOMS) {
+      if (startsWith(bytes, bom)) {
+        bytes.position(bom.length);
+        return;
+      }
+    }
+  }
+
+  private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+    if (bytes.remaining() < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes.get(i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void drain(CharBuffer chars, CharsConsumer consumer) {
+    chars.flip();
+    consumer.process(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+    chars.clear();
   }
 
   public static class Metadata {
@@ -355,11 +469,11 @@ public class FileMetadata {
     final int[] originalLineOffsets;
     final int lastValidOffset;
 
-    private Metadata(int lines, int nonBlankLines, String hash, List<Integer> originalLineOffsets, int lastValidOffset) {
+    private Metadata(int lines, int nonBlankLines, String hash, int[] originalLineOffsets, int lastValidOffset) {
       this.lines = lines;
       this.nonBlankLines = nonBlankLines;
       this.hash = hash;
-      this.originalLineOffsets = Ints.toArray(originalLineOffsets);
+      this.originalLineOffsets = originalLineOffsets;
       this.lastValidOffset = lastValidOffset;
     }
   }
@@ -374,6 +488,6 @@ public class FileMetadata {
    * Compute a MD5 hash of each line of the file after removing of all blank chars
    */
   public static void computeLineHashesForIssueTracking(DefaultInputFile f, LineHashConsumer consumer) {
-    readFile(f.file(), f.charset(), new LineHashComputer(consumer, f.file()));
+    readFile(f.file(), f.charset(), new MetadataComputer(f.file(), f.charset(), false, consumer));
   }
 }
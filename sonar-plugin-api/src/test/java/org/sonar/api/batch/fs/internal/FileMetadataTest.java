@@ -208,6 +208,37 @@ public class FileMetadataTest {
     assertThat(metadata.originalLineOffsets).containsOnly(0, 1, 5, 10);
   }
 
+  @Test
+  public void read_file_larger_than_buffers() throws Exception {
+    StringBuilder content = new StringBuilder();
+    StringBuilder contentWithoutCR = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      String line = "l\u00e9gume \ud83d\ude00 " + i;
+      content.append(line).append("\r\n");
+      contentWithoutCR.append(line).append("\n");
+    }
+    File tempFile = temp.newFile();
+    FileUtils.write(tempFile, content, StandardCharsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(tempFile, StandardCharsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(10_001);
+    assertThat(metadata.nonBlankLines).isEqualTo(10_000);
+    assertThat(metadata.hash).isEqualTo(md5Hex(contentWithoutCR.toString()));
+    assertThat(metadata.originalLineOffsets[10_000]).isEqualTo(content.length());
+    assertThat(metadata.lastValidOffset).isEqualTo(content.length());
+    assertThat(logTester.logs(LoggerLevel.WARN)).isEmpty();
+
+    DefaultInputFile f = new DefaultInputFile("foo", tempFile.getName());
+    f.setModuleBaseDir(tempFile.getParentFile().toPath());
+    f.setCharset(StandardCharsets.UTF_8);
+    FileMetadata.computeLineHashesForIssueTracking(f, new LineHashConsumer() {
+      @Override
+      public void consume(int lineIdx, @Nullable byte[] hash) {
+        assertThat(Hex.encodeHexString(hash)).isEqualTo(md5Hex("l\u00e9gume\ud83d\ude00" + (lineIdx - 1)));
+      }
+    });
+  }
+
   @Test
   public void start_with_bom() throws Exception {
     File tempFile = temp.newFile();
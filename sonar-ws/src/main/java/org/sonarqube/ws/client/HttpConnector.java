@@ -31,13 +31,19 @@ import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.RequestBody;
 import com.squareup.okhttp.Response;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.Proxy;
+import java.nio.channels.Channels;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLSocketFactory;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -156,7 +162,7 @@ public class HttpConnector implements WsConnector {
         PostRequest.Part part = param.getValue();
         body.addPart(
           Headers.of("Content-Disposition", format("form-data; name=\"%s\"", param.getKey())),
-          RequestBody.create(MediaType.parse(part.getMediaType()), part.getFile()));
+          createBody(part));
       }
       okRequestBuilder.post(body.build());
     }
@@ -164,6 +170,14 @@ public class HttpConnector implements WsConnector {
     return doCall(okRequestBuilder.build());
   }
 
+  private static RequestBody createBody(PostRequest.Part part) {
+    MediaType mediaType = MediaType.parse(part.getMediaType());
+    if (part.getLength() < 0) {
+      return RequestBody.create(mediaType, part.getFile());
+    }
+    return new FileRangeRequestBody(mediaType, part.getFile(), part.getOffset(), part.getLength());
+  }
+
   private HttpUrl.Builder prepareUrlBuilder(WsRequest wsRequest) {
     String path = wsRequest.getPath();
     HttpUrl.Builder urlBuilder = baseUrl
@@ -292,4 +306,40 @@ public class HttpConnector implements WsConnector {
       return System.getProperty("java.version").startsWith("1.7.");
     }
   }
+
+  /**
+   * Streams a range of file, so that large files can be sent in several requests without being split on disk
+   */
+  private static class FileRangeRequestBody extends RequestBody {
+    private final MediaType mediaType;
+    private final File file;
+    private final long offset;
+    private final long length;
+
+    FileRangeRequestBody(MediaType mediaType, File file, long offset, long length) {
+      this.mediaType = mediaType;
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return mediaType;
+    }
+
+    @Override
+    public long contentLength() {
+      return length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        raf.seek(offset);
+        Source source = Okio.source(Channels.newInputStream(raf.getChannel()));
+        sink.write(source, length);
+      }
+    }
+  }
 }
@@ -51,10 +51,23 @@ public class PostRequest extends BaseRequest<PostRequest> {
   public static class Part {
     private final String mediaType;
     private final File file;
+    private final long offset;
+    private final long length;
 
     public Part(String mediaType, File file) {
+      this(mediaType, file, 0L, -1L);
+    }
+
+    /**
+     * Part made of the {@code length} bytes of the file starting at {@code offset}
+     *
+     * @since 5.5
+     */
+    public Part(String mediaType, File file, long offset, long length) {
       this.mediaType = mediaType;
       this.file = file;
+      this.offset = offset;
+      this.length = length;
     }
 
     public String getMediaType() {
@@ -64,6 +77,17 @@ public class PostRequest extends BaseRequest<PostRequest> {
     public File getFile() {
       return file;
     }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * Number of bytes to be sent, -1 if the whole file is sent
+     */
+    public long getLength() {
+      return length;
+    }
   }
 
 }
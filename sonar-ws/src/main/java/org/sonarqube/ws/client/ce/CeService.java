@@ -22,16 +22,22 @@ package org.sonarqube.ws.client.ce;
 
 import org.sonarqube.ws.WsCe.ActivityResponse;
 import org.sonarqube.ws.WsCe.TaskTypesWsResponse;
+import org.sonarqube.ws.WsCe.UploadResponse;
 import org.sonarqube.ws.client.BaseService;
 import org.sonarqube.ws.client.GetRequest;
+import org.sonarqube.ws.client.PostRequest;
 import org.sonarqube.ws.client.WsConnector;
 
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CHUNK;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_COMPONENT_ID;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_MAX_EXECUTED_AT;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_MIN_SUBMITTED_AT;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_OFFSET;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_ONLY_CURRENTS;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_PROJECT_KEY;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_STATUS;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_TYPE;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
 
 public class CeService extends BaseService {
 
@@ -58,4 +64,32 @@ public class CeService extends BaseService {
     return call(new GetRequest(path("task_types")), TaskTypesWsResponse.parser());
   }
 
+  /**
+   * Bytes of the upload already received by the server, and the codecs it supports
+   *
+   * @since 5.5
+   */
+  public UploadResponse uploadStatus(String projectKey, String uploadId) {
+    return call(
+      new GetRequest(path("upload_status"))
+        .setParam(PARAM_PROJECT_KEY, projectKey)
+        .setParam(PARAM_UPLOAD_ID, uploadId),
+      UploadResponse.parser());
+  }
+
+  /**
+   * Sends a chunk of the report, starting at {@code offset} of the encoded report
+   *
+   * @since 5.5
+   */
+  public UploadResponse upload(String projectKey, String uploadId, long offset, PostRequest.Part chunk) {
+    return call(
+      new PostRequest(path("upload"))
+        .setParam(PARAM_PROJECT_KEY, projectKey)
+        .setParam(PARAM_UPLOAD_ID, uploadId)
+        .setParam(PARAM_OFFSET, offset)
+        .setPart(PARAM_CHUNK, chunk),
+      UploadResponse.parser());
+  }
+
 }
@@ -228,6 +228,24 @@ public class HttpConnectorTest {
       .contains("the report content");
   }
 
+  @Test
+  public void upload_range_of_file() throws Exception {
+    answerHelloWorld();
+    File reportFile = temp.newFile();
+    FileUtils.write(reportFile, "0123456789");
+    PostRequest request = new PostRequest("api/report/upload")
+      .setPart("report", new PostRequest.Part(MediaTypes.TXT, reportFile, 3L, 4L));
+
+    HttpConnector underTest = new HttpConnector.Builder().url(serverUrl).build();
+    underTest.call(request);
+
+    String body = IOUtils.toString(server.takeRequest().getBody().inputStream());
+    assertThat(body)
+      .contains("Content-Length: 4")
+      .contains("3456")
+      .doesNotContain("34567");
+  }
+
   @Test
   public void http_error() throws Exception {
     server.enqueue(new MockResponse().setResponseCode(404));
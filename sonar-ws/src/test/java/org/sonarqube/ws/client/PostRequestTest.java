@@ -57,4 +57,14 @@ public class PostRequestTest {
     assertThat(part.getMediaType()).isEqualTo(MediaTypes.JSON);
     assertThat(part.getFile()).isSameAs(reportFile);
   }
+
+  @Test
+  public void add_range_of_file() throws IOException {
+    File reportFile = temp.newFile();
+    PostRequest.Part part = new PostRequest.Part(MediaTypes.DEFAULT, reportFile, 10L, 20L);
+
+    assertThat(part.getOffset()).isEqualTo(10L);
+    assertThat(part.getLength()).isEqualTo(20L);
+    assertThat(new PostRequest.Part(MediaTypes.DEFAULT, reportFile).getLength()).isEqualTo(-1L);
+  }
 }
@@ -21,22 +21,29 @@
 package org.sonarqube.ws.client.ce;
 
 import com.google.common.collect.ImmutableList;
+import java.io.File;
 import org.junit.Rule;
 import org.junit.Test;
+import org.sonarqube.ws.MediaTypes;
 import org.sonarqube.ws.WsCe;
 import org.sonarqube.ws.WsCe.ActivityResponse;
 import org.sonarqube.ws.client.GetRequest;
+import org.sonarqube.ws.client.PostRequest;
 import org.sonarqube.ws.client.ServiceTester;
 import org.sonarqube.ws.client.WsConnector;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_CHUNK;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_COMPONENT_ID;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_MAX_EXECUTED_AT;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_MIN_SUBMITTED_AT;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_OFFSET;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_ONLY_CURRENTS;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_PROJECT_KEY;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_STATUS;
 import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_TYPE;
+import static org.sonarqube.ws.client.ce.CeWsParameters.PARAM_UPLOAD_ID;
 
 public class CeServiceTest {
   private static final String VALUE_COMPONENT_ID = "component-uuid";
@@ -94,4 +101,33 @@ public class CeServiceTest {
 
     assertThat(serviceTester.getGetParser()).isSameAs(WsCe.TaskTypesWsResponse.parser());
   }
+
+  @Test
+  public void upload_status() {
+    underTest.uploadStatus("project", "upload-id");
+    GetRequest result = serviceTester.getGetRequest();
+
+    assertThat(serviceTester.getGetParser()).isSameAs(WsCe.UploadResponse.parser());
+    serviceTester.assertThat(result)
+      .hasPath("upload_status")
+      .hasParam(PARAM_PROJECT_KEY, "project")
+      .hasParam(PARAM_UPLOAD_ID, "upload-id")
+      .andNoOtherParam();
+  }
+
+  @Test
+  public void upload() {
+    PostRequest.Part chunk = new PostRequest.Part(MediaTypes.DEFAULT, new File("report"), 100L, 50L);
+    underTest.upload("project", "upload-id", 100L, chunk);
+    PostRequest result = serviceTester.getPostRequest();
+
+    assertThat(serviceTester.getPostParser()).isSameAs(WsCe.UploadResponse.parser());
+    serviceTester.assertThat(result)
+      .hasPath("upload")
+      .hasParam(PARAM_PROJECT_KEY, "project")
+      .hasParam(PARAM_UPLOAD_ID, "upload-id")
+      .hasParam(PARAM_OFFSET, "100")
+      .andNoOtherParam();
+    assertThat(result.getParts()).containsEntry(PARAM_CHUNK, chunk);
+  }
 }